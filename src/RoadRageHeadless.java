@@ -0,0 +1,302 @@
+/*
+ * TCSS 305 - Road Rage
+ */
+
+//package view;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.util.Locale;
+import java.util.Map;
+import logic.LatencyHistogram;
+import logic.RoadRage;
+import logic.TickProfiler;
+import view.util.FileLoader;
+
+/**
+ * Runs the Road Rage simulation without a display, as fast as possible, and reports its
+ * throughput as a single line of JSON on standard output.
+ * 
+ * <p>Usage: {@code java RoadRageHeadless <city file> <ticks> [--packed] [--threads n]
+ * [--warmup n] [--seed n] [--no-cache] [--profile]}
+ * 
+ * <p>The report holds the map and vehicle counts, the options used, the time taken to load
+ * the city, the wall time of the measured ticks, ticks per second, vehicle updates per
+ * second, the used and peak heap in bytes, and the master seed. Runs with the same seed
+ * play out the same. Warmup ticks run before the measured ticks
+ * and are not included in the timings. A city text file is loaded through the compile
+ * cache of FileLoader unless --no-cache is given or the cache is turned off with
+ * -Droadrage.cache=off, so the first load of a map is slower than later ones.
+ * 
+ * <p>With --profile the phases of each measured tick are timed by a TickProfiler, and the
+ * report also holds the mean, median, 99th percentile and largest time of each phase in
+ * microseconds.
+ */
+public final class RoadRageHeadless {
+    
+    /**
+     * The exit status for bad command line arguments.
+     */
+    private static final int USAGE_ERROR = 2;
+
+    /**
+     * The exit status for a city file that cannot be read.
+     */
+    private static final int IO_ERROR = 1;
+    
+    /**
+     * The number of nanoseconds in a second.
+     */
+    private static final double NANOS_PER_SECOND = 1e9;
+    
+    /**
+     * The number of nanoseconds in a microsecond.
+     */
+    private static final double NANOS_PER_MICRO = 1e3;
+    
+    /**
+     * The percentile of phase times reported as the tail.
+     */
+    private static final double TAIL_PERCENTILE = 99;
+    
+    /**
+     * The percentile of phase times reported as the median.
+     */
+    private static final double MEDIAN_PERCENTILE = 50;
+    
+    /**
+     * Private constructor to prevent construction of instances.
+     */
+    private RoadRageHeadless() {
+        // do nothing
+    }
+
+    /**
+     * Loads the city, runs the simulation and prints the report.
+     * 
+     * @param theArgs Command line arguments, see the class comment.
+     */
+    public static void main(final String... theArgs) {
+        if (theArgs.length < 2) {
+            usage("missing arguments");
+        }
+        final File city = new File(theArgs[0]);
+        final long ticks = parseCount(theArgs[1]);
+        boolean packed = false;
+        int threads = 1;
+        long warmup = 0;
+        Long seed = null;
+        boolean cache = true;
+        boolean profile = false;
+        for (int i = 2; i < theArgs.length; i++) {
+            switch (theArgs[i]) {
+                case "--packed":
+                    packed = true;
+                    break;
+                case "--threads":
+                    final long count = parseCount(argument(theArgs, ++i));
+                    if (count > Integer.MAX_VALUE) {
+                        usage("--threads is too large: " + count);
+                    }
+                    threads = (int) count;
+                    break;
+                case "--warmup":
+                    warmup = parseCount(argument(theArgs, ++i));
+                    break;
+                case "--seed":
+                    seed = parseSeed(argument(theArgs, ++i));
+                    break;
+                case "--no-cache":
+                    cache = false;
+                    break;
+                case "--profile":
+                    profile = true;
+                    break;
+                default:
+                    usage("unknown option " + theArgs[i]);
+            }
+        }
+        if (threads < 1) {
+            usage("--threads must be at least 1");
+        }
+
+        final long loadStart = System.nanoTime();
+        final RoadRage roadRage;
+        try {
+            roadRage = FileLoader.readCity(city, packed, cache);
+        } catch (final IOException ioe) {
+            System.err.println("Could not read city map file " + city + ": " 
+                               + ioe.getMessage());
+            System.exit(IO_ERROR);
+            return;
+        }
+        final long loadTime = System.nanoTime() - loadStart;
+        if (seed != null) {
+            roadRage.setSeed(seed);
+        }
+        roadRage.setParallelism(threads);
+        roadRage.start();
+
+        for (long tick = 0; tick < warmup; tick++) {
+            roadRage.advance();
+        }
+        if (profile) {
+            roadRage.setProfiler(new TickProfiler());
+        }
+        final long start = System.nanoTime();
+        for (long tick = 0; tick < ticks; tick++) {
+            roadRage.advance();
+        }
+        final long wallTime = System.nanoTime() - start;
+        roadRage.setParallelism(1);
+
+        final Runtime runtime = Runtime.getRuntime();
+        final double seconds = wallTime / NANOS_PER_SECOND;
+        final long updates = ticks * roadRage.getVehicleCount();
+        System.out.println(String.format(Locale.ROOT,
+            "{\"city\":\"%s\",\"width\":%d,\"height\":%d,\"vehicles\":%d,"
+            + "\"packed\":%b,\"threads\":%d,\"warmupTicks\":%d,\"ticks\":%d,"
+            + "\"loadSeconds\":%.6f,\"wallSeconds\":%.6f,\"ticksPerSecond\":%.3f,"
+            + "\"vehicleUpdatesPerSecond\":%.1f,\"heapUsedBytes\":%d,"
+            + "\"heapPeakBytes\":%d,\"heapMaxBytes\":%d,\"seed\":%d%s}",
+            escape(city.getPath()), roadRage.getWidth(), roadRage.getHeight(),
+            roadRage.getVehicleCount(), packed, threads, warmup, ticks,
+            loadTime / NANOS_PER_SECOND, seconds, rate(ticks, seconds), rate(updates, seconds),
+            runtime.totalMemory() - runtime.freeMemory(), peakHeap(), runtime.maxMemory(),
+            roadRage.getSeed(), phases(roadRage.getProfiler())));
+    }
+    
+    /**
+     * Returns the JSON member reporting the time of each phase of a tick.
+     * 
+     * @param theProfiler The profiler that timed the ticks, or null if none did.
+     * @return the member with a leading comma, or an empty string without a profiler.
+     */
+    private static String phases(final TickProfiler theProfiler) {
+        if (theProfiler == null) {
+            return "";
+        }
+        final StringBuilder result = new StringBuilder(",\"phases\":{");
+        for (final Map.Entry<TickProfiler.Phase, LatencyHistogram> entry 
+                        : theProfiler.getHistograms().entrySet()) {
+            final LatencyHistogram times = entry.getValue();
+            if (result.charAt(result.length() - 1) != '{') {
+                result.append(',');
+            }
+            result.append(String.format(Locale.ROOT,
+                "\"%s\":{\"meanMicros\":%.3f,\"p50Micros\":%.3f,\"p99Micros\":%.3f,"
+                + "\"maxMicros\":%.3f}",
+                entry.getKey().name().toLowerCase(Locale.ROOT),
+                times.getMean() / NANOS_PER_MICRO,
+                times.getValueAtPercentile(MEDIAN_PERCENTILE) / NANOS_PER_MICRO,
+                times.getValueAtPercentile(TAIL_PERCENTILE) / NANOS_PER_MICRO,
+                times.getMax() / NANOS_PER_MICRO));
+        }
+        return result.append('}').toString();
+    }
+    
+    /**
+     * Returns the sum of the peak usage of all heap memory pools.
+     * 
+     * @return the peak heap use in bytes.
+     */
+    private static long peakHeap() {
+        long result = 0;
+        for (final MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+            if (pool.getType() == MemoryType.HEAP && pool.getPeakUsage() != null) {
+                result += pool.getPeakUsage().getUsed();
+            }
+        }
+        return result;
+    }
+    
+    /**
+     * Returns the argument following an option.
+     * 
+     * @param theArgs The command line arguments.
+     * @param theIndex The index of the option's argument.
+     * @return the argument.
+     */
+    private static String argument(final String[] theArgs, final int theIndex) {
+        if (theIndex >= theArgs.length) {
+            usage(theArgs[theIndex - 1] + " needs a value");
+        }
+        return theArgs[theIndex];
+    }
+    
+    /**
+     * Returns a count per second, which is 0 rather than NaN for a count of nothing and is
+     * always valid JSON.
+     * 
+     * @param theCount The count.
+     * @param theSeconds The time it took in seconds.
+     * @return the rate, or 0 if nothing was counted or no time was measured.
+     */
+    private static double rate(final long theCount, final double theSeconds) {
+        if (theCount == 0 || theSeconds <= 0) {
+            return 0;
+        }
+        return theCount / theSeconds;
+    }
+    
+    /**
+     * Parses a non-negative count.
+     * 
+     * @param theText The text to parse.
+     * @return the count.
+     */
+    private static long parseCount(final String theText) {
+        long result = -1;
+        try {
+            result = Long.parseLong(theText);
+        } catch (final NumberFormatException nfe) {
+            usage("not a number: " + theText);
+        }
+        if (result < 0) {
+            usage("must not be negative: " + theText);
+        }
+        return result;
+    }
+    
+    /**
+     * Parses a seed, which may be any long.
+     * 
+     * @param theText The text to parse.
+     * @return the seed.
+     */
+    private static long parseSeed(final String theText) {
+        long result = 0;
+        try {
+            result = Long.parseLong(theText);
+        } catch (final NumberFormatException nfe) {
+            usage("not a number: " + theText);
+        }
+        return result;
+    }
+    
+    /**
+     * Escapes a string for use inside a JSON string literal.
+     * 
+     * @param theText The text.
+     * @return the escaped text.
+     */
+    private static String escape(final String theText) {
+        return theText.replace("\\", "\\\\").replace("\"", "\\\"");
+    }
+    
+    /**
+     * Prints a usage message and exits.
+     * 
+     * @param theProblem What was wrong with the arguments.
+     */
+    private static void usage(final String theProblem) {
+        System.err.println("RoadRageHeadless: " + theProblem);
+        System.err.println("usage: java RoadRageHeadless <city file> <ticks> [--packed] "
+                           + "[--threads n] [--warmup n] [--seed n] [--no-cache] "
+                           + "[--profile]");
+        System.exit(USAGE_ERROR);
+    }
+}
@@ -7,6 +7,7 @@
 import view.RoadRageGUI;
 
 import java.awt.*;
+import java.io.File;
 
 /**
  * Runs the Road Rage program.
@@ -29,13 +30,17 @@ public final class RoadRageMain {
     /**
      * Constructs the main GUI window frame.
      * 
-     * @param theArgs Command line arguments (ignored).
+     * @param theArgs Command line arguments: optionally the city file to load.
      */
     public static void main(final String... theArgs) {
         EventQueue.invokeLater(new Runnable() {
             @Override
             public void run() {
-                new RoadRageGUI();
+                if (theArgs.length > 0) {
+                    new RoadRageGUI(new File(theArgs[0]));
+                } else {
+                    new RoadRageGUI();
+                }
             }
         });
     }
@@ -0,0 +1,463 @@
+/*
+ * TCSS 305 - Road Rage
+ */
+
+package bench;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.SplittableRandom;
+import logic.RoadRage;
+import model.Direction;
+import model.Light;
+import model.Terrain;
+import model.TerrainGrid;
+import model.Vehicle;
+import model.VehicleKind;
+
+/**
+ * Micro and macro benchmarks for the simulation hot paths.
+ *
+ * <ul>
+ * <li>{@code tick}: latency of a single RoadRage.advance(), reported as mean, median and
+ * 99th percentile over many single-tick samples.</li>
+ * <li>{@code throughput}: sustained ticks and vehicle updates per second over timed
+ * iterations.</li>
+ * <li>{@code decision}: the cost of one chooseDirection and one canPass call for each
+ * vehicle kind on its own, through VehicleKind and through a Vehicle object.</li>
+ * </ul>
+ *
+ * The tick benchmarks run for every combination of vehicle count (10 to 1,000,000 by
+ * default), grid (a small 64 x 64 and a large 2048 x 2048 synthetic city) and vehicle
+ * store (objects and packed). Each measurement is preceded by warmup iterations so the
+ * JIT compiler settles, and all results feed a sink so they cannot be optimized away.
+ * Run with a large heap for the biggest runs, for example:
+ *
+ * <pre>
+ * java -Xmx4g bench.Benchmarks [--bench tick,throughput,decision] [--counts 10,1000]
+ *      [--grids small,large] [--stores objects,packed] [--threads n]
+ *      [--warmup n] [--iterations n] [--seconds s]
+ * </pre>
+ *
+ * Results are printed one per line as: benchmark, parameters, score, error and unit.
+ */
+public final class Benchmarks {
+
+    /**
+     * The default vehicle counts.
+     */
+    private static final int[] DEFAULT_COUNTS = {10, 100, 1_000, 10_000, 100_000, 1_000_000};
+
+    /**
+     * The side of the small synthetic grid.
+     */
+    private static final int SMALL_GRID = 64;
+
+    /**
+     * The side of the large synthetic grid.
+     */
+    private static final int LARGE_GRID = 2048;
+
+    /**
+     * The seed used for all synthetic data, so runs compare like with like.
+     */
+    private static final long SEED = 305;
+
+    /**
+     * The number of neighbor maps each decision benchmark cycles through.
+     */
+    private static final int DECISION_SAMPLES = 1024;
+
+    /**
+     * The number of calls per decision benchmark sample.
+     */
+    private static final int DECISION_CALLS = 1 << 20;
+
+    /**
+     * The number of nanoseconds in a second.
+     */
+    private static final double NANOS_PER_SECOND = 1e9;
+
+    /**
+     * The percentile reported for tick latency.
+     */
+    private static final double TAIL = 0.99;
+
+    /**
+     * Where results go so the JIT compiler cannot drop the work that made them.
+     */
+    private volatile long mySink;
+
+    /**
+     * The benchmarks to run.
+     */
+    private List<String> myBenchmarks = Arrays.asList("tick", "throughput", "decision");
+
+    /**
+     * The vehicle counts to run the tick benchmarks at.
+     */
+    private int[] myCounts = DEFAULT_COUNTS;
+
+    /**
+     * The grids to run the tick benchmarks on.
+     */
+    private List<String> myGrids = Arrays.asList("small", "large");
+
+    /**
+     * The vehicle stores to run the tick benchmarks with.
+     */
+    private List<String> myStores = Arrays.asList("objects", "packed");
+
+    /**
+     * The number of threads deciding vehicle intents.
+     */
+    private int myThreads = 1;
+
+    /**
+     * The number of warmup iterations.
+     */
+    private int myWarmup = 5;
+
+    /**
+     * The number of measured iterations.
+     */
+    private int myIterations = 10;
+
+    /**
+     * The length of one throughput iteration in seconds.
+     */
+    private double mySeconds = 1;
+
+    /**
+     * Private constructor; benchmarks are configured from the command line.
+     */
+    private Benchmarks() {
+        // options are set by parse()
+    }
+
+    /**
+     * Runs the selected benchmarks.
+     *
+     * @param theArgs Command line arguments, see the class comment.
+     */
+    public static void main(final String... theArgs) {
+        final Benchmarks benchmarks = new Benchmarks();
+        benchmarks.parse(theArgs);
+        benchmarks.run();
+    }
+
+    /**
+     * Reads the command line options.
+     *
+     * @param theArgs The command line arguments.
+     */
+    private void parse(final String... theArgs) {
+        for (int i = 0; i < theArgs.length; i += 2) {
+            final String value = argument(theArgs, i + 1);
+            switch (theArgs[i]) {
+                case "--bench":
+                    myBenchmarks = Arrays.asList(value.split(","));
+                    break;
+                case "--counts":
+                    myCounts = Arrays.stream(value.split(",")).mapToInt(Integer::parseInt)
+                                    .toArray();
+                    break;
+                case "--grids":
+                    myGrids = Arrays.asList(value.split(","));
+                    break;
+                case "--stores":
+                    myStores = Arrays.asList(value.split(","));
+                    break;
+                case "--threads":
+                    myThreads = Integer.parseInt(value);
+                    break;
+                case "--warmup":
+                    myWarmup = Integer.parseInt(value);
+                    break;
+                case "--iterations":
+                    myIterations = Integer.parseInt(value);
+                    break;
+                case "--seconds":
+                    mySeconds = Double.parseDouble(value);
+                    break;
+                default:
+                    throw new IllegalArgumentException("Unknown option " + theArgs[i]);
+            }
+        }
+    }
+
+    /**
+     * Returns the value following an option.
+     *
+     * @param theArgs The command line arguments.
+     * @param theIndex The index of the option's value.
+     * @return the value.
+     * @throws IllegalArgumentException if the option is the last argument.
+     */
+    private static String argument(final String[] theArgs, final int theIndex) {
+        if (theIndex >= theArgs.length) {
+            throw new IllegalArgumentException("Option " + theArgs[theIndex - 1]
+                                               + " needs a value");
+        }
+        return theArgs[theIndex];
+    }
+
+    /**
+     * Runs every selected benchmark and prints the results.
+     */
+    private void run() {
+        System.out.println("Benchmark       Parameters                              "
+                           + "      Score        Error  Units");
+        if (myBenchmarks.contains("decision")) {
+            for (final VehicleKind kind : VehicleKind.values()) {
+                decision(kind);
+            }
+        }
+        for (final String grid : myGrids) {
+            final int side = "large".equals(grid) ? LARGE_GRID : SMALL_GRID;
+            final TerrainGrid terrain = SyntheticCity.grid(side, side, SEED);
+            for (final int count : myCounts) {
+                for (final String store : myStores) {
+                    final String params = String.format(Locale.ROOT,
+                        "grid=%s vehicles=%d store=%s threads=%d",
+                        grid, count, store, myThreads);
+                    final RoadRage roadRage = new RoadRage(terrain,
+                        SyntheticCity.vehicles(terrain, count, SEED), "packed".equals(store));
+                    roadRage.setSeed(SEED);
+                    roadRage.setParallelism(myThreads);
+                    roadRage.start();
+                    if (myBenchmarks.contains("tick")) {
+                        tick(roadRage, params);
+                    }
+                    if (myBenchmarks.contains("throughput")) {
+                        throughput(roadRage, count, params);
+                    }
+                    roadRage.setParallelism(1);
+                }
+            }
+        }
+    }
+
+    /**
+     * Measures the latency of single ticks.
+     *
+     * @param theRoadRage The started simulation.
+     * @param theParams The parameters to report.
+     */
+    private void tick(final RoadRage theRoadRage, final String theParams) {
+        final int ticksPerIteration = ticksFor(theRoadRage);
+        for (int i = 0; i < myWarmup * ticksPerIteration; i++) {
+            theRoadRage.advance();
+        }
+        final long[] samples = new long[myIterations * ticksPerIteration];
+        for (int i = 0; i < samples.length; i++) {
+            final long start = System.nanoTime();
+            theRoadRage.advance();
+            samples[i] = System.nanoTime() - start;
+        }
+        Arrays.sort(samples);
+        final double micros = 1e-3;
+        report("tick.mean", theParams, mean(samples) * micros, stdDev(samples) * micros,
+               "us/tick");
+        report("tick.p50", theParams, samples[samples.length / 2] * micros, 0, "us/tick");
+        report("tick.p99", theParams,
+               samples[Math.min(samples.length - 1, (int) (samples.length * TAIL))] * micros,
+               0, "us/tick");
+    }
+
+    /**
+     * Measures sustained tick throughput.
+     *
+     * @param theRoadRage The started simulation.
+     * @param theCount The number of vehicles.
+     * @param theParams The parameters to report.
+     */
+    private void throughput(final RoadRage theRoadRage, final int theCount,
+                            final String theParams) {
+        final long duration = (long) (mySeconds * NANOS_PER_SECOND);
+        final long[] rates = new long[myIterations];
+        for (int i = -myWarmup; i < myIterations; i++) {
+            final long start = System.nanoTime();
+            long ticks = 0;
+            long now;
+            do {
+                theRoadRage.advance();
+                ticks++;
+                now = System.nanoTime();
+            } while (now - start < duration);
+            if (i >= 0) {
+                rates[i] = (long) (ticks * NANOS_PER_SECOND / (now - start));
+            }
+        }
+        report("throughput", theParams, mean(rates), stdDev(rates), "ticks/s");
+        final long[] updates = new long[rates.length];
+        for (int i = 0; i < rates.length; i++) {
+            updates[i] = rates[i] * theCount;
+        }
+        report("throughput", theParams, mean(updates), stdDev(updates), "updates/s");
+    }
+
+    /**
+     * Measures the decision logic of one vehicle kind on its own.
+     *
+     * @param theKind The vehicle kind.
+     */
+    private void decision(final VehicleKind theKind) {
+        final TerrainGrid grid = SyntheticCity.grid(SMALL_GRID, SMALL_GRID, SEED);
+        final List<Vehicle> vehicles = new ArrayList<Vehicle>();
+        for (final Vehicle v : SyntheticCity.vehicles(grid, DECISION_SAMPLES * 6, SEED)) {
+            if (VehicleKind.of(v) == theKind) {
+                vehicles.add(v);
+            }
+        }
+        final int size = vehicles.size();
+        final String params = "kind=" + theKind.name().toLowerCase();
+        if (size == 0) {
+            // the synthetic city places no vehicle of this kind, so there is nothing to time
+            System.out.println(String.format(Locale.ROOT, "%-15s %-46s %s", "decision",
+                                             params, "skipped: no sample vehicles"));
+            return;
+        }
+        final Vehicle[] objects = vehicles.toArray(new Vehicle[size]);
+        final Direction[] directions = new Direction[size];
+        final List<Map<Direction, Terrain>> neighbors = new ArrayList<>(size);
+        final Terrain[] terrains = new Terrain[size];
+        final Light[] lights = new Light[size];
+        final Light[] allLights = Light.values();
+        for (int i = 0; i < size; i++) {
+            directions[i] = objects[i].getDirection();
+            neighbors.add(neighborsOf(grid, objects[i].getX(), objects[i].getY()));
+            terrains[i] = neighbors.get(i).get(directions[i]);
+            if (terrains[i] == null) {
+                terrains[i] = Terrain.WALL;
+            }
+            lights[i] = allLights[i % allLights.length];
+        }
+        final SplittableRandom random = new SplittableRandom(SEED);
+
+        final long[] kindTimes = new long[myIterations];
+        final long[] objectTimes = new long[myIterations];
+        final long[] passTimes = new long[myIterations];
+        for (int iteration = -myWarmup; iteration < myIterations; iteration++) {
+            long sink = 0;
+            long start = System.nanoTime();
+            for (int call = 0; call < DECISION_CALLS; call++) {
+                final int i = call % size;
+                sink += theKind.chooseDirection(directions[i], neighbors.get(i), random)
+                                .ordinal();
+            }
+            final long kindTime = System.nanoTime() - start;
+            start = System.nanoTime();
+            for (int call = 0; call < DECISION_CALLS; call++) {
+                sink += objects[call % size].chooseDirection(neighbors.get(call % size))
+                                .ordinal();
+            }
+            final long objectTime = System.nanoTime() - start;
+            start = System.nanoTime();
+            for (int call = 0; call < DECISION_CALLS; call++) {
+                final int i = call % size;
+                if (theKind.canPass(terrains[i], lights[i], call & 3)) {
+                    sink++;
+                }
+            }
+            final long passTime = System.nanoTime() - start;
+            mySink += sink;
+            if (iteration >= 0) {
+                kindTimes[iteration] = kindTime;
+                objectTimes[iteration] = objectTime;
+                passTimes[iteration] = passTime;
+            }
+        }
+        report("chooseDirection", params + " via=kind", mean(kindTimes) / DECISION_CALLS,
+               stdDev(kindTimes) / DECISION_CALLS, "ns/op");
+        report("chooseDirection", params + " via=object",
+               mean(objectTimes) / DECISION_CALLS, stdDev(objectTimes) / DECISION_CALLS,
+               "ns/op");
+        report("canPass", params + " via=kind", mean(passTimes) / DECISION_CALLS,
+               stdDev(passTimes) / DECISION_CALLS, "ns/op");
+    }
+
+    /**
+     * Builds the neighbors map of one square, the way the simulation describes it.
+     *
+     * @param theGrid The terrain grid.
+     * @param theX The x position.
+     * @param theY The y position.
+     * @return the neighbors map.
+     */
+    private static Map<Direction, Terrain> neighborsOf(final TerrainGrid theGrid,
+                                                       final int theX, final int theY) {
+        final Map<Direction, Terrain> result = new EnumMap<>(Direction.class);
+        for (final Direction dir : Direction.values()) {
+            final int x = theX + dir.dx();
+            final int y = theY + dir.dy();
+            if (theGrid.isValid(x, y)) {
+                result.put(dir, theGrid.get(x, y));
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Picks a number of ticks per latency iteration that keeps big runs bounded.
+     *
+     * @param theRoadRage The simulation.
+     * @return the number of ticks.
+     */
+    private static int ticksFor(final RoadRage theRoadRage) {
+        final int vehicles = Math.max(1, theRoadRage.getVehicleCount());
+        return Math.max(1, Math.min(1000, 1_000_000 / vehicles));
+    }
+
+    /**
+     * Returns the mean of some samples.
+     *
+     * @param theSamples The samples.
+     * @return the mean.
+     */
+    private static double mean(final long[] theSamples) {
+        double sum = 0;
+        for (final long sample : theSamples) {
+            sum += sample;
+        }
+        return theSamples.length == 0 ? 0 : sum / theSamples.length;
+    }
+
+    /**
+     * Returns the sample standard deviation of some samples.
+     *
+     * @param theSamples The samples.
+     * @return the standard deviation.
+     */
+    private static double stdDev(final long[] theSamples) {
+        if (theSamples.length < 2) {
+            return 0;
+        }
+        final double mean = mean(theSamples);
+        double sum = 0;
+        for (final long sample : theSamples) {
+            sum += (sample - mean) * (sample - mean);
+        }
+        return Math.sqrt(sum / (theSamples.length - 1));
+    }
+
+    /**
+     * Prints one result line.
+     *
+     * @param theName The benchmark name.
+     * @param theParams The benchmark parameters.
+     * @param theScore The score.
+     * @param theError The error of the score.
+     * @param theUnit The unit of the score.
+     */
+    private static void report(final String theName, final String theParams,
+                               final double theScore, final double theError,
+                               final String theUnit) {
+        System.out.println(String.format(Locale.ROOT, "%-15s %-46s %12.3f +- %10.3f  %s",
+                                         theName, theParams, theScore, theError, theUnit));
+    }
+}
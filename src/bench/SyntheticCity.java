@@ -0,0 +1,181 @@
+/*
+ * TCSS 305 - Road Rage
+ */
+
+package bench;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.SplittableRandom;
+import model.ATV;
+import model.Bicycle;
+import model.Car;
+import model.Direction;
+import model.Human;
+import model.Taxi;
+import model.Terrain;
+import model.TerrainGrid;
+import model.Truck;
+import model.Vehicle;
+
+/**
+ * Builds synthetic cities of any size for benchmarking.
+ * 
+ * The map is walled in, has a street running around the inside of the wall, and a street
+ * every BLOCK squares in both directions. Streets cross at lights and have crosswalks one
+ * square before each light. The blocks are grass with a sprinkle of trail. There are no
+ * dead ends, so every vehicle kind always has somewhere to go.
+ */
+public final class SyntheticCity {
+
+    /**
+     * The distance between parallel streets.
+     */
+    private static final int BLOCK = 6;
+
+    /**
+     * The chance that a grass square is a trail instead.
+     */
+    private static final double TRAIL_CHANCE = 0.05;
+
+    /**
+     * A private constructor, to prevent external instantiation.
+     */
+    private SyntheticCity() { }
+
+    /**
+     * The number of random squares tried for each vehicle before giving up.
+     */
+    private static final int PLACEMENT_TRIES = 1000;
+
+    /**
+     * Builds a city map.
+     * 
+     * @param theWidth the width of the map, at least 3
+     * @param theHeight the height of the map, at least 3
+     * @param theSeed the seed for the placement of trails
+     * @return the terrain grid
+     */
+    public static TerrainGrid grid(final int theWidth, final int theHeight,
+                                   final long theSeed) {
+        final SplittableRandom random = new SplittableRandom(theSeed);
+        final TerrainGrid.Builder grid = new TerrainGrid.Builder(theWidth, theHeight);
+        for (int y = 0; y < theHeight; y++) {
+            for (int x = 0; x < theWidth; x++) {
+                grid.set(x, y, terrainAt(x, y, theWidth, theHeight, random));
+            }
+        }
+        return grid.build();
+    }
+
+    /**
+     * Places vehicles of every kind on the map, in equal numbers, each on terrain its
+     * kind may drive on.
+     * 
+     * @param theGrid the terrain grid
+     * @param theCount the number of vehicles
+     * @param theSeed the seed for the placement of vehicles
+     * @return the vehicles
+     */
+    public static List<Vehicle> vehicles(final TerrainGrid theGrid, final int theCount,
+                                         final long theSeed) {
+        final SplittableRandom random = new SplittableRandom(theSeed);
+        final Direction[] directions = Direction.values();
+        final List<Vehicle> result = new ArrayList<Vehicle>(theCount);
+
+        for (int i = 0; i < theCount; i++) {
+            final int kind = i % 6;
+            int x;
+            int y;
+            Terrain terrain;
+            int tries = 0;
+            do {
+                if (tries++ > 2 * PLACEMENT_TRIES) {
+                    throw new IllegalArgumentException("The map has no streets");
+                }
+                x = random.nextInt(theGrid.getWidth());
+                y = random.nextInt(theGrid.getHeight());
+                terrain = theGrid.get(x, y);
+                // humans and ATVs start in the fields, unless there are none
+            } while (!(kind <= 1 && isField(terrain)
+                       || isStreet(terrain) && (kind > 1 || tries > PLACEMENT_TRIES)));
+            final Direction dir = directions[random.nextInt(directions.length)];
+            switch (kind) {
+                case 0:
+                    result.add(new Human(x, y, dir));
+                    break;
+                case 1:
+                    result.add(new ATV(x, y, dir));
+                    break;
+                case 2:
+                    result.add(new Truck(x, y, dir));
+                    break;
+                case 3:
+                    result.add(new Taxi(x, y, dir));
+                    break;
+                case 4:
+                    result.add(new Car(x, y, dir));
+                    break;
+                default:
+                    result.add(new Bicycle(x, y, dir));
+                    break;
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Returns whether a terrain is part of the street network.
+     * 
+     * @param theTerrain the terrain
+     * @return true for streets, lights and crosswalks
+     */
+    private static boolean isStreet(final Terrain theTerrain) {
+        return theTerrain == Terrain.STREET || theTerrain == Terrain.LIGHT
+               || theTerrain == Terrain.CROSSWALK;
+    }
+
+    /**
+     * Returns whether a terrain is open field.
+     * 
+     * @param theTerrain the terrain
+     * @return true for grass and trails
+     */
+    private static boolean isField(final Terrain theTerrain) {
+        return theTerrain == Terrain.GRASS || theTerrain == Terrain.TRAIL;
+    }
+
+    /**
+     * Decides the terrain of one square.
+     * 
+     * @param theX the x position
+     * @param theY the y position
+     * @param theWidth the width of the map
+     * @param theHeight the height of the map
+     * @param theRandom the source of trail placement
+     * @return the terrain
+     */
+    private static Terrain terrainAt(final int theX, final int theY, final int theWidth,
+                                     final int theHeight, final SplittableRandom theRandom) {
+        final Terrain result;
+        final boolean ring = theX == 1 || theY == 1
+                        || theX == theWidth - 2 || theY == theHeight - 2;
+        final boolean avenue = theX % BLOCK == BLOCK / 2;
+        final boolean street = theY % BLOCK == BLOCK / 2;
+        if (theX == 0 || theY == 0 || theX == theWidth - 1 || theY == theHeight - 1) {
+            result = Terrain.WALL;
+        } else if (avenue && street) {
+            result = Terrain.LIGHT;
+        } else if (avenue && (theY + 1) % BLOCK == BLOCK / 2 && !ring
+                   || street && (theX + 1) % BLOCK == BLOCK / 2 && !ring) {
+            result = Terrain.CROSSWALK;
+        } else if (ring || avenue || street) {
+            result = Terrain.STREET;
+        } else if (theRandom.nextDouble() < TRAIL_CHANCE) {
+            result = Terrain.TRAIL;
+        } else {
+            result = Terrain.GRASS;
+        }
+        return result;
+    }
+}
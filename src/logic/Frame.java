@@ -0,0 +1,539 @@
+package logic;
+
+import java.util.Arrays;
+import java.util.List;
+import model.Direction;
+import model.Light;
+import model.TerrainGrid;
+import model.Vehicle;
+
+/**
+ * A snapshot of a RoadRage simulation after one tick, taken by a SimulationRunner for a
+ * display to paint while the simulation carries on. A frame handed out by
+ * SimulationRunner.acquireFrame does not change until the next acquireFrame call, so it
+ * can be read without locking.
+ *
+ * <p>Vehicles are numbered in the order of the list fired with PROPERTY_VEHICLES. The
+ * frame also serves as the Signals of its tick; which square belongs to which signal
+ * never changes, so only the light of each signal is copied.
+ *
+ * <p>A frame also lists the squares whose vehicles changed since the frame acquired
+ * before it, so a display only has to repaint those. Changes of frames that were dropped
+ * are carried into the next one.
+ *
+ * <p>The runner also records how its tick went: how long advancing took, the events the
+ * simulation fired and, while it measures, the slowest recent ticks and the memory the
+ * simulation thread has allocated.
+ */
+public final class Frame implements Signals {
+
+    /**
+     * The lights, cached because Light.values() returns a new array on every call.
+     */
+    private static final Light[] LIGHTS = Light.values();
+
+    /**
+     * The directions, cached because Direction.values() returns a new array on every call.
+     */
+    private static final Direction[] DIRECTIONS = Direction.values();
+
+    /**
+     * The number of changed squares listed before the frame counts as changed everywhere.
+     */
+    private static final int MAX_CHANGED = 1 << 16;
+
+    /**
+     * The terrain grid, or null if nothing has been captured.
+     */
+    private TerrainGrid myGrid;
+
+    /**
+     * The time step of the snapshot.
+     */
+    private long myTimestep;
+
+    /**
+     * The master light.
+     */
+    private Light myMaster = Light.GREEN;
+
+    /**
+     * The signals the lights were copied from, which give the signal of each square.
+     */
+    private Signals mySignals;
+
+    /**
+     * The version of the signal lights copied into mySignalLights.
+     */
+    private long mySignalVersion = -1;
+
+    /**
+     * The light ordinal of each signal.
+     */
+    private byte[] mySignalLights = new byte[0];
+
+    /**
+     * The number of vehicles.
+     */
+    private int myVehicleCount;
+
+    /**
+     * The x-coordinate of each vehicle.
+     */
+    private int[] myX = new int[0];
+
+    /**
+     * The y-coordinate of each vehicle.
+     */
+    private int[] myY = new int[0];
+
+    /**
+     * The direction ordinal of each vehicle.
+     */
+    private byte[] myDirections = new byte[0];
+
+    /**
+     * Whether each vehicle is alive.
+     */
+    private boolean[] myAlive = new boolean[0];
+
+    /**
+     * The image file name of each vehicle.
+     */
+    private String[] myImages = new String[0];
+
+    /**
+     * The text of each vehicle, or null where it was not captured.
+     */
+    private String[] myLabels = new String[0];
+
+    /**
+     * The x- and y-coordinates of each changed square, in pairs.
+     */
+    private int[] myChanged = new int[0];
+
+    /**
+     * The number of changed squares.
+     */
+    private int myChangedCount;
+
+    /**
+     * Whether anything may have changed, as after a reset.
+     */
+    private boolean myAllChanged = true;
+
+    /**
+     * Whether the lights changed.
+     */
+    private boolean mySignalsChanged;
+
+    /**
+     * The time the tick of the snapshot took to advance, in nanoseconds.
+     */
+    private long myTickNanos;
+
+    /**
+     * The 99th percentile of the time recent ticks took, in nanoseconds, or -1 if unknown.
+     */
+    private long myTailTickNanos = -1;
+
+    /**
+     * The number of property change events fired during the tick.
+     */
+    private int myEventCount;
+
+    /**
+     * The number of vehicle changes fired during the tick.
+     */
+    private int myVehicleChangeCount;
+
+    /**
+     * The bytes the simulation thread has allocated so far, or -1 if unknown.
+     */
+    private long myAllocatedBytes = -1;
+
+    /**
+     * Creates an empty frame.
+     */
+    Frame() {
+        // filled in by capture
+    }
+
+    /**
+     * Returns the terrain grid.
+     *
+     * @return the terrain grid
+     */
+    public TerrainGrid getGrid() {
+        return myGrid;
+    }
+
+    /**
+     * Returns the time step of the snapshot.
+     *
+     * @return the time step
+     */
+    public long getTimestep() {
+        return myTimestep;
+    }
+
+    /**
+     * Returns the master light, followed by squares without a signal.
+     *
+     * @return the master light
+     */
+    public Light getMasterLight() {
+        return myMaster;
+    }
+
+    /**
+     * Returns the number of vehicles.
+     *
+     * @return the number of vehicles
+     */
+    public int getVehicleCount() {
+        return myVehicleCount;
+    }
+
+    /**
+     * Returns the x-coordinate of a vehicle.
+     *
+     * @param theVehicle the vehicle number
+     * @return the x-coordinate
+     */
+    public int getX(final int theVehicle) {
+        return myX[theVehicle];
+    }
+
+    /**
+     * Returns the y-coordinate of a vehicle.
+     *
+     * @param theVehicle the vehicle number
+     * @return the y-coordinate
+     */
+    public int getY(final int theVehicle) {
+        return myY[theVehicle];
+    }
+
+    /**
+     * Returns the direction of a vehicle.
+     *
+     * @param theVehicle the vehicle number
+     * @return the direction
+     */
+    public Direction getDirection(final int theVehicle) {
+        return DIRECTIONS[myDirections[theVehicle]];
+    }
+
+    /**
+     * Returns whether a vehicle is alive.
+     *
+     * @param theVehicle the vehicle number
+     * @return whether the vehicle is alive
+     */
+    public boolean isAlive(final int theVehicle) {
+        return myAlive[theVehicle];
+    }
+
+    /**
+     * Returns the image file name of a vehicle.
+     *
+     * @param theVehicle the vehicle number
+     * @return the image file name
+     */
+    public String getImageFileName(final int theVehicle) {
+        return myImages[theVehicle];
+    }
+
+    /**
+     * Returns the text of a vehicle, its toString(), if the runner was asked to capture it.
+     *
+     * @param theVehicle the vehicle number
+     * @return the text, or null if it was not captured
+     * @see SimulationRunner#setLabels(boolean)
+     */
+    public String getLabel(final int theVehicle) {
+        return myLabels[theVehicle];
+    }
+
+    /**
+     * Returns whether anything may have changed since the frame acquired before this one,
+     * so the whole display has to be painted again.
+     *
+     * @return whether everything changed
+     */
+    public boolean isAllChanged() {
+        return myAllChanged;
+    }
+
+    /**
+     * Returns whether the light of any square changed since the frame acquired before
+     * this one.
+     *
+     * @return whether the lights changed
+     */
+    public boolean haveSignalsChanged() {
+        return mySignalsChanged;
+    }
+
+    /**
+     * Returns the number of squares where a vehicle arrived, left, turned, died or came
+     * back to life since the frame acquired before this one. A square may be listed more
+     * than once.
+     *
+     * @return the number of changed squares
+     */
+    public int getChangedCount() {
+        return myChangedCount;
+    }
+
+    /**
+     * Returns the x-coordinate of a changed square.
+     *
+     * @param theIndex the index of the changed square
+     * @return the x-coordinate
+     */
+    public int getChangedX(final int theIndex) {
+        return myChanged[2 * theIndex];
+    }
+
+    /**
+     * Returns the y-coordinate of a changed square.
+     *
+     * @param theIndex the index of the changed square
+     * @return the y-coordinate
+     */
+    public int getChangedY(final int theIndex) {
+        return myChanged[2 * theIndex + 1];
+    }
+
+    /**
+     * Returns the time the tick of this frame took to advance.
+     *
+     * @return the time in nanoseconds, 0 for a frame captured without a tick
+     */
+    public long getTickNanos() {
+        return myTickNanos;
+    }
+
+    /**
+     * Returns the 99th percentile of the time recent ticks took to advance, which is only
+     * worked out while the runner measures.
+     *
+     * @return the time in nanoseconds, or -1 if unknown
+     */
+    public long getTailTickNanos() {
+        return myTailTickNanos;
+    }
+
+    /**
+     * Returns the number of property change events the simulation fired during the tick.
+     *
+     * @return the number of events
+     */
+    public int getEventCount() {
+        return myEventCount;
+    }
+
+    /**
+     * Returns the number of vehicle changes the simulation fired during the tick.
+     *
+     * @return the number of vehicle changes
+     */
+    public int getVehicleChangeCount() {
+        return myVehicleChangeCount;
+    }
+
+    /**
+     * Returns the bytes the simulation thread had allocated when the frame was captured,
+     * counted since it started. It is only read while the runner measures, and only on
+     * virtual machines able to count it.
+     *
+     * @return the allocated bytes, or -1 if unknown
+     */
+    public long getAllocatedBytes() {
+        return myAllocatedBytes;
+    }
+
+    @Override
+    public int getSignalCount() {
+        return mySignalLights.length;
+    }
+
+    @Override
+    public int getSignal(final int theX, final int theY) {
+        return mySignals == null ? SignalNetwork.NONE : mySignals.getSignal(theX, theY);
+    }
+
+    @Override
+    public Light getSignalLight(final int theSignal) {
+        return LIGHTS[mySignalLights[theSignal]];
+    }
+
+    @Override
+    public Light getLight(final int theX, final int theY) {
+        final int signal = getSignal(theX, theY);
+        return signal == SignalNetwork.NONE ? myMaster : LIGHTS[mySignalLights[signal]];
+    }
+
+    /**
+     * Copies the state of a simulation into this frame, reusing its arrays. The signal
+     * lights are only copied when their version differs from the last copy.
+     *
+     * @param theGrid the terrain grid
+     * @param theTimestep the time step
+     * @param theMaster the master light
+     * @param theSignals the signals, or null if there are none yet
+     * @param theSignalVersion the number of times the signals have changed
+     * @param theVehicles the vehicles
+     * @param theLabels whether to capture the text of each vehicle
+     */
+    void capture(final TerrainGrid theGrid, final long theTimestep, final Light theMaster,
+                 final Signals theSignals, final long theSignalVersion,
+                 final List<Vehicle> theVehicles, final boolean theLabels) {
+        myGrid = theGrid;
+        myTimestep = theTimestep;
+        myMaster = theMaster;
+        if (theSignals != mySignals || theSignalVersion != mySignalVersion) {
+            captureSignals(theSignals);
+            mySignalVersion = theSignalVersion;
+        }
+
+        final int count = theVehicles.size();
+        if (myX.length < count) {
+            myX = new int[count];
+            myY = new int[count];
+            myDirections = new byte[count];
+            myAlive = new boolean[count];
+            myImages = new String[count];
+            myLabels = new String[count];
+        }
+        myVehicleCount = count;
+        for (int i = 0; i < count; i++) {
+            final Vehicle v = theVehicles.get(i);
+            myX[i] = v.getX();
+            myY[i] = v.getY();
+            myDirections[i] = (byte) v.getDirection().ordinal();
+            myAlive[i] = v.isAlive();
+            myImages[i] = v.getImageFileName();
+        }
+        if (theLabels) {
+            for (int i = 0; i < count; i++) {
+                myLabels[i] = theVehicles.get(i).toString();
+            }
+        } else {
+            Arrays.fill(myLabels, 0, count, null);
+        }
+    }
+
+    /**
+     * Records how the tick of this frame went.
+     *
+     * @param theTickNanos the time the tick took in nanoseconds
+     * @param theTailTickNanos the 99th percentile of recent tick times, or -1 if unknown
+     * @param theEventCount the number of events fired during the tick
+     * @param theVehicleChangeCount the number of vehicle changes fired during the tick
+     * @param theAllocatedBytes the bytes allocated by the simulation thread, or -1
+     */
+    void captureTiming(final long theTickNanos, final long theTailTickNanos,
+                       final int theEventCount, final int theVehicleChangeCount,
+                       final long theAllocatedBytes) {
+        myTickNanos = theTickNanos;
+        myTailTickNanos = theTailTickNanos;
+        myEventCount = theEventCount;
+        myVehicleChangeCount = theVehicleChangeCount;
+        myAllocatedBytes = theAllocatedBytes;
+    }
+
+    /**
+     * Forgets the changes listed, for a frame about to be filled again.
+     */
+    void clearChanges() {
+        myChangedCount = 0;
+        myAllChanged = false;
+        mySignalsChanged = false;
+    }
+
+    /**
+     * Marks everything as changed.
+     */
+    void markAllChanged() {
+        myAllChanged = true;
+    }
+
+    /**
+     * Marks the lights as changed.
+     */
+    void markSignalsChanged() {
+        mySignalsChanged = true;
+    }
+
+    /**
+     * Lists the squares of the vehicle changes of a tick. A reset changes everything.
+     *
+     * @param theChanges the changes
+     */
+    void addChanges(final VehicleChanges theChanges) {
+        if (theChanges.isReset()) {
+            myAllChanged = true;
+        }
+        for (int i = 0; i < theChanges.size() && !myAllChanged; i++) {
+            addChangedSquare(theChanges.getX(i), theChanges.getY(i));
+            if ((theChanges.getFlags(i) & VehicleChanges.MOVED) != 0) {
+                addChangedSquare(theChanges.getOldX(i), theChanges.getOldY(i));
+            }
+        }
+    }
+
+    /**
+     * Adds the changes of another frame to those of this one, for a frame that replaces
+     * it before it was acquired.
+     *
+     * @param theOther the other frame
+     */
+    void includeChanges(final Frame theOther) {
+        myAllChanged |= theOther.myAllChanged;
+        mySignalsChanged |= theOther.mySignalsChanged;
+        for (int i = 0; i < theOther.myChangedCount && !myAllChanged; i++) {
+            addChangedSquare(theOther.getChangedX(i), theOther.getChangedY(i));
+        }
+    }
+
+    /**
+     * Lists a changed square, giving up on the list once it grows too long.
+     *
+     * @param theX the x-coordinate
+     * @param theY the y-coordinate
+     */
+    private void addChangedSquare(final int theX, final int theY) {
+        if (myAllChanged) {
+            return;
+        }
+        if (myChangedCount == MAX_CHANGED) {
+            myAllChanged = true;
+            return;
+        }
+        if (2 * myChangedCount == myChanged.length) {
+            myChanged = Arrays.copyOf(myChanged, Math.max(2 * 2 * myChangedCount, 64));
+        }
+        myChanged[2 * myChangedCount] = theX;
+        myChanged[2 * myChangedCount + 1] = theY;
+        myChangedCount++;
+    }
+
+    /**
+     * Copies the light of every signal.
+     *
+     * @param theSignals the signals, or null if there are none yet
+     */
+    private void captureSignals(final Signals theSignals) {
+        mySignals = theSignals;
+        final int count = theSignals == null ? 0 : theSignals.getSignalCount();
+        if (mySignalLights.length != count) {
+            mySignalLights = new byte[count];
+        }
+        for (int s = 0; s < count; s++) {
+            mySignalLights[s] = (byte) theSignals.getSignalLight(s).ordinal();
+        }
+    }
+}
@@ -0,0 +1,195 @@
+package logic;
+
+import java.util.Arrays;
+
+/**
+ * A histogram of times in nanoseconds with buckets growing with the value, in the manner
+ * of HdrHistogram: below SUB_BUCKETS every value has its own bucket, and above it each
+ * power of two is split into SUB_BUCKETS equal buckets. Every value is then kept to within
+ * about 1 part in SUB_BUCKETS of itself in a fixed array, whatever its size, and recording
+ * a value is a few shifts and an increment.
+ *
+ * <p>A histogram is not safe for use by several threads at once; TickProfiler hands out
+ * copies.
+ */
+public final class LatencyHistogram {
+
+    /**
+     * The number of bits of precision kept of each value.
+     */
+    private static final int SUB_BUCKET_BITS = 5;
+
+    /**
+     * The number of buckets each power of two is split into.
+     */
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+
+    /**
+     * The number of buckets, enough for any non-negative long.
+     */
+    private static final int BUCKETS = (Long.SIZE - SUB_BUCKET_BITS) * SUB_BUCKETS;
+
+    /**
+     * The number of values recorded in each bucket.
+     */
+    private final long[] myCounts;
+
+    /**
+     * The number of values recorded.
+     */
+    private long myCount;
+
+    /**
+     * The sum of the values recorded.
+     */
+    private long myTotal;
+
+    /**
+     * The smallest value recorded, or Long.MAX_VALUE if none.
+     */
+    private long myMin = Long.MAX_VALUE;
+
+    /**
+     * The largest value recorded, or 0 if none.
+     */
+    private long myMax;
+
+    /**
+     * Creates an empty histogram.
+     */
+    public LatencyHistogram() {
+        myCounts = new long[BUCKETS];
+    }
+
+    /**
+     * Creates a copy of a histogram.
+     *
+     * @param theOther the histogram to copy
+     */
+    public LatencyHistogram(final LatencyHistogram theOther) {
+        myCounts = theOther.myCounts.clone();
+        myCount = theOther.myCount;
+        myTotal = theOther.myTotal;
+        myMin = theOther.myMin;
+        myMax = theOther.myMax;
+    }
+
+    /**
+     * Records a value.
+     *
+     * @param theNanos the value in nanoseconds; negative values are recorded as 0
+     */
+    public void record(final long theNanos) {
+        final long value = Math.max(0, theNanos);
+        myCounts[bucketOf(value)]++;
+        myCount++;
+        myTotal += value;
+        myMin = Math.min(myMin, value);
+        myMax = Math.max(myMax, value);
+    }
+
+    /**
+     * Forgets every value recorded.
+     */
+    public void reset() {
+        Arrays.fill(myCounts, 0);
+        myCount = 0;
+        myTotal = 0;
+        myMin = Long.MAX_VALUE;
+        myMax = 0;
+    }
+
+    /**
+     * Returns the number of values recorded.
+     *
+     * @return the count
+     */
+    public long getCount() {
+        return myCount;
+    }
+
+    /**
+     * Returns the smallest value recorded.
+     *
+     * @return the value in nanoseconds, or 0 if none was recorded
+     */
+    public long getMin() {
+        return myCount == 0 ? 0 : myMin;
+    }
+
+    /**
+     * Returns the largest value recorded.
+     *
+     * @return the value in nanoseconds, or 0 if none was recorded
+     */
+    public long getMax() {
+        return myMax;
+    }
+
+    /**
+     * Returns the mean of the values recorded, which is exact.
+     *
+     * @return the mean in nanoseconds, or 0 if none was recorded
+     */
+    public double getMean() {
+        return myCount == 0 ? 0 : (double) myTotal / myCount;
+    }
+
+    /**
+     * Returns the value at a percentile: the largest value of the bucket holding it, so at
+     * least that share of the values recorded are no larger, never above the largest
+     * value recorded.
+     *
+     * @param thePercentile the percentile, from 0 to 100
+     * @return the value in nanoseconds, or 0 if none was recorded
+     * @throws IllegalArgumentException if thePercentile is outside 0 to 100
+     */
+    public long getValueAtPercentile(final double thePercentile) {
+        if (!(thePercentile >= 0 && thePercentile <= 100)) {
+            throw new IllegalArgumentException("Percentile outside 0 to 100: "
+                                               + thePercentile);
+        }
+        if (myCount == 0) {
+            return 0;
+        }
+        final long rank = Math.max(1, (long) Math.ceil(thePercentile / 100 * myCount));
+        long seen = 0;
+        int bucket = 0;
+        while (seen + myCounts[bucket] < rank) {
+            seen += myCounts[bucket];
+            bucket++;
+        }
+        return Math.min(myMax, Math.max(myMin, highestOf(bucket)));
+    }
+
+    /**
+     * Returns the bucket a value falls in.
+     *
+     * @param theValue the value, not negative
+     * @return the bucket
+     */
+    private static int bucketOf(final long theValue) {
+        if (theValue < SUB_BUCKETS) {
+            return (int) theValue;
+        }
+        final int shift = Long.SIZE - 1 - Long.numberOfLeadingZeros(theValue)
+                          - SUB_BUCKET_BITS;
+        // the top SUB_BUCKET_BITS + 1 bits of the value, the highest of which is always set
+        return (shift + 1) * SUB_BUCKETS + (int) (theValue >>> shift) - SUB_BUCKETS;
+    }
+
+    /**
+     * Returns the largest value that falls in a bucket.
+     *
+     * @param theBucket the bucket
+     * @return the value
+     */
+    private static long highestOf(final int theBucket) {
+        if (theBucket < SUB_BUCKETS) {
+            return theBucket;
+        }
+        final int shift = theBucket / SUB_BUCKETS - 1;
+        final long lowest = (long) (theBucket % SUB_BUCKETS + SUB_BUCKETS) << shift;
+        return lowest + (1L << shift) - 1;
+    }
+}
@@ -0,0 +1,345 @@
+package logic;
+
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+import model.Direction;
+import model.Terrain;
+import model.TerrainGrid;
+
+/**
+ * Precomputed, read-only neighbor maps for the squares of a terrain grid.
+ *
+ * A neighbor map is fully described by the terrain (or absence of terrain) in each of the
+ * four directions, so there are only a few thousand different ones. Each is built once,
+ * up front, and shared by every square with the same surroundings.
+ *
+ * The table is split into the tiles of the grid. Each tile lists the maps its squares use
+ * in a palette and stores one byte per square, the square's place in the palette, so
+ * looking up the neighbors of a square is a few array reads and never allocates. A tile
+ * whose squares all have the same surroundings shares one array of places with every
+ * other such tile. The rare tile with more than PALETTE_SIZE different surroundings has
+ * no palette, and its squares read their four neighbors from the grid instead, as do all
+ * the squares of a grid of more than DENSE_SQUARES squares, which would not leave room
+ * for much else if it had a byte for each.
+ */
+final class NeighborTable {
+
+    /**
+     * The directions, cached because Direction.values() returns a new array on every call.
+     */
+    private static final Direction[] DIRECTIONS = Direction.values();
+
+    /**
+     * The terrains, cached because Terrain.values() returns a new array on every call.
+     */
+    private static final Terrain[] TERRAINS = Terrain.values();
+
+    /**
+     * The number of states a single direction can be in: one per terrain, or off the map.
+     */
+    private static final int STATES = TERRAINS.length + 1;
+
+    /**
+     * The mask of the lowest byte of an int.
+     */
+    private static final int BYTE_MASK = 0xFF;
+
+    /**
+     * The most squares a grid can have for the table to keep a place for each, 64 MB of
+     * them.
+     */
+    private static final long DENSE_SQUARES = 1L << 26;
+
+    /**
+     * The most neighbor maps a tile can list, one per value of a byte.
+     */
+    private static final int PALETTE_SIZE = 1 << Byte.SIZE;
+
+    /**
+     * The number of bits to shift a coordinate by to get its tile coordinate.
+     */
+    private static final int TILE_SHIFT = Integer.numberOfTrailingZeros(TerrainGrid.TILE_SIZE);
+
+    /**
+     * The mask giving a coordinate's position within its tile.
+     */
+    private static final int TILE_MASK = TerrainGrid.TILE_SIZE - 1;
+
+    /**
+     * The places of a tile whose squares all use the first map of its palette, shared by
+     * every such tile. It is never written.
+     */
+    private static final byte[] SAME_PLACES =
+                    new byte[TerrainGrid.TILE_SIZE * TerrainGrid.TILE_SIZE];
+
+    /**
+     * The terrain grid the table was built from.
+     */
+    private final TerrainGrid myGrid;
+
+    /**
+     * The shared neighbor map for each pattern number.
+     */
+    private final Neighbors[] myViews;
+
+    /**
+     * The number of tiles in each row of tiles.
+     */
+    private final int myTilesAcross;
+
+    /**
+     * The neighbor maps the squares of each tile use, or null for a tile with too many or
+     * of a grid with too many squares.
+     */
+    private final Neighbors[][] myPalettes;
+
+    /**
+     * The place in its tile's palette of each square, tile by tile and row by row within
+     * a tile.
+     */
+    private final byte[][] myPlaces;
+
+    /**
+     * Builds the neighbor table for the given grid.
+     *
+     * @param theGrid the terrain grid
+     */
+    NeighborTable(final TerrainGrid theGrid) {
+        myGrid = theGrid;
+        int patterns = 1;
+        for (int i = 0; i < DIRECTIONS.length; i++) {
+            patterns *= STATES;
+        }
+        myViews = new Neighbors[patterns];
+        for (int pattern = 0; pattern < patterns; pattern++) {
+            final Terrain[] terrains = new Terrain[DIRECTIONS.length];
+            int rest = pattern;
+            for (int i = 0; i < terrains.length; i++) {
+                final int state = rest % STATES;
+                terrains[i] = state == 0 ? null : TERRAINS[state - 1];
+                rest /= STATES;
+            }
+            myViews[pattern] = new Neighbors(terrains);
+        }
+
+        myTilesAcross = (theGrid.getWidth() + TILE_MASK) >> TILE_SHIFT;
+        final int tilesDown = (theGrid.getHeight() + TILE_MASK) >> TILE_SHIFT;
+        myPalettes = new Neighbors[myTilesAcross * tilesDown][];
+        myPlaces = new byte[myPalettes.length][];
+        if ((long) myPalettes.length * SAME_PLACES.length > DENSE_SQUARES) {
+            return;   // every square reads the grid
+        }
+        // the place of each pattern in the palette being built, valid while its stamp is
+        // the number of the tile being built
+        final int[] places = new int[patterns];
+        final int[] stamps = new int[patterns];
+        Arrays.fill(stamps, -1);
+        for (int tile = 0; tile < myPalettes.length; tile++) {
+            buildTile(tile, places, stamps);
+        }
+    }
+
+    /**
+     * Builds the palette and places of one tile.
+     *
+     * @param theTile the tile
+     * @param thePlaces the place of each pattern in the palette, where its stamp is theTile
+     * @param theStamps the tile each pattern was last placed for
+     */
+    private void buildTile(final int theTile, final int[] thePlaces, final int[] theStamps) {
+        final int left = theTile % myTilesAcross << TILE_SHIFT;
+        final int top = theTile / myTilesAcross << TILE_SHIFT;
+        final int right = Math.min(left + TerrainGrid.TILE_SIZE, myGrid.getWidth());
+        final int bottom = Math.min(top + TerrainGrid.TILE_SIZE, myGrid.getHeight());
+        final Neighbors[] palette = new Neighbors[PALETTE_SIZE];
+        final byte[] places = new byte[SAME_PLACES.length];
+        int size = 0;
+        for (int y = top; y < bottom; y++) {
+            for (int x = left; x < right; x++) {
+                final int pattern = patternOf(x, y);
+                if (theStamps[pattern] != theTile) {
+                    if (size == PALETTE_SIZE) {
+                        return;   // too many to list; the squares are looked up the slow way
+                    }
+                    theStamps[pattern] = theTile;
+                    thePlaces[pattern] = size;
+                    palette[size++] = myViews[pattern];
+                }
+                places[offsetOf(x, y)] = (byte) thePlaces[pattern];
+            }
+        }
+        myPalettes[theTile] = Arrays.copyOf(palette, size);
+        myPlaces[theTile] = size == 1 ? SAME_PLACES : places;
+    }
+
+    /**
+     * Returns the read-only neighbors map for the square at the given position.
+     *
+     * @param theX The x position.
+     * @param theY The y position.
+     * @return The neighbors map.
+     */
+    Map<Direction, Terrain> get(final int theX, final int theY) {
+        if (myGrid.isValid(theX, theY)) {
+            final int tile = (theY >> TILE_SHIFT) * myTilesAcross + (theX >> TILE_SHIFT);
+            final Neighbors[] palette = myPalettes[tile];
+            if (palette != null) {
+                return palette[myPlaces[tile][offsetOf(theX, theY)] & BYTE_MASK];
+            }
+        }
+        // vehicles that wandered off the map, and squares of crowded tiles, read the grid
+        return myViews[patternOf(theX, theY)];
+    }
+
+    /**
+     * Returns the index of a position within its tile.
+     *
+     * @param theX The x position.
+     * @param theY The y position.
+     * @return the offset within the tile.
+     */
+    private static int offsetOf(final int theX, final int theY) {
+        return (theY & TILE_MASK) << TILE_SHIFT | theX & TILE_MASK;
+    }
+
+    /**
+     * Computes the pattern number of the square at the given position.
+     *
+     * @param theX The x position.
+     * @param theY The y position.
+     * @return the pattern number
+     */
+    private int patternOf(final int theX, final int theY) {
+        final int ordinals = myGrid.getNeighborOrdinals(theX, theY);
+        int result = 0;
+        for (int i = DIRECTIONS.length - 1; i >= 0; i--) {
+            // off the map is 0xFF, so the state is 0
+            result = result * STATES + ((ordinals >>> i * Byte.SIZE) + 1 & BYTE_MASK);
+        }
+        return result;
+    }
+
+    /**
+     * An immutable map from Direction to the Terrain in that direction, backed by an array
+     * indexed by direction ordinal. Directions off the map have no entry.
+     */
+    private static final class Neighbors extends AbstractMap<Direction, Terrain> {
+
+        /**
+         * The terrain in each direction, or null when that direction is off the map.
+         */
+        private final Terrain[] myTerrains;
+
+        /**
+         * The number of directions on the map.
+         */
+        private final int mySize;
+
+        /**
+         * The entry set view, built on first use.
+         */
+        private Set<Map.Entry<Direction, Terrain>> myEntries;
+
+        /**
+         * Creates a neighbors map.
+         *
+         * @param theTerrains the terrain in each direction, indexed by ordinal
+         */
+        Neighbors(final Terrain[] theTerrains) {
+            super();
+            myTerrains = theTerrains;
+            int size = 0;
+            for (final Terrain terrain : theTerrains) {
+                if (terrain != null) {
+                    size++;
+                }
+            }
+            mySize = size;
+        }
+
+        @Override
+        public Terrain get(final Object theKey) {
+            Terrain result = null;
+            if (theKey instanceof Direction) {
+                result = myTerrains[((Direction) theKey).ordinal()];
+            }
+            return result;
+        }
+
+        @Override
+        public boolean containsKey(final Object theKey) {
+            return get(theKey) != null;
+        }
+
+        @Override
+        public int size() {
+            return mySize;
+        }
+
+        @Override
+        public Set<Map.Entry<Direction, Terrain>> entrySet() {
+            if (myEntries == null) {
+                myEntries = new AbstractSet<Map.Entry<Direction, Terrain>>() {
+                    @Override
+                    public Iterator<Map.Entry<Direction, Terrain>> iterator() {
+                        return new EntryIterator();
+                    }
+
+                    @Override
+                    public int size() {
+                        return mySize;
+                    }
+                };
+            }
+            return myEntries;
+        }
+
+        /**
+         * Iterates over the directions that are on the map.
+         */
+        private final class EntryIterator implements Iterator<Map.Entry<Direction, Terrain>> {
+
+            /**
+             * The ordinal of the next entry to return.
+             */
+            private int myNext = advance(0);
+
+            @Override
+            public boolean hasNext() {
+                return myNext < myTerrains.length;
+            }
+
+            @Override
+            public Map.Entry<Direction, Terrain> next() {
+                if (!hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                final Map.Entry<Direction, Terrain> result =
+                                new SimpleImmutableEntry<>(DIRECTIONS[myNext],
+                                                           myTerrains[myNext]);
+                myNext = advance(myNext + 1);
+                return result;
+            }
+
+            /**
+             * Finds the first ordinal at or after the given one that is on the map.
+             *
+             * @param theStart the ordinal to start from
+             * @return the ordinal found, or the number of directions if there is none
+             */
+            private int advance(final int theStart) {
+                int result = theStart;
+                while (result < myTerrains.length && myTerrains[result] == null) {
+                    result++;
+                }
+                return result;
+            }
+        }
+    }
+
+}
@@ -0,0 +1,175 @@
+package logic;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.SplittableRandom;
+import model.AbstractVehicle;
+import model.Direction;
+import model.Light;
+import model.Terrain;
+import model.Vehicle;
+import model.VehicleKind;
+
+/**
+ * A VehicleStore that keeps the state in the Vehicle objects themselves. A vehicle whose
+ * class is exactly one of the model classes, and whose kind keeps no count of its wait,
+ * is checked against the passability table of its VehicleKind; every other vehicle,
+ * including subclasses and taxis, is asked canPass so its own rules and state apply.
+ */
+final class ObjectVehicleStore extends VehicleStore {
+
+    /**
+     * The vehicles, indexed by handle.
+     */
+    private final List<Vehicle> myVehicles;
+
+    /**
+     * The kind whose table each vehicle is checked against, by handle, or null for a
+     * vehicle asked canPass.
+     */
+    private final VehicleKind[] myKinds;
+
+    /**
+     * Creates a store over the given vehicles.
+     * 
+     * @param theVehicles the vehicles
+     */
+    ObjectVehicleStore(final List<Vehicle> theVehicles) {
+        super();
+        myVehicles = new ArrayList<Vehicle>(theVehicles);
+        myKinds = new VehicleKind[myVehicles.size()];
+        for (int h = 0; h < myKinds.length; h++) {
+            final VehicleKind kind = VehicleKind.exactly(myVehicles.get(h));
+            if (kind != null && kind.waitMask() == 0) {
+                myKinds[h] = kind;
+            }
+        }
+    }
+
+    @Override
+    int size() {
+        return myVehicles.size();
+    }
+
+    @Override
+    int getX(final int theHandle) {
+        return myVehicles.get(theHandle).getX();
+    }
+
+    @Override
+    int getY(final int theHandle) {
+        return myVehicles.get(theHandle).getY();
+    }
+
+    @Override
+    void setPosition(final int theHandle, final int theX, final int theY) {
+        final Vehicle v = myVehicles.get(theHandle);
+        v.setX(theX);
+        v.setY(theY);
+    }
+
+    @Override
+    void setDirection(final int theHandle, final Direction theDirection) {
+        myVehicles.get(theHandle).setDirection(theDirection);
+    }
+
+    @Override
+    Direction getDirection(final int theHandle) {
+        return myVehicles.get(theHandle).getDirection();
+    }
+
+    @Override
+    boolean isAlive(final int theHandle) {
+        return myVehicles.get(theHandle).isAlive();
+    }
+
+    @Override
+    void chooseIntents(final int theStart, final int theEnd, final NeighborTable theNeighbors,
+                       final SignalNetwork theSignals, final byte[] theIntents) {
+        for (int h = theStart; h < theEnd; h++) {
+            final Vehicle v = myVehicles.get(h);
+            if (v.isAlive()) {
+                final int x = v.getX();
+                final int y = v.getY();
+                final Map<Direction, Terrain> neighbors = theNeighbors.get(x, y);
+                final Direction dir = v.chooseDirection(neighbors);
+                final Light light = theSignals.getLight(x + dir.dx(), y + dir.dy());
+                theIntents[h] = intent(dir, canPass(h, v, neighbors.get(dir), light));
+            } else {
+                theIntents[h] = NO_INTENT;
+            }
+        }
+    }
+
+    @Override
+    void collide(final int theHandle, final int theOther) {
+        final Vehicle v = myVehicles.get(theHandle);
+        final Vehicle other = myVehicles.get(theOther);
+        v.collide(other);
+        other.collide(v);
+    }
+
+    @Override
+    boolean poke(final int theHandle, final int theUpdates) {
+        final Vehicle v = myVehicles.get(theHandle);
+        for (int i = 0; i < theUpdates && !v.isAlive(); i++) {
+            v.poke();
+        }
+        return v.isAlive();
+    }
+
+    @Override
+    int getDeathTime(final int theHandle) {
+        return myVehicles.get(theHandle).getDeathTime();
+    }
+
+    @Override
+    void reset() {
+        for (final Vehicle mov : myVehicles) {
+            mov.reset();
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     * 
+     * Only vehicles extending AbstractVehicle can be given a stream; any others keep 
+     * drawing from their own.
+     */
+    @Override
+    void seed(final long theSeed) {
+        final long[] seeds = streamSeeds(theSeed);
+        for (int h = 0; h < seeds.length; h++) {
+            final Vehicle v = myVehicles.get(h);
+            if (v instanceof AbstractVehicle) {
+                ((AbstractVehicle) v).setRandomNum(new SplittableRandom(seeds[h]));
+            }
+        }
+    }
+
+    @Override
+    List<Vehicle> getVehicles() {
+        return Collections.unmodifiableList(myVehicles);
+    }
+
+    /**
+     * Returns whether a vehicle may move onto the given terrain, from the table of its
+     * kind, or by asking the vehicle if it has no table or the terrain is off the map.
+     *
+     * @param theHandle The vehicle handle.
+     * @param theVehicle The vehicle.
+     * @param theTerrain The terrain, or null off the map.
+     * @param theLight The light color.
+     * @return whether the vehicle may move onto the terrain.
+     */
+    private boolean canPass(final int theHandle, final Vehicle theVehicle,
+                            final Terrain theTerrain, final Light theLight) {
+        final VehicleKind kind = myKinds[theHandle];
+        if (kind == null || theTerrain == null) {
+            return theVehicle.canPass(theTerrain, theLight);
+        }
+        return kind.canPass(theTerrain, theLight, 0);
+    }
+}
@@ -0,0 +1,313 @@
+package logic;
+
+import java.util.Arrays;
+import model.TerrainGrid;
+
+/**
+ * A cell-indexed occupancy structure for the vehicles of a RoadRage simulation.
+ *
+ * Each vehicle is identified by its handle (its index in the simulation's vehicle list).
+ * Every cell of the map keeps an intrusive doubly linked list of the handles currently on
+ * it, so placing, moving and enumerating the vehicles of one cell never allocate and cost
+ * time proportional to the vehicles on that cell. Each cell lists its handles in ascending
+ * order, since the outcome of a pile-up depends on the order vehicles meet in. Positions
+ * outside of the map share one extra overflow cell; callers must still compare
+ * coordinates when scanning a cell.
+ *
+ * On a map of up to DENSE_CELLS cells the head of every cell is kept in an array, one int
+ * per cell. On a larger map only the heads of occupied cells are stored, in an
+ * open-addressing hash table sized for the number of handles, so the grid costs no more
+ * on a huge map than on one of DENSE_CELLS cells, at the price of a slower lookup. Cell
+ * indices are longs, since a map of over 2^31 cells numbers them past Integer.MAX_VALUE.
+ */
+final class OccupancyGrid {
+
+    /**
+     * The handle value used to mark the end of a cell list.
+     */
+    static final int NONE = -1;
+
+    /**
+     * The most cells a map can have for the head of every cell to be kept, 64 MB of them.
+     */
+    private static final int DENSE_CELLS = 1 << 24;
+
+    /**
+     * The key of an unused slot of the head table.
+     */
+    private static final long EMPTY = -1;
+
+    /**
+     * The multiplier that spreads cell indices over the head table.
+     */
+    private static final long HASH_MULTIPLIER = 0x9E3779B97F4A7C15L;
+
+    /**
+     * The number of bits to shift a coordinate by to get its tile coordinate.
+     */
+    private static final int TILE_SHIFT = Integer.numberOfTrailingZeros(TerrainGrid.TILE_SIZE);
+
+    /**
+     * The number of bits to shift a cell index by to get its tile.
+     */
+    private static final int CELL_SHIFT = 2 * TILE_SHIFT;
+
+    /**
+     * The width of the map.
+     */
+    private final int myWidth;
+
+    /**
+     * The height of the map.
+     */
+    private final int myHeight;
+
+    /**
+     * The number of tiles in each row of tiles.
+     */
+    private final int myTilesAcross;
+
+    /**
+     * The first handle on each cell, the last entry being the overflow cell, or null if
+     * the map is too large and the head table is used instead.
+     */
+    private final int[] myCellHeads;
+
+    /**
+     * The cell index of each slot of the head table, or EMPTY.
+     */
+    private final long[] myKeys;
+
+    /**
+     * The first handle on the cell of each slot of the head table.
+     */
+    private final int[] myHeads;
+
+    /**
+     * The number of bits to shift a hashed cell index by to get its slot.
+     */
+    private final int myHashShift;
+
+    /**
+     * The cell index that positions outside of the map share.
+     */
+    private final long myOverflow;
+
+    /**
+     * The next handle on the same cell, per handle.
+     */
+    private final int[] myNext;
+
+    /**
+     * The previous handle on the same cell, per handle.
+     */
+    private final int[] myPrevious;
+
+    /**
+     * The cell each handle is currently listed on, or NONE.
+     */
+    private final long[] myCells;
+
+    /**
+     * Creates an empty occupancy grid.
+     *
+     * @param theWidth the width of the map
+     * @param theHeight the height of the map
+     * @param theCapacity the number of vehicle handles to track
+     */
+    OccupancyGrid(final int theWidth, final int theHeight, final int theCapacity) {
+        myWidth = theWidth;
+        myHeight = theHeight;
+        myTilesAcross = (theWidth + TerrainGrid.TILE_SIZE - 1) >> TILE_SHIFT;
+        final int tilesDown = (theHeight + TerrainGrid.TILE_SIZE - 1) >> TILE_SHIFT;
+        myOverflow = (long) myTilesAcross * tilesDown << CELL_SHIFT;
+        final int slots;
+        if (myOverflow <= DENSE_CELLS) {
+            myCellHeads = new int[(int) myOverflow + 1];
+            slots = 1;
+        } else {
+            myCellHeads = null;
+            // every handle on its own cell still leaves the table at most half full
+            slots = Integer.highestOneBit(Math.max(1, theCapacity)) << 2;
+        }
+        myKeys = new long[slots];
+        myHeads = new int[slots];
+        myHashShift = Long.SIZE - Integer.numberOfTrailingZeros(slots);
+        myNext = new int[theCapacity];
+        myPrevious = new int[theCapacity];
+        myCells = new long[theCapacity];
+        clear();
+    }
+
+    /**
+     * Removes every handle from the grid.
+     */
+    void clear() {
+        if (myCellHeads != null) {
+            Arrays.fill(myCellHeads, NONE);
+        }
+        Arrays.fill(myKeys, EMPTY);
+        Arrays.fill(myNext, NONE);
+        Arrays.fill(myPrevious, NONE);
+        Arrays.fill(myCells, NONE);
+    }
+
+    /**
+     * Lists the handle on the cell at the given position, in ascending handle order, 
+     * removing it from the cell it was previously listed on.
+     *
+     * @param theHandle the vehicle handle
+     * @param theX the x position
+     * @param theY the y position
+     */
+    void place(final int theHandle, final int theX, final int theY) {
+        final long cell = cellOf(theX, theY);
+        if (myCells[theHandle] == cell) {
+            return;
+        }
+        remove(theHandle);
+        int previous = NONE;
+        int next = head(cell);
+        while (next != NONE && next < theHandle) {
+            previous = next;
+            next = myNext[next];
+        }
+        myPrevious[theHandle] = previous;
+        myNext[theHandle] = next;
+        if (previous == NONE) {
+            setHead(cell, theHandle);
+        } else {
+            myNext[previous] = theHandle;
+        }
+        if (next != NONE) {
+            myPrevious[next] = theHandle;
+        }
+        myCells[theHandle] = cell;
+    }
+
+    /**
+     * Removes the handle from the cell it is listed on, if any.
+     *
+     * @param theHandle the vehicle handle
+     */
+    void remove(final int theHandle) {
+        final long cell = myCells[theHandle];
+        if (cell == NONE) {
+            return;
+        }
+        final int previous = myPrevious[theHandle];
+        final int next = myNext[theHandle];
+        if (previous == NONE) {
+            setHead(cell, next);
+        } else {
+            myNext[previous] = next;
+        }
+        if (next != NONE) {
+            myPrevious[next] = previous;
+        }
+        myNext[theHandle] = NONE;
+        myPrevious[theHandle] = NONE;
+        myCells[theHandle] = NONE;
+    }
+
+    /**
+     * Returns the first handle listed on the cell at the given position.
+     *
+     * @param theX the x position
+     * @param theY the y position
+     * @return the first handle on the cell, or NONE if the cell is empty
+     */
+    int first(final int theX, final int theY) {
+        return head(cellOf(theX, theY));
+    }
+
+    /**
+     * Returns the handle listed after the given one on the same cell.
+     *
+     * @param theHandle the vehicle handle
+     * @return the next handle on the cell, or NONE at the end of the cell
+     */
+    int next(final int theHandle) {
+        return myNext[theHandle];
+    }
+
+    /**
+     * Returns the first handle listed on a cell.
+     *
+     * @param theCell the cell index
+     * @return the first handle on the cell, or NONE if the cell is empty
+     */
+    private int head(final long theCell) {
+        if (myCellHeads != null) {
+            return myCellHeads[(int) theCell];
+        }
+        final int mask = myKeys.length - 1;
+        for (int slot = slotOf(theCell); myKeys[slot] != EMPTY; slot = slot + 1 & mask) {
+            if (myKeys[slot] == theCell) {
+                return myHeads[slot];
+            }
+        }
+        return NONE;
+    }
+
+    /**
+     * Sets the first handle listed on a cell, dropping the cell from the head table once
+     * it is empty.
+     *
+     * @param theCell the cell index
+     * @param theHandle the handle, or NONE
+     */
+    private void setHead(final long theCell, final int theHandle) {
+        if (myCellHeads != null) {
+            myCellHeads[(int) theCell] = theHandle;
+            return;
+        }
+        final int mask = myKeys.length - 1;
+        int slot = slotOf(theCell);
+        while (myKeys[slot] != EMPTY && myKeys[slot] != theCell) {
+            slot = slot + 1 & mask;
+        }
+        if (theHandle != NONE) {
+            myKeys[slot] = theCell;
+            myHeads[slot] = theHandle;
+        } else if (myKeys[slot] != EMPTY) {
+            // shift back the later entries of the probe run so no lookup stops early
+            int hole = slot;
+            for (int i = slot + 1 & mask; myKeys[i] != EMPTY; i = i + 1 & mask) {
+                if ((i - slotOf(myKeys[i]) & mask) >= (i - hole & mask)) {
+                    myKeys[hole] = myKeys[i];
+                    myHeads[hole] = myHeads[i];
+                    hole = i;
+                }
+            }
+            myKeys[hole] = EMPTY;
+        }
+    }
+
+    /**
+     * Returns the home slot of a cell in the head table.
+     *
+     * @param theCell the cell index
+     * @return the slot the cell's probe run starts at
+     */
+    private int slotOf(final long theCell) {
+        return (int) (theCell * HASH_MULTIPLIER >>> myHashShift);
+    }
+
+    /**
+     * Maps a position to its cell index, which numbers the cells tile by tile.
+     *
+     * @param theX the x position
+     * @param theY the y position
+     * @return the cell index, or the overflow cell for positions outside of the map
+     */
+    private long cellOf(final int theX, final int theY) {
+        if (0 <= theX && theX < myWidth && 0 <= theY && theY < myHeight) {
+            final int tile = (theY >> TILE_SHIFT) * myTilesAcross + (theX >> TILE_SHIFT);
+            final int mask = TerrainGrid.TILE_SIZE - 1;
+            return (long) tile << CELL_SHIFT | (theY & mask) << TILE_SHIFT | theX & mask;
+        }
+        return myOverflow;
+    }
+
+}
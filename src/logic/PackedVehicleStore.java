@@ -0,0 +1,419 @@
+package logic;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import model.Direction;
+import model.Light;
+import model.Terrain;
+import model.Vehicle;
+import model.VehicleKind;
+
+/**
+ * A VehicleStore that keeps the state of every vehicle in primitive arrays indexed by
+ * handle, about 36 bytes per vehicle, and applies the rules of each vehicle kind through
+ * VehicleKind. Vehicle objects are only created, as views over the arrays, when a listener
+ * asks for the vehicle list.
+ */
+final class PackedVehicleStore extends VehicleStore {
+
+    /**
+     * The directions, cached because Direction.values() returns a new array on every call.
+     */
+    private static final Direction[] DIRECTIONS = Direction.values();
+
+    /**
+     * The vehicle kinds, cached because VehicleKind.values() returns a new array on every
+     * call.
+     */
+    private static final VehicleKind[] KINDS = VehicleKind.values();
+
+    /**
+     * The kind ordinal of each vehicle.
+     */
+    private final byte[] myKinds;
+
+    /**
+     * The x-coordinate of each vehicle.
+     */
+    private final int[] myX;
+
+    /**
+     * The y-coordinate of each vehicle.
+     */
+    private final int[] myY;
+
+    /**
+     * The direction ordinal of each vehicle.
+     */
+    private final byte[] myDirections;
+
+    /**
+     * Whether each vehicle is alive.
+     */
+    private final boolean[] myAlive;
+
+    /**
+     * The number of updates until each dead vehicle revives.
+     */
+    private final int[] myReviveIn;
+
+    /**
+     * The number of times in a row each vehicle has been stopped where its kind counts
+     * waiting.
+     */
+    private final int[] myWaits;
+
+    /**
+     * The starting x-coordinate of each vehicle.
+     */
+    private final int[] myOriginalX;
+
+    /**
+     * The starting y-coordinate of each vehicle.
+     */
+    private final int[] myOriginalY;
+
+    /**
+     * The starting direction ordinal of each vehicle.
+     */
+    private final byte[] myOriginalDirections;
+
+    /**
+     * The random number state of every vehicle, zero until the store is seeded.
+     */
+    private final long[] mySeeds;
+
+    /**
+     * The random number source used by the Vehicle views.
+     */
+    private final PackedRandom myRandom;
+
+    /**
+     * The Vehicle views handed to listeners, created on first use.
+     */
+    private List<Vehicle> myViews;
+
+    /**
+     * Creates a store holding the current state of the given vehicles.
+     *
+     * @param theVehicles the vehicles, which must all be of a known VehicleKind
+     * @throws IllegalArgumentException if a vehicle is not of a known VehicleKind
+     */
+    PackedVehicleStore(final List<Vehicle> theVehicles) {
+        super();
+        final int size = theVehicles.size();
+        myKinds = new byte[size];
+        myX = new int[size];
+        myY = new int[size];
+        myDirections = new byte[size];
+        myAlive = new boolean[size];
+        myReviveIn = new int[size];
+        myWaits = new int[size];
+        myOriginalX = new int[size];
+        myOriginalY = new int[size];
+        myOriginalDirections = new byte[size];
+        mySeeds = new long[size];
+
+        for (int h = 0; h < size; h++) {
+            final Vehicle v = theVehicles.get(h);
+            final VehicleKind kind = VehicleKind.of(v);
+            if (kind == null) {
+                throw new IllegalArgumentException("Cannot pack vehicle " + v);
+            }
+            myKinds[h] = (byte) kind.ordinal();
+            myX[h] = v.getX();
+            myY[h] = v.getY();
+            myDirections[h] = (byte) v.getDirection().ordinal();
+            myAlive[h] = v.isAlive();
+            if (!myAlive[h]) {
+                myReviveIn[h] = kind.deathTime();
+            }
+            myOriginalX[h] = v.getX();
+            myOriginalY[h] = v.getY();
+            myOriginalDirections[h] = myDirections[h];
+        }
+        myRandom = new PackedRandom(mySeeds);
+    }
+
+    @Override
+    int size() {
+        return myKinds.length;
+    }
+
+    @Override
+    int getX(final int theHandle) {
+        return myX[theHandle];
+    }
+
+    @Override
+    int getY(final int theHandle) {
+        return myY[theHandle];
+    }
+
+    @Override
+    void setPosition(final int theHandle, final int theX, final int theY) {
+        myX[theHandle] = theX;
+        myY[theHandle] = theY;
+    }
+
+    @Override
+    void setDirection(final int theHandle, final Direction theDirection) {
+        myDirections[theHandle] = (byte) theDirection.ordinal();
+    }
+
+    @Override
+    Direction getDirection(final int theHandle) {
+        return DIRECTIONS[myDirections[theHandle]];
+    }
+
+    @Override
+    boolean isAlive(final int theHandle) {
+        return myAlive[theHandle];
+    }
+
+    @Override
+    void chooseIntents(final int theStart, final int theEnd, final NeighborTable theNeighbors,
+                       final SignalNetwork theSignals, final byte[] theIntents) {
+        // one generator per call keeps concurrent ranges from sharing a cursor
+        final PackedRandom random = new PackedRandom(mySeeds);
+        for (int h = theStart; h < theEnd; h++) {
+            if (myAlive[h]) {
+                final Map<Direction, Terrain> neighbors = theNeighbors.get(myX[h], myY[h]);
+                final Direction dir = chooseDirection(h, neighbors, random);
+                final Light light = theSignals.getLight(myX[h] + dir.dx(), myY[h] + dir.dy());
+                theIntents[h] = intent(dir, canPass(h, neighbors.get(dir), light));
+            } else {
+                theIntents[h] = NO_INTENT;
+            }
+        }
+    }
+
+    @Override
+    void collide(final int theHandle, final int theOther) {
+        if (myAlive[theHandle] && myAlive[theOther]) {
+            final int outcome = 
+                            VehicleKind.collisionOutcome(myKinds[theHandle], myKinds[theOther]);
+            if ((outcome & VehicleKind.FIRST_DIES) != 0) {
+                kill(theHandle);
+            }
+            if ((outcome & VehicleKind.SECOND_DIES) != 0) {
+                kill(theOther);
+            }
+        }
+    }
+
+    @Override
+    boolean poke(final int theHandle, final int theUpdates) {
+        if (!myAlive[theHandle]) {
+            myReviveIn[theHandle] -= theUpdates;
+            if (myReviveIn[theHandle] <= 0) {
+                myDirections[theHandle] =
+                                (byte) Direction.random(myRandom.select(theHandle)).ordinal();
+                myAlive[theHandle] = true;
+            }
+        }
+        return myAlive[theHandle];
+    }
+
+    @Override
+    int getDeathTime(final int theHandle) {
+        return KINDS[myKinds[theHandle]].deathTime();
+    }
+
+    @Override
+    void reset() {
+        System.arraycopy(myOriginalX, 0, myX, 0, myX.length);
+        System.arraycopy(myOriginalY, 0, myY, 0, myY.length);
+        System.arraycopy(myOriginalDirections, 0, myDirections, 0, myDirections.length);
+        Arrays.fill(myAlive, true);
+        Arrays.fill(myReviveIn, 0);
+        Arrays.fill(myWaits, 0);
+    }
+
+    @Override
+    void seed(final long theSeed) {
+        System.arraycopy(streamSeeds(theSeed), 0, mySeeds, 0, mySeeds.length);
+    }
+
+    @Override
+    List<Vehicle> getVehicles() {
+        if (myViews == null) {
+            final Vehicle[] views = new Vehicle[myKinds.length];
+            for (int h = 0; h < views.length; h++) {
+                views[h] = new VehicleView(h);
+            }
+            myViews = Collections.unmodifiableList(Arrays.asList(views));
+        }
+        return myViews;
+    }
+
+    /**
+     * Returns the direction a vehicle would like to move.
+     *
+     * @param theHandle The vehicle handle.
+     * @param theNeighbors The map of neighboring terrain.
+     * @param theRandom The generator to draw the vehicle's random numbers with.
+     * @return the direction the vehicle would like to move.
+     */
+    private Direction chooseDirection(final int theHandle,
+                                      final Map<Direction, Terrain> theNeighbors,
+                                      final PackedRandom theRandom) {
+        return KINDS[myKinds[theHandle]].chooseDirection(DIRECTIONS[myDirections[theHandle]],
+                                                         theNeighbors,
+                                                         theRandom.select(theHandle));
+    }
+
+    /**
+     * Returns whether a vehicle may move onto the given terrain, counting its wait where
+     * its kind does so.
+     *
+     * @param theHandle The vehicle handle.
+     * @param theTerrain The terrain.
+     * @param theLight The light color.
+     * @return whether the vehicle may move onto the terrain.
+     */
+    private boolean canPass(final int theHandle, final Terrain theTerrain,
+                            final Light theLight) {
+        final VehicleKind kind = KINDS[myKinds[theHandle]];
+        final int bit = VehicleKind.passBit(theTerrain, theLight);
+        final boolean result = (kind.passMask(myWaits[theHandle]) & bit) != 0;
+        if ((kind.waitMask() & bit) != 0) {
+            myWaits[theHandle] = result ? 0 : myWaits[theHandle] + 1;
+        }
+        return result;
+    }
+
+    /**
+     * Kills a living vehicle, starting its countdown to revival.
+     *
+     * @param theHandle The vehicle handle.
+     */
+    private void kill(final int theHandle) {
+        myAlive[theHandle] = false;
+        myReviveIn[theHandle] = KINDS[myKinds[theHandle]].deathTime();
+    }
+
+    /**
+     * A Vehicle backed by one handle of this store.
+     */
+    private final class VehicleView implements Vehicle {
+
+        /**
+         * The handle this view reads and writes.
+         */
+        private final int myHandle;
+
+        /**
+         * Creates a view of one handle.
+         *
+         * @param theHandle the handle
+         */
+        VehicleView(final int theHandle) {
+            myHandle = theHandle;
+        }
+
+        @Override
+        public boolean canPass(final Terrain theTerrain, final Light theLight) {
+            return PackedVehicleStore.this.canPass(myHandle, theTerrain, theLight);
+        }
+
+        @Override
+        public Direction chooseDirection(final Map<Direction, Terrain> theNeighbors) {
+            return PackedVehicleStore.this.chooseDirection(myHandle, theNeighbors, myRandom);
+        }
+
+        @Override
+        public void collide(final Vehicle theOther) {
+            final VehicleKind other;
+            if (theOther instanceof VehicleView) {
+                other = ((VehicleView) theOther).kind();
+            } else {
+                other = VehicleKind.of(theOther);
+            }
+            if (other != null && theOther.isAlive() && myAlive[myHandle]
+                && kind().isKilledBy(other)) {
+                kill(myHandle);
+            }
+        }
+
+        @Override
+        public int getDeathTime() {
+            return kind().deathTime();
+        }
+
+        @Override
+        public String getImageFileName() {
+            return kind().imageFileName(myAlive[myHandle]);
+        }
+
+        @Override
+        public Direction getDirection() {
+            return DIRECTIONS[myDirections[myHandle]];
+        }
+
+        @Override
+        public int getX() {
+            return myX[myHandle];
+        }
+
+        @Override
+        public int getY() {
+            return myY[myHandle];
+        }
+
+        @Override
+        public boolean isAlive() {
+            return myAlive[myHandle];
+        }
+
+        @Override
+        public void poke() {
+            PackedVehicleStore.this.poke(myHandle, 1);
+        }
+
+        @Override
+        public void reset() {
+            myX[myHandle] = myOriginalX[myHandle];
+            myY[myHandle] = myOriginalY[myHandle];
+            myDirections[myHandle] = myOriginalDirections[myHandle];
+            myAlive[myHandle] = true;
+            myReviveIn[myHandle] = 0;
+            myWaits[myHandle] = 0;
+        }
+
+        @Override
+        public void setDirection(final Direction theDir) {
+            myDirections[myHandle] = (byte) theDir.ordinal();
+        }
+
+        @Override
+        public void setX(final int theX) {
+            myX[myHandle] = theX;
+        }
+
+        @Override
+        public void setY(final int theY) {
+            myY[myHandle] = theY;
+        }
+
+        @Override
+        public String toString() {
+            final String name = kind().name().toLowerCase();
+            if (myAlive[myHandle]) {
+                return name;
+            }
+            return "Dead " + name;
+        }
+
+        /**
+         * Returns the kind of the viewed vehicle.
+         *
+         * @return the vehicle kind.
+         */
+        private VehicleKind kind() {
+            return KINDS[myKinds[myHandle]];
+        }
+    }
+}
@@ -33,12 +33,30 @@ public interface PropertyChangeEnabledRoadRageControls extends RoadRageControls
     String PROPERTY_LIGHT = "light";
     
     /**
-     * A property name for the current vehicle state in the simulation.
+     * A property name for the traffic signals of the simulation, fired with a Signals view 
+     * whenever any signal changes color.
+     */
+    String PROPERTY_SIGNALS = "signals";
+    
+    /**
+     * A property name for the current vehicle state in the simulation, fired with a 
+     * read-only list of every vehicle after each tick and reset. The list is a live view,
+     * not a copy, and is only valid during the event: it shows the changes of later ticks
+     * as they are made, and with packed vehicle state its vehicles are views over arrays
+     * the simulation keeps changing. A listener that keeps the vehicle state, for example
+     * to paint it later on another thread, must copy it during the event.
      */
     String PROPERTY_VEHICLES = "vehicles";
     
     /**
-     * A property name for the current 2D grid of Terrains in the simulation.
+     * A property name for the vehicles changed by a tick or reset, fired with a 
+     * VehicleChanges buffer that is only valid during the event.
+     */
+    String PROPERTY_VEHICLE_CHANGES = "vehicle changes";
+    
+    /**
+     * A property name for the current grid of Terrains in the simulation, fired with the 
+     * simulation's immutable TerrainGrid.
      */
     String PROPERTY_GRID = "the terrain grid";
     
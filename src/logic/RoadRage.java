@@ -2,14 +2,14 @@ package logic;
 
 import java.beans.PropertyChangeListener;
 import java.beans.PropertyChangeSupport;
-import java.util.ArrayList;
-import java.util.Collections;
-import java.util.HashMap;
 import java.util.List;
-import java.util.Map;
+import java.util.SplittableRandom;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
 import model.Direction;
 import model.Light;
 import model.Terrain;
+import model.TerrainGrid;
 import model.Vehicle;
 
 /**
@@ -25,10 +25,27 @@ public class RoadRage implements PropertyChangeEnabledRoadRageControls {
      */
     private static final int LIGHT_CHANGE_TICKS = 15;
     
+    /**
+     * The smallest number of vehicles worth deciding on a separate thread.
+     */
+    private static final int INTENT_CHUNK = 4096;
+    
+    /**
+     * The number of ticks the revival timing wheel covers in one turn, enough for the 
+     * longest death time of the vehicles in the model package.
+     */
+    private static final int REVIVAL_SPAN = 64;
+    
+    /**
+     * While profiling, one collision scan in this many is timed and the time of the rest 
+     * estimated from them, as timing every scan would cost more than most scans do.
+     */
+    private static final int COLLISION_SAMPLE = 16;
+    
     /**
      * The terrain grid for the simulation.
      */
-    private final Terrain[][] myGrid;
+    private final TerrainGrid myGrid;
     
     /**
      * The current timestep of the simulation.
@@ -36,14 +53,74 @@ public class RoadRage implements PropertyChangeEnabledRoadRageControls {
     private long myTimestep;
     
     /**
-     * The current status of lights.
+     * The current status of the master light, followed by squares without a signal.
      */
     private Light myLight;
     
     /**
-     * The vehicles to move and display. 
+     * The signal of every intersection and crosswalk.
+     */
+    private final SignalNetwork mySignals;
+    
+    /**
+     * The vehicles to move and display, addressed by handle. 
+     */
+    private final VehicleStore myVehicles;
+    
+    /**
+     * The precomputed neighbors of every square of the grid.
+     */
+    private final NeighborTable myNeighbors;
+    
+    /**
+     * The vehicles on each cell of the map, by handle.
+     */
+    private final OccupancyGrid myOccupancy;
+    
+    /**
+     * The intent of each vehicle for the current tick, by handle.
+     */
+    private final byte[] myIntents;
+    
+    /**
+     * The dead vehicles, by handle, waiting for the tick they revive at.
+     */
+    private final TimingWheel myRevivals;
+    
+    /**
+     * The handles reviving this tick, in ascending order.
+     */
+    private final int[] myDue;
+    
+    /**
+     * The number of pokes each dead vehicle is owed when it is due, by handle.
+     */
+    private final int[] myPokes;
+    
+    /**
+     * The master seed the random number stream of every vehicle is derived from.
+     */
+    private long mySeed;
+    
+    /**
+     * The pool deciding intents in parallel, or null to decide them on the calling thread.
+     */
+    private ForkJoinPool myPool;
+    
+    /**
+     * The vehicle changes of the current tick, reused every tick.
+     */
+    private final VehicleChanges myChanges;
+    
+    /**
+     * Whether advance() records vehicle changes, because someone listens for them.
+     */
+    private boolean myRecording;
+    
+    /**
+     * Times the phases of each tick, or null if they are not timed.
      */
-    private final List<Vehicle> myVehicles;
+    private TickProfiler myProfiler;
     
     /**
      * Manager for Propery Change Listeners. 
@@ -56,50 +133,275 @@ public class RoadRage implements PropertyChangeEnabledRoadRageControls {
      * @param theVehicles the Vehicles on the map
      */
     public RoadRage(final Terrain[][] theGrid, final List<Vehicle> theVehicles) {
-        myVehicles = new ArrayList<Vehicle>(theVehicles);
-        myGrid = theGrid.clone();
+        this(theGrid, theVehicles, false);
+    }
+    
+    /**
+     * Creates a simulation that optionally keeps its vehicle state packed in primitive 
+     * arrays instead of in the given Vehicle objects. Packed vehicles take a fraction of the 
+     * memory and are updated in tight loops over the arrays, which suits very large runs. 
+     * In packed mode the given vehicles only supply the starting state; listeners receive 
+     * Vehicle views over the arrays instead.
+     * 
+     * @param theGrid the 2D grid of Terrain that defines the map
+     * @param theVehicles the Vehicles on the map
+     * @param thePacked whether to keep the vehicle state in packed arrays
+     * @throws IllegalArgumentException if thePacked is true and a vehicle is not one of the 
+     *         vehicle kinds in the model package
+     */
+    public RoadRage(final Terrain[][] theGrid, final List<Vehicle> theVehicles,
+                    final boolean thePacked) {
+        this(new TerrainGrid(theGrid), theVehicles, thePacked);
+    }
+    
+    /**
+     * Creates a simulation on a compact TerrainGrid, which suits maps too large to hold as 
+     * a Terrain[][]. Otherwise the same as RoadRage(Terrain[][], List, boolean).
+     * 
+     * @param theGrid the grid of Terrain that defines the map
+     * @param theVehicles the Vehicles on the map
+     * @param thePacked whether to keep the vehicle state in packed arrays
+     * @throws IllegalArgumentException if thePacked is true and a vehicle is not one of the 
+     *         vehicle kinds in the model package
+     */
+    public RoadRage(final TerrainGrid theGrid, final List<Vehicle> theVehicles,
+                    final boolean thePacked) {
+        if (thePacked) {
+            myVehicles = new PackedVehicleStore(theVehicles);
+        } else {
+            myVehicles = new ObjectVehicleStore(theVehicles);
+        }
+        myGrid = theGrid;
+        myNeighbors = new NeighborTable(myGrid);
+        mySignals = new SignalNetwork(myGrid, LIGHT_CHANGE_TICKS);
+        myOccupancy = new OccupancyGrid(getWidth(), getHeight(), myVehicles.size());
+        myIntents = new byte[myVehicles.size()];
+        myRevivals = new TimingWheel(myVehicles.size(), REVIVAL_SPAN);
+        myDue = new int[myVehicles.size()];
+        myPokes = new int[myVehicles.size()];
+        mySeed = new SplittableRandom().nextLong();
+        myVehicles.seed(mySeed);
+        placeVehicles();
+        myChanges = new VehicleChanges();
         myPcs = new PropertyChangeSupport(this);            
     }
     
+    /**
+     * {@inheritDoc}
+     * 
+     * Each tick runs in two phases. First every living vehicle decides, from the state at 
+     * the start of the tick, which way it wants to go and whether it may; vehicles only 
+     * read their own state and the map here, so this phase is split across the threads 
+     * set with setParallelism. Then, on the calling thread and in list order, each 
+     * vehicle still alive carries out its intent, dead vehicles whose death time is up 
+     * revive, and collisions are resolved. Because each vehicle draws only from its own 
+     * random numbers, the result does not depend on the number of threads.
+     * 
+     * Dead vehicles are not poked every tick. When a vehicle is first found dead it leaves 
+     * the occupancy grid and waits in a timing wheel for the tick it revives at; it is 
+     * then given all of its pokes at once. Vehicles revive on the same tick, and in the 
+     * same order, as they would if poked once per tick.
+     * 
+     * The changes to the vehicles are only recorded when someone listens for 
+     * PROPERTY_VEHICLE_CHANGES, and the vehicle list is only fired when someone listens 
+     * for PROPERTY_VEHICLES.
+     * 
+     * While a profiler is set, the time of each phase of the tick is recorded in it.
+     */
     @Override
     public void advance() {
-        for (final Vehicle v : myVehicles) {
-            final Map<Direction, Terrain> neighbors = generateNeighbors(v);
+        final TickProfiler profiler = myProfiler;
+        final long tick = myTimestep;
+        long mark = profiler == null ? 0 : System.nanoTime();
+        long sampled = 0;
+        int scans = 0;
+        chooseIntents();
+        if (profiler != null) {
+            mark = profiler.end(TickProfiler.Phase.INTENTS, tick, mark);
+        }
+        final VehicleStore vehicles = myVehicles;
+        final int dueCount = myRevivals.expire(myTimestep, myDue);
+        myRecording = myPcs.hasListeners(PROPERTY_VEHICLE_CHANGES);
+        myChanges.clear(myTimestep + 1, false);
+        int due = 0;
+        for (int i = 0; i < vehicles.size(); i++) {
+            final int oldX = vehicles.getX(i);
+            final int oldY = vehicles.getY(i);
+            final boolean wasAlive = vehicles.isAlive(i);
+            final Direction oldDirection = myRecording ? vehicles.getDirection(i) : null;
 
-            // move the vehicle
-            if (v.isAlive()) {
-                final Direction newDirection = v.chooseDirection(neighbors);
-                v.setDirection(newDirection);
+            // move the vehicle, unless it was killed earlier this tick
+            if (wasAlive) {
+                final byte intent = myIntents[i];
+                final Direction newDirection = VehicleStore.directionOf(intent);
+                vehicles.setDirection(i, newDirection);
 
                 // move one square in current direction, if it's okay to do so
-                if (v.canPass(neighbors.get(newDirection), myLight)) {
-                    v.setX(v.getX() + newDirection.dx());
-                    v.setY(v.getY() + newDirection.dy());
+                if (VehicleStore.passes(intent)) {
+                    vehicles.setPosition(i, oldX + newDirection.dx(),
+                                         oldY + newDirection.dy());
                 }
             } else {
-                // become one move closer to revival
-                v.poke();
-            }
-
-            // look for collisions
-            for (final Vehicle other : myVehicles) {
-                if (v.equals(other)) { // use of == is intentional - checking for same object
-                    // don't collide with self
+                while (due < dueCount && myDue[due] < i) {
+                    due++;
+                }
+                if (due < dueCount && myDue[due] == i) {
+                    // its death time is up
+                    revive(i);
+                } else if (!myRevivals.isScheduled(i)) {
+                    // newly dead, wait out the death time in the wheel
+                    myOccupancy.remove(i);
+                    myPokes[i] = Math.max(1, vehicles.getDeathTime(i));
+                    if (myPokes[i] == 1) {
+                        revive(i);
+                    } else {
+                        myRevivals.schedule(i, myTimestep + myPokes[i] - 1);
+                    }
+                }
+                if (!vehicles.isAlive(i)) {
+                    // dead vehicles neither move nor collide
                     continue;
                 }
+            }
 
-                if (v.getX() == other.getX() && v.getY() == other.getY()) {
-                    // tell both vehicles they have collided
-                    v.collide(other);
-                    other.collide(v);
-                }
+            final boolean changed = vehicles.getX(i) != oldX || vehicles.getY(i) != oldY
+                            || vehicles.isAlive(i) != wasAlive;
+            if (changed) {
+                myOccupancy.place(i, vehicles.getX(i), vehicles.getY(i));
+            }
+            if (myRecording) {
+                recordChange(i, oldX, oldY, wasAlive, oldDirection);
+            }
+            if (profiler == null || scans++ % COLLISION_SAMPLE != 0) {
+                collideAt(i, changed);
+            } else {
+                final long start = System.nanoTime();
+                collideAt(i, changed);
+                sampled += System.nanoTime() - start;
             }
         }
+        if (profiler != null) {
+            final long now = System.nanoTime();
+            // the first scan and every COLLISION_SAMPLE-th one after it were timed
+            final long timed = (scans + COLLISION_SAMPLE - 1) / COLLISION_SAMPLE;
+            final long collisions = 
+                            timed == 0 ? 0 : Math.min(now - mark, sampled * scans / timed);
+            profiler.record(TickProfiler.Phase.MOVEMENT, tick, now - mark - collisions);
+            profiler.record(TickProfiler.Phase.COLLISIONS, tick, collisions);
+            mark = now;
+        }
         advanceTimeStep();
         if (myTimestep % LIGHT_CHANGE_TICKS == 0) {
             setLightColor(myLight.advance());
         }
+        final boolean signalsChanged = mySignals.advanceTo(myTimestep);
+        if (profiler != null) {
+            mark = profiler.end(TickProfiler.Phase.LIGHTS, tick, mark);
+        }
+        if (signalsChanged) {
+            fireSignalChange();
+        }
         fireVehicleChange();
+        if (profiler != null) {
+            profiler.end(TickProfiler.Phase.EVENTS, tick, mark);
+        }
+    }
+    
+    /**
+     * Sets the number of threads used to decide vehicle intents in advance(). The results 
+     * of the simulation are the same for any number of threads.
+     * 
+     * @param theThreads the number of threads, 1 to use only the thread calling advance()
+     * @throws IllegalArgumentException if theThreads is less than 1
+     */
+    public void setParallelism(final int theThreads) {
+        if (theThreads < 1) {
+            throw new IllegalArgumentException("Parallelism must be at least 1: " 
+                                               + theThreads);
+        }
+        if (myPool != null) {
+            myPool.shutdown();
+            myPool = null;
+        }
+        if (theThreads > 1) {
+            myPool = new ForkJoinPool(theThreads);
+        }
+    }
+    
+    /**
+     * Sets the profiler that times the phases of each tick in advance(), or stops timing 
+     * them. Without a profiler the phases cost no more than a test each.
+     * 
+     * @param theProfiler the profiler, or null to stop timing
+     */
+    public void setProfiler(final TickProfiler theProfiler) {
+        myProfiler = theProfiler;
+    }
+    
+    /**
+     * Returns the profiler that times the phases of each tick.
+     * 
+     * @return the profiler, or null if the phases are not timed
+     */
+    public TickProfiler getProfiler() {
+        return myProfiler;
+    }
+    
+    /**
+     * Access the traffic signals of the simulation. Every connected group of LIGHT squares 
+     * is an intersection with its own signal, and each CROSSWALK square follows the 
+     * nearest intersection within 64 steps along the grid; a CROSSWALK square farther 
+     * than that from any LIGHT square follows the master light. The view stays current 
+     * as the simulation runs.
+     * 
+     * @return the signals
+     */
+    public Signals getSignals() {
+        return mySignals;
+    }
+    
+    /**
+     * Changes the timing of one signal. A signal cycles green, yellow and red, and its 
+     * light at tick t is the one the cycle shows theOffset ticks after its start, counted 
+     * from t. By default every signal shows each color for 15 ticks with no offset, which 
+     * keeps it in step with the master light. The change takes effect at once.
+     * 
+     * @param theSignal the signal number, see getSignals()
+     * @param theOffset the number of ticks the cycle is shifted ahead by
+     * @param theGreen the number of ticks the light is green
+     * @param theYellow the number of ticks the light is yellow
+     * @param theRed the number of ticks the light is red
+     * @throws IndexOutOfBoundsException if there is no such signal
+     * @throws IllegalArgumentException if a phase is shorter than one tick
+     */
+    public void setSignalTiming(final int theSignal, final int theOffset, final int theGreen,
+                                final int theYellow, final int theRed) {
+        mySignals.setTiming(theSignal, theOffset, theGreen, theYellow, theRed, myTimestep);
+        fireSignalChange();
+    }
+    
+    /**
+     * Sets the master seed of the simulation and restarts every vehicle's random number 
+     * stream from it. Each vehicle gets its own stream, so a run from the same seed and 
+     * starting state always plays out the same, with objects or packed vehicles and on any 
+     * number of threads; reset() also restarts the streams. Vehicles that do not extend 
+     * AbstractVehicle keep their own random numbers.
+     * 
+     * @param theSeed the master seed
+     */
+    public void setSeed(final long theSeed) {
+        mySeed = theSeed;
+        myVehicles.seed(theSeed);
+    }
+    
+    /**
+     * Access the master seed of the simulation. Unless setSeed is called, a simulation 
+     * starts from a random seed, which this reports so the run can be repeated.
+     * 
+     * @return the master seed
+     */
+    public long getSeed() {
+        return mySeed;
     }
     
     @Override
@@ -112,18 +414,36 @@ public class RoadRage implements PropertyChangeEnabledRoadRageControls {
         resetVehicles();
         setLightColor(Light.GREEN);
         setTimeStep(0);
+        mySignals.reset(myTimestep);
+        myChanges.clear(myTimestep, true);
+        if (myPcs.hasListeners(PROPERTY_VEHICLE_CHANGES)) {
+            for (int i = 0; i < myVehicles.size(); i++) {
+                myChanges.add(myVehicles, i, VehicleChanges.PLACED,
+                              myVehicles.getX(i), myVehicles.getY(i));
+            }
+        }
         fireGridChange();
+        fireSignalChange();
         fireVehicleChange();
     }
     
     @Override
     public int getHeight() {
-        return myGrid.length;
+        return myGrid.getHeight();
     }
 
     @Override
     public int getWidth() {
-        return myGrid[0].length;
+        return myGrid.getWidth();
+    }
+    
+    /**
+     * Access the number of vehicles in the simulation, alive or dead.
+     * 
+     * @return the number of vehicles
+     */
+    public int getVehicleCount() {
+        return myVehicles.size();
     }
     
  
@@ -153,34 +473,115 @@ public class RoadRage implements PropertyChangeEnabledRoadRageControls {
     }
     
     /**
-     * Tests whether the square at the given x/y position exists on the map.
-     * 
-     * @param theX The x position.
-     * @param theY The y position.
-     * @return true if the position exists on the map, false otherwise.
+     * Decides the intent of every vehicle for this tick, in parallel if a pool is set.
      */
-    private boolean isValidIndex(final int theY, final int theX) {
-        return 0 <= theY && theY < myGrid.length
-            && 0 <= theX && theX < myGrid[theY].length;
+    private void chooseIntents() {
+        final int size = myVehicles.size();
+        if (myPool == null || size <= INTENT_CHUNK) {
+            myVehicles.chooseIntents(0, size, myNeighbors, mySignals, myIntents);
+        } else {
+            myPool.invoke(new IntentTask(0, size));
+        }
     }
     
     /**
-     * Generates a read-only neighbors map for the specified vehicle.
+     * Tells the vehicle with the given handle and every other vehicle on its square that 
+     * they have collided.
+     * 
+     * A vehicle that neither moved nor changed its alive state this tick already met the 
+     * vehicles processed before it when those vehicles took their turn, so only the 
+     * vehicles after it are visited. This calls collide() once per meeting instead of twice.
      * 
-     * @param theMover The vehicle.
-     * @return The neighbors map.
+     * @param theHandle The handle of the vehicle.
+     * @param theChanged Whether the vehicle moved or changed its alive state this tick.
      */
-    private Map<Direction, Terrain> generateNeighbors(final Vehicle theMover) {
-        final int x = theMover.getX();
-        final int y = theMover.getY();
-        final Map<Direction, Terrain> result = new HashMap<Direction, Terrain>();
-
-        for (final Direction dir : Direction.values()) {
-            if (isValidIndex(y + dir.dy(), x + dir.dx())) {
-                result.put(dir, myGrid[y + dir.dy()][x + dir.dx()]);
+    private void collideAt(final int theHandle, final boolean theChanged) {
+        final int x = myVehicles.getX(theHandle);
+        final int y = myVehicles.getY(theHandle);
+        for (int other = myOccupancy.first(x, y); other != OccupancyGrid.NONE;
+                        other = myOccupancy.next(other)) {
+            if (other == theHandle || !theChanged && other < theHandle) {
+                // don't collide with self or with vehicles that already met this one
+                continue;
+            }
+            if (x == myVehicles.getX(other) && y == myVehicles.getY(other)) {
+                // tell both vehicles they have collided
+                if (myRecording) {
+                    collideRecording(theHandle, other);
+                } else {
+                    myVehicles.collide(theHandle, other);
+                }
             }
         }
-        return Collections.unmodifiableMap(result);
+    }
+    
+    /**
+     * Tells two vehicles they have collided, recording the death of either.
+     * 
+     * @param theHandle The handle of the first vehicle.
+     * @param theOther The handle of the second vehicle.
+     */
+    private void collideRecording(final int theHandle, final int theOther) {
+        final boolean wasAlive = myVehicles.isAlive(theHandle);
+        final boolean otherWasAlive = myVehicles.isAlive(theOther);
+        myVehicles.collide(theHandle, theOther);
+        if (wasAlive && !myVehicles.isAlive(theHandle)) {
+            myChanges.add(myVehicles, theHandle, VehicleChanges.DIED,
+                          myVehicles.getX(theHandle), myVehicles.getY(theHandle));
+        }
+        if (otherWasAlive && !myVehicles.isAlive(theOther)) {
+            myChanges.add(myVehicles, theOther, VehicleChanges.DIED,
+                          myVehicles.getX(theOther), myVehicles.getY(theOther));
+        }
+    }
+    
+    /**
+     * Records how a living vehicle changed in its turn of this tick, if it did.
+     * 
+     * @param theHandle The handle of the vehicle.
+     * @param theOldX The x-coordinate at the start of the tick.
+     * @param theOldY The y-coordinate at the start of the tick.
+     * @param theWasAlive Whether the vehicle was alive at the start of its turn.
+     * @param theOldDirection The direction at the start of the tick.
+     */
+    private void recordChange(final int theHandle, final int theOldX, final int theOldY,
+                              final boolean theWasAlive, final Direction theOldDirection) {
+        int flags = 0;
+        if (myVehicles.getX(theHandle) != theOldX || myVehicles.getY(theHandle) != theOldY) {
+            flags |= VehicleChanges.MOVED;
+        }
+        if (myVehicles.getDirection(theHandle) != theOldDirection) {
+            flags |= VehicleChanges.TURNED;
+        }
+        if (!theWasAlive) {
+            flags |= VehicleChanges.REVIVED;
+        }
+        if (flags != 0) {
+            myChanges.add(myVehicles, theHandle, flags, theOldX, theOldY);
+        }
+    }
+    
+    /**
+     * Gives a dead vehicle the pokes it is owed, waiting another tick if it does not 
+     * revive.
+     * 
+     * @param theHandle The handle of the vehicle.
+     */
+    private void revive(final int theHandle) {
+        if (!myVehicles.poke(theHandle, myPokes[theHandle])) {
+            myPokes[theHandle] = 1;
+            myRevivals.schedule(theHandle, myTimestep + 1);
+        }
+    }
+    
+    /**
+     * Lists every vehicle on the square it currently occupies.
+     */
+    private void placeVehicles() {
+        myOccupancy.clear();
+        for (int i = 0; i < myVehicles.size(); i++) {
+            myOccupancy.place(i, myVehicles.getX(i), myVehicles.getY(i));
+        }
     }
     
     /**
@@ -191,6 +592,7 @@ public class RoadRage implements PropertyChangeEnabledRoadRageControls {
     private void setLightColor(final Light theLight) {
         final Light old = myLight;
         myLight = theLight;
+        mySignals.setMaster(theLight);
         myPcs.firePropertyChange(PROPERTY_LIGHT, old, myLight); 
     }
     
@@ -213,25 +615,83 @@ public class RoadRage implements PropertyChangeEnabledRoadRageControls {
     }
     
     /**
-     * Inform PropertyChagneListeners of the current state of vehicles.
+     * Inform PropertyChangeListeners of the current state of the signals.
+     */
+    private void fireSignalChange() {
+        myPcs.firePropertyChange(PROPERTY_SIGNALS, null, mySignals);
+    }
+    
+    /**
+     * Inform PropertyChagneListeners of the current state of vehicles, skipping events 
+     * nobody listens for. The vehicle list is the store's live read-only list, not a copy,
+     * so it is only valid during the event.
      */
     private void fireVehicleChange() {
-        myPcs.firePropertyChange(PROPERTY_VEHICLES, null, new ArrayList<>(myVehicles));
+        if (myPcs.hasListeners(PROPERTY_VEHICLES)) {
+            myPcs.firePropertyChange(PROPERTY_VEHICLES, null, myVehicles.getVehicles());
+        }
+        if (myPcs.hasListeners(PROPERTY_VEHICLE_CHANGES)) {
+            myPcs.firePropertyChange(PROPERTY_VEHICLE_CHANGES, null, myChanges);
+        }
     }
     
     /**
      * Inform PropertyChagneListeners of the current 2D Terrain grid state.
      */
     private void fireGridChange() {
-        myPcs.firePropertyChange(PROPERTY_GRID, null, myGrid.clone());
+        myPcs.firePropertyChange(PROPERTY_GRID, null, myGrid);
     }
     
     /**
      * Reset all of the vehicles to their original state. 
      */
     private void resetVehicles() {
-        for (final Vehicle mov : myVehicles) {
-            mov.reset();
+        myVehicles.reset();
+        myRevivals.clear();
+        myVehicles.seed(mySeed);
+        placeVehicles();
+    }
+
+    /**
+     * Decides the intents of a range of vehicles, splitting large ranges in half.
+     */
+    private final class IntentTask extends RecursiveAction {
+        
+        /**
+         * The UID of this class (to avoid warnings).
+         */
+        private static final long serialVersionUID = 1L;
+        
+        /**
+         * The first handle of the range.
+         */
+        private final int myStart;
+        
+        /**
+         * The handle after the last one in the range.
+         */
+        private final int myEnd;
+        
+        /**
+         * Creates a task for a range of handles.
+         * 
+         * @param theStart The first handle of the range.
+         * @param theEnd The handle after the last one in the range.
+         */
+        IntentTask(final int theStart, final int theEnd) {
+            super();
+            myStart = theStart;
+            myEnd = theEnd;
+        }
+        
+        @Override
+        protected void compute() {
+            if (myEnd - myStart <= INTENT_CHUNK) {
+                myVehicles.chooseIntents(myStart, myEnd, myNeighbors, mySignals, myIntents);
+            } else {
+                final int middle = (myStart + myEnd) >>> 1;
+                invokeAll(new IntentTask(myStart, middle), new IntentTask(middle, myEnd));
+            }
         }
     }
 
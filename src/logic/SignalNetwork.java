@@ -0,0 +1,594 @@
+package logic;
+
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.PriorityQueue;
+import model.Direction;
+import model.Light;
+import model.Terrain;
+import model.TerrainGrid;
+
+/**
+ * The traffic signals of a terrain grid, each run by its own controller.
+ *
+ * The signals are found once, when the network is built: each 4-connected group of LIGHT
+ * squares becomes a signal, and each CROSSWALK square is given to the signal with the
+ * nearest LIGHT square no more than CROSSWALK_REACH steps away; one farther from every
+ * LIGHT square gets no signal and follows the master light. Signal numbers are only
+ * stored for the tiles of the grid that hold LIGHT or CROSSWALK squares, about a byte per
+ * square of such a tile, so finding the signal of a square is two array reads and a tile
+ * without signals costs nothing.
+ *
+ * Each controller cycles green, yellow and red with its own phase lengths and offset. The
+ * controllers wait in a priority queue ordered by the tick of their next phase change, so
+ * advancing the clock only touches the signals that actually change.
+ */
+final class SignalNetwork implements Signals {
+
+    /**
+     * The signal number of squares that follow the master light.
+     */
+    static final int NONE = -1;
+
+    /**
+     * The farthest a CROSSWALK square looks for the LIGHT square it follows.
+     */
+    private static final int CROSSWALK_REACH = TerrainGrid.TILE_SIZE;
+
+    /**
+     * The number of bits to shift a coordinate by to get its tile coordinate.
+     */
+    private static final int TILE_SHIFT = Integer.numberOfTrailingZeros(TerrainGrid.TILE_SIZE);
+
+    /**
+     * The number of squares in a tile.
+     */
+    private static final int TILE_CELLS = TerrainGrid.TILE_SIZE * TerrainGrid.TILE_SIZE;
+
+    /**
+     * The directions, cached because Direction.values() returns a new array on every call.
+     */
+    private static final Direction[] DIRECTIONS = Direction.values();
+
+    /**
+     * The width of the grid.
+     */
+    private final int myWidth;
+
+    /**
+     * The height of the grid.
+     */
+    private final int myHeight;
+
+    /**
+     * The number of tiles in each row of tiles.
+     */
+    private final int myTilesAcross;
+
+    /**
+     * The terrain grid.
+     */
+    private final TerrainGrid myGrid;
+
+    /**
+     * The signal of each LIGHT square and of each CROSSWALK square that has one.
+     */
+    private final SquareTable mySquares;
+
+    /**
+     * The current light of each signal.
+     */
+    private final Light[] myLights;
+
+    /**
+     * The controller of each signal.
+     */
+    private final Controller[] myControllers;
+
+    /**
+     * The controllers, ordered by the tick of their next phase change.
+     */
+    private final PriorityQueue<Controller> myChanges;
+
+    /**
+     * The light of squares without a signal.
+     */
+    private Light myMaster;
+
+    /**
+     * Finds the signals of the given grid, all starting green with the given phase length.
+     *
+     * @param theGrid the terrain grid, which must not change afterwards
+     * @param thePhase the number of ticks each color lasts by default
+     */
+    SignalNetwork(final TerrainGrid theGrid, final int thePhase) {
+        myHeight = theGrid.getHeight();
+        myWidth = theGrid.getWidth();
+        myTilesAcross = (myWidth + TerrainGrid.TILE_SIZE - 1) / TerrainGrid.TILE_SIZE;
+        final int tilesDown = (myHeight + TerrainGrid.TILE_SIZE - 1) / TerrainGrid.TILE_SIZE;
+        myGrid = theGrid;
+        mySquares = new SquareTable(myTilesAcross * tilesDown);
+        final int count = findIntersections(theGrid);
+        assignCrosswalks(theGrid);
+
+        myLights = new Light[count];
+        myControllers = new Controller[count];
+        for (int i = 0; i < count; i++) {
+            myControllers[i] = new Controller(i, 0, thePhase, thePhase, thePhase);
+        }
+        myChanges = new PriorityQueue<>(Math.max(1, count),
+            Comparator.comparingLong((Controller c) -> c.myNextChange)
+                      .thenComparingInt(c -> c.mySignal));
+        myMaster = Light.GREEN;
+        reset(0);
+    }
+
+    @Override
+    public int getSignalCount() {
+        return myControllers.length;
+    }
+
+    @Override
+    public int getSignal(final int theX, final int theY) {
+        int result = NONE;
+        if (myGrid.isValid(theX, theY)) {
+            result = mySquares.get(tileOf(theX, theY), offsetOf(theX, theY));
+        }
+        return result;
+    }
+
+    @Override
+    public Light getSignalLight(final int theSignal) {
+        return myLights[theSignal];
+    }
+
+    @Override
+    public Light getLight(final int theX, final int theY) {
+        final int signal = getSignal(theX, theY);
+        return signal == NONE ? myMaster : myLights[signal];
+    }
+
+    /**
+     * Sets the light of squares without a signal.
+     *
+     * @param theLight the master light
+     */
+    void setMaster(final Light theLight) {
+        myMaster = theLight;
+    }
+
+    /**
+     * Sets every signal to its light at the given tick.
+     *
+     * @param theTick the tick
+     */
+    void reset(final long theTick) {
+        myChanges.clear();
+        for (final Controller controller : myControllers) {
+            controller.update(theTick);
+            myChanges.add(controller);
+        }
+    }
+
+    /**
+     * Changes the timing of one signal, which takes effect at once.
+     *
+     * @param theSignal the signal number
+     * @param theOffset the number of ticks the cycle is shifted ahead by
+     * @param theGreen the number of ticks the light is green
+     * @param theYellow the number of ticks the light is yellow
+     * @param theRed the number of ticks the light is red
+     * @param theTick the current tick
+     * @throws IndexOutOfBoundsException if there is no such signal
+     * @throws IllegalArgumentException if a phase is shorter than one tick
+     */
+    void setTiming(final int theSignal, final int theOffset, final int theGreen,
+                   final int theYellow, final int theRed, final long theTick) {
+        if (theGreen < 1 || theYellow < 1 || theRed < 1) {
+            throw new IllegalArgumentException("Each phase must last at least one tick: "
+                                               + theGreen + ", " + theYellow + ", " + theRed);
+        }
+        final Controller old = myControllers[theSignal];
+        myChanges.remove(old);
+        final Controller controller =
+                        new Controller(theSignal, theOffset, theGreen, theYellow, theRed);
+        controller.update(theTick);
+        myControllers[theSignal] = controller;
+        myChanges.add(controller);
+    }
+
+    /**
+     * Brings every signal whose phase changes by the given tick up to date.
+     *
+     * @param theTick the new current tick
+     * @return whether any signal changed color
+     */
+    boolean advanceTo(final long theTick) {
+        boolean changed = false;
+        while (!myChanges.isEmpty() && myChanges.peek().myNextChange <= theTick) {
+            final Controller controller = myChanges.poll();
+            final Light old = myLights[controller.mySignal];
+            controller.update(theTick);
+            changed |= old != myLights[controller.mySignal];
+            myChanges.add(controller);
+        }
+        return changed;
+    }
+
+    /**
+     * Numbers each 4-connected group of LIGHT squares as a signal, in the order the
+     * groups are first met scanning the grid row by row.
+     *
+     * @param theGrid the terrain grid
+     * @return the number of signals
+     */
+    private int findIntersections(final TerrainGrid theGrid) {
+        // one bit per square of each tile with lights, only while searching
+        final long[][] seen = new long[mySquares.mySignals.length][];
+        // the squares still to search from, as x and y apart so no index can overflow
+        int[] stackX = new int[TerrainGrid.TILE_SIZE];
+        int[] stackY = new int[TerrainGrid.TILE_SIZE];
+        int count = 0;
+        for (int y = 0; y < myHeight; y++) {
+            for (int x = 0; x < myWidth; x++) {
+                if (theGrid.isUniformTile(x, y) && theGrid.get(x, y) != Terrain.LIGHT) {
+                    // skip the rest of a tile row without lights
+                    x |= TerrainGrid.TILE_SIZE - 1;
+                    continue;
+                }
+                if (theGrid.get(x, y) != Terrain.LIGHT || !mark(seen, x, y)) {
+                    continue;
+                }
+                int size = 0;
+                mySquares.add(tileOf(x, y), offsetOf(x, y), count);
+                stackX[size] = x;
+                stackY[size++] = y;
+                while (size > 0) {
+                    size--;
+                    final int cx = stackX[size];
+                    final int cy = stackY[size];
+                    for (final Direction dir : DIRECTIONS) {
+                        final int nx = cx + dir.dx();
+                        final int ny = cy + dir.dy();
+                        if (theGrid.getOrNull(nx, ny) == Terrain.LIGHT && mark(seen, nx, ny)) {
+                            mySquares.add(tileOf(nx, ny), offsetOf(nx, ny), count);
+                            if (size == stackX.length) {
+                                stackX = Arrays.copyOf(stackX, size * 2);
+                                stackY = Arrays.copyOf(stackY, size * 2);
+                            }
+                            stackX[size] = nx;
+                            stackY[size++] = ny;
+                        }
+                    }
+                }
+                count++;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Marks a square as seen.
+     *
+     * @param theSeen the seen bits of each tile, allocated as needed
+     * @param theX The x position.
+     * @param theY The y position.
+     * @return whether the square was not seen before.
+     */
+    private boolean mark(final long[][] theSeen, final int theX, final int theY) {
+        final int tile = tileOf(theX, theY);
+        if (theSeen[tile] == null) {
+            theSeen[tile] = new long[TILE_CELLS / Long.SIZE];
+        }
+        final int offset = offsetOf(theX, theY);
+        final long bit = 1L << offset;
+        final boolean result = (theSeen[tile][offset / Long.SIZE] & bit) == 0;
+        theSeen[tile][offset / Long.SIZE] |= bit;
+        return result;
+    }
+
+    /**
+     * Gives each CROSSWALK square the signal of the nearest LIGHT square, searching
+     * outwards in rings of growing distance up to CROSSWALK_REACH squares away.
+     *
+     * @param theGrid the terrain grid
+     */
+    private void assignCrosswalks(final TerrainGrid theGrid) {
+        for (int y = 0; y < myHeight; y++) {
+            for (int x = 0; x < myWidth; x++) {
+                if (theGrid.isUniformTile(x, y) && theGrid.get(x, y) != Terrain.CROSSWALK) {
+                    x |= TerrainGrid.TILE_SIZE - 1;
+                    continue;
+                }
+                if (theGrid.get(x, y) == Terrain.CROSSWALK) {
+                    final int signal = nearestSignal(theGrid, x, y);
+                    if (signal != NONE) {
+                        mySquares.add(tileOf(x, y), offsetOf(x, y), signal);
+                    }
+                }
+            }
+        }
+        mySquares.finish();
+    }
+
+    /**
+     * Finds the signal of the LIGHT square nearest to a square, counting distance in
+     * steps along the grid. Ties go to the square found first, scanning each ring from
+     * left to right and top to bottom.
+     *
+     * @param theGrid the terrain grid
+     * @param theX The x position.
+     * @param theY The y position.
+     * @return the signal, or NONE if there is no LIGHT square within reach.
+     */
+    private int nearestSignal(final TerrainGrid theGrid, final int theX, final int theY) {
+        for (int distance = 1; distance <= CROSSWALK_REACH; distance++) {
+            for (int dx = -distance; dx <= distance; dx++) {
+                final int dy = distance - Math.abs(dx);
+                if (theGrid.getOrNull(theX + dx, theY - dy) == Terrain.LIGHT) {
+                    return getSignal(theX + dx, theY - dy);
+                }
+                if (dy != 0 && theGrid.getOrNull(theX + dx, theY + dy) == Terrain.LIGHT) {
+                    return getSignal(theX + dx, theY + dy);
+                }
+            }
+        }
+        return NONE;
+    }
+
+    /**
+     * Returns the tile holding a position.
+     *
+     * @param theX The x position.
+     * @param theY The y position.
+     * @return the tile index.
+     */
+    private int tileOf(final int theX, final int theY) {
+        return (theY >> TILE_SHIFT) * myTilesAcross + (theX >> TILE_SHIFT);
+    }
+
+    /**
+     * Returns the index of a position within its tile.
+     *
+     * @param theX The x position.
+     * @param theY The y position.
+     * @return the offset within the tile.
+     */
+    private static int offsetOf(final int theX, final int theY) {
+        return (theY & TerrainGrid.TILE_SIZE - 1) << TILE_SHIFT
+               | theX & TerrainGrid.TILE_SIZE - 1;
+    }
+
+    /**
+     * The signals of a sparse set of squares. Each tile holding any of them lists the
+     * signals of its squares after NONE, and keeps the place of every square in that list,
+     * 0 for a square without a signal. The places are dense so a lookup is two array
+     * reads. They take a byte per square, or a short in the rare tile that lists more
+     * signals than a byte can tell apart; tiles without signals take nothing.
+     */
+    private static final class SquareTable {
+
+        /**
+         * The longest list whose places fit in a byte.
+         */
+        private static final int SMALL_LIST = 1 << Byte.SIZE;
+
+        /**
+         * The mask of the lowest byte of an int.
+         */
+        private static final int BYTE_MASK = 0xFF;
+
+        /**
+         * The initial capacity of a tile's list of signals.
+         */
+        private static final int INITIAL_CAPACITY = 16;
+
+        /**
+         * The place of each square of each tile in the tile's list, or null for a tile
+         * without squares or with a list too long for a byte.
+         */
+        private final byte[][] mySmallPlaces;
+
+        /**
+         * The place of each square of each tile with a list too long for a byte, or null.
+         */
+        private final short[][] myLargePlaces;
+
+        /**
+         * The list of signals of each tile, starting with NONE.
+         */
+        private final int[][] mySignals;
+
+        /**
+         * The length of the list of each tile.
+         */
+        private final int[] mySizes;
+
+        /**
+         * The tile each signal was last added to a list for, by signal, only while the
+         * table is built.
+         */
+        private int[] myLastTiles = new int[INITIAL_CAPACITY];
+
+        /**
+         * The place each signal was last given, by signal, only while the table is built.
+         */
+        private int[] myLastPlaces = new int[INITIAL_CAPACITY];
+
+        /**
+         * Creates an empty table.
+         *
+         * @param theTiles the number of tiles
+         */
+        SquareTable(final int theTiles) {
+            mySmallPlaces = new byte[theTiles][];
+            myLargePlaces = new short[theTiles][];
+            mySignals = new int[theTiles][];
+            mySizes = new int[theTiles];
+            Arrays.fill(myLastTiles, NONE);
+        }
+
+        /**
+         * Adds a square, which must not be in the table yet.
+         *
+         * @param theTile the tile
+         * @param theOffset the offset within the tile
+         * @param theSignal the signal
+         */
+        void add(final int theTile, final int theOffset, final int theSignal) {
+            if (mySignals[theTile] == null) {
+                mySmallPlaces[theTile] = new byte[TILE_CELLS];
+                mySignals[theTile] = new int[INITIAL_CAPACITY];
+                mySignals[theTile][0] = NONE;
+                mySizes[theTile] = 1;
+            }
+            if (theSignal >= myLastTiles.length) {
+                final int length = Math.max(theSignal + 1, myLastTiles.length * 2);
+                final int old = myLastTiles.length;
+                myLastTiles = Arrays.copyOf(myLastTiles, length);
+                myLastPlaces = Arrays.copyOf(myLastPlaces, length);
+                Arrays.fill(myLastTiles, old, length, NONE);
+            }
+            if (myLastTiles[theSignal] != theTile) {
+                // a signal met again after leaving the tile is listed twice, so a list
+                // never grows past the squares of its tile and a place fits in a short
+                final int size = mySizes[theTile];
+                if (size == mySignals[theTile].length) {
+                    mySignals[theTile] = Arrays.copyOf(mySignals[theTile], size * 2);
+                }
+                if (size == SMALL_LIST) {
+                    widen(theTile);
+                }
+                mySignals[theTile][size] = theSignal;
+                mySizes[theTile] = size + 1;
+                myLastTiles[theSignal] = theTile;
+                myLastPlaces[theSignal] = size;
+            }
+            if (mySmallPlaces[theTile] != null) {
+                mySmallPlaces[theTile][theOffset] = (byte) myLastPlaces[theSignal];
+            } else {
+                myLargePlaces[theTile][theOffset] = (short) myLastPlaces[theSignal];
+            }
+        }
+
+        /**
+         * Trims each list once every square has been added.
+         */
+        void finish() {
+            for (int tile = 0; tile < mySignals.length; tile++) {
+                if (mySignals[tile] != null) {
+                    mySignals[tile] = Arrays.copyOf(mySignals[tile], mySizes[tile]);
+                }
+            }
+            myLastTiles = null;
+            myLastPlaces = null;
+        }
+
+        /**
+         * Returns the signal of a square.
+         *
+         * @param theTile the tile
+         * @param theOffset the offset within the tile
+         * @return the signal, or NONE if the square is not in the table.
+         */
+        int get(final int theTile, final int theOffset) {
+            final byte[] small = mySmallPlaces[theTile];
+            if (small != null) {
+                return mySignals[theTile][small[theOffset] & BYTE_MASK];
+            }
+            final short[] large = myLargePlaces[theTile];
+            return large == null ? NONE : mySignals[theTile][large[theOffset]];
+        }
+
+        /**
+         * Moves the places of a tile from bytes to shorts.
+         *
+         * @param theTile the tile
+         */
+        private void widen(final int theTile) {
+            final byte[] small = mySmallPlaces[theTile];
+            final short[] large = new short[TILE_CELLS];
+            for (int i = 0; i < TILE_CELLS; i++) {
+                large[i] = (short) (small[i] & BYTE_MASK);
+            }
+            myLargePlaces[theTile] = large;
+            mySmallPlaces[theTile] = null;
+        }
+    }
+
+    /**
+     * The timing of one signal and the tick of its next phase change.
+     */
+    private final class Controller {
+
+        /**
+         * The signal number.
+         */
+        private final int mySignal;
+
+        /**
+         * The number of ticks the cycle is shifted ahead by.
+         */
+        private final int myOffset;
+
+        /**
+         * The number of ticks the light is green.
+         */
+        private final int myGreen;
+
+        /**
+         * The number of ticks the light is yellow.
+         */
+        private final int myYellow;
+
+        /**
+         * The length of the whole cycle in ticks, a long as three int phases may not fit
+         * in an int.
+         */
+        private final long myCycle;
+
+        /**
+         * The tick of the next phase change.
+         */
+        private long myNextChange;
+
+        /**
+         * Creates a controller.
+         *
+         * @param theSignal the signal number
+         * @param theOffset the number of ticks the cycle is shifted ahead by
+         * @param theGreen the number of ticks the light is green
+         * @param theYellow the number of ticks the light is yellow
+         * @param theRed the number of ticks the light is red
+         */
+        Controller(final int theSignal, final int theOffset, final int theGreen,
+                   final int theYellow, final int theRed) {
+            mySignal = theSignal;
+            myOffset = theOffset;
+            myGreen = theGreen;
+            myYellow = theYellow;
+            myCycle = (long) theGreen + theYellow + theRed;
+        }
+
+        /**
+         * Sets the light of the signal for the given tick and finds its next change.
+         *
+         * @param theTick the tick
+         */
+        void update(final long theTick) {
+            final long position = Math.floorMod(theTick + myOffset, myCycle);
+            final long end;
+            if (position < myGreen) {
+                myLights[mySignal] = Light.GREEN;
+                end = myGreen;
+            } else if (position < (long) myGreen + myYellow) {
+                myLights[mySignal] = Light.YELLOW;
+                end = (long) myGreen + myYellow;
+            } else {
+                myLights[mySignal] = Light.RED;
+                end = myCycle;
+            }
+            myNextChange = theTick + end - position;
+        }
+    }
+}
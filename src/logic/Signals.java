@@ -0,0 +1,49 @@
+package logic;
+
+import model.Light;
+
+/**
+ * A read-only view of the traffic signals of a RoadRage simulation.
+ *
+ * Every connected group of LIGHT squares is one intersection with its own signal, and each
+ * CROSSWALK square follows the signal of the nearest intersection within 64 steps along
+ * the grid. Signals are numbered from 0. Squares without a signal, which includes every
+ * CROSSWALK square farther than that from any LIGHT square and every square of a map
+ * without lights, follow the master light reported with PROPERTY_LIGHT.
+ */
+public interface Signals {
+
+    /**
+     * Returns the number of signals on the map.
+     *
+     * @return the number of signals.
+     */
+    int getSignalCount();
+
+    /**
+     * Returns the signal controlling the square at the given position.
+     *
+     * @param theX The x position.
+     * @param theY The y position.
+     * @return the signal number, or -1 if the square follows the master light.
+     */
+    int getSignal(int theX, int theY);
+
+    /**
+     * Returns the current color of a signal.
+     *
+     * @param theSignal The signal number.
+     * @return the light color.
+     * @throws IndexOutOfBoundsException if there is no such signal.
+     */
+    Light getSignalLight(int theSignal);
+
+    /**
+     * Returns the current color of the light controlling the square at the given position.
+     *
+     * @param theX The x position.
+     * @param theY The y position.
+     * @return the light color.
+     */
+    Light getLight(int theX, int theY);
+}
@@ -0,0 +1,552 @@
+package logic;
+
+import com.sun.management.ThreadMXBean;
+import java.beans.PropertyChangeEvent;
+import java.beans.PropertyChangeListener;
+import java.lang.management.ManagementFactory;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+import model.Light;
+import model.TerrainGrid;
+import model.Vehicle;
+
+/**
+ * Runs a RoadRage simulation on its own thread, so that a display painting it does not
+ * slow it down, and publishes a Frame after every tick.
+ *
+ * <p>Frames go through a triple buffer: the simulation thread fills one frame while the
+ * display reads another, and the third holds the latest finished frame. Publishing and
+ * acquiring a frame each swap one index atomically, so neither side ever waits for the
+ * other. When the display falls behind, the frames it had no time for are dropped and it
+ * always gets the newest one.
+ *
+ * <p>Each frame lists what changed since the frame the display acquired before it, so the
+ * display only repaints those squares, even across dropped frames. It also records how long
+ * its tick took and how many events it brought; while the runner measures, it adds the
+ * 99th percentile of recent tick times and the memory the simulation thread allocated.
+ *
+ * <p>Start, stop, step, reset and timing changes may be called from any thread. They are
+ * put on a lock-free queue and carried out by the simulation thread between ticks, in the
+ * order they were made. The simulation must not be used by anyone else while it runs
+ * here; its property change events are fired on the simulation thread.
+ */
+public final class SimulationRunner {
+
+    /**
+     * The bits of the shared frame index holding the frame number.
+     */
+    private static final int INDEX_MASK = 3;
+
+    /**
+     * The bit of the shared frame index set when the frame has not been acquired yet.
+     */
+    private static final int FRESH = 4;
+
+    /**
+     * The number of recent tick times the percentile is taken over.
+     */
+    private static final int TICK_HISTORY = 256;
+
+    /**
+     * The percentile of recent tick times reported while measuring.
+     */
+    private static final double TAIL = 0.99;
+
+    /**
+     * Counts the memory threads allocate, or null if the virtual machine cannot.
+     */
+    private static final ThreadMXBean THREADS =
+        ManagementFactory.getThreadMXBean() instanceof ThreadMXBean
+            ? (ThreadMXBean) ManagementFactory.getThreadMXBean() : null;
+
+    /**
+     * The properties the runner listens for.
+     */
+    private static final String[] PROPERTIES = {
+        PropertyChangeEnabledRoadRageControls.PROPERTY_GRID,
+        PropertyChangeEnabledRoadRageControls.PROPERTY_SIGNALS,
+        PropertyChangeEnabledRoadRageControls.PROPERTY_LIGHT,
+        PropertyChangeEnabledRoadRageControls.PROPERTY_TIME,
+        PropertyChangeEnabledRoadRageControls.PROPERTY_VEHICLES,
+        PropertyChangeEnabledRoadRageControls.PROPERTY_VEHICLE_CHANGES,
+    };
+
+    /**
+     * The simulation.
+     */
+    private final PropertyChangeEnabledRoadRageControls myRoadRage;
+
+    /**
+     * Called on the simulation thread after each frame is published.
+     */
+    private final Runnable myFrameReady;
+
+    /**
+     * The three frames of the triple buffer.
+     */
+    private final Frame[] myFrames = {new Frame(), new Frame(), new Frame()};
+
+    /**
+     * The index of the latest finished frame, with FRESH set until it is acquired.
+     */
+    private final AtomicInteger myLatest = new AtomicInteger(1);
+
+    /**
+     * The number of published frames that were never acquired.
+     */
+    private final AtomicLong myDropped = new AtomicLong();
+
+    /**
+     * The commands waiting for the simulation thread.
+     */
+    private final Queue<Runnable> myCommands = new ConcurrentLinkedQueue<>();
+
+    /**
+     * The simulation thread.
+     */
+    private final Thread myThread;
+
+    /**
+     * Receives the state of the simulation on the simulation thread.
+     */
+    private final PropertyChangeListener myListener = this::propertyChange;
+
+    /**
+     * Whether the runner has been closed.
+     */
+    private volatile boolean myClosed;
+
+    /**
+     * Whether frames capture the text of each vehicle.
+     */
+    private volatile boolean myLabels;
+
+    /**
+     * Whether frames record the tick percentile and the allocated memory.
+     */
+    private volatile boolean myMeasuring;
+
+    /**
+     * The time between ticks in milliseconds, as last set.
+     */
+    private volatile int myDelayMillis;
+
+    /**
+     * The index of the frame being filled, used only by the simulation thread.
+     */
+    private int myBack;
+
+    /**
+     * The index of the frame being displayed, used only by the display thread.
+     */
+    private int myFront = 2;
+
+    /**
+     * Whether the simulation advances on its own, used only by the simulation thread.
+     */
+    private boolean myRunning;
+
+    /**
+     * The time between ticks in nanoseconds, used only by the simulation thread.
+     */
+    private long myDelay;
+
+    /**
+     * The time the next tick is due, used only by the simulation thread.
+     */
+    private long myNextTick;
+
+    /**
+     * The times of recent ticks in nanoseconds, used only by the simulation thread.
+     */
+    private final long[] myTickTimes = new long[TICK_HISTORY];
+
+    /**
+     * The recent tick times sorted for the percentile, used only by the simulation thread.
+     */
+    private final long[] mySortedTickTimes = new long[TICK_HISTORY];
+
+    /**
+     * The number of ticks timed, used only by the simulation thread.
+     */
+    private long myTickCount;
+
+    /**
+     * The number of events since the last frame, used only by the simulation thread.
+     */
+    private int myEventCount;
+
+    /**
+     * The number of vehicle changes since the last frame, used only by the simulation
+     * thread.
+     */
+    private int myVehicleChangeCount;
+
+    // the latest state of the simulation, used only by the simulation thread
+
+    /**
+     * The terrain grid.
+     */
+    private TerrainGrid myGrid;
+
+    /**
+     * The signals.
+     */
+    private Signals mySignals;
+
+    /**
+     * The number of times the signals have changed.
+     */
+    private long mySignalVersion;
+
+    /**
+     * The master light.
+     */
+    private Light myLight = Light.GREEN;
+
+    /**
+     * The time step.
+     */
+    private long myTimestep;
+
+    /**
+     * The live vehicle list of the simulation. It is only read on this thread, right after
+     * the event that fired it and before the next tick, and copied into a frame there.
+     */
+    private List<Vehicle> myVehicles = List.of();
+
+    /**
+     * Starts a thread running the given simulation. The simulation is started on that
+     * thread and its first frame published; it then waits for commands.
+     *
+     * @param theRoadRage the simulation, which must not be used by anyone else afterwards
+     * @param theDelay the time between ticks in milliseconds while running
+     * @param theFrameReady called on the simulation thread after each frame is published,
+     *        typically to schedule a repaint
+     * @throws IllegalArgumentException if theDelay is negative
+     */
+    public SimulationRunner(final PropertyChangeEnabledRoadRageControls theRoadRage,
+                            final int theDelay, final Runnable theFrameReady) {
+        myRoadRage = theRoadRage;
+        myFrameReady = theFrameReady;
+        myDelay = nanosOf(theDelay);
+        myDelayMillis = theDelay;
+        for (final String property : PROPERTIES) {
+            theRoadRage.addPropertyChangeListener(property, myListener);
+        }
+        myThread = new Thread(this::run, "Road Rage simulation");
+        myThread.setDaemon(true);
+        myCommands.add(() -> {
+            myRoadRage.start();
+            publish(0);
+        });
+        myThread.start();
+    }
+
+    /**
+     * Makes the simulation advance on its own, one tick per delay.
+     */
+    public void start() {
+        command(() -> {
+            myRunning = true;
+            myNextTick = System.nanoTime();
+        });
+    }
+
+    /**
+     * Stops the simulation advancing on its own.
+     */
+    public void stop() {
+        command(() -> myRunning = false);
+    }
+
+    /**
+     * Advances the simulation by one tick.
+     */
+    public void step() {
+        command(this::tick);
+    }
+
+    /**
+     * Stops the simulation and resets it to its starting state.
+     */
+    public void reset() {
+        command(() -> {
+            myRunning = false;
+            myRoadRage.reset();
+            publish(0);
+        });
+    }
+
+    /**
+     * Sets the time between ticks while running.
+     *
+     * @param theDelay the delay in milliseconds
+     * @throws IllegalArgumentException if theDelay is negative
+     */
+    public void setDelay(final int theDelay) {
+        final long delay = nanosOf(theDelay);
+        myDelayMillis = theDelay;
+        command(() -> {
+            myNextTick += delay - myDelay;
+            myDelay = delay;
+        });
+    }
+
+    /**
+     * Sets whether frames capture the text of each vehicle, which costs a string per
+     * vehicle per frame and is only worth it while the text is shown.
+     *
+     * @param theLabels whether to capture vehicle text
+     */
+    public void setLabels(final boolean theLabels) {
+        myLabels = theLabels;
+    }
+
+    /**
+     * Returns the time between ticks while running, as last set.
+     *
+     * @return the delay in milliseconds
+     */
+    public int getDelay() {
+        return myDelayMillis;
+    }
+
+    /**
+     * Sets whether frames record the 99th percentile of recent tick times and the memory
+     * allocated by the simulation thread, which cost a sort and a call into the virtual
+     * machine per frame and are only worth it while they are shown.
+     *
+     * @param theMeasuring whether to measure
+     */
+    public void setMeasuring(final boolean theMeasuring) {
+        myMeasuring = theMeasuring;
+    }
+
+    /**
+     * Stops the simulation thread after the command it is carrying out, and stops
+     * listening to the simulation. Commands made afterwards are ignored.
+     */
+    public void close() {
+        myClosed = true;
+        for (final String property : PROPERTIES) {
+            myRoadRage.removePropertyChangeListener(property, myListener);
+        }
+        LockSupport.unpark(myThread);
+    }
+
+    /**
+     * Returns the newest published frame. The frame stays unchanged until the next call,
+     * which must come from the same thread, normally the event dispatch thread.
+     *
+     * @return the newest frame, or null if none has been published yet
+     */
+    public Frame acquireFrame() {
+        if ((myLatest.get() & FRESH) != 0) {
+            myFront = myLatest.getAndSet(myFront) & INDEX_MASK;
+        }
+        final Frame result = myFrames[myFront];
+        return result.getGrid() == null ? null : result;
+    }
+
+    /**
+     * Returns the number of frames published but replaced before they were acquired.
+     *
+     * @return the number of dropped frames
+     */
+    public long getDroppedFrames() {
+        return myDropped.get();
+    }
+
+    /**
+     * Returns the width of the simulation's map.
+     *
+     * @return the width in squares
+     */
+    public int getWidth() {
+        return myRoadRage.getWidth();
+    }
+
+    /**
+     * Returns the height of the simulation's map.
+     *
+     * @return the height in squares
+     */
+    public int getHeight() {
+        return myRoadRage.getHeight();
+    }
+
+    /**
+     * Queues a command for the simulation thread and wakes it.
+     *
+     * @param theCommand the command
+     */
+    private void command(final Runnable theCommand) {
+        if (!myClosed) {
+            myCommands.add(theCommand);
+            LockSupport.unpark(myThread);
+        }
+    }
+
+    /**
+     * The simulation thread: carries out commands and, while running, advances the
+     * simulation whenever a tick is due, parking in between.
+     */
+    private void run() {
+        while (!myClosed) {
+            try {
+                Runnable command = myCommands.poll();
+                while (command != null && !myClosed) {
+                    command.run();
+                    command = myCommands.poll();
+                }
+                if (myClosed) {
+                    break;
+                }
+                if (!myRunning) {
+                    LockSupport.park(this);
+                } else {
+                    final long wait = myNextTick - System.nanoTime();
+                    if (wait > 0) {
+                        LockSupport.parkNanos(this, wait);
+                    } else {
+                        tick();
+                        // a tick that ran late does not make the next ones hurry
+                        myNextTick = Math.max(myNextTick + myDelay, System.nanoTime());
+                    }
+                }
+            } catch (final RuntimeException e) {
+                // report the failure like an uncaught exception, but keep taking commands
+                myRunning = false;
+                myThread.getUncaughtExceptionHandler().uncaughtException(myThread, e);
+            }
+        }
+    }
+
+    /**
+     * Advances the simulation by one tick, timing it, and publishes the result.
+     */
+    private void tick() {
+        final long start = System.nanoTime();
+        myRoadRage.advance();
+        final long time = System.nanoTime() - start;
+        myTickTimes[(int) (myTickCount % TICK_HISTORY)] = time;
+        myTickCount++;
+        publish(time);
+    }
+
+    /**
+     * Captures the state of the simulation into the back frame and makes it the latest.
+     *
+     * @param theTickNanos the time the tick being published took, 0 if there was none
+     */
+    private void publish(final long theTickNanos) {
+        final Frame back = myFrames[myBack];
+        back.capture(myGrid, myTimestep, myLight, mySignals, mySignalVersion, myVehicles,
+                     myLabels);
+        final boolean measuring = myMeasuring;
+        back.captureTiming(theTickNanos, measuring ? tailTickNanos() : -1, myEventCount,
+                           myVehicleChangeCount, measuring ? allocatedBytes() : -1);
+        myEventCount = 0;
+        myVehicleChangeCount = 0;
+        // if the latest frame is replaced unseen, its changes must not be lost; should the
+        // display acquire it meanwhile, they are just repainted twice
+        final int latest = myLatest.get();
+        if ((latest & FRESH) != 0) {
+            back.includeChanges(myFrames[latest & INDEX_MASK]);
+        }
+        final int old = myLatest.getAndSet(myBack | FRESH);
+        if ((old & FRESH) != 0) {
+            myDropped.incrementAndGet();
+        }
+        myBack = old & INDEX_MASK;
+        myFrames[myBack].clearChanges();
+        myFrameReady.run();
+    }
+
+    /**
+     * Records the state of the simulation as its events arrive on the simulation thread,
+     * listing what changed in the frame being filled.
+     *
+     * @param theEvent the event
+     */
+    @SuppressWarnings("unchecked")
+    private void propertyChange(final PropertyChangeEvent theEvent) {
+        myEventCount++;
+        switch (theEvent.getPropertyName()) {
+            case PropertyChangeEnabledRoadRageControls.PROPERTY_GRID:
+                myGrid = (TerrainGrid) theEvent.getNewValue();
+                myFrames[myBack].markAllChanged();
+                break;
+            case PropertyChangeEnabledRoadRageControls.PROPERTY_SIGNALS:
+                mySignals = (Signals) theEvent.getNewValue();
+                mySignalVersion++;
+                myFrames[myBack].markSignalsChanged();
+                break;
+            case PropertyChangeEnabledRoadRageControls.PROPERTY_LIGHT:
+                myLight = (Light) theEvent.getNewValue();
+                myFrames[myBack].markSignalsChanged();
+                break;
+            case PropertyChangeEnabledRoadRageControls.PROPERTY_TIME:
+                myTimestep = (Long) theEvent.getNewValue();
+                break;
+            case PropertyChangeEnabledRoadRageControls.PROPERTY_VEHICLES:
+                myVehicles = (List<Vehicle>) theEvent.getNewValue();
+                break;
+            case PropertyChangeEnabledRoadRageControls.PROPERTY_VEHICLE_CHANGES:
+                myVehicleChangeCount += ((VehicleChanges) theEvent.getNewValue()).size();
+                myFrames[myBack].addChanges((VehicleChanges) theEvent.getNewValue());
+                break;
+            default:
+                break;
+        }
+    }
+
+    /**
+     * Returns the 99th percentile of the recent tick times.
+     *
+     * @return the time in nanoseconds, or -1 if no tick has been timed
+     */
+    private long tailTickNanos() {
+        final int count = (int) Math.min(myTickCount, TICK_HISTORY);
+        if (count == 0) {
+            return -1;
+        }
+        System.arraycopy(myTickTimes, 0, mySortedTickTimes, 0, count);
+        Arrays.sort(mySortedTickTimes, 0, count);
+        return mySortedTickTimes[Math.min(count - 1, (int) (count * TAIL))];
+    }
+
+    /**
+     * Returns the bytes the calling thread has allocated since it started.
+     *
+     * @return the allocated bytes, or -1 if the virtual machine cannot count them
+     */
+    private static long allocatedBytes() {
+        if (THREADS == null || !THREADS.isThreadAllocatedMemorySupported()
+            || !THREADS.isThreadAllocatedMemoryEnabled()) {
+            return -1;
+        }
+        return THREADS.getCurrentThreadAllocatedBytes();
+    }
+
+    /**
+     * Converts a delay in milliseconds to nanoseconds.
+     *
+     * @param theDelay the delay in milliseconds
+     * @return the delay in nanoseconds
+     * @throws IllegalArgumentException if theDelay is negative
+     */
+    private static long nanosOf(final int theDelay) {
+        if (theDelay < 0) {
+            throw new IllegalArgumentException("Negative delay: " + theDelay);
+        }
+        return TimeUnit.MILLISECONDS.toNanos(theDelay);
+    }
+}
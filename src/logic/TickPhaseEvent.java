@@ -0,0 +1,45 @@
+package logic;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Timespan;
+
+/**
+ * A Java Flight Recorder event for the time one phase of a tick took, committed by
+ * TickProfiler at the end of the phase. The time is a field rather than the duration of
+ * the event, since the collision phase is made of many short slices spread through the
+ * movement of the vehicles.
+ */
+@Name("roadrage.TickPhase")
+@Label("Tick Phase")
+@Category("Road Rage")
+@Description("The time one phase of a simulation tick took")
+@StackTrace(false)
+final class TickPhaseEvent extends Event {
+
+    /**
+     * The name of the phase.
+     */
+    @Name("phase")
+    @Label("Phase")
+    String myPhase;
+
+    /**
+     * The time step the tick started at.
+     */
+    @Name("tick")
+    @Label("Tick")
+    long myTick;
+
+    /**
+     * The time the phase took.
+     */
+    @Name("time")
+    @Label("Time")
+    @Timespan(Timespan.NANOSECONDS)
+    long myTime;
+}
@@ -0,0 +1,139 @@
+package logic;
+
+import java.util.EnumMap;
+import java.util.Map;
+
+/**
+ * Times the phases of RoadRage.advance(), so a slower tick can be put down to one phase.
+ * Each phase of each tick is recorded in a LatencyHistogram of that phase, which can be
+ * read at any time from any thread, and committed as a Java Flight Recorder event named
+ * roadrage.TickPhase when a recording has it enabled.
+ *
+ * <p>A simulation is only profiled while it has a profiler set with
+ * RoadRage.setProfiler; without one, advance() only tests for it once per phase and once
+ * per vehicle. Collisions are resolved vehicle by vehicle between their moves, too briefly
+ * each to be worth reading the clock for every time, so the collision phase is estimated
+ * from a sample of the vehicles and the movement phase is the rest of that loop.
+ */
+public final class TickProfiler {
+
+    /**
+     * The phases of a tick, in the order they run.
+     */
+    public enum Phase {
+
+        /**
+         * Deciding the intent of every vehicle: looking up the neighbors of its square,
+         * choosing a direction and checking whether it may pass. The three are done
+         * vehicle by vehicle in one loop, in parallel when the simulation is set to.
+         */
+        INTENTS,
+
+        /**
+         * Moving the vehicles and reviving those whose death time is up, without the
+         * collisions between them.
+         */
+        MOVEMENT,
+
+        /**
+         * Finding the vehicles on the square of each vehicle and colliding them.
+         */
+        COLLISIONS,
+
+        /**
+         * Advancing the time step, the master light and the signals, with the events
+         * fired as the time step and the master light change.
+         */
+        LIGHTS,
+
+        /**
+         * Firing the signal and vehicle events of the tick to the listeners.
+         */
+        EVENTS
+    }
+
+    /**
+     * The phases, cached because Phase.values() returns a new array on every call.
+     */
+    private static final Phase[] PHASES = Phase.values();
+
+    /**
+     * The time of each phase, by ordinal.
+     */
+    private final LatencyHistogram[] myHistograms = new LatencyHistogram[PHASES.length];
+
+    /**
+     * Creates a profiler with empty histograms.
+     */
+    public TickProfiler() {
+        for (int i = 0; i < myHistograms.length; i++) {
+            myHistograms[i] = new LatencyHistogram();
+        }
+    }
+
+    /**
+     * Returns a copy of the histogram of one phase, which does not change afterwards.
+     *
+     * @param thePhase the phase
+     * @return the times of the phase recorded so far
+     */
+    public synchronized LatencyHistogram getHistogram(final Phase thePhase) {
+        return new LatencyHistogram(myHistograms[thePhase.ordinal()]);
+    }
+
+    /**
+     * Returns copies of the histograms of every phase.
+     *
+     * @return the times of each phase recorded so far, in the order the phases run
+     */
+    public synchronized Map<Phase, LatencyHistogram> getHistograms() {
+        final Map<Phase, LatencyHistogram> result = new EnumMap<>(Phase.class);
+        for (final Phase phase : PHASES) {
+            result.put(phase, new LatencyHistogram(myHistograms[phase.ordinal()]));
+        }
+        return result;
+    }
+
+    /**
+     * Forgets every time recorded.
+     */
+    public synchronized void reset() {
+        for (final LatencyHistogram histogram : myHistograms) {
+            histogram.reset();
+        }
+    }
+
+    /**
+     * Records the time of a phase that ends now.
+     *
+     * @param thePhase the phase
+     * @param theTick the time step the tick started at
+     * @param theStart the time the phase started, from System.nanoTime()
+     * @return the time now, from System.nanoTime(), for the next phase to start at
+     */
+    long end(final Phase thePhase, final long theTick, final long theStart) {
+        final long now = System.nanoTime();
+        record(thePhase, theTick, now - theStart);
+        return now;
+    }
+
+    /**
+     * Records the time of a phase.
+     *
+     * @param thePhase the phase
+     * @param theTick the time step the tick started at
+     * @param theNanos the time the phase took in nanoseconds
+     */
+    void record(final Phase thePhase, final long theTick, final long theNanos) {
+        synchronized (this) {
+            myHistograms[thePhase.ordinal()].record(theNanos);
+        }
+        final TickPhaseEvent event = new TickPhaseEvent();
+        if (event.isEnabled()) {
+            event.myPhase = thePhase.name();
+            event.myTick = theTick;
+            event.myTime = theNanos;
+            event.commit();
+        }
+    }
+}
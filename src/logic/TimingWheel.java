@@ -0,0 +1,126 @@
+package logic;
+
+import java.util.Arrays;
+
+/**
+ * A hashed timing wheel of vehicle handles, each waiting for the tick it is due at.
+ *
+ * The wheel is a ring of slots, one per tick modulo the number of slots. A scheduled handle
+ * is kept in an intrusive list on the slot of its due tick, so scheduling is constant time
+ * and expiring a tick only looks at the handles that share its slot. Handles due more than
+ * a full turn of the wheel away simply stay in their slot until their tick comes around.
+ */
+final class TimingWheel {
+
+    /**
+     * The handle value used to mark the end of a slot list.
+     */
+    private static final int NONE = -1;
+
+    /**
+     * The due tick of a handle that is not scheduled.
+     */
+    private static final long UNSCHEDULED = -1;
+
+    /**
+     * The first handle in each slot.
+     */
+    private final int[] myHeads;
+
+    /**
+     * The next handle in the same slot, per handle.
+     */
+    private final int[] myNext;
+
+    /**
+     * The tick each handle is due at, or UNSCHEDULED.
+     */
+    private final long[] myDue;
+
+    /**
+     * The number of slots minus one, the slot count being a power of two.
+     */
+    private final int myMask;
+
+    /**
+     * Creates an empty timing wheel.
+     *
+     * @param theCapacity the number of handles to track
+     * @param theSpan the number of ticks ahead handles are usually scheduled, rounded up
+     *        to a power of two for the number of slots
+     */
+    TimingWheel(final int theCapacity, final int theSpan) {
+        final int slots = Integer.highestOneBit(Math.max(1, theSpan - 1)) << 1;
+        myHeads = new int[slots];
+        myMask = slots - 1;
+        myNext = new int[theCapacity];
+        myDue = new long[theCapacity];
+        clear();
+    }
+
+    /**
+     * Removes every handle from the wheel.
+     */
+    void clear() {
+        Arrays.fill(myHeads, NONE);
+        Arrays.fill(myNext, NONE);
+        Arrays.fill(myDue, UNSCHEDULED);
+    }
+
+    /**
+     * Returns whether a handle is waiting in the wheel.
+     *
+     * @param theHandle the handle
+     * @return whether the handle is scheduled
+     */
+    boolean isScheduled(final int theHandle) {
+        return myDue[theHandle] != UNSCHEDULED;
+    }
+
+    /**
+     * Puts a handle that is not already scheduled in the wheel.
+     *
+     * @param theHandle the handle
+     * @param theTick the tick the handle is due at, not negative
+     */
+    void schedule(final int theHandle, final long theTick) {
+        final int slot = (int) theTick & myMask;
+        myDue[theHandle] = theTick;
+        myNext[theHandle] = myHeads[slot];
+        myHeads[slot] = theHandle;
+    }
+
+    /**
+     * Takes every handle due at the given tick out of the wheel.
+     *
+     * @param theTick the tick
+     * @param theDue where to store the handles, in ascending order; must have room for
+     *        every handle
+     * @return the number of handles stored
+     */
+    int expire(final long theTick, final int[] theDue) {
+        final int slot = (int) theTick & myMask;
+        int count = 0;
+        int previous = NONE;
+        int handle = myHeads[slot];
+        while (handle != NONE) {
+            final int next = myNext[handle];
+            if (myDue[handle] == theTick) {
+                if (previous == NONE) {
+                    myHeads[slot] = next;
+                } else {
+                    myNext[previous] = next;
+                }
+                myNext[handle] = NONE;
+                myDue[handle] = UNSCHEDULED;
+                theDue[count++] = handle;
+            } else {
+                previous = handle;
+            }
+            handle = next;
+        }
+        Arrays.sort(theDue, 0, count);
+        return count;
+    }
+
+}
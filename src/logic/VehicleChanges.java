@@ -0,0 +1,295 @@
+package logic;
+
+import java.util.Arrays;
+import java.util.Objects;
+import model.Direction;
+
+/**
+ * The changes to the vehicles made by one tick of the simulation, fired with
+ * PROPERTY_VEHICLE_CHANGES. Each change names a vehicle by its handle, its index in the
+ * list fired with PROPERTY_VEHICLES, and says how it changed and what its state was
+ * afterwards. Changes are listed in the order they happened, so a vehicle that moved and
+ * was then run over appears twice. Vehicles that did not change are not listed.
+ *
+ * <p>The simulation reuses one buffer for every tick, so listeners must read it during
+ * the event and not keep it. After a reset every vehicle is listed as PLACED.
+ */
+public final class VehicleChanges {
+
+    /**
+     * The change flag for a vehicle that moved to another square.
+     */
+    public static final int MOVED = 1;
+
+    /**
+     * The change flag for a vehicle that turned to face another direction.
+     */
+    public static final int TURNED = 2;
+
+    /**
+     * The change flag for a vehicle that died.
+     */
+    public static final int DIED = 4;
+
+    /**
+     * The change flag for a vehicle that came back to life.
+     */
+    public static final int REVIVED = 8;
+
+    /**
+     * The change flag for a vehicle put in its starting state by a reset; its old
+     * position is its new one.
+     */
+    public static final int PLACED = 16;
+
+    /**
+     * The capacity of a new buffer.
+     */
+    private static final int INITIAL_CAPACITY = 64;
+
+    /**
+     * The directions, cached because Direction.values() returns a new array on every call.
+     */
+    private static final Direction[] DIRECTIONS = Direction.values();
+
+    /**
+     * The handle of each change.
+     */
+    private int[] myHandles = new int[INITIAL_CAPACITY];
+
+    /**
+     * The flags of each change.
+     */
+    private byte[] myFlags = new byte[INITIAL_CAPACITY];
+
+    /**
+     * The x-coordinate of each vehicle before the change.
+     */
+    private int[] myOldX = new int[INITIAL_CAPACITY];
+
+    /**
+     * The y-coordinate of each vehicle before the change.
+     */
+    private int[] myOldY = new int[INITIAL_CAPACITY];
+
+    /**
+     * The x-coordinate of each vehicle after the change.
+     */
+    private int[] myX = new int[INITIAL_CAPACITY];
+
+    /**
+     * The y-coordinate of each vehicle after the change.
+     */
+    private int[] myY = new int[INITIAL_CAPACITY];
+
+    /**
+     * The direction ordinal of each vehicle after the change.
+     */
+    private byte[] myDirections = new byte[INITIAL_CAPACITY];
+
+    /**
+     * Whether each vehicle is alive after the change.
+     */
+    private boolean[] myAlive = new boolean[INITIAL_CAPACITY];
+
+    /**
+     * The number of changes.
+     */
+    private int mySize;
+
+    /**
+     * The time step the changes led to.
+     */
+    private long myTimestep;
+
+    /**
+     * Whether the changes come from a reset.
+     */
+    private boolean myReset;
+
+    /**
+     * Creates an empty buffer.
+     */
+    VehicleChanges() {
+        // the arrays start empty and grow as needed
+    }
+
+    /**
+     * Returns the number of changes.
+     *
+     * @return the number of changes
+     */
+    public int size() {
+        return mySize;
+    }
+
+    /**
+     * Returns the time step the changes led to.
+     *
+     * @return the time step
+     */
+    public long getTimestep() {
+        return myTimestep;
+    }
+
+    /**
+     * Returns whether the changes come from a reset, which lists every vehicle as PLACED.
+     *
+     * @return whether the simulation was reset
+     */
+    public boolean isReset() {
+        return myReset;
+    }
+
+    /**
+     * Returns the handle of the vehicle that changed.
+     *
+     * @param theIndex the index of the change
+     * @return the vehicle handle
+     * @throws IndexOutOfBoundsException if there is no such change
+     */
+    public int getHandle(final int theIndex) {
+        return myHandles[check(theIndex)];
+    }
+
+    /**
+     * Returns how the vehicle changed, as a combination of MOVED, TURNED, DIED, REVIVED
+     * and PLACED.
+     *
+     * @param theIndex the index of the change
+     * @return the change flags
+     * @throws IndexOutOfBoundsException if there is no such change
+     */
+    public int getFlags(final int theIndex) {
+        return myFlags[check(theIndex)];
+    }
+
+    /**
+     * Returns the x-coordinate of the vehicle before the change.
+     *
+     * @param theIndex the index of the change
+     * @return the old x-coordinate
+     * @throws IndexOutOfBoundsException if there is no such change
+     */
+    public int getOldX(final int theIndex) {
+        return myOldX[check(theIndex)];
+    }
+
+    /**
+     * Returns the y-coordinate of the vehicle before the change.
+     *
+     * @param theIndex the index of the change
+     * @return the old y-coordinate
+     * @throws IndexOutOfBoundsException if there is no such change
+     */
+    public int getOldY(final int theIndex) {
+        return myOldY[check(theIndex)];
+    }
+
+    /**
+     * Returns the x-coordinate of the vehicle after the change.
+     *
+     * @param theIndex the index of the change
+     * @return the x-coordinate
+     * @throws IndexOutOfBoundsException if there is no such change
+     */
+    public int getX(final int theIndex) {
+        return myX[check(theIndex)];
+    }
+
+    /**
+     * Returns the y-coordinate of the vehicle after the change.
+     *
+     * @param theIndex the index of the change
+     * @return the y-coordinate
+     * @throws IndexOutOfBoundsException if there is no such change
+     */
+    public int getY(final int theIndex) {
+        return myY[check(theIndex)];
+    }
+
+    /**
+     * Returns the direction of the vehicle after the change.
+     *
+     * @param theIndex the index of the change
+     * @return the direction
+     * @throws IndexOutOfBoundsException if there is no such change
+     */
+    public Direction getDirection(final int theIndex) {
+        return DIRECTIONS[myDirections[check(theIndex)]];
+    }
+
+    /**
+     * Returns whether the vehicle is alive after the change.
+     *
+     * @param theIndex the index of the change
+     * @return whether the vehicle is alive
+     * @throws IndexOutOfBoundsException if there is no such change
+     */
+    public boolean isAlive(final int theIndex) {
+        return myAlive[check(theIndex)];
+    }
+
+    /**
+     * Empties the buffer for the changes of a new tick.
+     *
+     * @param theTimestep the time step the changes lead to
+     * @param theReset whether the changes come from a reset
+     */
+    void clear(final long theTimestep, final boolean theReset) {
+        mySize = 0;
+        myTimestep = theTimestep;
+        myReset = theReset;
+    }
+
+    /**
+     * Adds a change, reading the state of the vehicle after it from the store.
+     *
+     * @param theVehicles the vehicles
+     * @param theHandle the handle of the vehicle that changed
+     * @param theFlags the change flags
+     * @param theOldX the x-coordinate before the change
+     * @param theOldY the y-coordinate before the change
+     */
+    void add(final VehicleStore theVehicles, final int theHandle, final int theFlags,
+             final int theOldX, final int theOldY) {
+        if (mySize == myHandles.length) {
+            grow();
+        }
+        final int i = mySize++;
+        myHandles[i] = theHandle;
+        myFlags[i] = (byte) theFlags;
+        myOldX[i] = theOldX;
+        myOldY[i] = theOldY;
+        myX[i] = theVehicles.getX(theHandle);
+        myY[i] = theVehicles.getY(theHandle);
+        myDirections[i] = (byte) theVehicles.getDirection(theHandle).ordinal();
+        myAlive[i] = theVehicles.isAlive(theHandle);
+    }
+
+    /**
+     * Doubles the capacity of the buffer.
+     */
+    private void grow() {
+        final int capacity = myHandles.length * 2;
+        myHandles = Arrays.copyOf(myHandles, capacity);
+        myFlags = Arrays.copyOf(myFlags, capacity);
+        myOldX = Arrays.copyOf(myOldX, capacity);
+        myOldY = Arrays.copyOf(myOldY, capacity);
+        myX = Arrays.copyOf(myX, capacity);
+        myY = Arrays.copyOf(myY, capacity);
+        myDirections = Arrays.copyOf(myDirections, capacity);
+        myAlive = Arrays.copyOf(myAlive, capacity);
+    }
+
+    /**
+     * Checks the index of a change.
+     *
+     * @param theIndex the index
+     * @return the index
+     * @throws IndexOutOfBoundsException if there is no such change
+     */
+    private int check(final int theIndex) {
+        return Objects.checkIndex(theIndex, mySize);
+    }
+}
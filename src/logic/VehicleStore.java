@@ -0,0 +1,196 @@
+package logic;
+
+import java.util.List;
+import java.util.SplittableRandom;
+import model.Direction;
+import model.Vehicle;
+
+/**
+ * The vehicle state of a RoadRage simulation, addressed by vehicle handle.
+ * 
+ * A handle is the index of a vehicle in the list the simulation was built from. The 
+ * simulation only ever reads and changes vehicles through a store, so the state may be 
+ * kept in Vehicle objects or packed into arrays without the tick loop knowing which.
+ */
+abstract class VehicleStore {
+
+    /**
+     * The intent of a vehicle that is dead and will not move.
+     */
+    static final byte NO_INTENT = -1;
+
+    /**
+     * The intent bit set when the chosen square may be entered.
+     */
+    static final int PASS = 4;
+
+    /**
+     * The directions, cached because Direction.values() returns a new array on every call.
+     */
+    private static final Direction[] DIRECTIONS = Direction.values();
+
+    /**
+     * Returns the number of vehicles in the store.
+     * 
+     * @return the number of vehicles.
+     */
+    abstract int size();
+
+    /**
+     * Returns the x-coordinate of a vehicle.
+     * 
+     * @param theHandle The vehicle handle.
+     * @return the x-coordinate.
+     */
+    abstract int getX(int theHandle);
+
+    /**
+     * Returns the y-coordinate of a vehicle.
+     * 
+     * @param theHandle The vehicle handle.
+     * @return the y-coordinate.
+     */
+    abstract int getY(int theHandle);
+
+    /**
+     * Moves a vehicle to the given position.
+     * 
+     * @param theHandle The vehicle handle.
+     * @param theX The new x-coordinate.
+     * @param theY The new y-coordinate.
+     */
+    abstract void setPosition(int theHandle, int theX, int theY);
+
+    /**
+     * Sets the facing direction of a vehicle.
+     * 
+     * @param theHandle The vehicle handle.
+     * @param theDirection The new direction.
+     */
+    abstract void setDirection(int theHandle, Direction theDirection);
+
+    /**
+     * Returns the facing direction of a vehicle.
+     * 
+     * @param theHandle The vehicle handle.
+     * @return the direction.
+     */
+    abstract Direction getDirection(int theHandle);
+
+    /**
+     * Returns whether a vehicle is alive.
+     * 
+     * @param theHandle The vehicle handle.
+     * @return true if the vehicle is alive, false otherwise.
+     */
+    abstract boolean isAlive(int theHandle);
+
+    /**
+     * Decides where each living vehicle in a range of handles wants to go this tick and 
+     * whether it may, storing the result as an intent: the ordinal of the chosen direction, 
+     * plus PASS if the vehicle may enter the square in that direction, or NO_INTENT for dead 
+     * vehicles. Only the vehicles in the range are read or changed, so disjoint ranges may 
+     * be decided on different threads at the same time.
+     * 
+     * @param theStart The first handle of the range.
+     * @param theEnd The handle after the last one in the range.
+     * @param theNeighbors The neighbors of every square of the map.
+     * @param theSignals The lights of every square of the map.
+     * @param theIntents The intent of each vehicle, by handle.
+     */
+    abstract void chooseIntents(int theStart, int theEnd, NeighborTable theNeighbors,
+                                SignalNetwork theSignals, byte[] theIntents);
+
+    /**
+     * Tells two vehicles that they have collided, the first one first.
+     * 
+     * @param theHandle The vehicle handle.
+     * @param theOther The handle of the vehicle it collided with.
+     */
+    abstract void collide(int theHandle, int theOther);
+
+    /**
+     * Moves a dead vehicle the given number of updates closer to revival, stopping early 
+     * if it revives.
+     * 
+     * @param theHandle The vehicle handle.
+     * @param theUpdates The number of updates that have passed.
+     * @return whether the vehicle is alive afterwards.
+     */
+    abstract boolean poke(int theHandle, int theUpdates);
+
+    /**
+     * Returns the number of updates a vehicle stays dead.
+     * 
+     * @param theHandle The vehicle handle.
+     * @return the death time of the vehicle.
+     */
+    abstract int getDeathTime(int theHandle);
+
+    /**
+     * Puts every vehicle back in its original state.
+     */
+    abstract void reset();
+
+    /**
+     * Gives every vehicle its own stream of random numbers, derived from the given seed. 
+     * The same seed always gives each handle the same stream, in every kind of store.
+     * 
+     * @param theSeed The master seed.
+     */
+    abstract void seed(long theSeed);
+
+    /**
+     * Returns the vehicles in handle order, as Vehicle objects for listeners.
+     * 
+     * @return a read-only list of the vehicles.
+     */
+    abstract List<Vehicle> getVehicles();
+
+    /**
+     * Derives the seed of each vehicle's random number stream from a master seed. Vehicle 
+     * streams are SplittableRandom sequences started from these seeds.
+     * 
+     * @param theSeed The master seed.
+     * @return the seed of each vehicle, by handle.
+     */
+    long[] streamSeeds(final long theSeed) {
+        final SplittableRandom seeder = new SplittableRandom(theSeed);
+        final long[] result = new long[size()];
+        for (int h = 0; h < result.length; h++) {
+            result[h] = seeder.nextLong();
+        }
+        return result;
+    }
+
+    /**
+     * Encodes an intent.
+     * 
+     * @param theDirection The chosen direction.
+     * @param thePass Whether the square in that direction may be entered.
+     * @return the intent.
+     */
+    static byte intent(final Direction theDirection, final boolean thePass) {
+        return (byte) (theDirection.ordinal() | (thePass ? PASS : 0));
+    }
+
+    /**
+     * Returns the direction of an intent.
+     * 
+     * @param theIntent The intent, not NO_INTENT.
+     * @return the chosen direction.
+     */
+    static Direction directionOf(final byte theIntent) {
+        return DIRECTIONS[theIntent & ~PASS];
+    }
+
+    /**
+     * Returns whether an intent may enter the square in its direction.
+     * 
+     * @param theIntent The intent, not NO_INTENT.
+     * @return whether the vehicle may move.
+     */
+    static boolean passes(final byte theIntent) {
+        return (theIntent & PASS) != 0;
+    }
+}
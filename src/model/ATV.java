@@ -1,12 +1,14 @@
 package model;
 
 import java.util.Map;
+import java.util.random.RandomGenerator;
 
 public class ATV extends AbstractVehicle{
 
-    private static final int deathTime = 25;
-    private static final String IMAGE_ALIVE = "atv.gif";
-    private static final String IMAGE_DEAD = "atv_dead.gif";
+    static final int deathTime = 25;
+    static final String IMAGE_ALIVE = "atv.gif";
+    static final String IMAGE_DEAD = "atv_dead.gif";
+    private static final int NOT_WALL = ~terrainMask(Terrain.WALL);
 
     /**
      * the constructor for the ATV class, calls the super constructor in AbstractVehicle
@@ -26,6 +28,16 @@ public class ATV extends AbstractVehicle{
      */
     @Override
     public boolean canPass(Terrain theTerrain, Light theLight) {
+        return isPassable(theTerrain, theLight);
+    }
+
+    /**
+     * the passability rules shared by every ATV, used by canPass and by VehicleKind
+     * @param theTerrain The terrain.
+     * @param theLight The light color.
+     * @return true/false
+     */
+    static boolean isPassable(Terrain theTerrain, Light theLight) {
         return theTerrain != Terrain.WALL;
     }
 
@@ -36,30 +48,18 @@ public class ATV extends AbstractVehicle{
      */
     @Override
     public Direction chooseDirection(Map<Direction, Terrain> theNeighbors) {
-        int random = super.getRandomNum().nextInt(3) + 1;  //getting a random num
+        return chooseDirection(getDirection(), theNeighbors, getRandomNum());
+    }
 
-        switch (random){
-            case 1:  //checking if it can turn left
-                if(theNeighbors.get(getDirection().left()) == Terrain.STREET || theNeighbors.get(getDirection().left()) == Terrain.LIGHT ||
-                        theNeighbors.get(getDirection().left()) == Terrain.CROSSWALK || theNeighbors.get(getDirection().left()) == Terrain.GRASS
-                || theNeighbors.get(getDirection().left()) == Terrain.TRAIL){
-                    return getDirection().left();
-                }
-            case 2: //checking if it can go straight
-                if(theNeighbors.get(getDirection()) == Terrain.STREET || theNeighbors.get(getDirection()) == Terrain.LIGHT ||
-                        theNeighbors.get(getDirection()) == Terrain.CROSSWALK || theNeighbors.get(getDirection()) == Terrain.GRASS
-                || theNeighbors.get(getDirection()) == Terrain.TRAIL){
-                    return getDirection();
-                }
-            case 3: //checking if it can turn right
-                if(theNeighbors.get(getDirection().right()) == Terrain.STREET || theNeighbors.get(getDirection().right()) == Terrain.LIGHT ||
-                        theNeighbors.get(getDirection().right()) == Terrain.CROSSWALK || theNeighbors.get(getDirection().right()) == Terrain.GRASS
-                || theNeighbors.get(getDirection().right()) == Terrain.TRAIL){
-                    return getDirection().right();
-                }
-            default:
-                return chooseDirection(theNeighbors);  //if not, then call the method again to find the right way to go
-        }
+    /**
+     * the direction rules shared by every ATV, used by chooseDirection and by VehicleKind
+     * @param theDir the current direction of the ATV
+     * @param theNeighbors The map of neighboring terrain.
+     * @param theRandom the random number source of the ATV
+     * @return a Direction: either current (straight), left, right, reverse
+     */
+    static Direction chooseDirection(Direction theDir, Map<Direction, Terrain> theNeighbors, RandomGenerator theRandom) {
+        return pickTurn(theDir, candidates(theDir, theNeighbors, NOT_WALL), theRandom);
     }
 
     /**
@@ -68,8 +68,7 @@ public class ATV extends AbstractVehicle{
      */
     @Override
     public void collide(Vehicle theOther) {
-        String otherName = theOther.getClass().getSimpleName().toLowerCase();
-        if((otherName.equals("truck") || otherName.equals("car") || otherName.equals("taxi")) && theOther.isAlive()){
+        if(theOther.isAlive() && VehicleKind.ATV.isKilledBy(VehicleKind.of(theOther))){
             die();
         }
     }
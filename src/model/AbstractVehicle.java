@@ -1,5 +1,7 @@
 package model;
-import java.util.Random;
+import java.util.Map;
+import java.util.SplittableRandom;
+import java.util.random.RandomGenerator;
 
 /**
  * the AbstractVehicle class is the parent class for all vehicles. It contains many methods that all the vehicles must implement that are defined in the
@@ -7,11 +9,16 @@ import java.util.Random;
  */
 public abstract class AbstractVehicle implements Vehicle {  //not instantiable because its abstract
 
-    private final Random randomNum;
+    static final int LEFT = 1;      //bits of a mask of candidate turns
+    static final int STRAIGHT = 2;
+    static final int RIGHT = 4;
+
+    private RandomGenerator randomNum;
     private Direction theDir;
     private int theX;
     private int theY;
-    private int deathTime;
+    private final int deathTime;
+    private int reviveIn;
     private final String imageAlive;
     private final String imageDead;
     private final int  originalX;
@@ -29,7 +36,7 @@ public abstract class AbstractVehicle implements Vehicle {  //not instantiable b
      * @param imageDead the image file name for when the vehicle is dead
      */
     protected AbstractVehicle(int theX, int theY, Direction theDir, int deathTime, String imageAlive, String imageDead){
-        randomNum = new Random();
+        randomNum = new SplittableRandom();
         this.theDir = theDir;
         originalDir = theDir;
         this.theX= theX;
@@ -104,6 +111,8 @@ public abstract class AbstractVehicle implements Vehicle {  //not instantiable b
      * @param alive boolean that is either true/false depending on if vehicle should be set to alive/dead
      */
     protected void setAlive(boolean alive){
+        if(!alive && isAlive)
+            reviveIn = deathTime;  //start counting down to revival
         isAlive = alive;
     }
 
@@ -116,13 +125,16 @@ public abstract class AbstractVehicle implements Vehicle {  //not instantiable b
     }
 
     /**
-     * method that the GUI calls to decrement a dead vehicle's death time so that it will eventually revive itself
+     * method that the GUI calls on a dead vehicle once per update, the vehicle revives itself after
+     * its death time has passed; poking a living vehicle does nothing
      */
     @Override
     public void poke() {
-        deathTime--;
-        if(deathTime == 0) {
-            theDir = Direction.random();
+        if(isAlive())
+            return;
+        reviveIn--;
+        if(reviveIn <= 0) {
+            theDir = Direction.random(randomNum);
             setAlive(true);
         }
     }
@@ -136,7 +148,7 @@ public abstract class AbstractVehicle implements Vehicle {  //not instantiable b
         theX = originalX;
         theY = originalY;
         setAlive(true);
-        deathTime=0;
+        reviveIn = 0;
     }
 
     /**
@@ -183,7 +195,83 @@ public abstract class AbstractVehicle implements Vehicle {  //not instantiable b
      * method to return randomNum
      * @return randomNum
      */
-    protected Random getRandomNum(){
+    protected RandomGenerator getRandomNum(){
         return randomNum;
     }
+
+    /**
+     * method the simulation calls to give the vehicle its own seeded stream of random numbers,
+     * so that runs can be repeated; the vehicle must be the only user of the stream
+     * @param theRandom the random number source for this vehicle
+     */
+    public void setRandomNum(RandomGenerator theRandom){
+        randomNum = theRandom;
+    }
+
+    /**
+     * method that makes a mask of terrains for use with candidates, one bit per terrain ordinal
+     * @param theTerrains the terrains in the mask
+     * @return the mask
+     */
+    static int terrainMask(Terrain... theTerrains){
+        int result = 0;
+        for(Terrain terrain : theTerrains)
+            result |= 1 << terrain.ordinal();
+        return result;
+    }
+
+    /**
+     * method that finds which of the turns left, straight and right lead onto one of the given terrains
+     * @param theDir the current direction
+     * @param theNeighbors The map of neighboring terrain.
+     * @param theTerrains the terrains to look for, made by terrainMask
+     * @return a mask of LEFT, STRAIGHT and RIGHT
+     */
+    static int candidates(Direction theDir, Map<Direction, Terrain> theNeighbors, int theTerrains){
+        int result = 0;
+        if(isIn(theNeighbors.get(theDir.left()), theTerrains))
+            result |= LEFT;
+        if(isIn(theNeighbors.get(theDir), theTerrains))
+            result |= STRAIGHT;
+        if(isIn(theNeighbors.get(theDir.right()), theTerrains))
+            result |= RIGHT;
+        return result;
+    }
+
+    /**
+     * method that picks one of the candidate turns, each with the same chance, and turns around
+     * if there are none; it draws at most one random number and never recurses or allocates
+     * @param theDir the current direction
+     * @param theCandidates a mask of LEFT, STRAIGHT and RIGHT, made by candidates
+     * @param theRandom the random number source of the vehicle
+     * @return a Direction: either current (straight), left, right, reverse
+     */
+    static Direction pickTurn(Direction theDir, int theCandidates, RandomGenerator theRandom){
+        if(theCandidates == 0)
+            return theDir.reverse();   //if no other way, turn around
+        int pick = theCandidates;
+        int count = Integer.bitCount(theCandidates);
+        if(count > 1){
+            for(int skip = theRandom.nextInt(count); skip > 0; skip--)
+                pick &= pick - 1;   //drop the lowest candidate, at most twice
+        }
+        switch(Integer.lowestOneBit(pick)){
+            case LEFT:
+                return theDir.left();
+            case STRAIGHT:
+                return theDir;
+            default:
+                return theDir.right();
+        }
+    }
+
+    /**
+     * method that checks if a terrain is in a terrain mask
+     * @param theTerrain the terrain, or null if there is none
+     * @param theTerrains the mask, made by terrainMask
+     * @return true if the terrain is in the mask
+     */
+    private static boolean isIn(Terrain theTerrain, int theTerrains){
+        return theTerrain != null && (theTerrains & 1 << theTerrain.ordinal()) != 0;
+    }
 }
@@ -4,9 +4,9 @@ import java.util.Map;
 
 public class Bicycle extends AbstractVehicle{
 
-    private static final int deathTime = 35;
-    private static final String IMAGE_ALIVE = "bicycle.gif";
-    private static final String IMAGE_DEAD = "bicycle_dead.gif";
+    static final int deathTime = 35;
+    static final String IMAGE_ALIVE = "bicycle.gif";
+    static final String IMAGE_DEAD = "bicycle_dead.gif";
 
     /**
      * the constructor for the Bicycle class, calls the super constructor in AbstractVehicle
@@ -26,6 +26,16 @@ public class Bicycle extends AbstractVehicle{
      */
     @Override
     public boolean canPass(Terrain theTerrain, Light theLight) {
+        return isPassable(theTerrain, theLight);
+    }
+
+    /**
+     * the passability rules shared by every bicycle, used by canPass and by VehicleKind
+     * @param theTerrain The terrain.
+     * @param theLight The light color.
+     * @return true/false
+     */
+    static boolean isPassable(Terrain theTerrain, Light theLight) {
         return switch (theTerrain) {
             case STREET, TRAIL -> true;
             case LIGHT, CROSSWALK ->
@@ -42,23 +52,33 @@ public class Bicycle extends AbstractVehicle{
      */
     @Override
     public Direction chooseDirection(Map<Direction, Terrain> theNeighbors) {
-        if(theNeighbors.get(getDirection()) == Terrain.TRAIL)   //preferring trails
-            return getDirection();
-        else if(theNeighbors.get(getDirection().left()) == Terrain.TRAIL)
-            return getDirection().left();
-        else if(theNeighbors.get(getDirection().right()) == Terrain.TRAIL)
-            return getDirection().right();
-        else if(theNeighbors.get(getDirection()) == Terrain.STREET || theNeighbors.get(getDirection()) == Terrain.LIGHT ||
-            theNeighbors.get(getDirection()) == Terrain.CROSSWALK)
-            return getDirection();
-        else if(theNeighbors.get(getDirection().left()) == Terrain.STREET || theNeighbors.get(getDirection().left()) == Terrain.LIGHT ||
-                theNeighbors.get(getDirection().left()) == Terrain.CROSSWALK)
-            return getDirection().left();
-        else if(theNeighbors.get(getDirection().right()) == Terrain.STREET || theNeighbors.get(getDirection().right()) == Terrain.LIGHT ||
-                theNeighbors.get(getDirection().right()) == Terrain.CROSSWALK)
-            return getDirection().right();
+        return chooseDirection(getDirection(), theNeighbors);
+    }
+
+    /**
+     * the direction rules shared by every bicycle, used by chooseDirection and by VehicleKind
+     * @param theDir the current direction of the bicycle
+     * @param theNeighbors The map of neighboring terrain.
+     * @return a Direction: either current (straight), left, right, reverse
+     */
+    static Direction chooseDirection(Direction theDir, Map<Direction, Terrain> theNeighbors) {
+        if(theNeighbors.get(theDir) == Terrain.TRAIL)   //preferring trails
+            return theDir;
+        else if(theNeighbors.get(theDir.left()) == Terrain.TRAIL)
+            return theDir.left();
+        else if(theNeighbors.get(theDir.right()) == Terrain.TRAIL)
+            return theDir.right();
+        else if(theNeighbors.get(theDir) == Terrain.STREET || theNeighbors.get(theDir) == Terrain.LIGHT ||
+            theNeighbors.get(theDir) == Terrain.CROSSWALK)
+            return theDir;
+        else if(theNeighbors.get(theDir.left()) == Terrain.STREET || theNeighbors.get(theDir.left()) == Terrain.LIGHT ||
+                theNeighbors.get(theDir.left()) == Terrain.CROSSWALK)
+            return theDir.left();
+        else if(theNeighbors.get(theDir.right()) == Terrain.STREET || theNeighbors.get(theDir.right()) == Terrain.LIGHT ||
+                theNeighbors.get(theDir.right()) == Terrain.CROSSWALK)
+            return theDir.right();
         else
-            return getDirection().reverse();
+            return theDir.reverse();
     }
 
     /**
@@ -67,8 +87,7 @@ public class Bicycle extends AbstractVehicle{
      */
     @Override
     public void collide(Vehicle theOther) {
-        String otherName = theOther.getClass().getSimpleName().toLowerCase();
-        if((otherName.equals("truck") || otherName.equals("car") || otherName.equals("taxi") || otherName.equals("atv")) && theOther.isAlive()){
+        if(theOther.isAlive() && VehicleKind.BICYCLE.isKilledBy(VehicleKind.of(theOther))){
             die();
         }
     }
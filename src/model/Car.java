@@ -4,9 +4,9 @@ import java.util.Map;
 
 public class Car extends AbstractVehicle {
 
-    private static final int deathTime = 15;
-    private static final String IMAGE_ALIVE = "car.gif";
-    private static final String IMAGE_DEAD = "car_dead.gif";
+    static final int deathTime = 15;
+    static final String IMAGE_ALIVE = "car.gif";
+    static final String IMAGE_DEAD = "car_dead.gif";
 
     /**
      * the constructor for the Car class, calls the super constructor in AbstractVehicle
@@ -26,6 +26,16 @@ public class Car extends AbstractVehicle {
      */
     @Override
     public boolean canPass(Terrain theTerrain, Light theLight) {
+        return isPassable(theTerrain, theLight);
+    }
+
+    /**
+     * the passability rules shared by every car, used by canPass and by VehicleKind
+     * @param theTerrain The terrain.
+     * @param theLight The light color.
+     * @return true/false
+     */
+    static boolean isPassable(Terrain theTerrain, Light theLight) {
         return switch (theTerrain) {
             case STREET -> true;
             case LIGHT -> theLight != Light.RED;
@@ -41,17 +51,27 @@ public class Car extends AbstractVehicle {
      */
     @Override
     public Direction chooseDirection(Map<Direction, Terrain> theNeighbors) {
-        if(theNeighbors.get(getDirection()) == Terrain.STREET || theNeighbors.get(getDirection()) == Terrain.LIGHT ||
-                theNeighbors.get(getDirection()) == Terrain.CROSSWALK){
-            return getDirection();
-        }else if(theNeighbors.get(getDirection().left()) == Terrain.STREET || theNeighbors.get(getDirection().left()) == Terrain.LIGHT ||
-                theNeighbors.get(getDirection().left()) == Terrain.CROSSWALK){
-            return getDirection().left();
-        }else if(theNeighbors.get(getDirection().right()) == Terrain.STREET || theNeighbors.get(getDirection().right()) == Terrain.LIGHT ||
-                theNeighbors.get(getDirection().right()) == Terrain.CROSSWALK){
-            return getDirection().right();
+        return chooseDirection(getDirection(), theNeighbors);
+    }
+
+    /**
+     * the direction rules shared by every car, used by chooseDirection and by VehicleKind
+     * @param theDir the current direction of the car
+     * @param theNeighbors The map of neighboring terrain.
+     * @return a Direction: either current (straight), left, right, reverse
+     */
+    static Direction chooseDirection(Direction theDir, Map<Direction, Terrain> theNeighbors) {
+        if(theNeighbors.get(theDir) == Terrain.STREET || theNeighbors.get(theDir) == Terrain.LIGHT ||
+                theNeighbors.get(theDir) == Terrain.CROSSWALK){
+            return theDir;
+        }else if(theNeighbors.get(theDir.left()) == Terrain.STREET || theNeighbors.get(theDir.left()) == Terrain.LIGHT ||
+                theNeighbors.get(theDir.left()) == Terrain.CROSSWALK){
+            return theDir.left();
+        }else if(theNeighbors.get(theDir.right()) == Terrain.STREET || theNeighbors.get(theDir.right()) == Terrain.LIGHT ||
+                theNeighbors.get(theDir.right()) == Terrain.CROSSWALK){
+            return theDir.right();
         }else{
-            return getDirection().reverse();
+            return theDir.reverse();
         }
     }
 
@@ -61,7 +81,7 @@ public class Car extends AbstractVehicle {
      */
     @Override
     public void collide(Vehicle theOther) {
-        if(theOther.getClass().getSimpleName().equalsIgnoreCase("truck") && theOther.isAlive()){
+        if(theOther.isAlive() && VehicleKind.CAR.isKilledBy(VehicleKind.of(theOther))){
             die();
         }
     }
@@ -4,7 +4,8 @@
 
 package model;
 
-import java.util.Random;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.random.RandomGenerator;
 
 /**
  * An enumeration (and associated functionality) for directions in which a
@@ -38,11 +39,6 @@ public enum Direction {
      */
     EAST('E');
 
-    /**
-     * A Random that we use for generating random directions.
-     */
-    private static final Random RANDOM = new Random();
-
     /**
      * The letter corresponding to a particular value of the enumeration.
      */
@@ -125,12 +121,24 @@ public enum Direction {
     }
 
     /**
-     * Returns a random Direction.
+     * Returns a random Direction, drawn from the calling thread's own generator so that 
+     * threads never contend for it. Use random(RandomGenerator) for repeatable results.
      * 
      * @return a random Direction.
      */
     public static Direction random() {
-        return values()[RANDOM.nextInt(values().length)];
+        return random(ThreadLocalRandom.current());
+    }
+
+    /**
+     * Returns a random Direction drawn from the given random number source.
+     * 
+     * @param theRandom The random number source.
+     * @return a random Direction.
+     */
+    public static Direction random(final RandomGenerator theRandom) {
+        final Direction[] values = values();
+        return values[theRandom.nextInt(values.length)];
     }
 
     /**
@@ -1,12 +1,14 @@
 package model;
 
 import java.util.Map;
+import java.util.random.RandomGenerator;
 
 public class Human extends AbstractVehicle{
 
-    private static final int deathTime = 45;
-    private static final String IMAGE_ALIVE = "human.gif";
-    private static final String IMAGE_DEAD = "human_dead.gif";
+    static final int deathTime = 45;
+    static final String IMAGE_ALIVE = "human.gif";
+    static final String IMAGE_DEAD = "human_dead.gif";
+    private static final int WALKABLE = terrainMask(Terrain.GRASS);
 
     /**
      * the constructor for the Human class, calls the super constructor in AbstractVehicle
@@ -26,6 +28,16 @@ public class Human extends AbstractVehicle{
      */
     @Override
     public boolean canPass(Terrain theTerrain, Light theLight) {
+        return isPassable(theTerrain, theLight);
+    }
+
+    /**
+     * the passability rules shared by every human, used by canPass and by VehicleKind
+     * @param theTerrain The terrain.
+     * @param theLight The light color.
+     * @return true/false
+     */
+    static boolean isPassable(Terrain theTerrain, Light theLight) {
         return switch (theTerrain) {
             case GRASS -> true;
             case CROSSWALK -> theLight != Light.GREEN;
@@ -40,34 +52,25 @@ public class Human extends AbstractVehicle{
      */
     @Override
     public Direction chooseDirection(Map<Direction, Terrain> theNeighbors) {
-        int random = super.getRandomNum().nextInt(3) + 1;  //getting a random num
+        return chooseDirection(getDirection(), theNeighbors, getRandomNum());
+    }
 
-        if(theNeighbors.get(getDirection()) == Terrain.CROSSWALK)   //preferring to go on a crosswalk
-            return getDirection();
-        else if(theNeighbors.get(getDirection().left()) == Terrain.CROSSWALK)
-            return getDirection().left();
-        else if(theNeighbors.get(getDirection().right()) == Terrain.CROSSWALK)
-            return getDirection().right();
+    /**
+     * the direction rules shared by every human, used by chooseDirection and by VehicleKind
+     * @param theDir the current direction of the human
+     * @param theNeighbors The map of neighboring terrain.
+     * @param theRandom the random number source of the human
+     * @return a Direction: either current (straight), left, right, reverse
+     */
+    static Direction chooseDirection(Direction theDir, Map<Direction, Terrain> theNeighbors, RandomGenerator theRandom) {
+        if(theNeighbors.get(theDir) == Terrain.CROSSWALK)   //preferring to go on a crosswalk
+            return theDir;
+        else if(theNeighbors.get(theDir.left()) == Terrain.CROSSWALK)
+            return theDir.left();
+        else if(theNeighbors.get(theDir.right()) == Terrain.CROSSWALK)
+            return theDir.right();
 
-        switch (random) {
-            case 1:  //checking if it can turn left
-                if (theNeighbors.get(getDirection().left()) == Terrain.GRASS) {
-                    return getDirection().left();
-                }
-            case 2: //checking if it can go straight
-                if (theNeighbors.get(getDirection()) == Terrain.GRASS) {
-                    return getDirection();
-                }
-            case 3: //checking if it can turn right
-                if (theNeighbors.get(getDirection().right()) == Terrain.GRASS) {
-                    return getDirection().right();
-                }
-            default:
-                if (theNeighbors.get(getDirection()) != Terrain.GRASS && theNeighbors.get(getDirection().left()) != Terrain.GRASS && theNeighbors.get(getDirection().right()) != Terrain.GRASS) {
-                    return getDirection().reverse();   //if no other way, turn around
-                } else
-                    return chooseDirection(theNeighbors);  //if not, then call the method again to find the right way to go
-        }
+        return pickTurn(theDir, candidates(theDir, theNeighbors, WALKABLE), theRandom);
     }
 
     /**
@@ -76,8 +79,7 @@ public class Human extends AbstractVehicle{
      */
     @Override
     public void collide(Vehicle theOther) {
-        String otherName = theOther.getClass().getSimpleName().toLowerCase();
-        if((otherName.equals("truck") || otherName.equals("car") || otherName.equals("taxi") || otherName.equals("atv") || otherName.equals("bicycle")) && theOther.isAlive()){
+        if(theOther.isAlive() && VehicleKind.HUMAN.isKilledBy(VehicleKind.of(theOther))){
             die();
         }
     }
@@ -4,10 +4,11 @@ import java.util.Map;
 
 public class Taxi extends AbstractVehicle {
 
-    private static final int deathTime = 15;
-    private static final String IMAGE_ALIVE = "taxi.gif";
-    private static final String IMAGE_DEAD = "taxi_dead.gif";
-    private static int clockTicks = 0;
+    static final int deathTime = 15;
+    static final String IMAGE_ALIVE = "taxi.gif";
+    static final String IMAGE_DEAD = "taxi_dead.gif";
+    static final int CROSSWALK_WAIT = 3;
+    private int clockTicks = 0;
 
     /**
      * the constructor for the Taxi class, calls the super constructor in AbstractVehicle
@@ -27,27 +28,53 @@ public class Taxi extends AbstractVehicle {
      */
     @Override
     public boolean canPass(Terrain theTerrain, Light theLight) {
+        boolean result = isPassable(theTerrain, theLight, clockTicks);
+        if(isWaiting(theTerrain, theLight)) {
+            clockTicks = result ? 0 : clockTicks + 1;   //count the wait, start over once through
+        }
+        return result;
+    }
+
+    /**
+     * the passability rules shared by every taxi, used by canPass and by VehicleKind
+     * @param theTerrain The terrain.
+     * @param theLight The light color.
+     * @param theWaited how many times in a row this taxi has been stopped at a red crosswalk
+     * @return true/false
+     */
+    static boolean isPassable(Terrain theTerrain, Light theLight, int theWaited) {
         switch (theTerrain) {
             case STREET:
                 return true;
             case LIGHT:
                 return theLight != Light.RED;
             case CROSSWALK: //if red, will only stop for 3 sec or till green
-                if(theLight == Light.RED && clockTicks >= 3) {
-                    clockTicks = 0;
-                    return true;
-                }else if(theLight == Light.RED){
-                    clockTicks++;
-                    return false;
-                }
-                else {
-                    return true;
-                }
+                return theLight != Light.RED || theWaited >= CROSSWALK_WAIT;
             default:
                 return false;
         }
     }
 
+    /**
+     * method that checks if a taxi trying to pass this terrain is stopped at a red crosswalk,
+     * where it counts how long it has waited
+     * @param theTerrain The terrain.
+     * @param theLight The light color.
+     * @return true if the taxi has to count its wait
+     */
+    static boolean isWaiting(Terrain theTerrain, Light theLight) {
+        return theTerrain == Terrain.CROSSWALK && theLight == Light.RED;
+    }
+
+    /**
+     * method that puts the taxi back in its starting state, including its crosswalk wait
+     */
+    @Override
+    public void reset() {
+        super.reset();
+        clockTicks = 0;
+    }
+
     /**
      * method that chooses the direction for the vehicle based on requirements
      * @param theNeighbors The map of neighboring terrain.
@@ -55,17 +82,27 @@ public class Taxi extends AbstractVehicle {
      */
     @Override
     public Direction chooseDirection(Map<Direction, Terrain> theNeighbors) {
-        if(theNeighbors.get(getDirection()) == Terrain.STREET || theNeighbors.get(getDirection()) == Terrain.LIGHT ||
-                theNeighbors.get(getDirection()) == Terrain.CROSSWALK){
-            return getDirection();
-        }else if(theNeighbors.get(getDirection().left()) == Terrain.STREET || theNeighbors.get(getDirection().left()) == Terrain.LIGHT ||
-                theNeighbors.get(getDirection().left()) == Terrain.CROSSWALK){
-            return getDirection().left();
-        }else if(theNeighbors.get(getDirection().right()) == Terrain.STREET || theNeighbors.get(getDirection().right()) == Terrain.LIGHT ||
-                theNeighbors.get(getDirection().right()) == Terrain.CROSSWALK){
-            return getDirection().right();
+        return chooseDirection(getDirection(), theNeighbors);
+    }
+
+    /**
+     * the direction rules shared by every taxi, used by chooseDirection and by VehicleKind
+     * @param theDir the current direction of the taxi
+     * @param theNeighbors The map of neighboring terrain.
+     * @return a Direction: either current (straight), left, right, reverse
+     */
+    static Direction chooseDirection(Direction theDir, Map<Direction, Terrain> theNeighbors) {
+        if(theNeighbors.get(theDir) == Terrain.STREET || theNeighbors.get(theDir) == Terrain.LIGHT ||
+                theNeighbors.get(theDir) == Terrain.CROSSWALK){
+            return theDir;
+        }else if(theNeighbors.get(theDir.left()) == Terrain.STREET || theNeighbors.get(theDir.left()) == Terrain.LIGHT ||
+                theNeighbors.get(theDir.left()) == Terrain.CROSSWALK){
+            return theDir.left();
+        }else if(theNeighbors.get(theDir.right()) == Terrain.STREET || theNeighbors.get(theDir.right()) == Terrain.LIGHT ||
+                theNeighbors.get(theDir.right()) == Terrain.CROSSWALK){
+            return theDir.right();
         }else{
-            return getDirection().reverse();
+            return theDir.reverse();
         }
     }
 
@@ -75,7 +112,7 @@ public class Taxi extends AbstractVehicle {
      */
     @Override
     public void collide(Vehicle theOther) {
-        if(theOther.getClass().getSimpleName().equalsIgnoreCase("truck")  && theOther.isAlive()){
+        if(theOther.isAlive() && VehicleKind.TAXI.isKilledBy(VehicleKind.of(theOther))){
             die();
         }
     }
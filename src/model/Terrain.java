@@ -45,6 +45,11 @@ public enum Terrain {
      */
     CROSSWALK('#');
 
+    /**
+     * The Terrain of each 8-bit letter, GRASS for letters that stand for no Terrain.
+     */
+    private static final Terrain[] BY_LETTER = new Terrain[256];
+
     /**
      * The character corresponding to a particular value of the enumeration.
      */
@@ -61,6 +66,15 @@ public enum Terrain {
         myLetter = theLetter;
     }
 
+    static {
+        for (int i = 0; i < BY_LETTER.length; i++) {
+            BY_LETTER[i] = GRASS;
+        }
+        for (final Terrain terrain : values()) {
+            BY_LETTER[terrain.myLetter] = terrain;
+        }
+    }
+
     // Instance Methods
 
     /**
@@ -73,11 +87,8 @@ public enum Terrain {
     public static Terrain valueOf(final char theLetter) {
         Terrain result = GRASS;
 
-        for (final Terrain terrain : Terrain.values()) {
-            if (terrain.myLetter == theLetter) {
-                result = terrain;
-                break;
-            }
+        if (theLetter < BY_LETTER.length) {
+            result = BY_LETTER[theLetter];
         }
 
         return result;
@@ -0,0 +1,520 @@
+/*
+ * TCSS 305 - Road Rage
+ */
+
+package model;
+
+import java.util.Arrays;
+
+/**
+ * An immutable grid of Terrain that stores one byte per square, for maps far larger than a
+ * Terrain[][] can hold.
+ *
+ * The grid is split into square tiles of TILE_SIZE by TILE_SIZE squares. A tile made of a
+ * single terrain, such as open grass or a block of wall, is not stored at all: it is
+ * replaced by one constant tile per terrain, shared by every grid. Only mixed tiles cost
+ * a byte per square.
+ *
+ * Grids are made from a Terrain[][] or, for maps too big for one, square by square with a
+ * TerrainGrid.Builder.
+ */
+public final class TerrainGrid {
+
+    /**
+     * The width and height of a tile, in squares.
+     */
+    public static final int TILE_SIZE = 64;
+
+    /**
+     * The number of bits to shift a coordinate by to get its tile coordinate.
+     */
+    private static final int TILE_SHIFT = Integer.numberOfTrailingZeros(TILE_SIZE);
+
+    /**
+     * The mask giving a coordinate's position within its tile.
+     */
+    private static final int TILE_MASK = TILE_SIZE - 1;
+
+    /**
+     * The mask of the lowest byte of an int.
+     */
+    private static final int BYTE_MASK = 0xFF;
+
+    /**
+     * The terrains, cached because Terrain.values() returns a new array on every call.
+     */
+    private static final Terrain[] TERRAINS = Terrain.values();
+
+    /**
+     * The shared tile made entirely of each terrain, by ordinal. These are never written.
+     */
+    private static final byte[][] UNIFORM = new byte[TERRAINS.length][];
+
+    static {
+        for (final Terrain terrain : TERRAINS) {
+            UNIFORM[terrain.ordinal()] = new byte[TILE_SIZE * TILE_SIZE];
+            Arrays.fill(UNIFORM[terrain.ordinal()], (byte) terrain.ordinal());
+        }
+    }
+
+    /**
+     * The width of the grid in squares.
+     */
+    private final int myWidth;
+
+    /**
+     * The height of the grid in squares.
+     */
+    private final int myHeight;
+
+    /**
+     * The number of tiles in each row of tiles.
+     */
+    private final int myTilesAcross;
+
+    /**
+     * The terrain ordinal of each square, tile by tile and row by row within a tile.
+     */
+    private final byte[][] myTiles;
+
+    /**
+     * Creates a grid holding the same terrain as a Terrain[][]. Later changes to the array
+     * do not affect the grid.
+     *
+     * @param theGrid the terrain, indexed [y][x]; every row must be as long as the first
+     * @throws IllegalArgumentException if the rows are not all the same length
+     */
+    public TerrainGrid(final Terrain[][] theGrid) {
+        this(copyOf(theGrid));
+    }
+
+    /**
+     * Creates a grid from a finished builder.
+     *
+     * @param theBuilder the builder
+     */
+    private TerrainGrid(final Builder theBuilder) {
+        myWidth = theBuilder.myWidth;
+        myHeight = theBuilder.myHeight;
+        myTilesAcross = theBuilder.myTilesAcross;
+        myTiles = theBuilder.myTiles;
+        for (int tile = 0; tile < myTiles.length; tile++) {
+            myTiles[tile] = shared(myTiles[tile]);
+        }
+    }
+
+    /**
+     * Returns the width of the grid.
+     *
+     * @return the width in squares.
+     */
+    public int getWidth() {
+        return myWidth;
+    }
+
+    /**
+     * Returns the height of the grid.
+     *
+     * @return the height in squares.
+     */
+    public int getHeight() {
+        return myHeight;
+    }
+
+    /**
+     * Returns whether a position is on the grid.
+     *
+     * @param theX The x position.
+     * @param theY The y position.
+     * @return true if the position is on the grid, false otherwise.
+     */
+    public boolean isValid(final int theX, final int theY) {
+        return 0 <= theX && theX < myWidth && 0 <= theY && theY < myHeight;
+    }
+
+    /**
+     * Returns the terrain of a square.
+     *
+     * @param theX The x position.
+     * @param theY The y position.
+     * @return the terrain.
+     * @throws IndexOutOfBoundsException if the position is not on the grid.
+     */
+    public Terrain get(final int theX, final int theY) {
+        if (!isValid(theX, theY)) {
+            throw new IndexOutOfBoundsException("(" + theX + ", " + theY + ") is not on a "
+                                                + myWidth + " x " + myHeight + " grid");
+        }
+        return TERRAINS[myTiles[tileOf(theX, theY)][offsetOf(theX, theY)]];
+    }
+
+    /**
+     * Returns the terrain of a square, or null if the position is not on the grid.
+     *
+     * @param theX The x position.
+     * @param theY The y position.
+     * @return the terrain, or null.
+     */
+    public Terrain getOrNull(final int theX, final int theY) {
+        Terrain result = null;
+        if (isValid(theX, theY)) {
+            result = TERRAINS[myTiles[tileOf(theX, theY)][offsetOf(theX, theY)]];
+        }
+        return result;
+    }
+
+    /**
+     * Returns the ordinal of the terrain of a square, the cheapest way to read the grid.
+     *
+     * @param theX The x position.
+     * @param theY The y position.
+     * @return the ordinal of the terrain, or -1 if the position is not on the grid.
+     */
+    public int getOrdinal(final int theX, final int theY) {
+        int result = -1;
+        if (isValid(theX, theY)) {
+            result = myTiles[tileOf(theX, theY)][offsetOf(theX, theY)];
+        }
+        return result;
+    }
+
+    /**
+     * Returns the terrain ordinals of the four squares next to a square, packed one byte 
+     * each into an int in Direction order: NORTH in the lowest byte, then WEST, SOUTH and 
+     * EAST. A byte is 0xFF where that neighbor is not on the grid. This reads all four in 
+     * one go, which is much faster than four calls to getOrdinal away from tile edges.
+     *
+     * @param theX The x position.
+     * @param theY The y position.
+     * @return the packed ordinals of the neighbors.
+     */
+    public int getNeighborOrdinals(final int theX, final int theY) {
+        final int x = theX & TILE_MASK;
+        final int y = theY & TILE_MASK;
+        if (x != 0 && x != TILE_MASK && y != 0 && y != TILE_MASK && isValid(theX, theY)
+            && theX + 1 < myWidth && theY + 1 < myHeight) {
+            // every neighbor is in the same tile
+            final byte[] tile = myTiles[tileOf(theX, theY)];
+            final int offset = y << TILE_SHIFT | x;
+            return tile[offset - TILE_SIZE] | tile[offset - 1] << Byte.SIZE
+                   | tile[offset + TILE_SIZE] << 2 * Byte.SIZE
+                   | tile[offset + 1] << 3 * Byte.SIZE;
+        }
+        return getOrdinal(theX, theY - 1) & BYTE_MASK
+               | (getOrdinal(theX - 1, theY) & BYTE_MASK) << Byte.SIZE
+               | (getOrdinal(theX, theY + 1) & BYTE_MASK) << 2 * Byte.SIZE
+               | (getOrdinal(theX + 1, theY) & BYTE_MASK) << 3 * Byte.SIZE;
+    }
+
+    /**
+     * Returns whether every square of the tile holding the given position has the same
+     * terrain. Such tiles take no memory of their own.
+     *
+     * @param theX The x position.
+     * @param theY The y position.
+     * @return true if the tile is uniform, false otherwise.
+     */
+    public boolean isUniformTile(final int theX, final int theY) {
+        final byte[] tile = myTiles[tileOf(theX, theY)];
+        return tile == UNIFORM[tile[0]];
+    }
+
+    /**
+     * Returns the number of bytes the tiles of this grid take, not counting shared tiles.
+     *
+     * @return the number of bytes.
+     */
+    public long getStoredBytes() {
+        long result = 0;
+        for (final byte[] tile : myTiles) {
+            if (tile != UNIFORM[tile[0]]) {
+                result += tile.length;
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Copies the terrain ordinals of one tile, row by row. Squares of an edge tile that lie
+     * past the edge of the grid read as GRASS. Together with Builder.setTile this moves a
+     * grid tile by tile, far faster than square by square.
+     *
+     * @param theTileX the column of the tile
+     * @param theTileY the row of the tile
+     * @param theOrdinals where to copy the TILE_SIZE * TILE_SIZE ordinals
+     * @throws IndexOutOfBoundsException if there is no such tile.
+     */
+    public void copyTile(final int theTileX, final int theTileY, final byte[] theOrdinals) {
+        System.arraycopy(myTiles[tileAt(theTileX, theTileY, myTilesAcross, myTiles.length)],
+                         0, theOrdinals, 0, TILE_SIZE * TILE_SIZE);
+    }
+
+    /**
+     * Copies the grid into a new Terrain[][], indexed [y][x].
+     *
+     * @return the terrain of every square.
+     */
+    public Terrain[][] toArray() {
+        final Terrain[][] result = new Terrain[myHeight][myWidth];
+        for (int y = 0; y < myHeight; y++) {
+            for (int x = 0; x < myWidth; x++) {
+                result[y][x] = TERRAINS[myTiles[tileOf(x, y)][offsetOf(x, y)]];
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Returns the tile holding a position.
+     *
+     * @param theX The x position.
+     * @param theY The y position.
+     * @return the tile index.
+     */
+    private int tileOf(final int theX, final int theY) {
+        return (theY >> TILE_SHIFT) * myTilesAcross + (theX >> TILE_SHIFT);
+    }
+
+    /**
+     * Returns the index of a position within its tile.
+     *
+     * @param theX The x position.
+     * @param theY The y position.
+     * @return the offset within the tile.
+     */
+    private static int offsetOf(final int theX, final int theY) {
+        return (theY & TILE_MASK) << TILE_SHIFT | theX & TILE_MASK;
+    }
+
+    /**
+     * Returns the index of a tile, checking that it exists.
+     *
+     * @param theTileX the column of the tile
+     * @param theTileY the row of the tile
+     * @param theTilesAcross the number of tiles in each row of tiles
+     * @param theTiles the number of tiles
+     * @return the tile index.
+     * @throws IndexOutOfBoundsException if there is no such tile.
+     */
+    private static int tileAt(final int theTileX, final int theTileY,
+                              final int theTilesAcross, final int theTiles) {
+        final int result = theTileY * theTilesAcross + theTileX;
+        if (theTileX < 0 || theTileX >= theTilesAcross || theTileY < 0 || result >= theTiles) {
+            throw new IndexOutOfBoundsException("There is no tile (" + theTileX + ", "
+                                                + theTileY + ")");
+        }
+        return result;
+    }
+
+    /**
+     * Returns the shared tile if a tile is uniform, or the tile itself otherwise.
+     *
+     * @param theTile the tile
+     * @return the tile to keep
+     */
+    private static byte[] shared(final byte[] theTile) {
+        final byte first = theTile[0];
+        for (final byte square : theTile) {
+            if (square != first) {
+                return theTile;
+            }
+        }
+        return UNIFORM[first];
+    }
+
+    /**
+     * Copies a Terrain[][] into a builder.
+     *
+     * @param theGrid the terrain, indexed [y][x]
+     * @return the builder
+     */
+    private static Builder copyOf(final Terrain[][] theGrid) {
+        final int width = theGrid.length == 0 ? 0 : theGrid[0].length;
+        final Builder result = new Builder(width, theGrid.length);
+        for (int y = 0; y < theGrid.length; y++) {
+            if (theGrid[y].length != width) {
+                throw new IllegalArgumentException("Row " + y + " has " + theGrid[y].length
+                                                   + " squares instead of " + width);
+            }
+            for (int x = 0; x < width; x++) {
+                result.set(x, y, theGrid[y][x]);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Builds a TerrainGrid square by square. Every square starts as GRASS. A row of tiles
+     * is compacted as soon as its last square is set, so a map written row by row never
+     * needs a byte for every square at once.
+     */
+    public static final class Builder {
+
+        /**
+         * The width of the grid in squares.
+         */
+        private final int myWidth;
+
+        /**
+         * The height of the grid in squares.
+         */
+        private final int myHeight;
+
+        /**
+         * The number of tiles in each row of tiles.
+         */
+        private final int myTilesAcross;
+
+        /**
+         * The tiles written so far; shared tiles are copied before they are written.
+         */
+        private byte[][] myTiles;
+
+        /**
+         * Whether each tile belongs to a finished grid passed to setRows, and so must be
+         * copied before it is written.
+         */
+        private final boolean[] myBorrowed;
+
+        /**
+         * Creates a builder for an all-GRASS grid.
+         *
+         * @param theWidth the width of the grid in squares
+         * @param theHeight the height of the grid in squares
+         * @throws IllegalArgumentException if either size is negative
+         */
+        public Builder(final int theWidth, final int theHeight) {
+            if (theWidth < 0 || theHeight < 0) {
+                throw new IllegalArgumentException("Bad grid size " + theWidth + " x "
+                                                   + theHeight);
+            }
+            myWidth = theWidth;
+            myHeight = theHeight;
+            myTilesAcross = (theWidth + TILE_MASK) >> TILE_SHIFT;
+            myTiles = new byte[myTilesAcross * ((theHeight + TILE_MASK) >> TILE_SHIFT)][];
+            Arrays.fill(myTiles, UNIFORM[Terrain.GRASS.ordinal()]);
+            myBorrowed = new boolean[myTiles.length];
+        }
+
+        /**
+         * Sets the terrain of a square.
+         *
+         * @param theX The x position.
+         * @param theY The y position.
+         * @param theTerrain The terrain.
+         * @return this builder.
+         * @throws IndexOutOfBoundsException if the position is not on the grid.
+         * @throws IllegalStateException if the grid has already been built.
+         */
+        public Builder set(final int theX, final int theY, final Terrain theTerrain) {
+            if (myTiles == null) {
+                throw new IllegalStateException("The grid has already been built");
+            }
+            if (theX < 0 || theX >= myWidth || theY < 0 || theY >= myHeight) {
+                throw new IndexOutOfBoundsException("(" + theX + ", " + theY + ") is not on a "
+                                                    + myWidth + " x " + myHeight + " grid");
+            }
+            final int tile = (theY >> TILE_SHIFT) * myTilesAcross + (theX >> TILE_SHIFT);
+            final byte value = (byte) theTerrain.ordinal();
+            final int offset = offsetOf(theX, theY);
+            if (myTiles[tile][offset] != value) {
+                if (myTiles[tile] == UNIFORM[myTiles[tile][0]] || myBorrowed[tile]) {
+                    myTiles[tile] = myTiles[tile].clone();
+                    myBorrowed[tile] = false;
+                }
+                myTiles[tile][offset] = value;
+            }
+            if (theX == myWidth - 1 && ((theY & TILE_MASK) == TILE_MASK
+                                        || theY == myHeight - 1)) {
+                // a row of tiles is complete when its last square is written
+                final int first = (theY >> TILE_SHIFT) * myTilesAcross;
+                for (int i = first; i < first + myTilesAcross; i++) {
+                    myTiles[i] = shared(myTiles[i]);
+                }
+            }
+            return this;
+        }
+
+        /**
+         * Sets every square of one tile, row by row. Ordinals for squares past the edge of
+         * the grid are kept as given; use GRASS there to match grids built square by square.
+         * Different tiles may be set from different threads at once, as long as the grid is
+         * built after they are all done.
+         *
+         * @param theTileX the column of the tile
+         * @param theTileY the row of the tile
+         * @param theOrdinals the TILE_SIZE * TILE_SIZE terrain ordinals, which are copied
+         * @return this builder.
+         * @throws IndexOutOfBoundsException if there is no such tile.
+         * @throws IllegalArgumentException if an ordinal is not a Terrain ordinal.
+         * @throws IllegalStateException if the grid has already been built.
+         */
+        public Builder setTile(final int theTileX, final int theTileY,
+                               final byte[] theOrdinals) {
+            if (myTiles == null) {
+                throw new IllegalStateException("The grid has already been built");
+            }
+            final int tile = tileAt(theTileX, theTileY, myTilesAcross, myTiles.length);
+            final byte[] copy = Arrays.copyOf(theOrdinals, TILE_SIZE * TILE_SIZE);
+            for (final byte square : copy) {
+                if (square < 0 || square >= TERRAINS.length) {
+                    throw new IllegalArgumentException("Bad terrain ordinal " + square);
+                }
+            }
+            myTiles[tile] = shared(copy);
+            myBorrowed[tile] = false;
+            return this;
+        }
+
+        /**
+         * Sets a band of whole rows of tiles from a finished grid of the same width, whose
+         * tiles are shared rather than copied. A loader can hand each band to a viewer as
+         * soon as it is parsed and then add it here at no extra cost. Different bands may
+         * be set from different threads at once, as long as the grid is built after they
+         * are all done.
+         *
+         * @param theFirstRow the row of the grid the band starts at, a multiple of
+         *        TILE_SIZE
+         * @param theRows the band
+         * @return this builder.
+         * @throws IllegalArgumentException if the band is not as wide as the grid, does
+         *         not start at a row of tiles or does not fit.
+         * @throws IllegalStateException if the grid has already been built.
+         */
+        public Builder setRows(final int theFirstRow, final TerrainGrid theRows) {
+            if (myTiles == null) {
+                throw new IllegalStateException("The grid has already been built");
+            }
+            if (theRows.myWidth != myWidth || (theFirstRow & TILE_MASK) != 0
+                || theFirstRow < 0 || theFirstRow + theRows.myHeight > myHeight) {
+                throw new IllegalArgumentException("A " + theRows.myWidth + " x "
+                                                   + theRows.myHeight + " band does not fit "
+                                                   + "at row " + theFirstRow + " of a "
+                                                   + myWidth + " x " + myHeight + " grid");
+            }
+            final int first = (theFirstRow >> TILE_SHIFT) * myTilesAcross;
+            for (int i = 0; i < theRows.myTiles.length; i++) {
+                myTiles[first + i] = theRows.myTiles[i];
+                myBorrowed[first + i] = true;
+            }
+            return this;
+        }
+
+        /**
+         * Builds the grid. The builder cannot be used afterwards.
+         *
+         * @return the grid.
+         * @throws IllegalStateException if the grid has already been built.
+         */
+        public TerrainGrid build() {
+            if (myTiles == null) {
+                throw new IllegalStateException("The grid has already been built");
+            }
+            final TerrainGrid result = new TerrainGrid(this);
+            myTiles = null;
+            return result;
+        }
+    }
+}
+
+// end of class TerrainGrid
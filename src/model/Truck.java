@@ -1,15 +1,17 @@
 package model;
 
 import java.util.Map;
+import java.util.random.RandomGenerator;
 
 /**
  * The Truck class extends AbstractVehicle and creates a Truck object with all the specified attributes
  */
 public class Truck extends AbstractVehicle {
 
-    private final static int DEATH_TIME = 0;
-    private final static String IMAGE_ALIVE = "truck.gif";
-    private final static String IMAGE_DEAD = "truck_dead.gif";
+    final static int DEATH_TIME = 0;
+    final static String IMAGE_ALIVE = "truck.gif";
+    final static String IMAGE_DEAD = "truck_dead.gif";
+    private static final int ROADS = terrainMask(Terrain.STREET, Terrain.LIGHT, Terrain.CROSSWALK);
 
     /**
      * the constructor for the Truck class, calls the super constructor in AbstractVehicle
@@ -29,6 +31,16 @@ public class Truck extends AbstractVehicle {
      */
     @Override
     public boolean canPass(Terrain theTerrain, Light theLight) {
+        return isPassable(theTerrain, theLight);
+    }
+
+    /**
+     * the passability rules shared by every truck, used by canPass and by VehicleKind
+     * @param theTerrain The terrain.
+     * @param theLight The light color.
+     * @return true/false
+     */
+    static boolean isPassable(Terrain theTerrain, Light theLight) {
         return switch (theTerrain) {  //returns true if terrain is street or light or if crosswalk is G or Y
             case STREET, LIGHT -> true;
             case CROSSWALK -> theLight != Light.RED;
@@ -44,32 +56,18 @@ public class Truck extends AbstractVehicle {
      */
     @Override
     public Direction chooseDirection(Map<Direction, Terrain> theNeighbors) {
-        int random = super.getRandomNum().nextInt(3) + 1;  //getting a random num
+        return chooseDirection(getDirection(), theNeighbors, getRandomNum());
+    }
 
-        switch (random){
-            case 1:  //checking if it can turn left
-                if(theNeighbors.get(getDirection().left()) == Terrain.STREET || theNeighbors.get(getDirection().left()) == Terrain.LIGHT ||
-                        theNeighbors.get(getDirection().left()) == Terrain.CROSSWALK){
-                    return getDirection().left();
-                }
-            case 2: //checking if it can go straight
-                if(theNeighbors.get(getDirection()) == Terrain.STREET || theNeighbors.get(getDirection()) == Terrain.LIGHT ||
-                        theNeighbors.get(getDirection()) == Terrain.CROSSWALK){
-                    return getDirection();
-                }
-            case 3: //checking if it can turn right
-                if(theNeighbors.get(getDirection().right()) == Terrain.STREET || theNeighbors.get(getDirection().right()) == Terrain.LIGHT ||
-                        theNeighbors.get(getDirection().right()) == Terrain.CROSSWALK){
-                    return getDirection().right();
-                }
-            default:
-                if((theNeighbors.get(getDirection().left()) == Terrain.GRASS || theNeighbors.get(getDirection().right()) == Terrain.GRASS || theNeighbors.get(getDirection()) == Terrain.GRASS)
-                 && (theNeighbors.get(getDirection().left()) == Terrain.WALL || theNeighbors.get(getDirection().right()) == Terrain.WALL || theNeighbors.get(getDirection()) == Terrain.WALL)
-                 && (theNeighbors.get(getDirection().left()) == Terrain.TRAIL || theNeighbors.get(getDirection().right()) == Terrain.TRAIL || theNeighbors.get(getDirection()) == Terrain.TRAIL)){
-                    return getDirection().reverse();   //if no other way, turn around
-                }else
-                    return chooseDirection(theNeighbors);  //if not, then call the method again to find the right way to go
-        }
+    /**
+     * the direction rules shared by every truck, used by chooseDirection and by VehicleKind
+     * @param theDir the current direction of the truck
+     * @param theNeighbors The map of neighboring terrain.
+     * @param theRandom the random number source of the truck
+     * @return a Direction: either current (straight), left, right, reverse
+     */
+    static Direction chooseDirection(Direction theDir, Map<Direction, Terrain> theNeighbors, RandomGenerator theRandom) {
+        return pickTurn(theDir, candidates(theDir, theNeighbors, ROADS), theRandom);
     }
 
     /**
@@ -0,0 +1,420 @@
+/*
+ * TCSS 305 - Road Rage
+ */
+
+package model;
+
+import java.util.Map;
+import java.util.random.RandomGenerator;
+
+/**
+ * An enumeration of the kinds of vehicles in the simulation, giving access to the rules of
+ * each kind without needing a vehicle object, so a simulation can keep vehicle state in
+ * its own form and still apply them. The passability and direction rules live in the
+ * vehicle classes, the passability ones compiled into tables here. The collision table
+ * built from applyKillRules is the source of truth for which kind kills which: the
+ * collide methods of the vehicle classes ask isKilledBy rather than holding rules of
+ * their own.
+ */
+public enum VehicleKind {
+
+    /**
+     * A Human.
+     */
+    HUMAN('H', Human.deathTime, Human.IMAGE_ALIVE, Human.IMAGE_DEAD),
+
+    /**
+     * A Bicycle.
+     */
+    BICYCLE('B', Bicycle.deathTime, Bicycle.IMAGE_ALIVE, Bicycle.IMAGE_DEAD),
+
+    /**
+     * An ATV.
+     */
+    ATV('A', model.ATV.deathTime, model.ATV.IMAGE_ALIVE, model.ATV.IMAGE_DEAD),
+
+    /**
+     * A Truck.
+     */
+    TRUCK('T', Truck.DEATH_TIME, Truck.IMAGE_ALIVE, Truck.IMAGE_DEAD),
+
+    /**
+     * A Taxi.
+     */
+    TAXI('X', Taxi.deathTime, Taxi.IMAGE_ALIVE, Taxi.IMAGE_DEAD),
+
+    /**
+     * A Car.
+     */
+    CAR('C', Car.deathTime, Car.IMAGE_ALIVE, Car.IMAGE_DEAD);
+
+    /**
+     * The collision outcome bit set when the first vehicle of the pair dies.
+     */
+    public static final int FIRST_DIES = 1;
+
+    /**
+     * The collision outcome bit set when the second vehicle of the pair dies.
+     */
+    public static final int SECOND_DIES = 2;
+
+    /**
+     * The number of kinds, the stride of the first kind in a collision outcome index.
+     */
+    private static final int KIND_COUNT = values().length;
+
+    /**
+     * The outcome of a collision between two living vehicles, indexed by the first kind
+     * ordinal times KIND_COUNT plus the second kind ordinal.
+     */
+    private static final byte[] COLLISIONS = new byte[KIND_COUNT * KIND_COUNT];
+
+    /**
+     * The number of light colors, the stride of the terrain in a passability bit index.
+     */
+    private static final int LIGHTS = Light.values().length;
+
+    /**
+     * The terrain and light pairs each kind may pass, by kind ordinal, as bitmasks over
+     * passBit indexes.
+     */
+    private static final int[] PASSABLE = new int[values().length];
+
+    /**
+     * The terrain and light pairs each kind may pass once it has waited waitLimit times,
+     * by kind ordinal.
+     */
+    private static final int[] WAITED_PASSABLE = new int[values().length];
+
+    /**
+     * The terrain and light pairs at which each kind counts its wait, by kind ordinal.
+     */
+    private static final int[] WAITING = new int[values().length];
+
+    /**
+     * The number of waits after which each kind uses WAITED_PASSABLE, by kind ordinal.
+     */
+    private static final int[] WAIT_LIMITS = new int[values().length];
+
+    static {
+        for (final VehicleKind kind : values()) {
+            final int k = kind.ordinal();
+            WAIT_LIMITS[k] = kind == TAXI ? Taxi.CROSSWALK_WAIT : 0;
+            for (final Terrain terrain : Terrain.values()) {
+                for (final Light light : Light.values()) {
+                    final int bit = passBit(terrain, light);
+                    if (kind.applyRules(terrain, light, 0)) {
+                        PASSABLE[k] |= bit;
+                    }
+                    if (kind.applyRules(terrain, light, WAIT_LIMITS[k])) {
+                        WAITED_PASSABLE[k] |= bit;
+                    }
+                    if (kind == TAXI && Taxi.isWaiting(terrain, light)) {
+                        WAITING[k] |= bit;
+                    }
+                }
+            }
+            // the first vehicle is told first, and a vehicle it met dead cannot kill it
+            for (final VehicleKind other : values()) {
+                int outcome = 0;
+                if (kind.applyKillRules(other)) {
+                    outcome = FIRST_DIES;
+                } else if (other.applyKillRules(kind)) {
+                    outcome = SECOND_DIES;
+                }
+                COLLISIONS[k * KIND_COUNT + other.ordinal()] = (byte) outcome;
+            }
+        }
+    }
+
+    /**
+     * The letter used for this kind in city map files.
+     */
+    private final char myLetter;
+
+    /**
+     * The number of updates a vehicle of this kind stays dead.
+     */
+    private final int myDeathTime;
+
+    /**
+     * The image file name for a living vehicle of this kind.
+     */
+    private final String myImageAlive;
+
+    /**
+     * The image file name for a dead vehicle of this kind.
+     */
+    private final String myImageDead;
+
+    /**
+     * Constructs a new VehicleKind.
+     *
+     * @param theLetter The letter used in city map files.
+     * @param theDeathTime The number of updates a vehicle stays dead.
+     * @param theImageAlive The image file name when alive.
+     * @param theImageDead The image file name when dead.
+     */
+    VehicleKind(final char theLetter, final int theDeathTime,
+                final String theImageAlive, final String theImageDead) {
+        myLetter = theLetter;
+        myDeathTime = theDeathTime;
+        myImageAlive = theImageAlive;
+        myImageDead = theImageDead;
+    }
+
+    /**
+     * Returns the VehicleKind represented by the given letter.
+     *
+     * @param theLetter The letter.
+     * @return the VehicleKind represented by the given letter, or null if no VehicleKind
+     *         is represented by the given letter.
+     */
+    public static VehicleKind valueOf(final char theLetter) {
+        VehicleKind result = null;
+
+        for (final VehicleKind kind : VehicleKind.values()) {
+            if (kind.myLetter == theLetter) {
+                result = kind;
+                break;
+            }
+        }
+
+        return result;
+    }
+
+    /**
+     * Returns the kind of the given vehicle.
+     *
+     * @param theVehicle The vehicle.
+     * @return the kind of the vehicle, or null if it is not one of the vehicle classes in
+     *         this package.
+     */
+    public static VehicleKind of(final Vehicle theVehicle) {
+        VehicleKind result = null;
+
+        if (theVehicle instanceof Human) {
+            result = HUMAN;
+        } else if (theVehicle instanceof Bicycle) {
+            result = BICYCLE;
+        } else if (theVehicle instanceof model.ATV) {
+            result = ATV;
+        } else if (theVehicle instanceof Truck) {
+            result = TRUCK;
+        } else if (theVehicle instanceof Taxi) {
+            result = TAXI;
+        } else if (theVehicle instanceof Car) {
+            result = CAR;
+        }
+
+        return result;
+    }
+
+    /**
+     * Returns the kind of the given vehicle if it is exactly one of the vehicle classes in
+     * this package, and not a subclass that may have rules of its own.
+     *
+     * @param theVehicle The vehicle.
+     * @return the kind of the vehicle, or null if its class is not one of the vehicle
+     *         classes in this package.
+     */
+    public static VehicleKind exactly(final Vehicle theVehicle) {
+        final VehicleKind result = of(theVehicle);
+        return result != null && theVehicle.getClass() == result.vehicleClass() ? result : null;
+    }
+
+    /**
+     * Returns the letter used for this kind in city map files.
+     *
+     * @return the letter.
+     */
+    public char letter() {
+        return myLetter;
+    }
+
+    /**
+     * Returns the number of updates a vehicle of this kind stays dead.
+     *
+     * @return the death time.
+     */
+    public int deathTime() {
+        return myDeathTime;
+    }
+
+    /**
+     * Returns the image file name for a vehicle of this kind.
+     *
+     * @param theAlive Whether the vehicle is alive.
+     * @return the image file name.
+     */
+    public String imageFileName(final boolean theAlive) {
+        return theAlive ? myImageAlive : myImageDead;
+    }
+
+    /**
+     * Returns the bit standing for a terrain and light pair in the masks returned by
+     * passMask and waitMask.
+     *
+     * @param theTerrain The terrain.
+     * @param theLight The light color.
+     * @return the bit for the pair.
+     */
+    public static int passBit(final Terrain theTerrain, final Light theLight) {
+        return 1 << theTerrain.ordinal() * LIGHTS + theLight.ordinal();
+    }
+
+    /**
+     * Returns the terrain and light pairs a vehicle of this kind may move onto, as a mask
+     * of passBit bits. The rules of every kind are compiled into these masks once, so
+     * checking a move is a table lookup.
+     *
+     * @param theWaited The number of times in a row the vehicle has been stopped where
+     *        isWaiting is true.
+     * @return the mask of passable pairs.
+     */
+    public int passMask(final int theWaited) {
+        final int k = ordinal();
+        return theWaited >= WAIT_LIMITS[k] ? WAITED_PASSABLE[k] : PASSABLE[k];
+    }
+
+    /**
+     * Returns the terrain and light pairs at which a vehicle of this kind counts how long
+     * it has waited, as a mask of passBit bits.
+     *
+     * @return the mask of waiting pairs.
+     */
+    public int waitMask() {
+        return WAITING[ordinal()];
+    }
+
+    /**
+     * Returns whether a vehicle of this kind may move onto the given terrain when the
+     * lights are the given color.
+     *
+     * @param theTerrain The terrain.
+     * @param theLight The light color.
+     * @param theWaited The number of times in a row the vehicle has been stopped where
+     *        isWaiting is true.
+     * @return whether the terrain may be passed.
+     */
+    public boolean canPass(final Terrain theTerrain, final Light theLight,
+                           final int theWaited) {
+        return (passMask(theWaited) & passBit(theTerrain, theLight)) != 0;
+    }
+
+    /**
+     * Applies the passability rules of the vehicle class of this kind, used to build the
+     * passability masks.
+     *
+     * @param theTerrain The terrain.
+     * @param theLight The light color.
+     * @param theWaited The number of times in a row the vehicle has waited.
+     * @return whether the terrain may be passed.
+     */
+    private boolean applyRules(final Terrain theTerrain, final Light theLight,
+                               final int theWaited) {
+        return switch (this) {
+            case HUMAN -> Human.isPassable(theTerrain, theLight);
+            case BICYCLE -> Bicycle.isPassable(theTerrain, theLight);
+            case ATV -> model.ATV.isPassable(theTerrain, theLight);
+            case TRUCK -> Truck.isPassable(theTerrain, theLight);
+            case TAXI -> Taxi.isPassable(theTerrain, theLight, theWaited);
+            case CAR -> Car.isPassable(theTerrain, theLight);
+        };
+    }
+
+    /**
+     * Returns the vehicle class of this kind.
+     *
+     * @return the class.
+     */
+    private Class<? extends Vehicle> vehicleClass() {
+        return switch (this) {
+            case HUMAN -> Human.class;
+            case BICYCLE -> Bicycle.class;
+            case ATV -> model.ATV.class;
+            case TRUCK -> Truck.class;
+            case TAXI -> Taxi.class;
+            case CAR -> Car.class;
+        };
+    }
+
+    /**
+     * Returns whether a vehicle of this kind trying to move onto the given terrain counts
+     * how long it has waited there. The count goes up each time the vehicle is stopped and
+     * back to zero once it passes.
+     *
+     * @param theTerrain The terrain.
+     * @param theLight The light color.
+     * @return whether the attempt counts towards the vehicle's wait.
+     */
+    public boolean isWaiting(final Terrain theTerrain, final Light theLight) {
+        return (waitMask() & passBit(theTerrain, theLight)) != 0;
+    }
+
+    /**
+     * Returns the direction a vehicle of this kind would like to move.
+     *
+     * @param theDirection The current direction of the vehicle.
+     * @param theNeighbors The map of neighboring terrain.
+     * @param theRandom The random number source of the vehicle.
+     * @return the direction the vehicle would like to move.
+     */
+    public Direction chooseDirection(final Direction theDirection,
+                                     final Map<Direction, Terrain> theNeighbors,
+                                     final RandomGenerator theRandom) {
+        return switch (this) {
+            case HUMAN -> Human.chooseDirection(theDirection, theNeighbors, theRandom);
+            case BICYCLE -> Bicycle.chooseDirection(theDirection, theNeighbors);
+            case ATV -> model.ATV.chooseDirection(theDirection, theNeighbors, theRandom);
+            case TRUCK -> Truck.chooseDirection(theDirection, theNeighbors, theRandom);
+            case TAXI -> Taxi.chooseDirection(theDirection, theNeighbors);
+            case CAR -> Car.chooseDirection(theDirection, theNeighbors);
+        };
+    }
+
+    /**
+     * Returns the outcome of a collision between two living vehicles, the first one told
+     * first, as a combination of FIRST_DIES and SECOND_DIES. This is one table lookup,
+     * the same one the collide methods of the two vehicles make.
+     *
+     * @param theFirst The kind ordinal of the first vehicle.
+     * @param theSecond The kind ordinal of the second vehicle.
+     * @return the outcome bits.
+     */
+    public static int collisionOutcome(final int theFirst, final int theSecond) {
+        return COLLISIONS[theFirst * KIND_COUNT + theSecond];
+    }
+
+    /**
+     * Returns whether a vehicle of this kind dies when it collides with a living vehicle
+     * of the given kind.
+     *
+     * @param theOther The kind of the other vehicle, or null if it is not a known kind.
+     * @return whether a vehicle of this kind is killed.
+     */
+    public boolean isKilledBy(final VehicleKind theOther) {
+        return theOther != null 
+               && (collisionOutcome(ordinal(), theOther.ordinal()) & FIRST_DIES) != 0;
+    }
+
+    /**
+     * Applies the rules of which kind kills which, used to build the collision outcome
+     * table. These are the only copy of the rules.
+     *
+     * @param theOther The kind of the other vehicle.
+     * @return whether a vehicle of this kind is killed by a living vehicle of the other.
+     */
+    private boolean applyKillRules(final VehicleKind theOther) {
+        return switch (this) {
+            case HUMAN -> theOther != HUMAN;
+            case BICYCLE -> theOther == TRUCK || theOther == CAR || theOther == TAXI
+                            || theOther == ATV;
+            case ATV -> theOther == TRUCK || theOther == CAR || theOther == TAXI;
+            case TRUCK -> false;
+            case TAXI, CAR -> theOther == TRUCK;
+        };
+    }
+}
+
+// end of class VehicleKind
@@ -0,0 +1,564 @@
+/*
+ * TCSS 305 - Road Rage
+ */
+
+package tests;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.TreeMap;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import logic.RoadRage;
+import model.Terrain;
+import model.TerrainGrid;
+import model.Vehicle;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import view.util.CityLoadListener;
+import view.util.FileLoader;
+
+/**
+ * Unit tests for the parsing of city text files by FileLoader. A map whose rows all have
+ * the width of the map is parsed in bands of rows in parallel; any other map is parsed row
+ * by row, after the bands already parsed were delivered to the listener, which then gets
+ * them again. Both must give the same city, and the binary city file saved in the compile
+ * cache must load as the city it was compiled from. Each test gets a compile cache of its
+ * own in a temporary directory.
+ */
+public class CityParserTest {
+
+    /**
+     * The letters of every terrain.
+     */
+    private static final String LETTERS = "-|+X.#";
+
+    /**
+     * The vehicle lines of the small test city.
+     */
+    private static final String VEHICLES = "3\nC 1 1 E\nH 2 1 W\nT 3 2 N\n";
+
+    /**
+     * The rows of the small test city.
+     */
+    private static final String[] SMALL = {"XXXXX", "X|+|X", "X#..X", "XXXXX"};
+
+    /**
+     * The vehicles of the small test city, as described by describe().
+     */
+    private static final List<String> SMALL_VEHICLES =
+                    List.of("car.gif 1 1 EAST", "human.gif 2 1 WEST", "truck.gif 3 2 NORTH");
+
+    /**
+     * The width of a map spanning several tiles.
+     */
+    private static final int WIDTH = 2 * TerrainGrid.TILE_SIZE + 5;
+
+    /**
+     * The height of a map spanning several bands of rows.
+     */
+    private static final int HEIGHT = 2 * TerrainGrid.TILE_SIZE + 20;
+
+    /**
+     * The system property naming the directory of the compile cache.
+     */
+    private static final String CACHE_PROPERTY = "roadrage.cache";
+
+    /**
+     * The system property giving the most bytes the compile cache may hold.
+     */
+    private static final String LIMIT_PROPERTY = "roadrage.cache.limit";
+
+    /**
+     * The temporary directory of the compile cache.
+     */
+    private Path myCache;
+
+    /**
+     * The value the cache property had before the test, or null.
+     */
+    private String myOldCache;
+
+    /**
+     * The value the limit property had before the test, or null.
+     */
+    private String myOldLimit;
+
+    /** Test that a small map with LF line breaks parses into its terrain and vehicles. */
+    @Test
+    public void testParsesSmallCity() throws IOException {
+        final Recorder recorder = new Recorder();
+        final City city = load(text(SMALL, "\n") + VEHICLES, recorder);
+        assertArrayEquals(terrain(SMALL), city.myTerrain, "Wrong terrain!");
+        assertEquals(SMALL_VEHICLES, city.myVehicles, "Wrong vehicles!");
+        assertEquals(List.of("size 5 x 4"), recorder.mySizes, "Wrong sizes told!");
+        assertEquals(Map.of(0, 1), recorder.myBands, "Wrong bands delivered!");
+    }
+
+    /** Test that CRLF line breaks parse the same as LF ones, with or without bands. */
+    @Test
+    public void testCrLfMatchesLf() throws IOException {
+        final City small = load((text(SMALL, "\r\n") + VEHICLES).replace("\n", "\r\n"),
+                                new Recorder());
+        assertArrayEquals(terrain(SMALL), small.myTerrain, "Wrong terrain with CRLF!");
+        assertEquals(SMALL_VEHICLES, small.myVehicles, "Wrong vehicles with CRLF!");
+
+        final String[] rows = randomRows(WIDTH, HEIGHT);
+        final Recorder recorder = new Recorder();
+        final City large = load(text(rows, "\r\n") + "0\r\n", recorder);
+        assertArrayEquals(terrain(rows), large.myTerrain, "Wrong bands with CRLF!");
+        assertEquals(Map.of(0, 1, 64, 1, 128, 1), recorder.myBands,
+                     "Bands with CRLF not parsed once each!");
+    }
+
+    /** Test that a map of several bands and tiles parses band by band. */
+    @Test
+    public void testParsesSeveralBands() throws IOException {
+        final String[] rows = randomRows(WIDTH, HEIGHT);
+        final Recorder recorder = new Recorder();
+        final City city = load(text(rows, "\n") + VEHICLES, recorder);
+        assertArrayEquals(terrain(rows), city.myTerrain, "Wrong terrain of the bands!");
+        assertEquals(SMALL_VEHICLES, city.myVehicles, "Wrong vehicles after the bands!");
+        assertEquals(List.of("size " + WIDTH + " x " + HEIGHT), recorder.mySizes,
+                     "Wrong sizes told!");
+        assertEquals(Map.of(0, 1, 64, 1, 128, 1), recorder.myBands,
+                     "Bands not delivered once each!");
+        recorder.assertBands(terrain(rows));
+    }
+
+    /** Test that letters past the width of the map are ignored. */
+    @Test
+    public void testOverlongRowsAreCut() throws IOException {
+        final String[] rows = {"XXXXX--", "X|+|X", "X#..X|||", "XXXXX"};
+        final City city = load("4 5\n" + String.join("\n", rows) + "\n" + VEHICLES,
+                               new Recorder());
+        assertArrayEquals(terrain(SMALL), city.myTerrain, "Overlong rows not cut!");
+        assertEquals(SMALL_VEHICLES, city.myVehicles, "Wrong vehicles after long rows!");
+    }
+
+    /**
+     * Test that a row of the wrong length in the last band makes the parser start again
+     * row by row, delivering the bands it had already parsed again with the same terrain,
+     * and telling the size only once.
+     */
+    @Test
+    public void testFallbackResendsBands() throws IOException {
+        final String[] rows = randomRows(WIDTH, HEIGHT);
+        final String[] expected = rows.clone();
+        rows[HEIGHT - 3] += "XX";
+        final Recorder recorder = new Recorder();
+        final City city = load(text(rows, "\n") + VEHICLES, recorder);
+        assertArrayEquals(terrain(expected), city.myTerrain, "Wrong terrain after fallback!");
+        assertEquals(SMALL_VEHICLES, city.myVehicles, "Wrong vehicles after fallback!");
+        assertEquals(List.of("size " + WIDTH + " x " + HEIGHT), recorder.mySizes,
+                     "Size not told once!");
+        assertEquals(Map.of(0, 2, 64, 2, 128, 1), recorder.myBands,
+                     "Bands parsed before the fallback not delivered again!");
+        recorder.assertBands(terrain(expected));
+    }
+
+    /**
+     * Test that an unchecked exception thrown by the listener while the bands are parsed
+     * in parallel reaches the caller with its own type.
+     */
+    @Test
+    public void testListenerExceptionIsRethrown() {
+        final String text = text(randomRows(WIDTH, HEIGHT), "\n") + VEHICLES;
+        final UnsupportedOperationException thrown =
+                        new UnsupportedOperationException("listener failed");
+        final CityLoadListener listener = new CityLoadListener() {
+            @Override
+            public void sizeKnown(final int theWidth, final int theHeight) {
+                // only the bands fail
+            }
+
+            @Override
+            public void rowsLoaded(final int theFirstRow, final TerrainGrid theRows) {
+                throw thrown;
+            }
+        };
+        final UnsupportedOperationException error =
+                        assertThrows(UnsupportedOperationException.class,
+                                     () -> load(text, listener),
+                                     "Listener exception not rethrown as it was!");
+        // the pool may rethrow a copy made on the waiting thread, caused by the original
+        assertTrue(error == thrown || error.getCause() == thrown,
+                   "Listener exception lost: " + error);
+    }
+
+    /** Test that vehicle lines of unknown kinds count as lines but are skipped. */
+    @Test
+    public void testUnknownVehiclesAreSkipped() throws IOException {
+        final String vehicles = "4\nC 1 1 E\nQ 2 2 S\nH 2 1 W\n\nZ 3 1 N\nT 3 2 N\n";
+        final City city = load(text(SMALL, "\n") + vehicles, new Recorder());
+        assertEquals(List.of("car.gif 1 1 EAST", "human.gif 2 1 WEST"), city.myVehicles,
+                     "Unknown vehicles not skipped, or lines past the count read!");
+    }
+
+    /** Test the problems reported for malformed headers and rows. */
+    @Test
+    public void testBadMapsThrow() {
+        assertProblem("", "is empty");
+        assertProblem("\n  \n", "is empty");
+        assertProblem("4\n" + text(SMALL, "\n") + VEHICLES, "has a bad size 4 x ");
+        assertProblem("-4 5\n" + VEHICLES, "has a bad size -4 x 5");
+        assertProblem("4 5\nXXXXX\nX|+|X\nX#.\nXXXXX\n" + VEHICLES, "has a short row 2");
+        assertProblem("4 5\nXXXXX\nX|+|X\nX#..X\n", "has a short row 3");
+        assertProblem(text(SMALL, "\n"), "has no vehicle count");
+        assertProblem(text(SMALL, "\n") + "-2\n", "has a negative vehicle count -2");
+    }
+
+    /** Test the problems reported for malformed vehicle lines. */
+    @Test
+    public void testBadVehicleLinesThrow() {
+        final String map = text(SMALL, "\n");
+        assertProblem(map + "2\nC 1 1 E\nC 1 x E\n", "has a bad vehicle line \"C 1 x E\"");
+        assertProblem(map + "1\nC 1 1\n", "has a bad vehicle line \"C 1 1\"");
+        assertProblem(map + "1\nC 1 1 Q\r\n", "has a bad vehicle line \"C 1 1 Q\"");
+        assertProblem(map + "3\nC 1 1 E\nH 2 1 W\n", "has 2 vehicle lines instead of 3");
+    }
+
+    /**
+     * Test that a city saved in the compile cache loads, from the cache and as a binary
+     * city file of its own, as the city it was compiled from, telling the size once.
+     */
+    @Test
+    public void testCompiledCityRoundTrip() throws IOException {
+        final String[] rows = randomRows(WIDTH, HEIGHT);
+        // a grass tile in the corner is stored as a uniform tile of the binary file
+        for (int y = 0; y < TerrainGrid.TILE_SIZE; y++) {
+            rows[y] = "-".repeat(TerrainGrid.TILE_SIZE)
+                      + rows[y].substring(TerrainGrid.TILE_SIZE);
+        }
+        final Path file = write(text(rows, "\n") + VEHICLES);
+        final City parsed = load(file, new Recorder());
+        assertArrayEquals(terrain(rows), parsed.myTerrain, "Wrong terrain parsed!");
+        final List<Path> compiled = cacheEntries();
+        assertEquals(1, compiled.size(), "City not compiled into the cache!");
+
+        final Recorder recorder = new Recorder();
+        final City cached = load(file, recorder);
+        assertArrayEquals(parsed.myTerrain, cached.myTerrain, "Cached terrain differs!");
+        assertEquals(parsed.myVehicles, cached.myVehicles, "Cached vehicles differ!");
+        assertEquals(List.of("size " + WIDTH + " x " + HEIGHT), recorder.mySizes,
+                     "Size not told once from the cache!");
+        recorder.assertBands(parsed.myTerrain);
+
+        final City binary = load(compiled.get(0), new Recorder());
+        assertArrayEquals(parsed.myTerrain, binary.myTerrain, "Binary terrain differs!");
+        assertEquals(parsed.myVehicles, binary.myVehicles, "Binary vehicles differ!");
+    }
+
+    /**
+     * Test that the compile cache is kept within its limit by deleting the entries used
+     * least recently, counting a load from the cache as a use.
+     */
+    @Test
+    public void testCacheEvictsLeastRecentlyUsed() throws IOException {
+        final Path[] files = new Path[3];
+        final Path[] entries = new Path[files.length];
+        for (int i = 0; i < files.length; i++) {
+            // maps of the same size, so their entries are too
+            files[i] = write(text(SMALL, "\n") + "1\nC " + (i + 1) + " 1 E\n");
+        }
+        for (int i = 0; i < 2; i++) {
+            load(files[i], new Recorder());
+            final List<Path> added = cacheEntries();
+            added.removeAll(Arrays.asList(entries));
+            entries[i] = added.get(0);
+            Files.setLastModifiedTime(entries[i], FileTime.fromMillis(1000 * (i + 1)));
+        }
+        final long entrySize = Files.size(entries[0]);
+        System.setProperty(LIMIT_PROPERTY, Long.toString(2 * entrySize + entrySize / 2));
+
+        // the oldest entry is used again, so the next oldest makes room for the third
+        load(files[0], new Recorder());
+        load(files[2], new Recorder());
+        final List<Path> kept = cacheEntries();
+        assertEquals(2, kept.size(), "Cache not kept to its limit!");
+        assertTrue(kept.contains(entries[0]), "Entry used again was evicted!");
+        assertFalse(kept.contains(entries[1]), "Least recently used entry was kept!");
+
+        // an entry larger than the limit is not kept at all
+        System.setProperty(LIMIT_PROPERTY, Long.toString(entrySize / 2));
+        load(write(text(SMALL, "\n") + "1\nH 1 2 W\n"), new Recorder());
+        assertEquals(List.of(), cacheEntries(), "Cache not emptied to fit its limit!");
+    }
+
+    /**
+     * Points the compile cache at an empty temporary directory, with the default limit.
+     *
+     * @throws IOException if the directory cannot be created
+     */
+    @BeforeEach
+    public void setUpCache() throws IOException {
+        myCache = Files.createTempDirectory("cache");
+        myOldCache = System.getProperty(CACHE_PROPERTY);
+        myOldLimit = System.getProperty(LIMIT_PROPERTY);
+        System.setProperty(CACHE_PROPERTY, myCache.toString());
+        System.clearProperty(LIMIT_PROPERTY);
+    }
+
+    /**
+     * Restores the compile cache settings and deletes the temporary cache.
+     *
+     * @throws IOException if the cache cannot be deleted
+     */
+    @AfterEach
+    public void tearDownCache() throws IOException {
+        restore(CACHE_PROPERTY, myOldCache);
+        restore(LIMIT_PROPERTY, myOldLimit);
+        try (Stream<Path> entries = Files.list(myCache)) {
+            for (final Path entry : entries.toList()) {
+                Files.delete(entry);
+            }
+        }
+        Files.delete(myCache);
+    }
+
+    /**
+     * Restores a system property.
+     *
+     * @param theName the name of the property
+     * @param theValue the value it had, or null if it was not set
+     */
+    private static void restore(final String theName, final String theValue) {
+        if (theValue == null) {
+            System.clearProperty(theName);
+        } else {
+            System.setProperty(theName, theValue);
+        }
+    }
+
+    /**
+     * Lists the entries of the compile cache.
+     *
+     * @return the entries, in a list that may be changed
+     * @throws IOException if the cache cannot be listed
+     */
+    private List<Path> cacheEntries() throws IOException {
+        try (Stream<Path> entries = Files.list(myCache)) {
+            return entries.collect(Collectors.toList());
+        }
+    }
+
+    /**
+     * Checks that loading a city text file fails with the given problem.
+     *
+     * @param theText the content of the file
+     * @param theProblem the start of the problem reported after the path of the file
+     */
+    private static void assertProblem(final String theText, final String theProblem) {
+        final IOException error = assertThrows(IOException.class,
+            () -> load(theText, new Recorder()), "No problem with \"" + theText + "\"!");
+        assertTrue(error.getMessage().contains(".txt " + theProblem),
+                   "Wrong problem \"" + error.getMessage() + "\", expected " + theProblem);
+    }
+
+    /**
+     * Loads a city text file with the given content, without the compile cache.
+     *
+     * @param theText the content of the file
+     * @param theListener the listener told about the terrain as it is read
+     * @return the city loaded
+     * @throws IOException if the file cannot be loaded
+     */
+    private static City load(final String theText, final CityLoadListener theListener)
+                    throws IOException {
+        final Path file = write(theText);
+        final RoadRage roadRage = FileLoader.readCity(file.toFile(), false, false,
+                                                      theListener);
+        return City.of(roadRage);
+    }
+
+    /**
+     * Loads a city file through the compile cache.
+     *
+     * @param theFile the city text file, or a binary city file
+     * @param theListener the listener told about the terrain as it is read
+     * @return the city loaded
+     * @throws IOException if the file cannot be loaded
+     */
+    private static City load(final Path theFile, final CityLoadListener theListener)
+                    throws IOException {
+        final File file = theFile.toFile();
+        return City.of(FileLoader.readCity(file, false, true, theListener));
+    }
+
+    /**
+     * Writes a city text file that is deleted when the tests end.
+     *
+     * @param theText the content of the file
+     * @return the file
+     * @throws IOException if the file cannot be written
+     */
+    private static Path write(final String theText) throws IOException {
+        final Path file = Files.createTempFile("city", ".txt");
+        file.toFile().deleteOnExit();
+        return Files.writeString(file, theText, StandardCharsets.US_ASCII);
+    }
+
+    /**
+     * Returns the size line and rows of a map.
+     *
+     * @param theRows the rows, the first of which has the width of the map
+     * @param theBreak the line break
+     * @return the text
+     */
+    private static String text(final String[] theRows, final String theBreak) {
+        final StringBuilder result = new StringBuilder();
+        result.append(theRows.length).append(' ').append(theRows[0].length()).append(theBreak);
+        for (final String row : theRows) {
+            result.append(row).append(theBreak);
+        }
+        return result.toString();
+    }
+
+    /**
+     * Returns random rows of every terrain.
+     *
+     * @param theWidth the width of the rows
+     * @param theHeight the number of rows
+     * @return the rows
+     */
+    private static String[] randomRows(final int theWidth, final int theHeight) {
+        final Random random = new Random(305);
+        final String[] result = new String[theHeight];
+        for (int y = 0; y < theHeight; y++) {
+            final StringBuilder row = new StringBuilder();
+            for (int x = 0; x < theWidth; x++) {
+                row.append(LETTERS.charAt(random.nextInt(LETTERS.length())));
+            }
+            result[y] = row.toString();
+        }
+        return result;
+    }
+
+    /**
+     * Returns the terrain of rows, cut to the width of the first.
+     *
+     * @param theRows the rows
+     * @return the terrain, indexed [y][x]
+     */
+    private static Terrain[][] terrain(final String[] theRows) {
+        final Terrain[][] result = new Terrain[theRows.length][theRows[0].length()];
+        for (int y = 0; y < result.length; y++) {
+            for (int x = 0; x < result[y].length; x++) {
+                result[y][x] = Terrain.valueOf(theRows[y].charAt(x));
+            }
+        }
+        return result;
+    }
+
+    /**
+     * A loaded city: its terrain, and its vehicles described by describe().
+     */
+    private static final class City {
+
+        /**
+         * The terrain, indexed [y][x].
+         */
+        private Terrain[][] myTerrain;
+
+        /**
+         * The vehicles, as their image, position and direction.
+         */
+        private final List<String> myVehicles = new ArrayList<>();
+
+        /**
+         * Reads the terrain and vehicles of a simulation from the events of its start.
+         *
+         * @param theRoadRage the simulation
+         * @return the city
+         */
+        static City of(final RoadRage theRoadRage) {
+            final City result = new City();
+            theRoadRage.addPropertyChangeListener(RoadRage.PROPERTY_GRID, theEvent -> {
+                result.myTerrain = ((TerrainGrid) theEvent.getNewValue()).toArray();
+            });
+            theRoadRage.addPropertyChangeListener(RoadRage.PROPERTY_VEHICLES, theEvent -> {
+                result.myVehicles.clear();
+                for (final Object vehicle : (List<?>) theEvent.getNewValue()) {
+                    result.myVehicles.add(describe((Vehicle) vehicle));
+                }
+            });
+            theRoadRage.start();
+            return result;
+        }
+
+        /**
+         * Describes a vehicle by its image, position and direction.
+         *
+         * @param theVehicle the vehicle
+         * @return the description
+         */
+        private static String describe(final Vehicle theVehicle) {
+            return theVehicle.getImageFileName() + " " + theVehicle.getX() + " "
+                   + theVehicle.getY() + " " + theVehicle.getDirection();
+        }
+    }
+
+    /**
+     * A listener recording the sizes it is told and the bands delivered to it.
+     */
+    private static final class Recorder implements CityLoadListener {
+
+        /**
+         * The sizes told, in order.
+         */
+        private final List<String> mySizes = new ArrayList<>();
+
+        /**
+         * The number of times each band was delivered, by its first row.
+         */
+        private final Map<Integer, Integer> myBands = new TreeMap<>();
+
+        /**
+         * Every band delivered, with its first row.
+         */
+        private final List<Map.Entry<Integer, TerrainGrid>> myDeliveries = new ArrayList<>();
+
+        @Override
+        public synchronized void sizeKnown(final int theWidth, final int theHeight) {
+            mySizes.add("size " + theWidth + " x " + theHeight);
+        }
+
+        @Override
+        public synchronized void rowsLoaded(final int theFirstRow,
+                                            final TerrainGrid theRows) {
+            myBands.merge(theFirstRow, 1, Integer::sum);
+            myDeliveries.add(Map.entry(theFirstRow, theRows));
+        }
+
+        /**
+         * Checks that every band delivered has the terrain of its rows of a map.
+         *
+         * @param theTerrain the terrain of the map, indexed [y][x]
+         */
+        void assertBands(final Terrain[][] theTerrain) {
+            for (final Map.Entry<Integer, TerrainGrid> delivery : myDeliveries) {
+                final Terrain[][] band = delivery.getValue().toArray();
+                for (int y = 0; y < band.length; y++) {
+                    assertArrayEquals(theTerrain[delivery.getKey() + y], band[y],
+                                      "Wrong row " + y + " of band " + delivery.getKey());
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,415 @@
+/*
+ * TCSS 305 - Road Rage
+ */
+
+package tests;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import logic.RoadRage;
+import model.Direction;
+import model.Light;
+import model.Terrain;
+import model.TerrainGrid;
+import model.Vehicle;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Unit tests for collision detection in RoadRage, which finds the vehicles on a square
+ * through a cell index. A vehicle that moved meets every other vehicle on its new square;
+ * one that stayed put only meets the vehicles after it in the list, since those before it
+ * already met it on their turn. Vehicles on a square are met in list order, and each
+ * meeting calls collide() on the vehicle taking its turn and then on the other.
+ */
+public class CollisionTest {
+
+    /**
+     * The number of ticks the random traffic runs for.
+     */
+    private static final int TICKS = 40;
+
+    /**
+     * The width of the random traffic map, spanning several tiles of the cell index.
+     */
+    private static final int WIDTH = 200;
+
+    /**
+     * The height of the random traffic map.
+     */
+    private static final int HEIGHT = 140;
+
+    /**
+     * The side of a map too large for the cell index to keep the head of every cell.
+     */
+    private static final int HUGE_SIDE = 4160;
+
+    /**
+     * The side of a map of over 2^31 cells, whose last cell is numbered 2^32 - 1.
+     */
+    private static final int GIANT_SIDE = 1 << 16;
+
+    /**
+     * The number of vehicles in the random traffic.
+     */
+    private static final int VEHICLES = 4000;
+
+    /**
+     * The number of vehicles of the random traffic that start piled up in threes.
+     */
+    private static final int PILED = 300;
+
+    /** Test that vehicles piled up on a square meet once each, in list order. */
+    @Test
+    public void testPileUpMeetsInListOrder() {
+        final List<String> log = new ArrayList<>();
+        final List<Vehicle> vehicles = List.of(
+            new RecordingVehicle("A", 2, 2, false, log),
+            new RecordingVehicle("B", 2, 2, false, log),
+            new RecordingVehicle("C", 2, 2, false, log),
+            new RecordingVehicle("D", 5, 5, false, log));
+        final RoadRage roadRage = new RoadRage(streets(8, 8), vehicles);
+        roadRage.start();
+
+        for (int tick = 0; tick < 2; tick++) {
+            log.clear();
+            roadRage.advance();
+            assertEquals(List.of("A>B", "B>A", "A>C", "C>A", "B>C", "C>B"), log,
+                         "Pile-up on tick " + tick + " met in the wrong order!");
+        }
+    }
+
+    /**
+     * Test that vehicles piled up on the last square of a map of over 2^31 cells, whose
+     * cell index does not fit in an int, meet as on any other square.
+     */
+    @Test
+    public void testPileUpOnGiantMap() {
+        final List<String> log = new ArrayList<>();
+        final int last = GIANT_SIDE - 1;
+        final List<Vehicle> vehicles = List.of(
+            new RecordingVehicle("A", last, last, false, log),
+            new RecordingVehicle("B", last, last, false, log),
+            new RecordingVehicle("C", last - 1, last, false, log));
+        final TerrainGrid grid = new TerrainGrid.Builder(GIANT_SIDE, GIANT_SIDE).build();
+        final RoadRage roadRage = new RoadRage(grid, vehicles, false);
+        roadRage.start();
+
+        for (int tick = 0; tick < 2; tick++) {
+            log.clear();
+            roadRage.advance();
+            assertEquals(List.of("A>B", "B>A"), log,
+                         "Pile-up on the last square met wrongly on tick " + tick + "!");
+        }
+    }
+
+    /** Test that vehicles moving onto and off a square meet the vehicles listed there. */
+    @Test
+    public void testMovesAcrossCells() {
+        final List<String> log = new ArrayList<>();
+        final List<Vehicle> vehicles = List.of(
+            new RecordingVehicle("A", 5, 5, false, log),
+            new RecordingVehicle("B", 5, 5, false, log),
+            new RecordingVehicle("C", 4, 5, true, log),
+            new RecordingVehicle("D", 5, 5, true, log));
+        final RoadRage roadRage = new RoadRage(streets(10, 10), vehicles);
+        roadRage.start();
+
+        roadRage.advance();
+        // A and B stay and meet the later vehicles still on the square; C moves on
+        // before D has left it, so meets all three; D then moves to an empty square
+        assertEquals(List.of("A>B", "B>A", "A>D", "D>A", "B>D", "D>B",
+                             "C>A", "A>C", "C>B", "B>C", "C>D", "D>C"), log,
+                     "Moving vehicles met the wrong vehicles!");
+        assertEquals(5, vehicles.get(2).getX(), "C did not move onto the square!");
+        assertEquals(6, vehicles.get(3).getX(), "D did not move off the square!");
+    }
+
+    /**
+     * Test that random traffic over several tiles, with most vehicles on a square of their
+     * own so the cell index holds as many squares as it is sized for, collides exactly as
+     * a scan of every pair of vehicles would.
+     */
+    @Test
+    public void testRandomTrafficMatchesPairwiseScan() {
+        assertTrafficMatchesPairwiseScan(WIDTH, HEIGHT);
+    }
+
+    /**
+     * Test that the same traffic in a corner of a map so large that the cell index only
+     * keeps the heads of occupied cells, in a table of its own, collides the same way.
+     */
+    @Test
+    public void testHugeMapTrafficMatchesPairwiseScan() {
+        assertTrafficMatchesPairwiseScan(HUGE_SIDE, HUGE_SIDE);
+    }
+
+    /**
+     * Runs random traffic on the streets of a WIDTH by HEIGHT corner of a grass map and
+     * checks its collisions against a scan of every pair of vehicles on every tick.
+     *
+     * @param theWidth the width of the map, at least WIDTH
+     * @param theHeight the height of the map, at least HEIGHT
+     */
+    private static void assertTrafficMatchesPairwiseScan(final int theWidth,
+                                                         final int theHeight) {
+        final Random random = new Random(305);
+        final TerrainGrid.Builder builder = new TerrainGrid.Builder(theWidth, theHeight);
+        for (int y = 0; y < HEIGHT; y++) {
+            for (int x = 0; x < WIDTH; x++) {
+                if (random.nextInt(4) != 0) {
+                    builder.set(x, y, Terrain.STREET);
+                }
+            }
+        }
+        final List<String> log = new ArrayList<>();
+        final List<Vehicle> vehicles = new ArrayList<>();
+        for (int i = 0; i < VEHICLES; i++) {
+            final int square;
+            if (i < PILED && i % 3 != 0) {
+                // piled onto the square of the vehicle before it
+                square = vehicles.get(i - 1).getY() * WIDTH + vehicles.get(i - 1).getX();
+            } else {
+                square = random.nextInt(WIDTH * HEIGHT);
+            }
+            final RecordingVehicle vehicle = new RecordingVehicle(Integer.toString(i),
+                square % WIDTH, square / WIDTH, i % 5 != 0, log);
+            vehicle.wander(random.nextLong());
+            vehicles.add(vehicle);
+        }
+        final RoadRage roadRage = new RoadRage(builder.build(), vehicles, false);
+        roadRage.start();
+
+        final int[] before = new int[VEHICLES];
+        final int[] after = new int[VEHICLES];
+        for (int tick = 0; tick < TICKS; tick++) {
+            squares(vehicles, before);
+            log.clear();
+            roadRage.advance();
+            squares(vehicles, after);
+            assertEquals(pairwiseScan(before, after), log,
+                         "Collisions differ from a pairwise scan on tick " + tick + "!");
+        }
+    }
+
+    /**
+     * Lists the collide() calls of one tick the way a scan of every pair would find them.
+     *
+     * @param theBefore the square of each vehicle before the tick
+     * @param theAfter the square of each vehicle after the tick
+     * @return the calls, each as the name of the vehicle called and of the other one
+     */
+    private static List<String> pairwiseScan(final int[] theBefore, final int[] theAfter) {
+        // the vehicles that are on each square at some point of the tick, in list order
+        final Map<Integer, List<Integer>> visitors = new HashMap<>();
+        for (int i = 0; i < theBefore.length; i++) {
+            visitors.computeIfAbsent(theBefore[i], k -> new ArrayList<>()).add(i);
+            if (theAfter[i] != theBefore[i]) {
+                visitors.computeIfAbsent(theAfter[i], k -> new ArrayList<>()).add(i);
+            }
+        }
+        final List<String> result = new ArrayList<>();
+        for (int i = 0; i < theBefore.length; i++) {
+            final boolean moved = theAfter[i] != theBefore[i];
+            final List<Integer> others = new ArrayList<>(visitors.get(theAfter[i]));
+            others.sort(null);
+            for (final int other : others) {
+                // vehicles before this one have taken their turn, the rest have not
+                final int square = other < i ? theAfter[other] : theBefore[other];
+                if (other != i && square == theAfter[i] && (moved || other > i)) {
+                    result.add(i + ">" + other);
+                    result.add(other + ">" + i);
+                }
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Stores the square of each vehicle as y * WIDTH + x.
+     *
+     * @param theVehicles the vehicles
+     * @param theSquares where to store the squares
+     */
+    private static void squares(final List<Vehicle> theVehicles, final int[] theSquares) {
+        for (int i = 0; i < theSquares.length; i++) {
+            theSquares[i] = theVehicles.get(i).getY() * WIDTH + theVehicles.get(i).getX();
+        }
+    }
+
+    /**
+     * Returns a map of streets.
+     *
+     * @param theWidth the width of the map
+     * @param theHeight the height of the map
+     * @return the terrain, indexed [y][x]
+     */
+    private static Terrain[][] streets(final int theWidth, final int theHeight) {
+        final Terrain[][] result = new Terrain[theHeight][theWidth];
+        for (final Terrain[] row : result) {
+            Arrays.fill(row, Terrain.STREET);
+        }
+        return result;
+    }
+
+    /**
+     * A vehicle that never dies and records every collision it is told about. It either
+     * keeps going in its direction or wanders in random ones, moving onto streets only.
+     */
+    private static final class RecordingVehicle implements Vehicle {
+
+        /**
+         * The name recorded for this vehicle.
+         */
+        private final String myName;
+
+        /**
+         * Where collisions are recorded.
+         */
+        private final List<String> myLog;
+
+        /**
+         * Whether the vehicle moves at all.
+         */
+        private final boolean myMoving;
+
+        /**
+         * The starting x position.
+         */
+        private final int myStartX;
+
+        /**
+         * The starting y position.
+         */
+        private final int myStartY;
+
+        /**
+         * Chooses the directions of a wandering vehicle, or null to keep going.
+         */
+        private Random myRandom;
+
+        /**
+         * The x position.
+         */
+        private int myX;
+
+        /**
+         * The y position.
+         */
+        private int myY;
+
+        /**
+         * The direction.
+         */
+        private Direction myDirection = Direction.EAST;
+
+        /**
+         * Creates a vehicle heading east.
+         *
+         * @param theName the name recorded for the vehicle
+         * @param theX the x position
+         * @param theY the y position
+         * @param theMoving whether the vehicle moves at all
+         * @param theLog where collisions are recorded
+         */
+        RecordingVehicle(final String theName, final int theX, final int theY,
+                         final boolean theMoving, final List<String> theLog) {
+            myName = theName;
+            myStartX = theX;
+            myStartY = theY;
+            myX = theX;
+            myY = theY;
+            myMoving = theMoving;
+            myLog = theLog;
+        }
+
+        /**
+         * Makes the vehicle wander in random directions.
+         *
+         * @param theSeed the seed of its directions
+         */
+        void wander(final long theSeed) {
+            myRandom = new Random(theSeed);
+        }
+
+        @Override
+        public boolean canPass(final Terrain theTerrain, final Light theLight) {
+            return myMoving && theTerrain == Terrain.STREET;
+        }
+
+        @Override
+        public Direction chooseDirection(final Map<Direction, Terrain> theNeighbors) {
+            if (myRandom == null) {
+                return myDirection;
+            }
+            return Direction.values()[myRandom.nextInt(Direction.values().length)];
+        }
+
+        @Override
+        public void collide(final Vehicle theOther) {
+            myLog.add(myName + ">" + ((RecordingVehicle) theOther).myName);
+        }
+
+        @Override
+        public int getDeathTime() {
+            return 1;
+        }
+
+        @Override
+        public String getImageFileName() {
+            return "car.gif";
+        }
+
+        @Override
+        public Direction getDirection() {
+            return myDirection;
+        }
+
+        @Override
+        public int getX() {
+            return myX;
+        }
+
+        @Override
+        public int getY() {
+            return myY;
+        }
+
+        @Override
+        public boolean isAlive() {
+            return true;
+        }
+
+        @Override
+        public void poke() {
+            // never dead
+        }
+
+        @Override
+        public void reset() {
+            myX = myStartX;
+            myY = myStartY;
+            myDirection = Direction.EAST;
+        }
+
+        @Override
+        public void setDirection(final Direction theDir) {
+            myDirection = theDir;
+        }
+
+        @Override
+        public void setX(final int theX) {
+            myX = theX;
+        }
+
+        @Override
+        public void setY(final int theY) {
+            myY = theY;
+        }
+    }
+}
@@ -0,0 +1,128 @@
+/*
+ * TCSS 305 - Road Rage
+ */
+
+package tests;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+
+import bench.SyntheticCity;
+import java.util.List;
+import logic.RoadRage;
+import model.TerrainGrid;
+import model.Vehicle;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Unit tests for the reproducibility of a seeded simulation. The intents of the vehicles
+ * may be decided on several threads and the vehicles kept as objects or in packed arrays,
+ * but a run from the same seed must leave every vehicle in the same state after every
+ * tick as a serial run of the object store does.
+ */
+public class DeterminismTest {
+
+    /**
+     * The side of the synthetic city.
+     */
+    private static final int SIDE = 200;
+
+    /**
+     * The number of vehicles, enough for the intents to be split between threads.
+     */
+    private static final int VEHICLES = 12_000;
+
+    /**
+     * The number of ticks run before and after the reset.
+     */
+    private static final int TICKS = 150;
+
+    /**
+     * The number of threads of the parallel runs.
+     */
+    private static final int THREADS = 4;
+
+    /**
+     * The seed of the city and of the simulation.
+     */
+    private static final long SEED = 42;
+
+    /**
+     * Test that parallel runs of both stores match a serial run of the object store on
+     * every tick, before and after a reset.
+     */
+    @Test
+    public void testParallelAndPackedRunsMatchSerialRun() {
+        final TerrainGrid grid = SyntheticCity.grid(SIDE, SIDE, SEED);
+        final Run serial = new Run(grid, false, 1);
+        final Run[] others = {new Run(grid, false, THREADS), new Run(grid, true, 1),
+                              new Run(grid, true, THREADS)};
+        try {
+            for (int run = 0; run < 2; run++) {
+                for (int tick = 1; tick <= TICKS; tick++) {
+                    serial.myRoadRage.advance();
+                    for (final Run other : others) {
+                        other.myRoadRage.advance();
+                        assertArrayEquals(serial.myState, other.myState, other.myName
+                                          + " differs from a serial run at tick " + tick
+                                          + " of run " + run + "!");
+                    }
+                }
+                serial.myRoadRage.reset();
+                for (final Run other : others) {
+                    other.myRoadRage.reset();
+                }
+            }
+        } finally {
+            for (final Run other : others) {
+                other.myRoadRage.setParallelism(1);
+            }
+        }
+    }
+
+    /**
+     * A seeded simulation of the synthetic city and the state of its vehicles.
+     */
+    private static final class Run {
+
+        /**
+         * The kind of run, for the messages.
+         */
+        private final String myName;
+
+        /**
+         * The simulation.
+         */
+        private final RoadRage myRoadRage;
+
+        /**
+         * The position, direction and life of each vehicle after the last tick.
+         */
+        private final long[] myState = new long[VEHICLES];
+
+        /**
+         * Creates and starts a simulation.
+         *
+         * @param theGrid the terrain
+         * @param thePacked whether the vehicles are kept in packed arrays
+         * @param theThreads the number of threads deciding the intents
+         */
+        Run(final TerrainGrid theGrid, final boolean thePacked, final int theThreads) {
+            myName = (thePacked ? "Packed" : "Object") + " store on " + theThreads
+                     + " threads";
+            final List<Vehicle> vehicles = SyntheticCity.vehicles(theGrid, VEHICLES, SEED);
+            myRoadRage = new RoadRage(theGrid, vehicles, thePacked);
+            myRoadRage.setSeed(SEED);
+            myRoadRage.setParallelism(theThreads);
+            myRoadRage.addPropertyChangeListener(RoadRage.PROPERTY_VEHICLES, theEvent -> {
+                final List<?> fired = (List<?>) theEvent.getNewValue();
+                for (int i = 0; i < myState.length; i++) {
+                    final Vehicle vehicle = (Vehicle) fired.get(i);
+                    myState[i] = (long) vehicle.getX() << 32 | vehicle.getY() << 3
+                                 | vehicle.getDirection().ordinal() << 1
+                                 | (vehicle.isAlive() ? 1 : 0);
+                }
+            });
+            myRoadRage.start();
+        }
+    }
+}
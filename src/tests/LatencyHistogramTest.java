@@ -0,0 +1,156 @@
+/*
+ * TCSS 305 - Road Rage
+ */
+
+package tests;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import logic.LatencyHistogram;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Unit tests for LatencyHistogram. A percentile is read as the largest value of the
+ * bucket holding it, kept between the smallest and largest values recorded, so the
+ * bucket of a value shows as the 50th percentile of it and a larger value.
+ */
+public class LatencyHistogramTest {
+
+    /**
+     * The largest value kept exactly: every value below 64 has a bucket of its own.
+     */
+    private static final int EXACT = 63;
+
+    /**
+     * The number of buckets each power of two above EXACT is split into.
+     */
+    private static final int SUB_BUCKETS = 32;
+
+    /** Test that an empty histogram reads as 0 everywhere. */
+    @Test
+    public void testEmpty() {
+        final LatencyHistogram histogram = new LatencyHistogram();
+        assertEquals(0, histogram.getCount(), "Empty histogram has a count!");
+        assertEquals(0, histogram.getMin(), "Empty histogram has a minimum!");
+        assertEquals(0, histogram.getMax(), "Empty histogram has a maximum!");
+        assertEquals(0, histogram.getMean(), "Empty histogram has a mean!");
+        for (final double percentile : new double[] {0, 50, 100}) {
+            assertEquals(0, histogram.getValueAtPercentile(percentile),
+                         "Empty histogram has a " + percentile + "th percentile!");
+        }
+    }
+
+    /** Test that percentiles outside 0 to 100 are refused, even when empty. */
+    @Test
+    public void testBadPercentilesThrow() {
+        final LatencyHistogram histogram = new LatencyHistogram();
+        for (final double percentile : new double[] {-1, 100.5, Double.NaN}) {
+            assertThrows(IllegalArgumentException.class,
+                () -> histogram.getValueAtPercentile(percentile),
+                "Percentile " + percentile + " accepted!");
+        }
+    }
+
+    /** Test that small values are each kept in a bucket of their own. */
+    @Test
+    public void testSmallValuesAreExact() {
+        for (long value = 0; value <= EXACT; value++) {
+            assertEquals(value, bucketTop(value), "Value " + value + " not kept exactly!");
+        }
+    }
+
+    /**
+     * Test that each power of two starts a bucket a 32nd of it wide, and the value before
+     * it ends one.
+     */
+    @Test
+    public void testBucketEdgesAtPowersOfTwo() {
+        for (int bit = 6; bit < Long.SIZE - 1; bit++) {
+            final long power = 1L << bit;
+            assertEquals(power - 1, bucketTop(power - 1),
+                         "Bucket does not end below 2^" + bit + "!");
+            assertEquals(power + power / SUB_BUCKETS - 1, bucketTop(power),
+                         "Wrong bucket at 2^" + bit + "!");
+            assertEquals(power + power / SUB_BUCKETS - 1,
+                         bucketTop(power + power / SUB_BUCKETS - 1),
+                         "Wrong end of the bucket at 2^" + bit + "!");
+            assertEquals(power + 2 * (power / SUB_BUCKETS) - 1,
+                         bucketTop(power + power / SUB_BUCKETS),
+                         "Wrong second bucket at 2^" + bit + "!");
+        }
+    }
+
+    /** Test that the largest long is recorded and read back without overflow. */
+    @Test
+    public void testLargestValue() {
+        final LatencyHistogram histogram = new LatencyHistogram();
+        histogram.record(Long.MAX_VALUE);
+        assertEquals(Long.MAX_VALUE, histogram.getMin(), "Wrong minimum!");
+        assertEquals(Long.MAX_VALUE, histogram.getMax(), "Wrong maximum!");
+        assertEquals(Long.MAX_VALUE, histogram.getValueAtPercentile(50),
+                     "Wrong percentile of the largest long!");
+
+        // the largest long ends the last bucket, which is shared with the value below it
+        histogram.record(Long.MAX_VALUE - 1);
+        assertEquals(Long.MAX_VALUE, histogram.getValueAtPercentile(0),
+                     "Last bucket does not end at the largest long!");
+        assertEquals(Long.MAX_VALUE, bucketTop(Long.MAX_VALUE - (Long.MAX_VALUE >> 6)),
+                     "Last bucket does not end at the largest long!");
+    }
+
+    /** Test the percentiles at 0, 50 and 100, exact and within a bucket. */
+    @Test
+    public void testPercentiles() {
+        final LatencyHistogram small = new LatencyHistogram();
+        for (final long value : new long[] {30, 10, 20}) {
+            small.record(value);
+        }
+        assertEquals(10, small.getValueAtPercentile(0), "Wrong 0th percentile!");
+        assertEquals(20, small.getValueAtPercentile(50), "Wrong 50th percentile!");
+        assertEquals(30, small.getValueAtPercentile(100), "Wrong 100th percentile!");
+        assertEquals(20, small.getMean(), "Wrong mean!");
+
+        final LatencyHistogram large = new LatencyHistogram();
+        for (long value = 1000; value <= 1_000_000; value += 1000) {
+            large.record(value);
+        }
+        // 1000 falls in the bucket from 992 to 1007
+        assertEquals(1007, large.getValueAtPercentile(0), "Wrong 0th percentile!");
+        final long median = large.getValueAtPercentile(50);
+        assertTrue(median >= 500_000 && median <= 500_000 + 500_000 / SUB_BUCKETS,
+                   "50th percentile " + median + " not within a bucket of 500000!");
+        assertEquals(1_000_000, large.getValueAtPercentile(100), "Wrong 100th percentile!");
+    }
+
+    /** Test that negative values are recorded as 0 and that reset empties the histogram. */
+    @Test
+    public void testNegativeValuesAndReset() {
+        final LatencyHistogram histogram = new LatencyHistogram();
+        histogram.record(-5);
+        histogram.record(7);
+        assertEquals(0, histogram.getMin(), "Negative value not recorded as 0!");
+        assertEquals(0, histogram.getValueAtPercentile(50), "Negative value not in bucket 0!");
+        final LatencyHistogram copy = new LatencyHistogram(histogram);
+        histogram.reset();
+        assertEquals(0, histogram.getCount(), "Reset histogram has a count!");
+        assertEquals(0, histogram.getValueAtPercentile(100), "Reset histogram has values!");
+        assertEquals(2, copy.getCount(), "Copy changed by the reset!");
+        assertEquals(7, copy.getValueAtPercentile(100), "Copy changed by the reset!");
+    }
+
+    /**
+     * Returns the largest value of the bucket a value falls in, as the 50th percentile of
+     * the value and the largest long.
+     *
+     * @param theValue the value
+     * @return the largest value of its bucket
+     */
+    private static long bucketTop(final long theValue) {
+        final LatencyHistogram histogram = new LatencyHistogram();
+        histogram.record(theValue);
+        histogram.record(Long.MAX_VALUE);
+        return histogram.getValueAtPercentile(50);
+    }
+}
@@ -0,0 +1,246 @@
+/*
+ * TCSS 305 - Road Rage
+ */
+
+package tests;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import logic.RoadRage;
+import logic.VehicleChanges;
+import model.AbstractVehicle;
+import model.Car;
+import model.Direction;
+import model.Human;
+import model.Light;
+import model.Terrain;
+import model.Truck;
+import model.Vehicle;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Unit tests for the revival of dead vehicles. A dead vehicle counts down its death time
+ * one poke at a time and comes back to life on the last one. RoadRage does not poke dead
+ * vehicles every tick; it keeps them in a timing wheel of 64 slots until the tick they
+ * revive at and gives them all their pokes then, which must revive them on the same tick,
+ * and in the same order, as poking them once per tick would.
+ */
+public class RevivalTest {
+
+    /**
+     * The number of ticks the simulation tests run for before resetting.
+     */
+    private static final int TICKS = 100;
+
+    /**
+     * A death time longer than two rotations of the timing wheel.
+     */
+    private static final int LONG_DEATH_TIME = 150;
+
+    /**
+     * A death time whose revivals fall in the same slots of the timing wheel as those of
+     * LONG_DEATH_TIME, two rotations earlier.
+     */
+    private static final int SHORT_DEATH_TIME = LONG_DEATH_TIME - 128;
+
+    /** Test that a dead vehicle revives on exactly its death time'th poke. */
+    @Test
+    public void testDeathThenPokesRevives() {
+        final Car car = new Car(1, 1, Direction.EAST);
+        car.collide(new Truck(1, 1, Direction.EAST));
+        assertFalse(car.isAlive(), "Car did not die when hit by a truck!");
+        assertPokesToRevive(car, "first death");
+    }
+
+    /** Test that a vehicle counts down its whole death time again when it dies again. */
+    @Test
+    public void testSecondDeathRevives() {
+        final Car car = new Car(1, 1, Direction.EAST);
+        final Truck truck = new Truck(1, 1, Direction.EAST);
+        car.collide(truck);
+        assertPokesToRevive(car, "first death");
+        car.collide(truck);
+        assertFalse(car.isAlive(), "Car did not die a second time!");
+        assertPokesToRevive(car, "second death");
+    }
+
+    /** Test that a vehicle reset while dead is alive, and revives normally after it dies. */
+    @Test
+    public void testRevivalAfterReset() {
+        final Human human = new Human(1, 1, Direction.EAST);
+        final Truck truck = new Truck(1, 1, Direction.EAST);
+        human.collide(truck);
+        for (int i = 0; i < 10; i++) {
+            human.poke();
+        }
+        human.reset();
+        assertTrue(human.isAlive(), "Human not alive after reset!");
+        human.poke();
+        assertTrue(human.isAlive(), "Poking a living human killed it!");
+        human.collide(truck);
+        assertFalse(human.isAlive(), "Human did not die after reset!");
+        assertPokesToRevive(human, "death after reset");
+    }
+
+    /**
+     * Test that a car and a human, killed by a truck on every revival, revive
+     * on the ticks poking them once per tick would, before and after a reset, in both
+     * vehicle stores.
+     */
+    @Test
+    public void testSimulationRevivesOnTime() {
+        for (final boolean packed : new boolean[] {false, true}) {
+            final List<Vehicle> vehicles = List.of(new Truck(1, 1, Direction.NORTH),
+                                                   new Car(1, 1, Direction.EAST),
+                                                   new Human(1, 1, Direction.EAST));
+            final RoadRage roadRage = new RoadRage(walledSquare(), vehicles, packed);
+            final List<String> log = new ArrayList<>();
+            recordRevivals(roadRage, log);
+            roadRage.start();
+
+            // the truck kills both on its turn of the first tick, before they are poked
+            // on theirs, and the car again on its own turn each time it revives
+            final List<String> expected = List.of("1 died 1", "1 died 2",
+                "15 revived 1", "15 died 1", "30 revived 1", "30 died 1",
+                "45 revived 1", "45 died 1", "45 revived 2", "45 died 2",
+                "60 revived 1", "60 died 1", "75 revived 1", "75 died 1",
+                "90 revived 1", "90 died 1", "90 revived 2", "90 died 2");
+            for (int run = 0; run < 2; run++) {
+                log.clear();
+                for (int tick = 0; tick < TICKS; tick++) {
+                    roadRage.advance();
+                }
+                assertEquals(expected, log, "Wrong revivals in run " + run
+                             + (packed ? " of the packed store!" : " of the object store!"));
+                roadRage.reset();
+            }
+        }
+    }
+
+    /**
+     * Test that vehicles dead for more than a rotation of the timing wheel wait out the
+     * rotations, and that vehicles due on the same tick, sharing a slot with one that is
+     * not due yet, all revive on it.
+     */
+    @Test
+    public void testSchedulingBeyondOneRotation() {
+        final List<Vehicle> vehicles = List.of(new Truck(1, 1, Direction.NORTH),
+            new FragileVehicle(LONG_DEATH_TIME), new FragileVehicle(SHORT_DEATH_TIME),
+            new FragileVehicle(SHORT_DEATH_TIME));
+        final RoadRage roadRage = new RoadRage(walledSquare(), vehicles);
+        final List<String> log = new ArrayList<>();
+        recordRevivals(roadRage, log);
+        roadRage.start();
+
+        // each fragile vehicle dies on the first tick and again on every revival
+        final int[] deathTimes = {0, LONG_DEATH_TIME, SHORT_DEATH_TIME, SHORT_DEATH_TIME};
+        final List<String> expected = new ArrayList<>();
+        for (int tick = 1; tick <= 2 * LONG_DEATH_TIME; tick++) {
+            for (int handle = 1; handle < deathTimes.length; handle++) {
+                final boolean revives = tick % deathTimes[handle] == 0;
+                if (revives) {
+                    expected.add(tick + " revived " + handle);
+                }
+                if (revives || tick == 1) {
+                    expected.add(tick + " died " + handle);
+                }
+            }
+        }
+        for (int tick = 0; tick < 2 * LONG_DEATH_TIME; tick++) {
+            roadRage.advance();
+        }
+        assertEquals(expected, log, "Wrong revivals beyond one rotation of the wheel!");
+    }
+
+    /**
+     * Pokes a dead vehicle until one poke before its death time is up, checking that it
+     * stays dead, and then once more, checking that it revives.
+     *
+     * @param theVehicle the dead vehicle
+     * @param theWhen the death being tested, for the messages
+     */
+    private static void assertPokesToRevive(final Vehicle theVehicle, final String theWhen) {
+        for (int i = 1; i < theVehicle.getDeathTime(); i++) {
+            theVehicle.poke();
+            assertFalse(theVehicle.isAlive(), "Revived after " + i + " pokes of the "
+                        + theWhen + "!");
+        }
+        theVehicle.poke();
+        assertTrue(theVehicle.isAlive(), "Not revived after " + theVehicle.getDeathTime()
+                   + " pokes of the " + theWhen + "!");
+    }
+
+    /**
+     * Records every death and revival the simulation reports, as the time step, what
+     * happened, and the handle of the vehicle.
+     *
+     * @param theRoadRage the simulation
+     * @param theLog where the deaths and revivals are recorded
+     */
+    private static void recordRevivals(final RoadRage theRoadRage,
+                                       final List<String> theLog) {
+        theRoadRage.addPropertyChangeListener(RoadRage.PROPERTY_VEHICLE_CHANGES, theEvent -> {
+            final VehicleChanges changes = (VehicleChanges) theEvent.getNewValue();
+            for (int i = 0; i < changes.size(); i++) {
+                if ((changes.getFlags(i) & VehicleChanges.REVIVED) != 0) {
+                    theLog.add(changes.getTimestep() + " revived " + changes.getHandle(i));
+                }
+                if ((changes.getFlags(i) & VehicleChanges.DIED) != 0) {
+                    theLog.add(changes.getTimestep() + " died " + changes.getHandle(i));
+                }
+            }
+        });
+    }
+
+    /**
+     * Returns a map of one street square walled in on every side.
+     *
+     * @return the terrain, indexed [y][x]
+     */
+    private static Terrain[][] walledSquare() {
+        final Terrain wall = Terrain.WALL;
+        return new Terrain[][] {
+            {wall, wall, wall},
+            {wall, Terrain.STREET, wall},
+            {wall, wall, wall},
+        };
+    }
+
+    /**
+     * A vehicle that stays on the middle square of walledSquare() and dies whenever it
+     * meets a living vehicle.
+     */
+    private static final class FragileVehicle extends AbstractVehicle {
+
+        /**
+         * Creates a vehicle on the middle square.
+         *
+         * @param theDeathTime the death time
+         */
+        FragileVehicle(final int theDeathTime) {
+            super(1, 1, Direction.EAST, theDeathTime, "car.gif", "car_dead.gif");
+        }
+
+        @Override
+        public boolean canPass(final Terrain theTerrain, final Light theLight) {
+            return false;
+        }
+
+        @Override
+        public Direction chooseDirection(final Map<Direction, Terrain> theNeighbors) {
+            return getDirection();
+        }
+
+        @Override
+        public void collide(final Vehicle theOther) {
+            if (theOther.isAlive()) {
+                die();
+            }
+        }
+    }
+}
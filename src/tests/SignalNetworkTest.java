@@ -0,0 +1,270 @@
+/*
+ * TCSS 305 - Road Rage
+ */
+
+package tests;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.util.ArrayList;
+import java.util.List;
+import logic.PropertyChangeEnabledRoadRageControls;
+import logic.RoadRage;
+import logic.Signals;
+import model.Light;
+import model.Terrain;
+import model.TerrainGrid;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Unit tests for the traffic signals of RoadRage. Each group of LIGHT squares is a signal
+ * with its own controller, cycling green, yellow and red with its own offset and phase
+ * lengths, and each CROSSWALK square follows the signal of the nearest LIGHT square no
+ * more than 64 steps away, or the master light if there is none. The controllers wait in
+ * a queue for their next phase change, so a tick only updates the signals that change.
+ *
+ * The test map has two intersections in one row: signal 0, two squares wide at the left,
+ * and signal 1, one square at the right. One CROSSWALK square is exactly 64 steps from
+ * signal 0 and the one next to it is a step too far from either.
+ */
+public class SignalNetworkTest {
+
+    /**
+     * The width of the test map.
+     */
+    private static final int WIDTH = 300;
+
+    /**
+     * The height of the test map.
+     */
+    private static final int HEIGHT = 10;
+
+    /**
+     * The row of the lights and crosswalks of the test map.
+     */
+    private static final int ROW = 2;
+
+    /**
+     * The rightmost LIGHT square of signal 0.
+     */
+    private static final int LIGHT_0 = 3;
+
+    /**
+     * The LIGHT square of signal 1.
+     */
+    private static final int LIGHT_1 = 250;
+
+    /**
+     * The CROSSWALK square as far from signal 0 as a crosswalk reaches.
+     */
+    private static final int NEAR_CROSSWALK = LIGHT_0 + 64;
+
+    /**
+     * The CROSSWALK square just out of reach of every signal.
+     */
+    private static final int FAR_CROSSWALK = NEAR_CROSSWALK + 1;
+
+    /**
+     * The number of ticks each color lasts by default.
+     */
+    private static final int PHASE = 15;
+
+    /**
+     * The side of a map whose square numbers y * width + x do not fit in an int below
+     * row 2^31 / width.
+     */
+    private static final int GIANT_SIDE = 1 << 16;
+
+    /**
+     * Test that two intersections with their own offsets and phase lengths change color
+     * on the ticks their timings give.
+     */
+    @Test
+    public void testSeparateTimings() {
+        final RoadRage roadRage = testCity();
+        roadRage.setSignalTiming(0, 0, 3, 1, 2);
+        roadRage.setSignalTiming(1, 2, 4, 2, 3);
+
+        // a letter per tick from tick 0: signal 0 cycles every 6 ticks from its start,
+        // signal 1 every 9 ticks from 2 ticks into its cycle
+        assertEquals("GGGYRRGGGYRRGGGYRR", colors(roadRage, 0, 18),
+                     "Signal 0 changed color on the wrong ticks!");
+        roadRage.reset();
+        roadRage.setSignalTiming(0, 0, 3, 1, 2);
+        roadRage.setSignalTiming(1, 2, 4, 2, 3);
+        assertEquals("GGYYRRRGGGGYYRRRGG", colors(roadRage, 1, 18),
+                     "Signal 1 changed color on the wrong ticks!");
+    }
+
+    /**
+     * Test that a tick only reports the signals as changed when one of them changes color,
+     * and that changing the timing of one signal leaves the other alone.
+     */
+    @Test
+    public void testOnlyChangedSignalsAreTouched() {
+        final RoadRage roadRage = testCity();
+        roadRage.setSignalTiming(0, 0, 3, 1, 2);
+        roadRage.setSignalTiming(1, 2, 4, 2, 3);
+        final Signals signals = roadRage.getSignals();
+        final int[] events = new int[1];
+        roadRage.addPropertyChangeListener(PropertyChangeEnabledRoadRageControls.PROPERTY_SIGNALS,
+            theEvent -> events[0]++);
+
+        final List<Integer> changed = new ArrayList<>();
+        for (int tick = 1; tick <= 12; tick++) {
+            final Light old0 = signals.getSignalLight(0);
+            final Light old1 = signals.getSignalLight(1);
+            final int before = events[0];
+            roadRage.advance();
+            final boolean lightChanged = old0 != signals.getSignalLight(0)
+                                         || old1 != signals.getSignalLight(1);
+            assertEquals(lightChanged, events[0] > before,
+                         "Signal change reported wrongly on tick " + tick + "!");
+            if (lightChanged) {
+                changed.add(tick);
+            }
+        }
+        assertEquals(List.of(2, 3, 4, 6, 7, 9, 10, 11, 12), changed,
+                     "Signals changed color on the wrong ticks!");
+
+        final RoadRage untouched = testCity();
+        untouched.setSignalTiming(1, 2, 4, 2, 3);
+        final RoadRage retimed = testCity();
+        retimed.setSignalTiming(1, 2, 4, 2, 3);
+        for (int tick = 1; tick <= 30; tick++) {
+            if (tick == 5) {
+                retimed.setSignalTiming(0, 1, 7, 7, 7);
+            }
+            untouched.advance();
+            retimed.advance();
+            assertEquals(untouched.getSignals().getSignalLight(1),
+                         retimed.getSignals().getSignalLight(1),
+                         "Retiming signal 0 changed signal 1 on tick " + tick + "!");
+        }
+    }
+
+    /**
+     * Test that a crosswalk within reach of a signal follows it and one just beyond
+     * reach follows the master light.
+     */
+    @Test
+    public void testCrosswalkBeyondReachFollowsMasterLight() {
+        final RoadRage roadRage = testCity();
+        final Signals signals = roadRage.getSignals();
+        assertEquals(2, signals.getSignalCount(), "Wrong number of signals!");
+        assertEquals(0, signals.getSignal(NEAR_CROSSWALK, ROW),
+                     "Crosswalk within reach does not follow the nearest signal!");
+        assertEquals(-1, signals.getSignal(FAR_CROSSWALK, ROW),
+                     "Crosswalk beyond reach has a signal!");
+
+        // out of step with the master light, which changes every 15 ticks
+        roadRage.setSignalTiming(0, 7, 2, 2, 2);
+        final Light[] master = {Light.GREEN};
+        roadRage.addPropertyChangeListener(PropertyChangeEnabledRoadRageControls.PROPERTY_LIGHT,
+            theEvent -> master[0] = (Light) theEvent.getNewValue());
+        for (int tick = 1; tick <= 4 * PHASE; tick++) {
+            roadRage.advance();
+            assertEquals(master[0], signals.getLight(FAR_CROSSWALK, ROW),
+                         "Crosswalk beyond reach left the master light on tick " + tick + "!");
+            assertEquals(signals.getSignalLight(0), signals.getLight(NEAR_CROSSWALK, ROW),
+                         "Crosswalk within reach left its signal on tick " + tick + "!");
+        }
+    }
+
+    /**
+     * Test that new timing given in the middle of a cycle takes effect at once, counted
+     * from the start of the run.
+     */
+    @Test
+    public void testTimingChangeMidCycle() {
+        final RoadRage roadRage = testCity();
+        final Signals signals = roadRage.getSignals();
+        for (int tick = 1; tick <= 20; tick++) {
+            roadRage.advance();
+        }
+        assertEquals(Light.YELLOW, signals.getSignalLight(0),
+                     "Default timing is not yellow on tick 20!");
+
+        roadRage.setSignalTiming(0, 0, 30, 5, 5);
+        assertEquals(Light.GREEN, signals.getSignalLight(0),
+                     "New timing did not take effect at once!");
+        assertEquals("GGGGGGGGGGYYYYYRRRRR", colors(roadRage, 0, 20),
+                     "New timing changed color on the wrong ticks!");
+        assertEquals(Light.RED, signals.getSignalLight(1),
+                     "Signal 1 left its default timing!");
+    }
+
+    /**
+     * Test that phases whose sum does not fit in an int still cycle in order.
+     */
+    @Test
+    public void testLongestTiming() {
+        final RoadRage roadRage = testCity();
+        roadRage.setSignalTiming(0, Integer.MAX_VALUE - 1, Integer.MAX_VALUE,
+                                 Integer.MAX_VALUE, Integer.MAX_VALUE);
+
+        assertEquals("GYY", colors(roadRage, 0, 3), "Longest green did not turn yellow!");
+        roadRage.reset();
+        // a tick before the end of the cycle
+        roadRage.setSignalTiming(0, -1, Integer.MAX_VALUE, Integer.MAX_VALUE,
+                                 Integer.MAX_VALUE);
+        assertEquals("RG", colors(roadRage, 0, 2), "Longest red did not turn green!");
+    }
+
+    /**
+     * Test that an intersection of two squares in rows whose square numbers do not fit in
+     * an int is found as one signal.
+     */
+    @Test
+    public void testIntersectionOnGiantMap() {
+        final int row = Integer.MAX_VALUE / GIANT_SIDE + 100;
+        final TerrainGrid grid = new TerrainGrid.Builder(GIANT_SIDE, GIANT_SIDE)
+                        .set(100, row, Terrain.LIGHT)
+                        .set(100, row + 1, Terrain.LIGHT)
+                        .build();
+        final Signals signals = new RoadRage(grid, List.of(), false).getSignals();
+
+        assertEquals(1, signals.getSignalCount(), "Intersection was split!");
+        assertEquals(0, signals.getSignal(100, row), "Wrong signal for the first square!");
+        assertEquals(0, signals.getSignal(100, row + 1), "Wrong signal for the second square!");
+    }
+
+    /**
+     * Creates a started simulation of the test map without vehicles.
+     *
+     * @return the simulation
+     */
+    private static RoadRage testCity() {
+        final TerrainGrid.Builder builder = new TerrainGrid.Builder(WIDTH, HEIGHT);
+        for (int x = 0; x < WIDTH; x++) {
+            builder.set(x, ROW, Terrain.STREET);
+        }
+        builder.set(LIGHT_0 - 1, ROW, Terrain.LIGHT)
+               .set(LIGHT_0, ROW, Terrain.LIGHT)
+               .set(LIGHT_1, ROW, Terrain.LIGHT)
+               .set(NEAR_CROSSWALK, ROW, Terrain.CROSSWALK)
+               .set(FAR_CROSSWALK, ROW, Terrain.CROSSWALK);
+        final RoadRage roadRage = new RoadRage(builder.build(), List.of(), false);
+        roadRage.start();
+        return roadRage;
+    }
+
+    /**
+     * Records the color of a signal for a number of ticks, from the current tick on, as
+     * the first letter of each color.
+     *
+     * @param theRoadRage the simulation
+     * @param theSignal the signal
+     * @param theTicks the number of ticks
+     * @return the letters
+     */
+    private static String colors(final RoadRage theRoadRage, final int theSignal,
+                                 final int theTicks) {
+        final StringBuilder result = new StringBuilder();
+        for (int i = 0; i < theTicks; i++) {
+            result.append(theRoadRage.getSignals().getSignalLight(theSignal).name().charAt(0));
+            theRoadRage.advance();
+        }
+        return result.toString();
+    }
+}
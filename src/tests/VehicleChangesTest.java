@@ -0,0 +1,236 @@
+/*
+ * TCSS 305 - Road Rage
+ */
+
+package tests;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import bench.SyntheticCity;
+import java.util.List;
+import logic.RoadRage;
+import logic.VehicleChanges;
+import model.Direction;
+import model.TerrainGrid;
+import model.Vehicle;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Unit tests for the vehicle changes fired with PROPERTY_VEHICLE_CHANGES. A listener that
+ * starts from the vehicles placed by a reset and applies every change after it must end
+ * each tick with the vehicles fired with PROPERTY_VEHICLES, in both vehicle stores.
+ */
+public class VehicleChangesTest {
+
+    /**
+     * The side of the synthetic city.
+     */
+    private static final int SIDE = 64;
+
+    /**
+     * The number of vehicles, enough for them to run into each other often.
+     */
+    private static final int VEHICLES = 300;
+
+    /**
+     * The number of ticks run before and after the reset.
+     */
+    private static final int TICKS = 250;
+
+    /**
+     * The seed of the city and of the simulation.
+     */
+    private static final long SEED = 305;
+
+    /**
+     * Test that replaying the changes of a seeded run, with a reset in the middle, gives
+     * the vehicles of every tick, and that both stores fire the same changes.
+     */
+    @Test
+    public void testReplayMatchesVehicles() {
+        final Replay objects = replay(false);
+        final Replay packed = replay(true);
+        for (final int flag : new int[] {VehicleChanges.MOVED, VehicleChanges.TURNED,
+                                         VehicleChanges.DIED, VehicleChanges.REVIVED,
+                                         VehicleChanges.PLACED}) {
+            assertTrue(objects.myFlagCounts[flag] > 0, "No change flagged " + flag + "!");
+        }
+        assertArrayEquals(objects.myFlagCounts, packed.myFlagCounts,
+                          "The stores flagged different numbers of changes!");
+        assertEquals(objects.myHash, packed.myHash, "The stores fired different changes!");
+    }
+
+    /**
+     * Runs the synthetic city for TICKS ticks, resets it and runs it again, replaying
+     * the changes of every tick and checking them against the vehicles fired.
+     *
+     * @param thePacked whether the simulation keeps its vehicles in packed arrays
+     * @return the replay
+     */
+    private static Replay replay(final boolean thePacked) {
+        final TerrainGrid grid = SyntheticCity.grid(SIDE, SIDE, SEED);
+        final List<Vehicle> vehicles = SyntheticCity.vehicles(grid, VEHICLES, SEED);
+        final RoadRage roadRage = new RoadRage(grid, vehicles, thePacked);
+        roadRage.setSeed(SEED);
+        final Replay replay = new Replay(thePacked);
+        roadRage.addPropertyChangeListener(RoadRage.PROPERTY_VEHICLES, theEvent -> {
+            replay.myFired = (List<?>) theEvent.getNewValue();
+        });
+        roadRage.addPropertyChangeListener(RoadRage.PROPERTY_VEHICLE_CHANGES, theEvent -> {
+            replay.apply((VehicleChanges) theEvent.getNewValue());
+        });
+        roadRage.start();
+        for (int run = 0; run < 2; run++) {
+            replay.myTick = 0;
+            for (int tick = 0; tick < TICKS; tick++) {
+                roadRage.advance();
+            }
+            assertEquals(TICKS, replay.myTick, "Changes not fired every tick!");
+            roadRage.reset();
+        }
+        return replay;
+    }
+
+    /**
+     * The vehicles as known from their changes alone.
+     */
+    private static final class Replay {
+
+        /**
+         * The store being replayed, for the messages.
+         */
+        private final String myStore;
+
+        /**
+         * The x-coordinate of each vehicle.
+         */
+        private final int[] myX = new int[VEHICLES];
+
+        /**
+         * The y-coordinate of each vehicle.
+         */
+        private final int[] myY = new int[VEHICLES];
+
+        /**
+         * The direction of each vehicle.
+         */
+        private final Direction[] myDirections = new Direction[VEHICLES];
+
+        /**
+         * Whether each vehicle is alive.
+         */
+        private final boolean[] myAlive = new boolean[VEHICLES];
+
+        /**
+         * The number of changes with each flag, by flag.
+         */
+        private final int[] myFlagCounts = new int[VehicleChanges.PLACED + 1];
+
+        /**
+         * The vehicles fired with PROPERTY_VEHICLES just before the changes.
+         */
+        private List<?> myFired;
+
+        /**
+         * The number of ticks replayed since the last reset.
+         */
+        private int myTick;
+
+        /**
+         * A hash of every change replayed.
+         */
+        private long myHash;
+
+        /**
+         * Creates a replay of no vehicles.
+         *
+         * @param thePacked whether the packed store is replayed
+         */
+        Replay(final boolean thePacked) {
+            myStore = thePacked ? "packed store" : "object store";
+        }
+
+        /**
+         * Applies the changes of a tick or a reset and checks the vehicles against those
+         * fired.
+         *
+         * @param theChanges the changes
+         */
+        void apply(final VehicleChanges theChanges) {
+            final String when = " at tick " + theChanges.getTimestep() + " of the "
+                                + myStore + "!";
+            if (theChanges.isReset()) {
+                assertEquals(VEHICLES, theChanges.size(), "Not every vehicle placed" + when);
+            } else {
+                myTick++;
+                assertEquals(myTick, theChanges.getTimestep(), "Wrong time step" + when);
+            }
+            for (int i = 0; i < theChanges.size(); i++) {
+                final int handle = theChanges.getHandle(i);
+                final int flags = theChanges.getFlags(i);
+                final String change = " in change " + i + when;
+                if (theChanges.isReset()) {
+                    assertEquals(i, handle, "Vehicles placed out of order" + change);
+                    assertEquals(VehicleChanges.PLACED, flags, "Not placed" + change);
+                } else {
+                    assertEquals(myX[handle], theChanges.getOldX(i), "Wrong old x" + change);
+                    assertEquals(myY[handle], theChanges.getOldY(i), "Wrong old y" + change);
+                    checkFlags(theChanges, i, change);
+                }
+                for (int flag = 1; flag <= VehicleChanges.PLACED; flag <<= 1) {
+                    if ((flags & flag) != 0) {
+                        myFlagCounts[flag]++;
+                    }
+                }
+                myX[handle] = theChanges.getX(i);
+                myY[handle] = theChanges.getY(i);
+                myDirections[handle] = theChanges.getDirection(i);
+                myAlive[handle] = theChanges.isAlive(i);
+                myHash = myHash * 31 + ((long) handle << 40 ^ (long) flags << 32
+                                        ^ myX[handle] << 16 ^ myY[handle]
+                                        ^ myDirections[handle].ordinal() << 28);
+            }
+            for (int handle = 0; handle < VEHICLES; handle++) {
+                final Vehicle vehicle = (Vehicle) myFired.get(handle);
+                final String which = " of vehicle " + handle + when;
+                assertEquals(vehicle.getX(), myX[handle], "Replayed x differs" + which);
+                assertEquals(vehicle.getY(), myY[handle], "Replayed y differs" + which);
+                assertEquals(vehicle.getDirection(), myDirections[handle],
+                             "Replayed direction differs" + which);
+                assertEquals(vehicle.isAlive(), myAlive[handle], "Replayed life differs"
+                             + which);
+            }
+        }
+
+        /**
+         * Checks that the flags of a change of a tick match what changed.
+         *
+         * @param theChanges the changes
+         * @param theIndex the index of the change
+         * @param theChange the change, for the messages
+         */
+        private void checkFlags(final VehicleChanges theChanges, final int theIndex,
+                                final String theChange) {
+            final int handle = theChanges.getHandle(theIndex);
+            final int flags = theChanges.getFlags(theIndex);
+            final boolean moved = theChanges.getX(theIndex) != myX[handle]
+                                  || theChanges.getY(theIndex) != myY[handle];
+            assertEquals(moved, (flags & VehicleChanges.MOVED) != 0,
+                         "Moving not flagged MOVED" + theChange);
+            final boolean turned = theChanges.getDirection(theIndex) != myDirections[handle];
+            assertEquals(turned, (flags & VehicleChanges.TURNED) != 0,
+                         "Turning not flagged TURNED" + theChange);
+            if ((flags & VehicleChanges.DIED) != 0) {
+                assertTrue(myAlive[handle], "A dead vehicle DIED" + theChange);
+            }
+            if ((flags & VehicleChanges.REVIVED) != 0) {
+                assertFalse(myAlive[handle], "A living vehicle REVIVED" + theChange);
+            }
+            assertEquals(0, flags & VehicleChanges.PLACED, "PLACED outside a reset"
+                       + theChange);
+        }
+    }
+}
@@ -0,0 +1,342 @@
+/*
+ * TCSS 305 - Road Rage
+ */
+
+package view;
+
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.Rectangle;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.util.Arrays;
+import java.util.function.Function;
+import logic.Frame;
+import model.Light;
+import model.Terrain;
+import model.TerrainGrid;
+
+/**
+ * The map drawn for a zoomed-out view, where squares are too small on screen for vehicle
+ * images and street markings. Each square, or each block of squares when they are under
+ * a pixel, becomes one pixel of an image written directly through its int array: the
+ * color of its terrain, the color of its light, and a vehicle color mixed in by how many
+ * vehicles are in it. The image is then drawn scaled over the part of the map in view.
+ *
+ * <p>The terrain pixels are kept between paints and only worked out again when the part
+ * of the map in view or the block size changes, along with one LIGHT or CROSSWALK square
+ * for each pixel showing a signal, so a paint costs as much as the pixels of the image.
+ */
+final class DensityView {
+
+    /**
+     * The terrains in the order they win a block of squares, so streets stay visible
+     * through the grass and walls around them when several squares share a pixel.
+     */
+    private static final Terrain[] PRECEDENCE = {
+        Terrain.LIGHT, Terrain.CROSSWALK, Terrain.STREET,
+        Terrain.TRAIL, Terrain.WALL, Terrain.GRASS,
+    };
+
+    /**
+     * The share of the vehicle color in a pixel holding a single vehicle per square; a
+     * pixel with a vehicle on every square is all vehicle color.
+     */
+    private static final double LEAST_DENSITY = 0.5;
+
+    /**
+     * The number of color channels of a pixel: blue, green and red, from the lowest bits.
+     */
+    private static final int CHANNELS = 3;
+
+    /**
+     * The number of bits of a color channel.
+     */
+    private static final int CHANNEL_BITS = 8;
+
+    /**
+     * The mask of a color channel.
+     */
+    private static final int CHANNEL_MASK = 0xFF;
+
+    /**
+     * The size in pixels of a side of one square, without scaling.
+     */
+    private final int mySquareSize;
+
+    /**
+     * The pixel of each terrain by ordinal.
+     */
+    private final int[] myTerrainColors = new int[Terrain.values().length];
+
+    /**
+     * The pixel of each light by ordinal.
+     */
+    private final int[] myLightColors = new int[Light.values().length];
+
+    /**
+     * The pixel of a square full of vehicles.
+     */
+    private final int myVehicleColor;
+
+    /**
+     * The rank of each terrain by ordinal in PRECEDENCE, lower winning.
+     */
+    private final int[] myRanks = new int[Terrain.values().length];
+
+    /**
+     * The map the terrain pixels show.
+     */
+    private TerrainGrid myGrid;
+
+    /**
+     * The squares on a side of the block each pixel shows.
+     */
+    private int myBlock;
+
+    /**
+     * The x-coordinate of the first square shown, a multiple of myBlock.
+     */
+    private int myFirstX;
+
+    /**
+     * The y-coordinate of the first square shown, a multiple of myBlock.
+     */
+    private int myFirstY;
+
+    /**
+     * The width of the image in pixels.
+     */
+    private int myWidth;
+
+    /**
+     * The height of the image in pixels.
+     */
+    private int myHeight;
+
+    /**
+     * The terrain pixels of the part of the map shown.
+     */
+    private int[] myTerrain = new int[0];
+
+    /**
+     * The number of vehicles in each pixel.
+     */
+    private int[] myCounts = new int[0];
+
+    /**
+     * The x-coordinate of the signal square each pixel shows, or -1 if it shows none.
+     */
+    private int[] myLightX = new int[0];
+
+    /**
+     * The y-coordinate of the signal square each pixel shows.
+     */
+    private int[] myLightY = new int[0];
+
+    /**
+     * The vehicles found in the squares shown.
+     */
+    private int[] myFound = new int[0];
+
+    /**
+     * The image drawn, or null before the first paint.
+     */
+    private BufferedImage myImage;
+
+    /**
+     * Creates a view with the colors the detailed map uses.
+     *
+     * @param theSquareSize the size in pixels of a side of one square
+     * @param theTerrainColors gives the color of each terrain
+     * @param theLightColors gives the color of each light
+     * @param theVehicleColor the color of a square full of vehicles
+     */
+    DensityView(final int theSquareSize, final Function<Terrain, Color> theTerrainColors,
+                final Function<Light, Color> theLightColors, final Color theVehicleColor) {
+        mySquareSize = theSquareSize;
+        for (final Terrain terrain : Terrain.values()) {
+            myTerrainColors[terrain.ordinal()] = theTerrainColors.apply(terrain).getRGB();
+        }
+        for (final Light light : Light.values()) {
+            myLightColors[light.ordinal()] = theLightColors.apply(light).getRGB();
+        }
+        myVehicleColor = theVehicleColor.getRGB();
+        for (int i = 0; i < PRECEDENCE.length; i++) {
+            myRanks[PRECEDENCE[i].ordinal()] = i;
+        }
+    }
+
+    /**
+     * Draws the part of a frame inside an area of the map.
+     *
+     * @param theGraphics the graphics to draw with, in map pixels
+     * @param theClip the area to draw in map pixels
+     * @param theFrame the frame
+     * @param theVehicles the vehicles of the frame indexed by region
+     */
+    void draw(final Graphics2D theGraphics, final Rectangle theClip, final Frame theFrame,
+              final VehicleIndex theVehicles) {
+        final TerrainGrid grid = theFrame.getGrid();
+        final double squarePixels = mySquareSize * theGraphics.getTransform().getScaleX();
+        final int block = Math.max(1, (int) Math.ceil(1 / squarePixels));
+        final int firstX = Math.max(0, theClip.x / mySquareSize) / block * block;
+        final int firstY = Math.max(0, theClip.y / mySquareSize) / block * block;
+        final int endX = Math.min(grid.getWidth(),
+                                  (theClip.x + theClip.width - 1) / mySquareSize + 1);
+        final int endY = Math.min(grid.getHeight(),
+                                  (theClip.y + theClip.height - 1) / mySquareSize + 1);
+        if (endX <= firstX || endY <= firstY) {
+            return;
+        }
+        final int width = (endX - firstX + block - 1) / block;
+        final int height = (endY - firstY + block - 1) / block;
+        if (grid != myGrid || block != myBlock || firstX != myFirstX || firstY != myFirstY
+            || width != myWidth || height != myHeight) {
+            findTerrain(grid, block, firstX, firstY, width, height);
+        }
+
+        final int[] pixels = ((DataBufferInt) myImage.getRaster().getDataBuffer()).getData();
+        System.arraycopy(myTerrain, 0, pixels, 0, width * height);
+        for (int i = 0; i < width * height; i++) {
+            if (myLightX[i] >= 0) {
+                pixels[i] = myLightColors[theFrame.getLight(myLightX[i], myLightY[i]).ordinal()];
+            }
+        }
+        addVehicles(pixels, theFrame, theVehicles, endX, endY);
+
+        final Object interpolation =
+            theGraphics.getRenderingHint(RenderingHints.KEY_INTERPOLATION);
+        theGraphics.setRenderingHint(RenderingHints.KEY_INTERPOLATION,
+                                     RenderingHints.VALUE_INTERPOLATION_NEAREST_NEIGHBOR);
+        theGraphics.drawImage(myImage, firstX * mySquareSize, firstY * mySquareSize,
+                              width * block * mySquareSize, height * block * mySquareSize,
+                              null);
+        if (interpolation != null) {
+            theGraphics.setRenderingHint(RenderingHints.KEY_INTERPOLATION, interpolation);
+        }
+    }
+
+    /**
+     * Works out the terrain pixels of a part of the map, each pixel taking the terrain
+     * of its block that comes first in PRECEDENCE, and the signal square each pixel
+     * shows: the last LIGHT square of its block, or its first CROSSWALK square if it has
+     * no LIGHT square.
+     *
+     * @param theGrid the map
+     * @param theBlock the squares on a side of the block each pixel shows
+     * @param theFirstX the x-coordinate of the first square
+     * @param theFirstY the y-coordinate of the first square
+     * @param theWidth the width in pixels
+     * @param theHeight the height in pixels
+     */
+    private void findTerrain(final TerrainGrid theGrid, final int theBlock,
+                             final int theFirstX, final int theFirstY,
+                             final int theWidth, final int theHeight) {
+        myGrid = theGrid;
+        myBlock = theBlock;
+        myFirstX = theFirstX;
+        myFirstY = theFirstY;
+        myWidth = theWidth;
+        myHeight = theHeight;
+        if (myImage == null || myImage.getWidth() != theWidth
+            || myImage.getHeight() != theHeight) {
+            myImage = new BufferedImage(theWidth, theHeight, BufferedImage.TYPE_INT_RGB);
+            myTerrain = new int[theWidth * theHeight];
+            myCounts = new int[theWidth * theHeight];
+            myLightX = new int[theWidth * theHeight];
+            myLightY = new int[theWidth * theHeight];
+        }
+        Arrays.fill(myLightX, -1);
+
+        final int[] ranks = new int[theWidth];
+        final int endX = Math.min(theGrid.getWidth(), theFirstX + theWidth * theBlock);
+        for (int py = 0; py < theHeight; py++) {
+            Arrays.fill(ranks, PRECEDENCE.length);
+            final int endY = Math.min(theGrid.getHeight(), theFirstY + (py + 1) * theBlock);
+            for (int y = theFirstY + py * theBlock; y < endY; y++) {
+                for (int x = theFirstX; x < endX; x++) {
+                    final int px = (x - theFirstX) / theBlock;
+                    final Terrain terrain = theGrid.get(x, y);
+                    ranks[px] = Math.min(ranks[px], myRanks[terrain.ordinal()]);
+                    // crosswalks carry a signal too, but a light in the block wins
+                    final int pixel = py * theWidth + px;
+                    if (terrain == Terrain.LIGHT
+                        || terrain == Terrain.CROSSWALK && myLightX[pixel] < 0) {
+                        myLightX[pixel] = x;
+                        myLightY[pixel] = y;
+                    }
+                }
+            }
+            for (int px = 0; px < theWidth; px++) {
+                // a block past the edge of the map has no squares; it shows as grass
+                final Terrain terrain = PRECEDENCE[Math.min(ranks[px], PRECEDENCE.length - 1)];
+                myTerrain[py * theWidth + px] = myTerrainColors[terrain.ordinal()];
+            }
+        }
+    }
+
+    /**
+     * Mixes the vehicle color into the pixels holding vehicles, more for more vehicles.
+     * Only the vehicles in the regions of the index covering the squares shown are
+     * counted.
+     *
+     * @param thePixels the pixels of the image
+     * @param theFrame the frame
+     * @param theVehicles the vehicles of the frame indexed by region
+     * @param theEndX the x-coordinate after the last square shown
+     * @param theEndY the y-coordinate after the last square shown
+     */
+    private void addVehicles(final int[] thePixels, final Frame theFrame,
+                             final VehicleIndex theVehicles, final int theEndX,
+                             final int theEndY) {
+        final int size = myWidth * myHeight;
+        Arrays.fill(myCounts, 0, size, 0);
+        if (myFound.length < theFrame.getVehicleCount()) {
+            myFound = new int[theFrame.getVehicleCount()];
+        }
+        final int found = theVehicles.find(myFirstX, myFirstY, theEndX, theEndY, myFound);
+        for (int i = 0; i < found; i++) {
+            myCounts[pixelOf(theFrame.getX(myFound[i]), theFrame.getY(myFound[i]))]++;
+        }
+        final double squares = (double) myBlock * myBlock;
+        for (int i = 0; i < size; i++) {
+            if (myCounts[i] > 0) {
+                final double share = Math.min(1, LEAST_DENSITY
+                                     + (1 - LEAST_DENSITY) * (myCounts[i] - 1) / squares);
+                thePixels[i] = mix(thePixels[i], myVehicleColor, share);
+            }
+        }
+    }
+
+    /**
+     * Returns the index of the pixel showing a square.
+     *
+     * @param theX the x-coordinate of the square
+     * @param theY the y-coordinate of the square
+     * @return the index in the pixels of the image
+     */
+    private int pixelOf(final int theX, final int theY) {
+        return (theY - myFirstY) / myBlock * myWidth + (theX - myFirstX) / myBlock;
+    }
+
+    /**
+     * Mixes two pixels.
+     *
+     * @param theFrom the first pixel
+     * @param theTo the second pixel
+     * @param theShare the share of the second pixel, from 0 to 1
+     * @return the mixed pixel
+     */
+    private static int mix(final int theFrom, final int theTo, final double theShare) {
+        int result = 0;
+        for (int c = 0; c < CHANNELS; c++) {
+            final int shift = c * CHANNEL_BITS;
+            final int from = theFrom >> shift & CHANNEL_MASK;
+            final int to = theTo >> shift & CHANNEL_MASK;
+            result |= (int) Math.round(from + (to - from) * theShare) << shift;
+        }
+        return result;
+    }
+}
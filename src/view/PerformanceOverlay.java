@@ -0,0 +1,220 @@
+/*
+ * TCSS 305 - Road Rage
+ */
+
+package view;
+
+import java.awt.Color;
+import java.awt.FontMetrics;
+import java.awt.Graphics2D;
+import java.awt.Rectangle;
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+import logic.Frame;
+
+/**
+ * The performance readouts shown in debug mode, so a slow display can be put down to the
+ * simulation or the painting without a profiler: the time of the last tick and the 99th
+ * percentile of recent ones, the time of the last paint and the slowest one of the last
+ * second, the frames shown and ticks run per second against the target rate, the events
+ * of the last tick, and the memory the simulation thread allocates per second.
+ *
+ * <p>Rates are worked out over windows of about a second of shown frames, so they only
+ * move while frames arrive.
+ */
+final class PerformanceOverlay {
+
+    /**
+     * The length of the window rates are worked out over, in nanoseconds.
+     */
+    private static final long WINDOW_NANOS = TimeUnit.SECONDS.toNanos(1);
+
+    /**
+     * The number of nanoseconds in a second.
+     */
+    private static final double NANOS_PER_SECOND = 1e9;
+
+    /**
+     * The number of nanoseconds in a millisecond.
+     */
+    private static final double NANOS_PER_MILLI = 1e6;
+
+    /**
+     * The number of bytes in a megabyte.
+     */
+    private static final double BYTES_PER_MEGABYTE = 1 << 20;
+
+    /**
+     * The space in pixels between the text and the edge of its box.
+     */
+    private static final int MARGIN = 4;
+
+    /**
+     * The color of the box behind the text, dark and partly see-through.
+     */
+    private static final Color BOX = new Color(0, 0, 0, 160);
+
+    /**
+     * The color of the text.
+     */
+    private static final Color TEXT = Color.WHITE;
+
+    /**
+     * The time the current window started, or 0 before the first frame.
+     */
+    private long myWindowStart;
+
+    /**
+     * The number of frames shown in the current window.
+     */
+    private int myWindowFrames;
+
+    /**
+     * The time step of the frame that started the current window.
+     */
+    private long myWindowTimestep;
+
+    /**
+     * The bytes allocated when the current window started, or -1 if unknown.
+     */
+    private long myWindowBytes = -1;
+
+    /**
+     * The slowest paint of the current window in nanoseconds.
+     */
+    private long myWindowSlowestPaint;
+
+    /**
+     * The frames shown per second over the last window.
+     */
+    private double myFrameRate;
+
+    /**
+     * The ticks run per second over the last window.
+     */
+    private double myTickRate;
+
+    /**
+     * The bytes allocated per second over the last window, or -1 if unknown.
+     */
+    private double myAllocationRate = -1;
+
+    /**
+     * The time of the last paint in nanoseconds.
+     */
+    private long myLastPaint;
+
+    /**
+     * The slowest paint of the last window in nanoseconds.
+     */
+    private long mySlowestPaint;
+
+    /**
+     * The box last drawn, in panel pixels, or null before the first draw.
+     */
+    private Rectangle myBounds;
+
+    /**
+     * Counts a frame shown, ending the window once it is a second long.
+     *
+     * @param theFrame the frame
+     * @param theNow the time it was shown, from System.nanoTime()
+     */
+    void frameShown(final Frame theFrame, final long theNow) {
+        myWindowFrames++;
+        final long elapsed = theNow - myWindowStart;
+        if (myWindowStart != 0 && elapsed < WINDOW_NANOS) {
+            return;
+        }
+        if (myWindowStart != 0) {
+            final double seconds = elapsed / NANOS_PER_SECOND;
+            myFrameRate = myWindowFrames / seconds;
+            // a reset takes the time step back, which says nothing about the rate
+            myTickRate = Math.max(0, theFrame.getTimestep() - myWindowTimestep) / seconds;
+            if (myWindowBytes < 0 || theFrame.getAllocatedBytes() < 0) {
+                myAllocationRate = -1;
+            } else {
+                myAllocationRate = (theFrame.getAllocatedBytes() - myWindowBytes) / seconds;
+            }
+            mySlowestPaint = myWindowSlowestPaint;
+        }
+        myWindowStart = theNow;
+        myWindowFrames = 0;
+        myWindowTimestep = theFrame.getTimestep();
+        myWindowBytes = theFrame.getAllocatedBytes();
+        myWindowSlowestPaint = 0;
+    }
+
+    /**
+     * Records the time a paint of the panel took.
+     *
+     * @param theNanos the time in nanoseconds
+     */
+    void paintTook(final long theNanos) {
+        myLastPaint = theNanos;
+        myWindowSlowestPaint = Math.max(myWindowSlowestPaint, theNanos);
+    }
+
+    /**
+     * Draws the readouts in a box, one per line.
+     *
+     * @param theGraphics the graphics to draw with, in panel pixels
+     * @param theFrame the frame shown
+     * @param theTargetRate the ticks per second the simulation is meant to run at
+     * @param theX the x-coordinate of the left of the box
+     * @param theY the y-coordinate of the top of the box
+     */
+    void draw(final Graphics2D theGraphics, final Frame theFrame, final double theTargetRate,
+              final int theX, final int theY) {
+        final String[] lines = {
+            String.format(Locale.ROOT, "Tick %.2f ms, p99 %s", millis(theFrame.getTickNanos()),
+                          theFrame.getTailTickNanos() < 0 ? "n/a"
+                              : String.format(Locale.ROOT, "%.2f ms",
+                                              millis(theFrame.getTailTickNanos()))),
+            String.format(Locale.ROOT, "Paint %.2f ms, slowest %.2f ms", millis(myLastPaint),
+                          millis(mySlowestPaint)),
+            String.format(Locale.ROOT, "FPS %.1f of %.1f, ticks %.1f/s", myFrameRate,
+                          theTargetRate, myTickRate),
+            String.format(Locale.ROOT, "Events %d, vehicle changes %d per tick",
+                          theFrame.getEventCount(), theFrame.getVehicleChangeCount()),
+            myAllocationRate < 0 ? "Allocation n/a"
+                : String.format(Locale.ROOT, "Allocation %.1f MB/s",
+                                myAllocationRate / BYTES_PER_MEGABYTE),
+        };
+
+        final FontMetrics metrics = theGraphics.getFontMetrics();
+        int width = 0;
+        for (final String line : lines) {
+            width = Math.max(width, metrics.stringWidth(line));
+        }
+        myBounds = new Rectangle(theX, theY, width + 2 * MARGIN,
+                                 lines.length * metrics.getHeight() + 2 * MARGIN);
+        theGraphics.setColor(BOX);
+        theGraphics.fill(myBounds);
+        theGraphics.setColor(TEXT);
+        int baseline = theY + MARGIN + metrics.getAscent();
+        for (final String line : lines) {
+            theGraphics.drawString(line, theX + MARGIN, baseline);
+            baseline += metrics.getHeight();
+        }
+    }
+
+    /**
+     * Returns the box last drawn, which is where the readouts of the next frame go.
+     *
+     * @return the box in panel pixels, or null if none has been drawn yet
+     */
+    Rectangle getBounds() {
+        return myBounds == null ? null : new Rectangle(myBounds);
+    }
+
+    /**
+     * Converts nanoseconds to milliseconds.
+     *
+     * @param theNanos the time in nanoseconds
+     * @return the time in milliseconds
+     */
+    private static double millis(final long theNanos) {
+        return theNanos / NANOS_PER_MILLI;
+    }
+}
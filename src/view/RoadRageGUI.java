@@ -11,17 +11,34 @@ import java.awt.FlowLayout;
 import java.awt.Toolkit;
 import java.awt.event.ActionEvent;
 import java.awt.event.ActionListener;
+import java.awt.event.KeyEvent;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
 import javax.swing.JButton;
 import javax.swing.JCheckBox;
+import javax.swing.JFileChooser;
 import javax.swing.JFrame;
 import javax.swing.JLabel;
+import javax.swing.JMenu;
+import javax.swing.JMenuBar;
+import javax.swing.JMenuItem;
+import javax.swing.JOptionPane;
 import javax.swing.JPanel;
+import javax.swing.JProgressBar;
 import javax.swing.JSlider;
 import javax.swing.SwingConstants;
-import javax.swing.Timer;
+import javax.swing.SwingUtilities;
+import javax.swing.SwingWorker;
 import javax.swing.event.ChangeEvent;
 import javax.swing.event.ChangeListener;
-import logic.PropertyChangeEnabledRoadRageControls;
+import logic.RoadRage;
+import logic.SimulationRunner;
+import model.TerrainGrid;
+import view.util.CityLoadListener;
 import view.util.FileLoader;
 
 /**
@@ -100,6 +117,16 @@ public class RoadRageGUI extends JFrame implements ActionListener {
      */
     private static final int MAJOR_TICK_SPACING = 10;
 
+    /**
+     * The width and height in squares of the map panel before the first map is sized.
+     */
+    private static final int INITIAL_MAP_SIZE = 10;
+
+    /**
+     * The value of a full progress bar.
+     */
+    private static final int FULL_PROGRESS = 100;
+
 
     // Instance Fields
     
@@ -108,10 +135,6 @@ public class RoadRageGUI extends JFrame implements ActionListener {
      */
     private int myDelay;
 
-    /**
-     * A timer used to update the state of the simulation.
-     */
-    private final Timer myTimer;
 
     /**
      * The slider for "frames per second".
@@ -119,9 +142,29 @@ public class RoadRageGUI extends JFrame implements ActionListener {
     private JSlider mySlider;
     
     /**
-     * The logic for the simulation. 
+     * The simulation, running on its own thread, or null while a city is loading. 
+     */
+    private SimulationRunner myRunner;
+
+    /**
+     * The panel drawing the map.
+     */
+    private RoadRagePanel myPanel;
+
+    /**
+     * The buttons controlling the simulation, disabled while a city is loading.
+     */
+    private final List<JButton> myButtons = new ArrayList<>();
+
+    /**
+     * The menu item for opening a city, disabled while a city is loading.
+     */
+    private JMenuItem myOpenItem;
+
+    /**
+     * The progress of the city being loaded.
      */
-    private final PropertyChangeEnabledRoadRageControls myRoadRage;
+    private JProgressBar myProgress;
     
     // Constructor
 
@@ -130,18 +173,25 @@ public class RoadRageGUI extends JFrame implements ActionListener {
      * directory.
      */
     public RoadRageGUI() {
+        this(new File(FileLoader.CITY_FILE));
+    }
+
+    /**
+     * Constructs a new RoadRageGUI showing the given city. The window opens at once and
+     * the city loads in the background, its map appearing as it is read.
+     * 
+     * @param theCity the city file to load.
+     */
+    public RoadRageGUI(final File theCity) {
         super(TITLE);
         // initialize instance fields
         
         myDelay = MY_DELAY_NUMERATOR / INITIAL_FRAMES_PER_SECOND;
-        myTimer = new Timer(myDelay, this);        
 
-        myRoadRage = FileLoader.readCity(this);
-        
         initGUI();
         
-        myRoadRage.start();
         setVisible(true);
+        load(theCity);
     }
     
     // Instance Methods
@@ -153,9 +203,7 @@ public class RoadRageGUI extends JFrame implements ActionListener {
         
         // set up graphical components
         
-        final RoadRagePanel panel = 
-                        new RoadRagePanel(myRoadRage.getWidth(), myRoadRage.getHeight()); 
-        myRoadRage.addPropertyChangeListener(panel);
+        myPanel = new RoadRagePanel(INITIAL_MAP_SIZE, INITIAL_MAP_SIZE); 
   
         mySlider = new JSlider(SwingConstants.HORIZONTAL, 0, MAX_FRAMES_PER_SECOND,
                                INITIAL_FRAMES_PER_SECOND);
@@ -170,13 +218,15 @@ public class RoadRageGUI extends JFrame implements ActionListener {
                 final int value = mySlider.getValue();
                 if (value > 0) {
                     myDelay = MY_DELAY_NUMERATOR / value;
-                    myTimer.setDelay(myDelay);
+                    if (myRunner != null) {
+                        myRunner.setDelay(myDelay);
+                    }
                 }
             }
         });
 
         final JCheckBox box = new JCheckBox("Debug Mode");
-        box.addChangeListener(panel);
+        box.addChangeListener(myPanel);
 
         // layout
         final Container northPanel = new JPanel(new FlowLayout());
@@ -185,24 +235,94 @@ public class RoadRageGUI extends JFrame implements ActionListener {
         northPanel.add(makeButton(STEP_COMMAND));
         northPanel.add(makeButton(RESET_COMMAND));
 
+        myProgress = new JProgressBar(0, FULL_PROGRESS);
+        myProgress.setStringPainted(true);
+        myProgress.setVisible(false);
+
         final Container southPanel = new JPanel(new FlowLayout());
         southPanel.add(new JLabel("FPS: "));
         southPanel.add(mySlider);
         southPanel.add(box);
+        southPanel.add(myProgress);
 
         final Container masterPanel = new JPanel(new BorderLayout());
-        masterPanel.add(panel, BorderLayout.CENTER);
+        masterPanel.add(myPanel, BorderLayout.CENTER);
         masterPanel.add(northPanel, BorderLayout.NORTH);
         masterPanel.add(southPanel, BorderLayout.SOUTH);
 
         setDefaultCloseOperation(JFrame.EXIT_ON_CLOSE);
         setResizable(false);
+        setJMenuBar(makeMenuBar());
         add(masterPanel);
+        fitToMap();
+    }
+
+    /**
+     * Returns the menu bar, with a File menu for opening another city.
+     * 
+     * @return the menu bar.
+     */
+    private JMenuBar makeMenuBar() {
+        myOpenItem = new JMenuItem("Open City...", KeyEvent.VK_O);
+        myOpenItem.addActionListener(new ActionListener() {
+            /** Asks for a city file and loads it. */
+            @Override
+            public void actionPerformed(final ActionEvent theEvent) {
+                final JFileChooser chooser = new JFileChooser(new File("."));
+                if (chooser.showOpenDialog(RoadRageGUI.this) 
+                                == JFileChooser.APPROVE_OPTION) {
+                    load(chooser.getSelectedFile());
+                }
+            }
+        });
+        final JMenu fileMenu = new JMenu("File");
+        fileMenu.setMnemonic(KeyEvent.VK_F);
+        fileMenu.add(myOpenItem);
+        final JMenuBar result = new JMenuBar();
+        result.add(fileMenu);
+        return result;
+    }
+
+    /**
+     * Sizes the frame to the map and centers it on the screen.
+     */
+    private void fitToMap() {
         pack();
         // position the frame in the center of the screen
         setLocation(SCREEN_SIZE.width / 2 - getWidth() / 2,
                     SCREEN_SIZE.height / 2 - getHeight() / 2);
     }
+
+    /**
+     * Stops the current simulation and loads a city in the background. The controls are
+     * disabled until the city is ready.
+     * 
+     * @param theCity the city file.
+     */
+    private void load(final File theCity) {
+        if (myRunner != null) {
+            myRunner.close();
+            myRunner = null;
+            myPanel.setSimulation(null);
+        }
+        setControlsEnabled(false);
+        myProgress.setValue(0);
+        myProgress.setString("Loading " + theCity.getName());
+        myProgress.setVisible(true);
+        new CityLoader(theCity).execute();
+    }
+
+    /**
+     * Enables or disables the simulation controls and the Open City menu item.
+     * 
+     * @param theEnabled whether the controls are enabled.
+     */
+    private void setControlsEnabled(final boolean theEnabled) {
+        for (final JButton button : myButtons) {
+            button.setEnabled(theEnabled);
+        }
+        myOpenItem.setEnabled(theEnabled);
+    }
     
     /**
      * Returns a new JButton with the specified text.
@@ -213,6 +333,7 @@ public class RoadRageGUI extends JFrame implements ActionListener {
     private JButton makeButton(final String theText) {
         final JButton button = new JButton(theText);
         button.addActionListener(this);
+        myButtons.add(button);
         return button;
     }
 
@@ -223,32 +344,112 @@ public class RoadRageGUI extends JFrame implements ActionListener {
      */
     @Override
     public void actionPerformed(final ActionEvent theEvent) {
-        final Object source = theEvent.getSource();
-        if (source.equals(myTimer)) {
-            // event came from the timer
-            myRoadRage.advance();
-        } else {
-            // event came from one of the buttons
-            final String command = theEvent.getActionCommand().intern();
-            if (command.equals(START_COMMAND)) {
-                myTimer.start();
-            } else if (command.equals(STOP_COMMAND)) {
-                myTimer.stop();
-            } else if (command.equals(STEP_COMMAND)) {
-                myRoadRage.advance();
-            } else if (command.equals(RESET_COMMAND)) {
-                reset();
-            }
+        // event came from one of the buttons; the simulation thread carries it out
+        final String command = theEvent.getActionCommand().intern();
+        if (command.equals(START_COMMAND)) {
+            myRunner.start();
+        } else if (command.equals(STOP_COMMAND)) {
+            myRunner.stop();
+        } else if (command.equals(STEP_COMMAND)) {
+            myRunner.step();
+        } else if (command.equals(RESET_COMMAND)) {
+            // resets all the vehicles to their initial locations, resets the tick
+            // counter, and stops the simulation
+            myRunner.reset();
         }
     }
 
     /**
-     * Resets all the vehicles to their initial locations, resets the tick
-     * counter, and stops the simulation.
+     * A band of terrain rows handed from a loading thread to the event dispatch thread.
+     * 
+     * @param firstRow the row of the map the band starts at.
+     * @param rows the terrain of the band.
+     */
+    private record LoadedRows(int firstRow, TerrainGrid rows) { }
+
+    /**
+     * Loads a city off the event dispatch thread, passing its terrain to the panel band
+     * by band as it is read and reporting progress as the share of rows loaded.
      */
-    private void reset() {
-        myTimer.stop();
-        myRoadRage.reset();
+    private final class CityLoader extends SwingWorker<RoadRage, LoadedRows> 
+                    implements CityLoadListener {
+
+        /**
+         * The city file.
+         */
+        private final File myCity;
+
+        /**
+         * The number of rows loaded so far.
+         */
+        private final AtomicInteger myRowsLoaded = new AtomicInteger();
+
+        /**
+         * The height of the map, once known.
+         */
+        private volatile int myHeight;
+
+        /**
+         * Creates a loader.
+         * 
+         * @param theCity the city file.
+         */
+        CityLoader(final File theCity) {
+            super();
+            myCity = theCity;
+            addPropertyChangeListener(theEvent -> {
+                if ("progress".equals(theEvent.getPropertyName())) {
+                    myProgress.setValue((Integer) theEvent.getNewValue());
+                }
+            });
+        }
+
+        @Override
+        protected RoadRage doInBackground() throws IOException {
+            return FileLoader.readCity(myCity, false, true, this);
+        }
+
+        @Override
+        public void sizeKnown(final int theWidth, final int theHeight) {
+            myHeight = theHeight;
+            SwingUtilities.invokeLater(() -> {
+                myPanel.startLoading(theWidth, theHeight);
+                fitToMap();
+            });
+        }
+
+        @Override
+        public void rowsLoaded(final int theFirstRow, final TerrainGrid theRows) {
+            publish(new LoadedRows(theFirstRow, theRows));
+            final long rows = myRowsLoaded.addAndGet(theRows.getHeight());
+            setProgress((int) Math.min(FULL_PROGRESS, 
+                                       rows * FULL_PROGRESS / Math.max(1, myHeight)));
+        }
+
+        @Override
+        protected void process(final List<LoadedRows> theBands) {
+            for (final LoadedRows band : theBands) {
+                myPanel.rowsLoaded(band.firstRow(), band.rows());
+            }
+        }
+
+        @Override
+        protected void done() {
+            myProgress.setVisible(false);
+            try {
+                myRunner = new SimulationRunner(get(), myDelay, myPanel::frameReady);
+                myPanel.setSimulation(myRunner);
+                setControlsEnabled(true);
+            } catch (final InterruptedException ie) {
+                Thread.currentThread().interrupt();
+            } catch (final ExecutionException ee) {
+                myOpenItem.setEnabled(true);
+                JOptionPane.showMessageDialog(RoadRageGUI.this, 
+                                              "Could not read city map file " + myCity
+                                              + ":\n\n" + ee.getCause().getMessage(),
+                                              "I/O Error", JOptionPane.ERROR_MESSAGE);
+            }
+        }
     }
         
  // end class RoadRageGUI
@@ -4,11 +4,6 @@
 
 package view;
 
-import static logic.PropertyChangeEnabledRoadRageControls.PROPERTY_GRID;
-import static logic.PropertyChangeEnabledRoadRageControls.PROPERTY_LIGHT;
-import static logic.PropertyChangeEnabledRoadRageControls.PROPERTY_VEHICLES;
-import static logic.PropertyChangeEnabledRoadRageControls.PROPERTY_TIME;
-
 import java.awt.BasicStroke;
 import java.awt.Color;
 import java.awt.Dimension;
@@ -16,25 +11,43 @@ import java.awt.Font;
 import java.awt.Graphics;
 import java.awt.Graphics2D;
 import java.awt.Image;
-import java.awt.MediaTracker;
 import java.awt.Paint;
+import java.awt.Point;
+import java.awt.Rectangle;
 import java.awt.RenderingHints;
-import java.beans.PropertyChangeEvent;
-import java.beans.PropertyChangeListener;
+import java.awt.event.ComponentAdapter;
+import java.awt.event.ComponentEvent;
+import java.awt.event.MouseAdapter;
+import java.awt.event.MouseEvent;
+import java.awt.event.MouseWheelEvent;
+import java.awt.geom.AffineTransform;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
 import java.util.List;
-import javax.swing.ImageIcon;
+import java.util.concurrent.atomic.AtomicBoolean;
 import javax.swing.JPanel;
 import javax.swing.JToggleButton;
+import javax.swing.SwingUtilities;
 import javax.swing.event.ChangeEvent;
 import javax.swing.event.ChangeListener;
+import logic.Frame;
+import logic.SimulationRunner;
 import model.Direction;
 import model.Light;
 import model.Terrain;
-import model.Vehicle;
+import model.TerrainGrid;
 
 /**
- * A drawing panel for the map.
+ * A drawing panel for the map. The panel paints the latest frame published by a
+ * SimulationRunner, so painting never waits for the simulation, and repaints only the
+ * parts of the map that changed since the frame it showed before.
+ * 
+ * <p>The panel is a viewport onto the map: dragging pans it and the mouse wheel zooms
+ * it around the mouse pointer. Only the squares and vehicles in view are painted, and the
+ * vehicles in view are found through an index of each frame's vehicles by region, so the
+ * cost of painting depends on the size of the panel and the vehicles in it, not on the
+ * map or the whole population.
  * 
  * @version 05 OCT 2018
  * @author Marty Stepp
@@ -43,7 +56,7 @@ import model.Vehicle;
  * @author Charles Bryan
  * 
  */
-public class RoadRagePanel extends JPanel implements PropertyChangeListener, ChangeListener {
+public class RoadRagePanel extends JPanel implements ChangeListener {
 
     /**
      * The UID of this class (to avoid warnings).
@@ -55,6 +68,16 @@ public class RoadRagePanel extends JPanel implements PropertyChangeListener, Cha
      */
     private static final Font FONT = new Font("SansSerif", Font.BOLD, 9);
     
+    /**
+     * The paint color of a green light.
+     */
+    private static final Color GREEN_LIGHT = Color.GREEN.darker();
+    
+    /**
+     * The paint color of a red light.
+     */
+    private static final Color RED_LIGHT = Color.RED.darker();
+    
     /**
      * The stroke used for painting.
      */
@@ -82,6 +105,69 @@ public class RoadRagePanel extends JPanel implements PropertyChangeListener, Cha
      * The size in pixels of a side of one "square" on the grid.
      */
     private static final int SQUARE_SIZE = 40;
+
+    /**
+     * The color of squares whose terrain has not been loaded yet.
+     */
+    private static final Color LOADING = Color.DARK_GRAY;
+
+    /**
+     * The color of the panel, which shows through on grass.
+     */
+    private static final Color BACKGROUND = Color.GREEN;
+
+    /**
+     * The width and height in squares of the regions repainted when squares change.
+     */
+    private static final int REGION_SQUARES = 8;
+
+    /**
+     * The number of runs of changed regions painted one by one before they are repainted
+     * together.
+     */
+    private static final int MAX_RUNS = 16;
+
+    /**
+     * The largest width in pixels the panel asks for.
+     */
+    private static final int MAX_VIEW_WIDTH = 1200;
+
+    /**
+     * The largest height in pixels the panel asks for.
+     */
+    private static final int MAX_VIEW_HEIGHT = 800;
+
+    /**
+     * The smallest zoom, at which a square is one pixel wide, unless the map only fits in
+     * the panel at a smaller one.
+     */
+    private static final double MIN_ZOOM = 1.0 / SQUARE_SIZE;
+
+    /**
+     * The largest zoom.
+     */
+    private static final double MAX_ZOOM = 2;
+
+    /**
+     * The factor the zoom changes by for each step of the mouse wheel.
+     */
+    private static final double ZOOM_STEP = 1.25;
+
+    /**
+     * The size in device pixels below which squares are drawn as plain pixels, without
+     * vehicle images or street markings.
+     */
+    private static final int DETAIL_PIXELS = 8;
+
+    /**
+     * The color of squares full of vehicles when squares are drawn as plain pixels.
+     */
+    private static final Color VEHICLE_DENSITY = Color.MAGENTA;
+
+    /**
+     * The number of milliseconds in a second.
+     */
+    private static final double MILLIS_PER_SECOND = 1000;
     
 
     // Instance Fields
@@ -89,7 +175,23 @@ public class RoadRagePanel extends JPanel implements PropertyChangeListener, Cha
     /**
      * The terrain grid for the simulation.
      */
-    private Terrain[][] myGrid;
+    private TerrainGrid myGrid;
+
+    /**
+     * The bands of TerrainGrid.TILE_SIZE rows of a map that is still loading, null where a
+     * band has not arrived yet; null when no map is loading.
+     */
+    private TerrainGrid[] myBands;
+
+    /**
+     * The width of the map in squares.
+     */
+    private int myMapWidth;
+
+    /**
+     * The height of the map in squares.
+     */
+    private int myMapHeight;
     
     /**
      * A flag indicating whether or not we are running in debug mode.
@@ -97,19 +199,82 @@ public class RoadRagePanel extends JPanel implements PropertyChangeListener, Cha
     private boolean myDebugFlag;
 
     /**
-     * The current timestep of the simulation.
+     * The simulation shown, or null if there is none.
      */
-    private long myTimestep;
+    private SimulationRunner myRunner;
     
     /**
-     * The current color of lights.
+     * The frame being painted, or null if there is none.
      */
-    private Color myLightColor;
-        
+    private Frame myFrame;
+
+    /**
+     * The zoom: the size of a square on screen divided by SQUARE_SIZE.
+     */
+    private double myZoom = 1;
+
+    /**
+     * The x-coordinate in zoomed map pixels shown at the left edge of the panel.
+     */
+    private int myViewX;
+
+    /**
+     * The y-coordinate in zoomed map pixels shown at the top edge of the panel.
+     */
+    private int myViewY;
+
+    /**
+     * Whether showing a new frame is already queued on the event dispatch thread.
+     */
+    private final AtomicBoolean myFramePending = new AtomicBoolean();
+
+    /**
+     * The vehicle images, loaded once and kept at the size they are drawn at.
+     */
+    private final SpriteCache mySprites = new SpriteCache();
+
+    /**
+     * The terrain of the loaded map, drawn once and kept as images.
+     */
+    private final TerrainLayer myTerrain =
+        new TerrainLayer(SQUARE_SIZE, this::drawTerrain, BACKGROUND);
+
+    /**
+     * The map drawn as plain pixels, for views zoomed out too far for detail.
+     */
+    private final DensityView myDensity = new DensityView(SQUARE_SIZE, RoadRagePanel::colorOf,
+                                                          RoadRagePanel::colorOf,
+                                                          VEHICLE_DENSITY);
+
+    /**
+     * The performance readouts shown in debug mode.
+     */
+    private final PerformanceOverlay myOverlay = new PerformanceOverlay();
+
+    /**
+     * The vehicles of the frame being painted, sorted by the region of the map they are on.
+     */
+    private final VehicleIndex myVehicleIndex = new VehicleIndex();
+
+    /**
+     * The vehicles of the frame being painted inside the area being repainted.
+     */
+    private int[] myVisibleVehicles = new int[0];
+
+    /**
+     * The sprite slot of each vehicle in myVisibleVehicles.
+     */
+    private int[] myVehicleSlots = new int[0];
+
+    /**
+     * The vehicles of the frame being painted grouped by sprite slot.
+     */
+    private int[] myBatches = new int[0];
+
     /**
-     * The vehicles to move and display. 
+     * The end of each sprite slot's group in myBatches.
      */
-    private List<Vehicle> myVehicles;
+    private int[] myBatchEnds = new int[0];
 
     // Constructor
 
@@ -121,17 +286,90 @@ public class RoadRagePanel extends JPanel implements PropertyChangeListener, Cha
     public RoadRagePanel(final int theWidth, final int theHeight) {
         super();
 
-        myVehicles = new ArrayList<Vehicle>();
-        myGrid = new Terrain[0][0];
-        setLightColor(Light.GREEN);
-        setPreferredSize(new Dimension(theWidth * SQUARE_SIZE,
-                                       theHeight * SQUARE_SIZE));
-        setBackground(Color.GREEN);
+        myGrid = new TerrainGrid(new Terrain[0][0]);
+        setPreferredSize(viewSize(theWidth, theHeight));
+        setBackground(BACKGROUND);
         setFont(FONT);
+
+        final ViewportMouse mouse = new ViewportMouse();
+        addMouseListener(mouse);
+        addMouseMotionListener(mouse);
+        addMouseWheelListener(mouse);
+        addComponentListener(new ComponentAdapter() {
+            /** Keeps the map in view when the panel changes size. */
+            @Override
+            public void componentResized(final ComponentEvent theEvent) {
+                setView(myZoom, myViewX, myViewY);
+            }
+        });
     }
 
     // Instance Methods
 
+    /**
+     * Shows a simulation, painting the latest frame of the runner whenever the panel is
+     * repainted. The runner should repaint the panel after it publishes a frame. Must be
+     * called on the event dispatch thread, which is the thread frames are acquired on.
+     * 
+     * @param theRunner the simulation, or null to show none
+     */
+    public void setSimulation(final SimulationRunner theRunner) {
+        myRunner = theRunner;
+        myFrame = null;
+        if (theRunner != null) {
+            theRunner.setLabels(myDebugFlag);
+            theRunner.setMeasuring(myDebugFlag);
+            if (theRunner.getWidth() != myMapWidth || theRunner.getHeight() != myMapHeight) {
+                setMapSize(theRunner.getWidth(), theRunner.getHeight());
+            }
+            showNewFrame();
+        }
+        repaint();
+    }
+
+    /**
+     * Tells the panel that its simulation published a frame. The panel shows the newest
+     * frame on the event dispatch thread, repainting only the squares that changed; frames
+     * published before it gets there are shown at once. May be called from any thread.
+     */
+    public void frameReady() {
+        if (!myFramePending.getAndSet(true)) {
+            SwingUtilities.invokeLater(this::showNewFrame);
+        }
+    }
+
+    /**
+     * Clears the panel for a map that is about to be loaded band by band with rowsLoaded.
+     * Squares are drawn as loading until their band arrives, and the loaded map takes
+     * over once it is shown with setSimulation. Must be called on the event dispatch thread.
+     * 
+     * @param theWidth the width of the map in squares
+     * @param theHeight the height of the map in squares
+     */
+    public void startLoading(final int theWidth, final int theHeight) {
+        myBands = new TerrainGrid[(theHeight + TerrainGrid.TILE_SIZE - 1)
+                                  / TerrainGrid.TILE_SIZE];
+        setSimulation(null);
+        setMapSize(theWidth, theHeight);
+        repaint();
+    }
+
+    /**
+     * Shows a band of rows of the map being loaded. Must be called on the event dispatch
+     * thread.
+     * 
+     * @param theFirstRow the row the band starts at, a multiple of TerrainGrid.TILE_SIZE
+     * @param theRows the terrain of the band
+     */
+    public void rowsLoaded(final int theFirstRow, final TerrainGrid theRows) {
+        if (myBands != null) {
+            myBands[theFirstRow / TerrainGrid.TILE_SIZE] = theRows;
+            repaint(mapToPanel(new Rectangle(0, theFirstRow * SQUARE_SIZE,
+                                             myMapWidth * SQUARE_SIZE,
+                                             theRows.getHeight() * SQUARE_SIZE)));
+        }
+    }
+
     /**
      * Paints this panel on the screen with the specified Graphics object.
      * 
@@ -139,6 +377,7 @@ public class RoadRagePanel extends JPanel implements PropertyChangeListener, Cha
      */
     @Override
     public void paintComponent(final Graphics theGraphics) {
+        final long start = System.nanoTime();
         super.paintComponent(theGraphics);
         final Graphics2D g2 = (Graphics2D) theGraphics;
         g2.setRenderingHint(RenderingHints.KEY_ANTIALIASING,
@@ -146,94 +385,342 @@ public class RoadRagePanel extends JPanel implements PropertyChangeListener, Cha
 
         g2.setStroke(STROKE);
 
-        // draw city map
-
-        drawMap(g2);
+        // draw in map pixels from here on; the clip becomes the part of the map in view
+        final AffineTransform panelTransform = g2.getTransform();
+        g2.translate(-myViewX, -myViewY);
+        g2.scale(myZoom, myZoom);
 
-        // draw vehicles
-        for (final Vehicle v : myVehicles) {
-            final String imageFilename = "icons//" + v.getImageFileName();
-            //final String imageFilename = v.getImageFileName();
-            ImageIcon imgIcon = new ImageIcon(imageFilename);
-
-            if (imgIcon.getImageLoadStatus() != MediaTracker.COMPLETE) {
-                imgIcon = new ImageIcon(getClass().getResource(imageFilename));
-            }
+        if (myFrame != null && SQUARE_SIZE * g2.getTransform().getScaleX() < DETAIL_PIXELS) {
+            // too far out for vehicle images and markings: one pixel or block per square
+            myDensity.draw(g2, g2.getClipBounds(), myFrame, myVehicleIndex);
+        } else {
+            // draw city map
 
-            final Image img = imgIcon.getImage();
-            g2.drawImage(img, v.getX() * SQUARE_SIZE, v.getY() * SQUARE_SIZE,
-                         SQUARE_SIZE, SQUARE_SIZE, this);
+            drawMap(g2);
 
-            if (myDebugFlag) {
-                drawDebugInfo(g2, v);
+            // draw vehicles
+            if (myFrame != null) {
+                drawVehicles(g2);
             }
         }
 
+        g2.setTransform(panelTransform);
+        myOverlay.paintTook(System.nanoTime() - start);
+        if (myFrame == null) {
+            return;
+        }
         if (myDebugFlag) {
             g2.setColor(Color.WHITE);
-            g2.drawString("Update # " + myTimestep, DEBUG_OFFSET / 2,
+            g2.drawString("Update # " + myFrame.getTimestep(), DEBUG_OFFSET / 2,
                           FONT.getSize() + DEBUG_OFFSET / 2);
+            myOverlay.draw(g2, myFrame, MILLIS_PER_SECOND / myRunner.getDelay(),
+                           DEBUG_OFFSET / 2, FONT.getSize() + DEBUG_OFFSET);
         }
     }
     
 
     /**
-     * Draws the city map with the specified Graphics2D object.
+     * Acquires the newest frame of the simulation and repaints what changed since the
+     * frame shown before it: the squares of vehicles that changed, inside the visible part
+     * of the panel, and the squares showing a light if the lights changed. Nothing is
+     * repainted when nothing changed. Must be called on the event dispatch thread.
+     */
+    private void showNewFrame() {
+        myFramePending.set(false);
+        final Frame previous = myFrame;
+        final Frame frame = myRunner == null ? null : myRunner.acquireFrame();
+        if (frame == null || frame == previous) {
+            return;
+        }
+        myFrame = frame;
+        myVehicleIndex.index(frame, REGION_SQUARES);
+        myOverlay.frameShown(frame, System.nanoTime());
+        if (previous == null || frame.isAllChanged() || frame.getGrid() != myGrid
+            || frame.haveSignalsChanged() && SQUARE_SIZE * myZoom < DETAIL_PIXELS) {
+            // the simulation's map replaces the bands shown while it was loading; zoomed
+            // out, lights show all over the view, so it is repainted when they change
+            myGrid = frame.getGrid();
+            myBands = null;
+            repaint();
+            return;
+        }
+
+        // mark the regions of the map in view holding changed squares
+        final Rectangle visible = panelToMap(getVisibleRect());
+        if (visible.isEmpty()) {
+            return;
+        }
+        final int firstX = visible.x / (REGION_SQUARES * SQUARE_SIZE);
+        final int firstY = visible.y / (REGION_SQUARES * SQUARE_SIZE);
+        final int across = (visible.x + visible.width - 1) / (REGION_SQUARES * SQUARE_SIZE)
+                           - firstX + 1;
+        final int down = (visible.y + visible.height - 1) / (REGION_SQUARES * SQUARE_SIZE)
+                         - firstY + 1;
+        final BitSet regions = new BitSet(across * down);
+        // debug labels spill out of their square, so the regions around it are marked too
+        final int spill = myDebugFlag ? 1 : 0;
+        final TerrainLayer.SquareVisitor mark = (x, y) -> {
+            final int rx = x / REGION_SQUARES - firstX;
+            final int ry = y / REGION_SQUARES - firstY;
+            final int endRow = Math.min(down - 1, ry + spill);
+            for (int row = Math.max(0, ry - spill); row <= endRow; row++) {
+                regions.set(row * across + Math.max(0, rx - spill),
+                            row * across + Math.min(across - 1, rx + spill) + 1);
+            }
+        };
+        if (frame.haveSignalsChanged()) {
+            myTerrain.setGrid(myGrid);
+            myTerrain.forEachSignal(visible, mark);
+        }
+        for (int i = 0; i < frame.getChangedCount(); i++) {
+            final int x = frame.getChangedX(i);
+            final int y = frame.getChangedY(i);
+            if (isVisible(visible, x, y)) {
+                mark.visit(x, y);
+            }
+        }
+        repaintRegions(regions, firstX, firstY, across, down);
+        if (myDebugFlag) {
+            repaintDebugText();
+        }
+    }
+
+    /**
+     * Repaints the update number and the performance readouts of debug mode, which
+     * change every frame, from the top left corner of the panel to the corner of the box
+     * of readouts.
+     */
+    private void repaintDebugText() {
+        final Rectangle box = myOverlay.getBounds();
+        if (box != null) {
+            repaint(0, 0, box.x + box.width, box.y + box.height);
+        }
+    }
+
+    /**
+     * Repaints marked regions of REGION_SQUARES by REGION_SQUARES squares of the map, each
+     * run of marked regions in a row at once. The repaint manager would merge the runs into one
+     * rectangle covering them all, so a few runs are painted right away instead; many runs
+     * are left to the repaint manager as that one rectangle.
+     * 
+     * @param theRegions the marked regions, row by row
+     * @param theFirstX the x-coordinate in regions of the first column
+     * @param theFirstY the y-coordinate in regions of the first row
+     * @param theAcross the number of regions in a row
+     * @param theDown the number of rows
+     */
+    private void repaintRegions(final BitSet theRegions, final int theFirstX,
+                                final int theFirstY, final int theAcross,
+                                final int theDown) {
+        final int regionSize = REGION_SQUARES * SQUARE_SIZE;
+        final List<Rectangle> runs = new ArrayList<>();
+        final Rectangle all = new Rectangle(0, 0, -1, -1);
+        for (int y = 0; y < theDown; y++) {
+            int start = theRegions.nextSetBit(y * theAcross);
+            while (start >= 0 && start < (y + 1) * theAcross) {
+                final int end = Math.min(theRegions.nextClearBit(start), (y + 1) * theAcross);
+                final Rectangle run = new Rectangle(
+                    (theFirstX + start - y * theAcross) * regionSize,
+                    (theFirstY + y) * regionSize, (end - start) * regionSize, regionSize);
+                runs.add(mapToPanel(run));
+                all.add(mapToPanel(run));
+                start = theRegions.nextSetBit(end);
+            }
+        }
+        if (runs.size() > MAX_RUNS) {
+            repaint(all);
+        } else {
+            for (final Rectangle run : runs) {
+                paintImmediately(run);
+            }
+        }
+    }
+
+    /**
+     * Draws the vehicles of the frame being painted that are inside the area being
+     * repainted, found through the regions of the vehicle index covering it, so the cost
+     * depends on the vehicles in the area rather than on all of them. Vehicles are drawn
+     * grouped by image, so each image is drawn many times in a row; vehicles on the same
+     * square are stacked by image, then in list order.
+     * 
+     * @param theGraphics The Graphics2D object.
+     */
+    private void drawVehicles(final Graphics2D theGraphics) {
+        final Rectangle clip = theGraphics.getClipBounds();
+        final int count = myFrame.getVehicleCount();
+        if (myVisibleVehicles.length < count) {
+            myVisibleVehicles = new int[count];
+            myVehicleSlots = new int[count];
+            myBatches = new int[count];
+        }
+
+        // find the visible vehicles and the sprite of each
+        final int visible;
+        if (clip == null) {
+            visible = myVehicleIndex.find(0, 0, myMapWidth, myMapHeight, myVisibleVehicles);
+        } else {
+            visible = myVehicleIndex.find(Math.floorDiv(clip.x, SQUARE_SIZE),
+                                          Math.floorDiv(clip.y, SQUARE_SIZE),
+                                          Math.floorDiv(clip.x + clip.width - 1,
+                                                        SQUARE_SIZE) + 1,
+                                          Math.floorDiv(clip.y + clip.height - 1,
+                                                        SQUARE_SIZE) + 1,
+                                          myVisibleVehicles);
+        }
+        for (int i = 0; i < visible; i++) {
+            myVehicleSlots[i] = mySprites.slotOf(myFrame.getImageFileName(myVisibleVehicles[i]));
+        }
+
+        // group them by sprite: count each sprite, then place each vehicle after the
+        // vehicles of the sprites before its own
+        final int slots = mySprites.getSlotCount();
+        if (myBatchEnds.length < slots + 1) {
+            myBatchEnds = new int[slots + 1];
+        }
+        Arrays.fill(myBatchEnds, 0);
+        for (int i = 0; i < visible; i++) {
+            myBatchEnds[myVehicleSlots[i] + 1]++;
+        }
+        // myBatchEnds[s + 1] now counts slot s
+        for (int s = 1; s <= slots; s++) {
+            myBatchEnds[s] += myBatchEnds[s - 1];
+        }
+        for (int i = 0; i < visible; i++) {
+            myBatches[myBatchEnds[myVehicleSlots[i]]++] = myVisibleVehicles[i];
+        }
+
+        // the sprites are scaled to device pixels, so they are copied without scaling
+        final int pixels = (int) Math.round(SQUARE_SIZE * theGraphics.getTransform().getScaleX());
+        int start = 0;
+        for (int s = 0; s < slots; s++) {
+            final Image sprite = mySprites.getSprite(s, theGraphics.getDeviceConfiguration(),
+                                                     pixels);
+            for (int i = start; sprite != null && i < myBatchEnds[s]; i++) {
+                final int v = myBatches[i];
+                theGraphics.drawImage(sprite, myFrame.getX(v) * SQUARE_SIZE,
+                                      myFrame.getY(v) * SQUARE_SIZE,
+                                      SQUARE_SIZE, SQUARE_SIZE, null);
+            }
+            start = myBatchEnds[s];
+        }
+
+        if (myDebugFlag) {
+            for (int i = 0; i < visible; i++) {
+                drawDebugInfo(theGraphics, myVisibleVehicles[i]);
+            }
+        }
+    }
+
+    /**
+     * Returns whether a square is inside the area being repainted.
+     * 
+     * @param theClip the area being repainted, or null for the whole panel
+     * @param theX the x-coordinate of the square
+     * @param theY the y-coordinate of the square
+     * @return whether the square needs painting
+     */
+    private static boolean isVisible(final Rectangle theClip, final int theX, final int theY) {
+        if (theClip == null) {
+            return true;
+        }
+        final int left = theX * SQUARE_SIZE;
+        final int top = theY * SQUARE_SIZE;
+        return left < theClip.x + theClip.width && left + SQUARE_SIZE > theClip.x
+               && top < theClip.y + theClip.height && top + SQUARE_SIZE > theClip.y;
+    }
+
+    /**
+     * Draws the city map with the specified Graphics2D object. The terrain of a loaded map
+     * comes from the terrain layer with the lights drawn over it; a map that is still
+     * loading is drawn square by square.
      * 
      * @param theGraphics The Graphics2D object.
      */
     private void drawMap(final Graphics2D theGraphics) {
-        for (int y = 0; y < myGrid.length; y++) {
-            final int topy = y * SQUARE_SIZE;
-
-            for (int x = 0; x < myGrid[y].length; x++) {
-                final int leftx = x * SQUARE_SIZE;
-
-                switch (myGrid[y][x]) {
-                    case STREET:
-                        theGraphics.setPaint(Color.LIGHT_GRAY);
-                        theGraphics.fillRect(leftx, topy, SQUARE_SIZE, SQUARE_SIZE);
-                        drawStreetLines(theGraphics, x, y);
-                        break;
-
-                    case WALL:
-                        theGraphics.setPaint(Color.BLACK);
-                        theGraphics.fillRect(leftx, topy, SQUARE_SIZE, SQUARE_SIZE);
-                        break;
-
-                    case TRAIL:
-                        theGraphics.setPaint(Color.YELLOW.darker().darker());
-                        theGraphics.fillRect(leftx, topy, SQUARE_SIZE, SQUARE_SIZE);
-                        break;
-
-                    case LIGHT:
-                        // draw a circle of appropriate color
-                        theGraphics.setPaint(Color.LIGHT_GRAY);
-                        theGraphics.fillRect(leftx, topy, SQUARE_SIZE, SQUARE_SIZE);
-                        theGraphics.setPaint(myLightColor);
-                        theGraphics.fillOval(leftx, topy, SQUARE_SIZE, SQUARE_SIZE);
-                        break;
-                        
-                    case CROSSWALK:
-                        theGraphics.setPaint(Color.LIGHT_GRAY);
-                        theGraphics.fillRect(leftx, topy, SQUARE_SIZE, SQUARE_SIZE);
-                        
-                        drawCrossWalkLines(theGraphics, x, y);
-                        
-                        // draw a small circle of appropriate color centered in the square
-                        theGraphics.setPaint(myLightColor);
-                        theGraphics.fillOval(leftx + (int)  (SQUARE_SIZE * CROSSWALK_SCALE),
-                                             topy  + (int) (SQUARE_SIZE * CROSSWALK_SCALE),
-                                             SQUARE_SIZE / 2, SQUARE_SIZE / 2);
-                        break;
-
-                    default:
+        // only the squares inside the area being repainted
+        final Rectangle clip = theGraphics.getClipBounds();
+        final int firstX = clip == null ? 0 : Math.max(0, clip.x / SQUARE_SIZE);
+        final int firstY = clip == null ? 0 : Math.max(0, clip.y / SQUARE_SIZE);
+        final int endX = clip == null ? myMapWidth
+                        : Math.min(myMapWidth, (clip.x + clip.width) / SQUARE_SIZE + 1);
+        final int endY = clip == null ? myMapHeight
+                        : Math.min(myMapHeight, (clip.y + clip.height) / SQUARE_SIZE + 1);
+
+        if (myFrame != null) {
+            myTerrain.setGrid(myGrid);
+            myTerrain.draw(theGraphics, clip);
+            myTerrain.forEachSignal(clip, (x, y) -> drawSignal(theGraphics, x, y));
+        } else {
+            myTerrain.setGrid(null);
+            for (int y = firstY; y < endY; y++) {
+                for (int x = firstX; x < endX; x++) {
+                    drawTerrain(theGraphics, x, y);
+                    drawSignal(theGraphics, x, y);
                 }
+            }
+        }
 
-                drawDebugInfo(theGraphics, x, y);
+        if (myDebugFlag) {
+            for (int y = firstY; y < endY; y++) {
+                for (int x = firstX; x < endX; x++) {
+                    drawDebugInfo(theGraphics, x, y);
+                }
             }
         }
     }
+
+    /**
+     * Draws the parts of a square that never change: everything but its light.
+     * 
+     * @param theGraphics The Graphics2D object.
+     * @param theX The x-coordinate of the square.
+     * @param theY The y-coordinate of the square.
+     */
+    private void drawTerrain(final Graphics2D theGraphics, final int theX, final int theY) {
+        final int leftx = theX * SQUARE_SIZE;
+        final int topy = theY * SQUARE_SIZE;
+        final Terrain terrain = terrainAt(theX, theY);
+        if (terrain == null) {
+            theGraphics.setPaint(LOADING);
+            theGraphics.fillRect(leftx, topy, SQUARE_SIZE, SQUARE_SIZE);
+            return;
+        }
+
+        // grass is the background, already there
+        if (terrain != Terrain.GRASS) {
+            theGraphics.setPaint(colorOf(terrain));
+            theGraphics.fillRect(leftx, topy, SQUARE_SIZE, SQUARE_SIZE);
+        }
+        if (terrain == Terrain.STREET) {
+            drawStreetLines(theGraphics, theX, theY);
+        } else if (terrain == Terrain.CROSSWALK) {
+            drawCrossWalkLines(theGraphics, theX, theY);
+        }
+    }
+
+    /**
+     * Draws the light of a square, if it has one.
+     * 
+     * @param theGraphics The Graphics2D object.
+     * @param theX The x-coordinate of the square.
+     * @param theY The y-coordinate of the square.
+     */
+    private void drawSignal(final Graphics2D theGraphics, final int theX, final int theY) {
+        final int leftx = theX * SQUARE_SIZE;
+        final int topy = theY * SQUARE_SIZE;
+        final Terrain terrain = terrainAt(theX, theY);
+        if (terrain == Terrain.LIGHT) {
+            // draw a circle of appropriate color
+            theGraphics.setPaint(lightColorAt(theX, theY));
+            theGraphics.fillOval(leftx, topy, SQUARE_SIZE, SQUARE_SIZE);
+        } else if (terrain == Terrain.CROSSWALK) {
+            // draw a small circle of appropriate color centered in the square
+            theGraphics.setPaint(lightColorAt(theX, theY));
+            theGraphics.fillOval(leftx + (int)  (SQUARE_SIZE * CROSSWALK_SCALE),
+                                 topy  + (int) (SQUARE_SIZE * CROSSWALK_SCALE),
+                                 SQUARE_SIZE / 2, SQUARE_SIZE / 2);
+        }
+    }
     
     /**
      * Draws debugging information, if necessary.
@@ -257,23 +744,26 @@ public class RoadRagePanel extends JPanel implements PropertyChangeListener, Cha
     }
     
     /**
-     * Draws the debug information for a single Vehicle.
+     * Draws the debug information for a single Vehicle of the frame being painted.
      * 
      * @param theGraphics The graphic context.
-     * @param theVehicle The Vehicle being drawn.
+     * @param theVehicle The number of the Vehicle being drawn.
      */
-    private void drawDebugInfo(final Graphics2D theGraphics, final Vehicle theVehicle) {
-        int x = theVehicle.getX() * SQUARE_SIZE;
-        int y = theVehicle.getY() * SQUARE_SIZE;
+    private void drawDebugInfo(final Graphics2D theGraphics, final int theVehicle) {
+        int x = myFrame.getX(theVehicle) * SQUARE_SIZE;
+        int y = myFrame.getY(theVehicle) * SQUARE_SIZE;
 
-        // draw numbers on each vehicle
-        theGraphics.setColor(Color.WHITE);
-        theGraphics.drawString(theVehicle.toString(), x, y + SQUARE_SIZE - 1);
-        theGraphics.setColor(Color.BLACK);
-        theGraphics.drawString(theVehicle.toString(), x + 1, y + SQUARE_SIZE);
+        // draw numbers on each vehicle, once the frames carry them
+        final String label = myFrame.getLabel(theVehicle);
+        if (label != null) {
+            theGraphics.setColor(Color.WHITE);
+            theGraphics.drawString(label, x, y + SQUARE_SIZE - 1);
+            theGraphics.setColor(Color.BLACK);
+            theGraphics.drawString(label, x + 1, y + SQUARE_SIZE);
+        }
 
         // draw arrow on vehicle for its direction
-        final Direction dir = theVehicle.getDirection();
+        final Direction dir = myFrame.getDirection(theVehicle);
         int dx = (SQUARE_SIZE - MARKER_SIZE) / 2;
         int dy = dx;
 
@@ -305,26 +795,75 @@ public class RoadRagePanel extends JPanel implements PropertyChangeListener, Cha
     }
 
     /**
-     * Sets the paint color appropriately for the current lights.
+     * Returns the paint color of the light controlling the given square.
+     * 
+     * @param theX The x position.
+     * @param theY The y position.
+     * @return the paint color.
+     */
+    private Color lightColorAt(final int theX, final int theY) {
+        if (myFrame == null) {
+            return colorOf(Light.GREEN);
+        }
+        return colorOf(myFrame.getLight(theX, theY));
+    }
+    
+    /**
+     * Returns the paint color for a terrain.
+     * 
+     * @param theTerrain The terrain.
+     * @return the paint color.
+     */
+    private static Color colorOf(final Terrain theTerrain) {
+        Color result = null;
+        switch (theTerrain) {
+            case STREET:
+            case LIGHT:
+            case CROSSWALK:
+                result = Color.LIGHT_GRAY;
+                break;
+
+            case WALL:
+                result = Color.BLACK;
+                break;
+
+            case TRAIL:
+                result = Color.YELLOW.darker().darker();
+                break;
+
+            case GRASS:
+                result = BACKGROUND;
+                break;
+
+            default:
+        }
+        return result;
+    }
+
+    /**
+     * Returns the paint color for a light.
      * 
-     * @param theLight The Light to base the color on.
+     * @param theLight The light.
+     * @return the paint color.
      */
-    private void setLightColor(final Light theLight) {
+    private static Color colorOf(final Light theLight) {
+        Color result = null;
         switch (theLight) {
             case GREEN:
-                myLightColor = Color.GREEN.darker();
+                result = GREEN_LIGHT;
                 break;
 
             case RED:
-                myLightColor = Color.RED.darker();
+                result = RED_LIGHT;
                 break;
 
             case YELLOW:
-                myLightColor = Color.YELLOW;
+                result = Color.YELLOW;
                 break;
 
             default:
         }
+        return result;
     }
     
     /**
@@ -346,7 +885,7 @@ public class RoadRagePanel extends JPanel implements PropertyChangeListener, Cha
         final int rightx = leftx + SQUARE_SIZE;
         final int bottomy = topy + SQUARE_SIZE;
 
-        if (isValidIndex(theY - 1, theX) && myGrid[theY - 1][theX] == Terrain.GRASS) {
+        if (isValidIndex(theY - 1, theX) && terrainAt(theX, theY - 1) == Terrain.GRASS) {
             // GRASS is above. Let's assume GRASS is also below.
             // DRAW lines on left and right of light
             theGraphics.drawLine(leftx  + (int) (SQUARE_SIZE * CROSSWALK_SCALE), topy,
@@ -356,7 +895,7 @@ public class RoadRagePanel extends JPanel implements PropertyChangeListener, Cha
         }
         
 
-        if (isValidIndex(theY, theX - 1) && myGrid[theY][theX - 1] == Terrain.GRASS) {
+        if (isValidIndex(theY, theX - 1) && terrainAt(theX - 1, theY) == Terrain.GRASS) {
             // GRASS is left. Let's assume GRASS is also right.
             // DRAW lines above and below light
             theGraphics.drawLine(leftx, topy + (int) (SQUARE_SIZE * CROSSWALK_SCALE),
@@ -388,16 +927,16 @@ public class RoadRagePanel extends JPanel implements PropertyChangeListener, Cha
         final int rightx = leftx + SQUARE_SIZE;
         final int bottomy = topy + SQUARE_SIZE;
 
-        if (isValidIndex(theY - 1, theX) && myGrid[theY - 1][theX] == Terrain.STREET) {
+        if (isValidIndex(theY - 1, theX) && terrainAt(theX, theY - 1) == Terrain.STREET) {
             theGraphics.drawLine(centerx, centery, centerx, topy); // above
         }
-        if (isValidIndex(theY + 1, theX) && myGrid[theY + 1][theX] == Terrain.STREET) {
+        if (isValidIndex(theY + 1, theX) && terrainAt(theX, theY + 1) == Terrain.STREET) {
             theGraphics.drawLine(centerx, centery, centerx, bottomy); // below
         }
-        if (isValidIndex(theY, theX - 1) && myGrid[theY][theX - 1] == Terrain.STREET) {
+        if (isValidIndex(theY, theX - 1) && terrainAt(theX - 1, theY) == Terrain.STREET) {
             theGraphics.drawLine(centerx, centery, leftx, centery); // left
         }
-        if (isValidIndex(theY, theX + 1) && myGrid[theY][theX + 1] == Terrain.STREET) {
+        if (isValidIndex(theY, theX + 1) && terrainAt(theX + 1, theY) == Terrain.STREET) {
             theGraphics.drawLine(centerx, centery, rightx, centery); // right
         }
 
@@ -412,42 +951,160 @@ public class RoadRagePanel extends JPanel implements PropertyChangeListener, Cha
      * @return true if the position exists on the map, false otherwise.
      */
     private boolean isValidIndex(final int theY, final int theX) {
-        return 0 <= theY && theY < myGrid.length
-            && 0 <= theX && theX < myGrid[theY].length;
+        return 0 <= theX && theX < myMapWidth && 0 <= theY && theY < myMapHeight;
     }
 
-    @Override
-    public void propertyChange(final PropertyChangeEvent theEvent) {
-        switch (theEvent.getPropertyName()) {
-            case PROPERTY_GRID:
-                myGrid = (Terrain[][]) theEvent.getNewValue();
-                repaint();
-                break;
-            case PROPERTY_LIGHT:
-                setLightColor((Light) theEvent.getNewValue());
-                repaint();
-                break;
-            case PROPERTY_VEHICLES:
-                @SuppressWarnings("unchecked") 
-                final List<Vehicle> list = (List<Vehicle>) theEvent.getNewValue();
-                myVehicles = new ArrayList<>(list);
-                repaint();
-                break;
-            case PROPERTY_TIME:
-                myTimestep = (Long) theEvent.getNewValue();
-                repaint();
-                break;
-            default:
-                break;  
-            
+    /**
+     * Returns the terrain of a square, from the bands loaded so far while a map is loading.
+     * 
+     * @param theX The x position.
+     * @param theY The y position.
+     * @return the terrain, or null if it has not been loaded yet.
+     */
+    private Terrain terrainAt(final int theX, final int theY) {
+        if (myBands == null) {
+            // a new map may be sized before its first frame brings its grid
+            return theX < myGrid.getWidth() && theY < myGrid.getHeight() 
+                            ? myGrid.get(theX, theY) : null;
         }
+        final TerrainGrid band = myBands[theY / TerrainGrid.TILE_SIZE];
+        return band == null ? null : band.get(theX, theY % TerrainGrid.TILE_SIZE);
+    }
+
+    /**
+     * Sets the size of the map and resizes the panel to fit it.
+     * 
+     * @param theWidth the width of the map in squares
+     * @param theHeight the height of the map in squares
+     */
+    private void setMapSize(final int theWidth, final int theHeight) {
+        myMapWidth = theWidth;
+        myMapHeight = theHeight;
+        setPreferredSize(viewSize(theWidth, theHeight));
+        setView(1, 0, 0);
+        revalidate();
+    }
+
+    /**
+     * Returns the size the panel asks for to show a map: the whole map at full size, up
+     * to MAX_VIEW_WIDTH by MAX_VIEW_HEIGHT pixels.
+     * 
+     * @param theWidth the width of the map in squares
+     * @param theHeight the height of the map in squares
+     * @return the preferred size of the panel
+     */
+    private static Dimension viewSize(final int theWidth, final int theHeight) {
+        return new Dimension(Math.min(MAX_VIEW_WIDTH, theWidth * SQUARE_SIZE),
+                             Math.min(MAX_VIEW_HEIGHT, theHeight * SQUARE_SIZE));
+    }
+
+    /**
+     * Sets the zoom and the part of the map in view, keeping as much of the map in view
+     * as the panel can show, and repaints the panel.
+     * 
+     * @param theZoom the zoom, limited by limitZoom
+     * @param theViewX the x-coordinate in zoomed map pixels to show at the left edge
+     * @param theViewY the y-coordinate in zoomed map pixels to show at the top edge
+     */
+    private void setView(final double theZoom, final int theViewX, final int theViewY) {
+        myZoom = limitZoom(theZoom);
+        final int maxX = (int) Math.ceil(myMapWidth * SQUARE_SIZE * myZoom) - getWidth();
+        final int maxY = (int) Math.ceil(myMapHeight * SQUARE_SIZE * myZoom) - getHeight();
+        myViewX = Math.max(0, Math.min(maxX, theViewX));
+        myViewY = Math.max(0, Math.min(maxY, theViewY));
+        repaint();
+    }
+
+    /**
+     * Limits a zoom to MAX_ZOOM, and to MIN_ZOOM or the zoom fitting the whole map in
+     * the panel, whichever is smaller.
+     * 
+     * @param theZoom the zoom
+     * @return the limited zoom
+     */
+    private double limitZoom(final double theZoom) {
+        double least = MIN_ZOOM;
+        if (myMapWidth > 0 && myMapHeight > 0 && getWidth() > 0 && getHeight() > 0) {
+            least = Math.min(least,
+                             Math.min((double) getWidth() / (myMapWidth * SQUARE_SIZE),
+                                      (double) getHeight() / (myMapHeight * SQUARE_SIZE)));
+        }
+        return Math.max(least, Math.min(MAX_ZOOM, theZoom));
+    }
+
+    /**
+     * Returns the part of the panel showing an area of the map.
+     * 
+     * @param theArea the area in map pixels
+     * @return the area in panel pixels, rounded outwards
+     */
+    private Rectangle mapToPanel(final Rectangle theArea) {
+        final int left = (int) Math.floor(theArea.x * myZoom) - myViewX;
+        final int top = (int) Math.floor(theArea.y * myZoom) - myViewY;
+        final int right = (int) Math.ceil((theArea.x + theArea.width) * myZoom) - myViewX;
+        final int bottom = (int) Math.ceil((theArea.y + theArea.height) * myZoom) - myViewY;
+        return new Rectangle(left, top, right - left, bottom - top);
+    }
+
+    /**
+     * Returns the area of the map shown in a part of the panel.
+     * 
+     * @param theArea the area in panel pixels
+     * @return the area in map pixels, rounded outwards
+     */
+    private Rectangle panelToMap(final Rectangle theArea) {
+        final int left = (int) Math.floor((theArea.x + myViewX) / myZoom);
+        final int top = (int) Math.floor((theArea.y + myViewY) / myZoom);
+        final int right = (int) Math.ceil((theArea.x + theArea.width + myViewX) / myZoom);
+        final int bottom = (int) Math.ceil((theArea.y + theArea.height + myViewY) / myZoom);
+        return new Rectangle(left, top, right - left, bottom - top);
     }
 
     @Override
     public void stateChanged(final ChangeEvent theEvent) {
         myDebugFlag = ((JToggleButton) theEvent.getSource()).isSelected();
+        if (myRunner != null) {
+            myRunner.setLabels(myDebugFlag);
+            myRunner.setMeasuring(myDebugFlag);
+        }
         repaint();
     }
     
+    /**
+     * Pans the view when the mouse is dragged and zooms it when the wheel turns.
+     */
+    private final class ViewportMouse extends MouseAdapter {
+
+        /**
+         * Where the mouse was when last pressed or dragged.
+         */
+        private Point myLast;
+
+        @Override
+        public void mousePressed(final MouseEvent theEvent) {
+            myLast = theEvent.getPoint();
+        }
+
+        @Override
+        public void mouseDragged(final MouseEvent theEvent) {
+            if (myLast != null) {
+                setView(myZoom, myViewX - (theEvent.getX() - myLast.x),
+                        myViewY - (theEvent.getY() - myLast.y));
+            }
+            myLast = theEvent.getPoint();
+        }
+
+        @Override
+        public void mouseWheelMoved(final MouseWheelEvent theEvent) {
+            // keep the point of the map under the mouse where it is
+            final double zoom = limitZoom(myZoom * Math.pow(ZOOM_STEP,
+                                                     -theEvent.getPreciseWheelRotation()));
+            final double factor = zoom / myZoom;
+            setView(zoom, (int) Math.round((myViewX + theEvent.getX()) * factor)
+                          - theEvent.getX(),
+                    (int) Math.round((myViewY + theEvent.getY()) * factor) - theEvent.getY());
+        }
+    }
+
 } // end class RoadRagePanel
 
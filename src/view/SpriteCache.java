@@ -0,0 +1,154 @@
+/*
+ * TCSS 305 - Road Rage
+ */
+
+package view;
+
+import java.awt.Graphics2D;
+import java.awt.GraphicsConfiguration;
+import java.awt.Image;
+import java.awt.MediaTracker;
+import java.awt.RenderingHints;
+import java.awt.Transparency;
+import java.awt.image.BufferedImage;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import javax.swing.ImageIcon;
+
+/**
+ * The vehicle images of the panel, each loaded once and kept as a display-compatible
+ * image already scaled to the size it is drawn at, so drawing a vehicle is a plain copy.
+ * Each image file name is given a slot number, which lets the panel group vehicles by
+ * image. The scaled images are made again when the size or the display changes.
+ */
+final class SpriteCache {
+
+    /**
+     * The directory the images are looked up in, first as a file, then on the class path.
+     */
+    private static final String ICON_DIRECTORY = "icons//";
+
+    /**
+     * The slot of each image file name.
+     */
+    private final Map<String, Integer> mySlots = new HashMap<>();
+
+    /**
+     * The image as loaded of each slot, null where it could not be loaded.
+     */
+    private final List<Image> myImages = new ArrayList<>();
+
+    /**
+     * The scaled image of each slot, null where it has not been made yet.
+     */
+    private Image[] mySprites = new Image[0];
+
+    /**
+     * The display the scaled images are compatible with.
+     */
+    private GraphicsConfiguration myConfiguration;
+
+    /**
+     * The width and height in pixels of the scaled images.
+     */
+    private int myPixels;
+
+    /**
+     * Returns the slot of an image, loading the image the first time it is asked for.
+     *
+     * @param theFileName the image file name, as given by Vehicle.getImageFileName()
+     * @return the slot number, from 0 up to getSlotCount() - 1
+     */
+    int slotOf(final String theFileName) {
+        Integer slot = mySlots.get(theFileName);
+        if (slot == null) {
+            slot = myImages.size();
+            mySlots.put(theFileName, slot);
+            myImages.add(load(theFileName));
+            mySprites = Arrays.copyOf(mySprites, myImages.size());
+        }
+        return slot;
+    }
+
+    /**
+     * Returns the number of slots given out so far.
+     *
+     * @return the number of slots
+     */
+    int getSlotCount() {
+        return myImages.size();
+    }
+
+    /**
+     * Returns the image of a slot scaled to a size, compatible with a display.
+     *
+     * @param theSlot the slot number
+     * @param theConfiguration the display the image is drawn on
+     * @param thePixels the width and height of the image in device pixels
+     * @return the scaled image, or null if the image could not be loaded
+     */
+    Image getSprite(final int theSlot, final GraphicsConfiguration theConfiguration,
+                    final int thePixels) {
+        if (theConfiguration != myConfiguration || thePixels != myPixels) {
+            // the display or the scale changed, so every scaled image is made again
+            Arrays.fill(mySprites, null);
+            myConfiguration = theConfiguration;
+            myPixels = thePixels;
+        }
+        if (mySprites[theSlot] == null && myImages.get(theSlot) != null) {
+            mySprites[theSlot] = scale(myImages.get(theSlot), theConfiguration, thePixels);
+        }
+        return mySprites[theSlot];
+    }
+
+    /**
+     * Loads an image from the icon directory, or from the class path if it is not a file.
+     *
+     * @param theFileName the image file name
+     * @return the image, or null if it could not be found
+     */
+    private Image load(final String theFileName) {
+        final String path = ICON_DIRECTORY + theFileName;
+        ImageIcon icon = new ImageIcon(path);
+        if (icon.getImageLoadStatus() != MediaTracker.COMPLETE) {
+            final URL resource = getClass().getResource(path);
+            if (resource == null) {
+                return null;
+            }
+            icon = new ImageIcon(resource);
+        }
+        return icon.getImage();
+    }
+
+    /**
+     * Makes a scaled copy of an image that is compatible with a display.
+     *
+     * @param theImage the image
+     * @param theConfiguration the display
+     * @param thePixels the width and height of the copy
+     * @return the copy
+     */
+    private static Image scale(final Image theImage,
+                               final GraphicsConfiguration theConfiguration,
+                               final int thePixels) {
+        final int size = Math.max(1, thePixels);
+        final BufferedImage result;
+        if (theConfiguration == null) {
+            result = new BufferedImage(size, size, BufferedImage.TYPE_INT_ARGB_PRE);
+        } else {
+            result = theConfiguration.createCompatibleImage(size, size,
+                                                            Transparency.TRANSLUCENT);
+        }
+        final Graphics2D g2 = result.createGraphics();
+        g2.setRenderingHint(RenderingHints.KEY_INTERPOLATION,
+                            RenderingHints.VALUE_INTERPOLATION_BICUBIC);
+        g2.setRenderingHint(RenderingHints.KEY_RENDERING, RenderingHints.VALUE_RENDER_QUALITY);
+        g2.drawImage(theImage, 0, 0, size, size, null);
+        g2.dispose();
+        return result;
+    }
+}
@@ -0,0 +1,436 @@
+/*
+ * TCSS 305 - Road Rage
+ */
+
+package view;
+
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.GraphicsConfiguration;
+import java.awt.Image;
+import java.awt.Rectangle;
+import java.awt.geom.AffineTransform;
+import java.awt.image.BufferedImage;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import model.Terrain;
+import model.TerrainGrid;
+
+/**
+ * The terrain of a map drawn once into images, so painting the map is a few image copies
+ * instead of drawing every square. The map is cut into tiles of about TILE_PIXELS device
+ * pixels on a side at the current zoom, drawn the first time they are shown; only the
+ * most recently shown tiles are kept, so a map of any size costs a bounded amount of
+ * memory.
+ *
+ * <p>The lights of the map change while the terrain does not, so the layer also lists the
+ * squares that show a light, for them to be drawn over the tiles. They are found a tile
+ * of the grid at a time, the first time the tile is in view, and the lists of only the
+ * most recently shown tiles are kept, so the lights cost as much as the squares in view
+ * rather than the size of the map.
+ */
+final class TerrainLayer {
+
+    /**
+     * Paints one square of the map.
+     */
+    @FunctionalInterface
+    interface SquarePainter {
+
+        /**
+         * Paints a square in the coordinates of the whole map.
+         *
+         * @param theGraphics the graphics to paint with
+         * @param theX the x-coordinate of the square
+         * @param theY the y-coordinate of the square
+         */
+        void paint(Graphics2D theGraphics, int theX, int theY);
+    }
+
+    /**
+     * Visits one square of the map.
+     */
+    @FunctionalInterface
+    interface SquareVisitor {
+
+        /**
+         * Visits a square.
+         *
+         * @param theX the x-coordinate of the square
+         * @param theY the y-coordinate of the square
+         */
+        void visit(int theX, int theY);
+    }
+
+    /**
+     * The width and height in pixels a tile is made close to.
+     */
+    private static final int TILE_PIXELS = 512;
+
+    /**
+     * The number of tile images kept.
+     */
+    private static final int MAX_TILES = 48;
+
+    /**
+     * The number of squares of a grid tile, which hold the lights of the tile.
+     */
+    private static final int GRID_TILE_SQUARES = TerrainGrid.TILE_SIZE * TerrainGrid.TILE_SIZE;
+
+    /**
+     * The number of lists of the lights of a grid tile kept, many more than the grid
+     * tiles in view at any zoom showing lights square by square.
+     */
+    private static final int MAX_SIGNAL_TILES = 1024;
+
+    /**
+     * The lights of a grid tile showing none.
+     */
+    private static final short[] NO_SIGNALS = new short[0];
+
+    /**
+     * The lights of a grid tile showing one on every square.
+     */
+    private static final short[] ALL_SIGNALS = new short[GRID_TILE_SQUARES];
+
+    static {
+        for (int i = 0; i < GRID_TILE_SQUARES; i++) {
+            ALL_SIGNALS[i] = (short) i;
+        }
+    }
+
+    /**
+     * The size in pixels of a side of one square, without scaling.
+     */
+    private final int mySquareSize;
+
+    /**
+     * The width and height of a tile in squares at the current scale.
+     */
+    private int myTileSquares;
+
+    /**
+     * Paints the parts of a square that never change.
+     */
+    private final SquarePainter myTerrainPainter;
+
+    /**
+     * The color of squares the terrain painter leaves empty.
+     */
+    private final Color myBackground;
+
+    /**
+     * The tile images by tile number, least recently shown first.
+     */
+    private final Map<Integer, Image> myTiles = new LinkedHashMap<>(MAX_TILES, 1, true) {
+        /** The UID of this class (to avoid warnings). */
+        private static final long serialVersionUID = 1L;
+
+        @Override
+        protected boolean removeEldestEntry(final Map.Entry<Integer, Image> theEldest) {
+            return size() > MAX_TILES;
+        }
+    };
+
+    /**
+     * The squares showing a light of each grid tile by tile number, least recently shown
+     * first, as indices into the tile row by row.
+     */
+    private final Map<Integer, short[]> mySignals =
+        new LinkedHashMap<>(MAX_SIGNAL_TILES, 1, true) {
+            /** The UID of this class (to avoid warnings). */
+            private static final long serialVersionUID = 1L;
+
+            @Override
+            protected boolean removeEldestEntry(final Map.Entry<Integer, short[]> theEldest) {
+                return size() > MAX_SIGNAL_TILES;
+            }
+        };
+
+    /**
+     * The terrain ordinals of the grid tile whose lights are being found.
+     */
+    private final byte[] myOrdinals = new byte[GRID_TILE_SQUARES];
+
+    /**
+     * The lights of the grid tile whose lights are being found.
+     */
+    private final short[] myFound = new short[GRID_TILE_SQUARES];
+
+    /**
+     * The map the tiles show, or null if there is none.
+     */
+    private TerrainGrid myGrid;
+
+    /**
+     * The display the tiles were made for.
+     */
+    private GraphicsConfiguration myConfiguration;
+
+    /**
+     * The scale from map pixels to device pixels the tiles were made at.
+     */
+    private double myScale;
+
+    /**
+     * Creates an empty layer.
+     *
+     * @param theSquareSize the size in pixels of a side of one square
+     * @param theTerrainPainter paints the parts of a square that never change
+     * @param theBackground the color of squares the painter leaves empty
+     */
+    TerrainLayer(final int theSquareSize, final SquarePainter theTerrainPainter,
+                 final Color theBackground) {
+        mySquareSize = theSquareSize;
+        myTerrainPainter = theTerrainPainter;
+        myBackground = theBackground;
+    }
+
+    /**
+     * Sets the map shown. Setting a different map forgets the tiles and lights of the old
+     * one.
+     *
+     * @param theGrid the map, or null for none
+     */
+    void setGrid(final TerrainGrid theGrid) {
+        if (theGrid != myGrid) {
+            myGrid = theGrid;
+            myTiles.clear();
+            mySignals.clear();
+        }
+    }
+
+    /**
+     * Draws the tiles covering an area of the map, making those that are missing. An area
+     * needing more tiles than are kept is drawn square by square over the background the
+     * graphics already holds.
+     *
+     * @param theGraphics the graphics to draw with
+     * @param theClip the area to draw in pixels, or null for the whole map
+     */
+    void draw(final Graphics2D theGraphics, final Rectangle theClip) {
+        if (myGrid == null) {
+            return;
+        }
+        final double scale = theGraphics.getTransform().getScaleX();
+        if (theGraphics.getDeviceConfiguration() != myConfiguration || scale != myScale) {
+            // tiles are made in device pixels, so they are made again for another display
+            // or zoom, with as many squares as fit in TILE_PIXELS
+            myTiles.clear();
+            myConfiguration = theGraphics.getDeviceConfiguration();
+            myScale = scale;
+            myTileSquares = Math.max(1, (int) (TILE_PIXELS / (mySquareSize * scale)));
+        }
+
+        final int tilePixels = myTileSquares * mySquareSize;
+        final int across = (myGrid.getWidth() + myTileSquares - 1) / myTileSquares;
+        final int down = (myGrid.getHeight() + myTileSquares - 1) / myTileSquares;
+        int firstX = 0;
+        int firstY = 0;
+        int endX = across;
+        int endY = down;
+        if (theClip != null) {
+            firstX = Math.max(0, theClip.x / tilePixels);
+            firstY = Math.max(0, theClip.y / tilePixels);
+            endX = Math.min(across, (theClip.x + theClip.width - 1) / tilePixels + 1);
+            endY = Math.min(down, (theClip.y + theClip.height - 1) / tilePixels + 1);
+        }
+        if ((endX - firstX) * (endY - firstY) > MAX_TILES) {
+            // the tiles would push each other out of the cache, so draw the squares instead
+            drawSquares(theGraphics, firstX * myTileSquares, firstY * myTileSquares,
+                        Math.min(myGrid.getWidth(), endX * myTileSquares),
+                        Math.min(myGrid.getHeight(), endY * myTileSquares));
+            return;
+        }
+        // tiles are copied in device pixels, each starting where the one before it ends,
+        // so no seams show between them at any zoom
+        final AffineTransform mapTransform = theGraphics.getTransform();
+        theGraphics.setTransform(AffineTransform.getTranslateInstance(
+            mapTransform.getTranslateX(), mapTransform.getTranslateY()));
+        for (int ty = firstY; ty < endY; ty++) {
+            for (int tx = firstX; tx < endX; tx++) {
+                Image tile = myTiles.get(ty * across + tx);
+                if (tile == null) {
+                    tile = makeTile(theGraphics, tx, ty);
+                    myTiles.put(ty * across + tx, tile);
+                }
+                theGraphics.drawImage(tile, devicePixel(tx * myTileSquares),
+                                      devicePixel(ty * myTileSquares), null);
+            }
+        }
+        theGraphics.setTransform(mapTransform);
+    }
+
+    /**
+     * Visits the squares showing a light inside an area of the map, grid tile by grid
+     * tile. The lights of grid tiles not seen before are found and kept, unless the area
+     * covers more grid tiles than are kept.
+     *
+     * @param theArea the area in pixels, or null for the whole map
+     * @param theVisitor called with the coordinates of each square
+     */
+    void forEachSignal(final Rectangle theArea, final SquareVisitor theVisitor) {
+        if (myGrid == null) {
+            return;
+        }
+        int firstX = 0;
+        int firstY = 0;
+        int endX = myGrid.getWidth();
+        int endY = myGrid.getHeight();
+        if (theArea != null) {
+            firstX = Math.max(0, theArea.x / mySquareSize);
+            firstY = Math.max(0, theArea.y / mySquareSize);
+            endX = Math.min(endX, (theArea.x + theArea.width - 1) / mySquareSize + 1);
+            endY = Math.min(endY, (theArea.y + theArea.height - 1) / mySquareSize + 1);
+        }
+        if (endX <= firstX || endY <= firstY) {
+            return;
+        }
+        final int size = TerrainGrid.TILE_SIZE;
+        final int across = (myGrid.getWidth() + size - 1) / size;
+        final int firstTileX = firstX / size;
+        final int firstTileY = firstY / size;
+        final int endTileX = (endX - 1) / size + 1;
+        final int endTileY = (endY - 1) / size + 1;
+        final boolean keep =
+            (long) (endTileX - firstTileX) * (endTileY - firstTileY) <= MAX_SIGNAL_TILES;
+        for (int ty = firstTileY; ty < endTileY; ty++) {
+            for (int tx = firstTileX; tx < endTileX; tx++) {
+                short[] signals = keep ? mySignals.get(ty * across + tx) : null;
+                if (signals == null) {
+                    signals = findSignals(tx, ty);
+                    if (keep) {
+                        mySignals.put(ty * across + tx, signals);
+                    }
+                }
+                for (final short square : signals) {
+                    final int x = tx * size + square % size;
+                    final int y = ty * size + square / size;
+                    if (firstX <= x && x < endX && firstY <= y && y < endY) {
+                        theVisitor.visit(x, y);
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Draws a tile into a new image at the current display and scale, with the rendering
+     * hints and stroke of the graphics it will be drawn on.
+     *
+     * @param theGraphics the graphics the tile will be drawn on
+     * @param theTileX the x-coordinate of the tile in tiles
+     * @param theTileY the y-coordinate of the tile in tiles
+     * @return the image
+     */
+    private Image makeTile(final Graphics2D theGraphics, final int theTileX,
+                           final int theTileY) {
+        final int firstX = theTileX * myTileSquares;
+        final int firstY = theTileY * myTileSquares;
+        final int endX = firstX + tileWidth(theTileX);
+        final int endY = firstY + tileHeight(theTileY);
+        final int pixelWidth = Math.max(1, devicePixel(endX) - devicePixel(firstX));
+        final int pixelHeight = Math.max(1, devicePixel(endY) - devicePixel(firstY));
+        final BufferedImage result;
+        if (myConfiguration == null) {
+            result = new BufferedImage(pixelWidth, pixelHeight, BufferedImage.TYPE_INT_RGB);
+        } else {
+            result = myConfiguration.createCompatibleImage(pixelWidth, pixelHeight);
+        }
+
+        final Graphics2D g2 = result.createGraphics();
+        g2.setRenderingHints(theGraphics.getRenderingHints());
+        g2.setStroke(theGraphics.getStroke());
+        g2.setPaint(myBackground);
+        g2.fillRect(0, 0, pixelWidth, pixelHeight);
+        g2.translate(-devicePixel(firstX), -devicePixel(firstY));
+        g2.scale(myScale, myScale);
+        drawSquares(g2, firstX, firstY, endX, endY);
+        g2.dispose();
+        return result;
+    }
+
+    /**
+     * Draws the terrain of a block of squares without making tiles, over the background
+     * already there.
+     *
+     * @param theGraphics the graphics to draw with
+     * @param theFirstX the x-coordinate of the first column
+     * @param theFirstY the y-coordinate of the first row
+     * @param theEndX the x-coordinate after the last column
+     * @param theEndY the y-coordinate after the last row
+     */
+    private void drawSquares(final Graphics2D theGraphics, final int theFirstX,
+                             final int theFirstY, final int theEndX, final int theEndY) {
+        for (int y = theFirstY; y < theEndY; y++) {
+            for (int x = theFirstX; x < theEndX; x++) {
+                myTerrainPainter.paint(theGraphics, x, y);
+            }
+        }
+    }
+
+    /**
+     * Returns the device pixel a square starts at, counted from the corner of the map.
+     *
+     * @param theSquare the x- or y-coordinate of the square
+     * @return the device pixel
+     */
+    private int devicePixel(final int theSquare) {
+        return (int) Math.floor(theSquare * mySquareSize * myScale);
+    }
+
+    /**
+     * Returns the width of a tile, which is smaller at the right edge of the map.
+     *
+     * @param theTileX the x-coordinate of the tile in tiles
+     * @return the width in squares
+     */
+    private int tileWidth(final int theTileX) {
+        return Math.min(myTileSquares, myGrid.getWidth() - theTileX * myTileSquares);
+    }
+
+    /**
+     * Returns the height of a tile, which is smaller at the bottom edge of the map.
+     *
+     * @param theTileY the y-coordinate of the tile in tiles
+     * @return the height in squares
+     */
+    private int tileHeight(final int theTileY) {
+        return Math.min(myTileSquares, myGrid.getHeight() - theTileY * myTileSquares);
+    }
+
+    /**
+     * Finds the squares of a grid tile that show a light, lights and crosswalks. A uniform
+     * tile shows lights on all of its squares or none of them.
+     *
+     * @param theTileX the column of the grid tile
+     * @param theTileY the row of the grid tile
+     * @return the squares as indices into the tile row by row, in order
+     */
+    private short[] findSignals(final int theTileX, final int theTileY) {
+        final int x = theTileX * TerrainGrid.TILE_SIZE;
+        final int y = theTileY * TerrainGrid.TILE_SIZE;
+        if (myGrid.isUniformTile(x, y)) {
+            return isSignal(myGrid.getOrdinal(x, y)) ? ALL_SIGNALS : NO_SIGNALS;
+        }
+        myGrid.copyTile(theTileX, theTileY, myOrdinals);
+        int count = 0;
+        for (int i = 0; i < GRID_TILE_SQUARES; i++) {
+            if (isSignal(myOrdinals[i])) {
+                myFound[count++] = (short) i;
+            }
+        }
+        return count == 0 ? NO_SIGNALS : Arrays.copyOf(myFound, count);
+    }
+
+    /**
+     * Returns whether a terrain shows a light.
+     *
+     * @param theOrdinal the ordinal of the terrain
+     * @return true for lights and crosswalks, false otherwise
+     */
+    private static boolean isSignal(final int theOrdinal) {
+        return theOrdinal == Terrain.LIGHT.ordinal() || theOrdinal == Terrain.CROSSWALK.ordinal();
+    }
+}
@@ -0,0 +1,165 @@
+/*
+ * TCSS 305 - Road Rage
+ */
+
+package view;
+
+import java.util.Arrays;
+import logic.Frame;
+
+/**
+ * The vehicles of a frame sorted by the cell of the map they are on, so the panel finds
+ * the vehicles of the area it repaints by visiting the few cells covering it instead of
+ * testing every vehicle. The index is made once per frame with a counting sort: one pass
+ * counts the vehicles of each cell and a second places them, keeping list order within a
+ * cell.
+ *
+ * <p>Cells are square and at least the given number of squares on a side, doubled as
+ * needed so a map of any size has no more than MAX_CELLS of them.
+ */
+final class VehicleIndex {
+
+    /**
+     * The most cells the map is cut into.
+     */
+    private static final int MAX_CELLS = 1 << 20;
+
+    /**
+     * The frame indexed, or null before the first one.
+     */
+    private Frame myFrame;
+
+    /**
+     * The width and height in squares of a cell.
+     */
+    private int myCellSquares = 1;
+
+    /**
+     * The number of cells in a row.
+     */
+    private int myAcross;
+
+    /**
+     * The number of rows of cells.
+     */
+    private int myDown;
+
+    /**
+     * The start in myOrder of the vehicles of each cell, row by row, followed by the end
+     * of the last cell.
+     */
+    private int[] myStarts = new int[1];
+
+    /**
+     * The vehicles grouped by cell.
+     */
+    private int[] myOrder = new int[0];
+
+    /**
+     * Indexes the vehicles of a frame.
+     *
+     * @param theFrame the frame
+     * @param theMinSquares the least width and height in squares of a cell
+     */
+    void index(final Frame theFrame, final int theMinSquares) {
+        myFrame = theFrame;
+        final int width = Math.max(1, theFrame.getGrid().getWidth());
+        final int height = Math.max(1, theFrame.getGrid().getHeight());
+        int cellSquares = theMinSquares;
+        while ((long) cellsOn(width, cellSquares) * cellsOn(height, cellSquares) > MAX_CELLS) {
+            cellSquares *= 2;
+        }
+        myCellSquares = cellSquares;
+        myAcross = cellsOn(width, cellSquares);
+        myDown = cellsOn(height, cellSquares);
+        final int cells = myAcross * myDown;
+        if (myStarts.length < cells + 1) {
+            myStarts = new int[cells + 1];
+        }
+        final int count = theFrame.getVehicleCount();
+        if (myOrder.length < count) {
+            myOrder = new int[count];
+        }
+
+        // count the vehicles of each cell one place ahead, then turn the counts into
+        // the starts of the cells, and place each vehicle at the start of its cell
+        Arrays.fill(myStarts, 0, cells + 1, 0);
+        for (int v = 0; v < count; v++) {
+            myStarts[cellOf(v) + 1]++;
+        }
+        for (int c = 1; c <= cells; c++) {
+            myStarts[c] += myStarts[c - 1];
+        }
+        for (int v = 0; v < count; v++) {
+            myOrder[myStarts[cellOf(v)]++] = v;
+        }
+        // each start has moved to the end of its cell, the start of the next one
+        System.arraycopy(myStarts, 0, myStarts, 1, cells);
+        myStarts[0] = 0;
+    }
+
+    /**
+     * Finds the vehicles on the squares of an area of the map, grouped by cell and in
+     * list order within a cell.
+     *
+     * @param theFirstX the x-coordinate of the first square of the area
+     * @param theFirstY the y-coordinate of the first square of the area
+     * @param theEndX the x-coordinate after the last square of the area
+     * @param theEndY the y-coordinate after the last square of the area
+     * @param theVehicles filled with the vehicles found, as long as the frame's vehicles
+     * @return the number of vehicles found
+     */
+    int find(final int theFirstX, final int theFirstY, final int theEndX, final int theEndY,
+             final int[] theVehicles) {
+        if (myFrame == null || theEndX <= theFirstX || theEndY <= theFirstY) {
+            return 0;
+        }
+        final int firstCellX = Math.max(0, theFirstX / myCellSquares);
+        final int firstCellY = Math.max(0, theFirstY / myCellSquares);
+        final int endCellX = Math.min(myAcross, (theEndX - 1) / myCellSquares + 1);
+        final int endCellY = Math.min(myDown, (theEndY - 1) / myCellSquares + 1);
+        if (firstCellX >= endCellX || firstCellY >= endCellY) {
+            return 0;
+        }
+        int found = 0;
+        for (int cy = firstCellY; cy < endCellY; cy++) {
+            // the cells of a row are next to each other in myOrder
+            final int end = myStarts[cy * myAcross + endCellX];
+            for (int i = myStarts[cy * myAcross + firstCellX]; i < end; i++) {
+                final int v = myOrder[i];
+                final int x = myFrame.getX(v);
+                final int y = myFrame.getY(v);
+                if (theFirstX <= x && x < theEndX && theFirstY <= y && y < theEndY) {
+                    theVehicles[found++] = v;
+                }
+            }
+        }
+        return found;
+    }
+
+    /**
+     * Returns the cell a vehicle of the frame is on; a vehicle off the map counts as on
+     * the nearest cell.
+     *
+     * @param theVehicle the vehicle
+     * @return the cell, row by row
+     */
+    private int cellOf(final int theVehicle) {
+        final int cx = Math.min(myAcross - 1,
+                                Math.max(0, myFrame.getX(theVehicle) / myCellSquares));
+        final int cy = Math.min(myDown - 1,
+                                Math.max(0, myFrame.getY(theVehicle) / myCellSquares));
+        return cy * myAcross + cx;
+    }
+
+    /**
+     * Returns the number of cells needed to cover a length of squares.
+     *
+     * @param theSquares the length in squares
+     * @param theCellSquares the width of a cell in squares
+     * @return the number of cells
+     */
+    private static int cellsOn(final int theSquares, final int theCellSquares) {
+        return (theSquares + theCellSquares - 1) / theCellSquares;
+    }
+}
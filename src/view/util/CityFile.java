@@ -0,0 +1,419 @@
+/*
+ * TCSS 305 - Road Rage
+ */
+
+package view.util;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import logic.RoadRage;
+import model.Direction;
+import model.Terrain;
+import model.TerrainGrid;
+import model.Vehicle;
+import model.VehicleKind;
+
+/**
+ * Reads and writes the binary city format, which holds the same map as a city text file
+ * but loads with a memory-mapped read instead of a Scanner.
+ *
+ * <p>All numbers are big-endian. A file is laid out as:
+ * <ul>
+ * <li>a header of six ints: MAGIC, VERSION, the width, the height, the number of
+ * vehicles and the number of stored tiles;</li>
+ * <li>a directory with one byte per TerrainGrid tile, row of tiles by row of tiles: the
+ * terrain ordinal of a tile made of a single terrain, or MIXED;</li>
+ * <li>the TILE_SIZE * TILE_SIZE terrain ordinals of each MIXED tile, in directory order;
+ * </li>
+ * <li>the vehicles, each a VehicleKind letter byte, a Direction letter byte and the x and
+ * y position as ints.</li>
+ * </ul>
+ */
+final class CityFile {
+
+    /**
+     * The first four bytes of every binary city file, "RRCY".
+     */
+    private static final int MAGIC = 0x52524359;
+
+    /**
+     * The version of the format written by this class.
+     */
+    private static final int VERSION = 1;
+
+    /**
+     * The directory entry of a tile stored square by square.
+     */
+    private static final byte MIXED = -1;
+
+    /**
+     * The number of ints in the header.
+     */
+    private static final int HEADER_INTS = 6;
+
+    /**
+     * The number of bytes of one vehicle.
+     */
+    private static final int VEHICLE_BYTES = 2 + 2 * Integer.BYTES;
+
+    /**
+     * The number of squares in a tile.
+     */
+    private static final int TILE_CELLS = TerrainGrid.TILE_SIZE * TerrainGrid.TILE_SIZE;
+
+    /**
+     * The most bytes mapped at once, so files larger than one mapping can still be read.
+     */
+    private static final int WINDOW_BYTES = 1 << 26;
+
+    /**
+     * A private constructor, to prevent external instantiation.
+     */
+    private CityFile() { }
+
+    /**
+     * Returns whether a file starts like a binary city file.
+     *
+     * @param thePath the file.
+     * @return true if the file starts with MAGIC, false otherwise.
+     * @throws IOException if the file cannot be read.
+     */
+    static boolean isCityFile(final Path thePath) throws IOException {
+        try (FileChannel channel = FileChannel.open(thePath, StandardOpenOption.READ)) {
+            final ByteBuffer start = ByteBuffer.allocate(Integer.BYTES);
+            while (start.hasRemaining() && channel.read(start) >= 0) {
+                // keep reading until the magic number is in or the file ends
+            }
+            return !start.hasRemaining() && start.getInt(0) == MAGIC;
+        }
+    }
+
+    /**
+     * Reads a binary city file and builds a RoadRage simulation based on it.
+     *
+     * @param thePath the binary city file.
+     * @param thePacked whether the simulation keeps its vehicle state in packed arrays.
+     * @param theListener the listener told about the terrain as it is read.
+     * @return the RoadRage simulation.
+     * @throws IOException if the file cannot be read or is not a valid city file.
+     */
+    static RoadRage read(final Path thePath, final boolean thePacked,
+                         final CityLoadListener theListener) throws IOException {
+        try (FileChannel channel = FileChannel.open(thePath, StandardOpenOption.READ)) {
+            final MappedInput input = new MappedInput(channel);
+            if (input.getInt() != MAGIC) {
+                throw new IOException(thePath + " is not a binary city file");
+            }
+            final int version = input.getInt();
+            if (version != VERSION) {
+                throw new IOException(thePath + " has format version " + version
+                                      + " instead of " + VERSION);
+            }
+            final int width = input.getInt();
+            final int height = input.getInt();
+            final int vehicleCount = input.getInt();
+            final int storedTiles = input.getInt();
+            if (width < 0 || height < 0 || vehicleCount < 0 || storedTiles < 0) {
+                throw new IOException(thePath + " has a bad header");
+            }
+            final long expected = (long) HEADER_INTS * Integer.BYTES
+                                  + (long) tiles(width) * tiles(height)
+                                  + (long) storedTiles * TILE_CELLS
+                                  + (long) vehicleCount * VEHICLE_BYTES;
+            if (channel.size() != expected) {
+                throw new IOException(thePath + " is " + channel.size()
+                                      + " bytes long instead of " + expected);
+            }
+            // everything but the stored tiles is checked before the listener hears of the
+            // map, so a stale file is given up on without it knowing
+            final byte[] directory = readDirectory(input, width, height, storedTiles);
+            final List<Vehicle> vehicles = readVehicles(
+                new MappedInput(channel, expected - (long) vehicleCount * VEHICLE_BYTES),
+                vehicleCount);
+            theListener.sizeKnown(width, height);
+            return new RoadRage(readGrid(input, width, height, directory, theListener),
+                                vehicles, thePacked);
+        } catch (final BufferUnderflowException | IllegalArgumentException e) {
+            throw new IOException(thePath + " is not a valid binary city file", e);
+        }
+    }
+
+    /**
+     * Writes a city as a binary city file, replacing the file if it exists.
+     *
+     * @param thePath the file to write.
+     * @param theGrid the terrain.
+     * @param theVehicles the vehicles, in their starting positions.
+     * @throws IOException if the file cannot be written.
+     * @throws IllegalArgumentException if a vehicle is not of a known VehicleKind.
+     */
+    static void write(final Path thePath, final TerrainGrid theGrid,
+                      final List<? extends Vehicle> theVehicles) throws IOException {
+        final int tilesAcross = tiles(theGrid.getWidth());
+        final int tilesDown = tiles(theGrid.getHeight());
+        final byte[] directory = new byte[tilesAcross * tilesDown];
+        int storedTiles = 0;
+        for (int tileY = 0; tileY < tilesDown; tileY++) {
+            for (int tileX = 0; tileX < tilesAcross; tileX++) {
+                final int x = tileX * TerrainGrid.TILE_SIZE;
+                final int y = tileY * TerrainGrid.TILE_SIZE;
+                if (theGrid.isUniformTile(x, y)) {
+                    directory[tileY * tilesAcross + tileX] = (byte) theGrid.getOrdinal(x, y);
+                } else {
+                    directory[tileY * tilesAcross + tileX] = MIXED;
+                    storedTiles++;
+                }
+            }
+        }
+
+        try (OutputStream file = Files.newOutputStream(thePath);
+             DataOutputStream output = new DataOutputStream(new BufferedOutputStream(file))) {
+            output.writeInt(MAGIC);
+            output.writeInt(VERSION);
+            output.writeInt(theGrid.getWidth());
+            output.writeInt(theGrid.getHeight());
+            output.writeInt(theVehicles.size());
+            output.writeInt(storedTiles);
+            output.write(directory);
+            final byte[] tile = new byte[TILE_CELLS];
+            for (int i = 0; i < directory.length; i++) {
+                if (directory[i] == MIXED) {
+                    theGrid.copyTile(i % tilesAcross, i / tilesAcross, tile);
+                    output.write(tile);
+                }
+            }
+            for (final Vehicle vehicle : theVehicles) {
+                final VehicleKind kind = VehicleKind.of(vehicle);
+                if (kind == null) {
+                    throw new IllegalArgumentException("Unknown vehicle type "
+                                                       + vehicle.getClass().getName());
+                }
+                output.writeByte(kind.letter());
+                output.writeByte(vehicle.getDirection().letter());
+                output.writeInt(vehicle.getX());
+                output.writeInt(vehicle.getY());
+            }
+        }
+    }
+
+    /**
+     * Reads the directory of a binary city file.
+     *
+     * @param theInput the input, positioned at the directory.
+     * @param theWidth the width of the grid.
+     * @param theHeight the height of the grid.
+     * @param theStoredTiles the number of MIXED tiles.
+     * @return the directory.
+     * @throws IOException if an entry is neither a terrain nor MIXED, or the number of
+     *         MIXED entries is not theStoredTiles.
+     */
+    private static byte[] readDirectory(final MappedInput theInput, final int theWidth,
+                                        final int theHeight, final int theStoredTiles)
+                    throws IOException {
+        final byte[] result = new byte[tiles(theWidth) * tiles(theHeight)];
+        theInput.get(result);
+        int stored = 0;
+        for (final byte entry : result) {
+            if (entry == MIXED) {
+                stored++;
+            } else if (entry < 0 || entry >= Terrain.values().length) {
+                throw new IOException("Bad tile directory entry " + entry);
+            }
+        }
+        if (stored != theStoredTiles) {
+            throw new IOException("Expected " + theStoredTiles + " stored tiles but found "
+                                  + stored);
+        }
+        return result;
+    }
+
+    /**
+     * Reads the stored tiles of a binary city file.
+     *
+     * @param theInput the input, positioned at the first stored tile.
+     * @param theWidth the width of the grid.
+     * @param theHeight the height of the grid.
+     * @param theDirectory the directory, checked by readDirectory.
+     * @param theListener the listener told about each row of tiles as it is read.
+     * @return the terrain grid.
+     * @throws IOException if the file cannot be mapped.
+     * @throws IllegalArgumentException if a stored tile holds a bad terrain ordinal.
+     */
+    private static TerrainGrid readGrid(final MappedInput theInput, final int theWidth,
+                                        final int theHeight, final byte[] theDirectory,
+                                        final CityLoadListener theListener)
+                    throws IOException {
+        final int tilesAcross = tiles(theWidth);
+        final TerrainGrid.Builder grid = new TerrainGrid.Builder(theWidth, theHeight);
+        final byte[] tile = new byte[TILE_CELLS];
+        for (int first = 0; first < theHeight; first += TerrainGrid.TILE_SIZE) {
+            final int rows = Math.min(TerrainGrid.TILE_SIZE, theHeight - first);
+            final TerrainGrid.Builder band = new TerrainGrid.Builder(theWidth, rows);
+            for (int tileX = 0; tileX < tilesAcross; tileX++) {
+                final byte entry = theDirectory[first / TerrainGrid.TILE_SIZE * tilesAcross
+                                                + tileX];
+                if (entry == MIXED) {
+                    theInput.get(tile);
+                } else {
+                    Arrays.fill(tile, entry);
+                }
+                band.setTile(tileX, 0, tile);
+            }
+            final TerrainGrid rowsLoaded = band.build();
+            theListener.rowsLoaded(first, rowsLoaded);
+            grid.setRows(first, rowsLoaded);
+        }
+        return grid.build();
+    }
+
+    /**
+     * Reads the vehicle table of a binary city file.
+     *
+     * @param theInput the input, positioned at the vehicle table.
+     * @param theCount the number of vehicles.
+     * @return the vehicles.
+     * @throws IOException if a vehicle has an unknown kind or direction.
+     */
+    private static List<Vehicle> readVehicles(final MappedInput theInput, final int theCount)
+                    throws IOException {
+        final List<Vehicle> vehicles = new ArrayList<>(theCount);
+        for (int i = 0; i < theCount; i++) {
+            final char kindLetter = (char) theInput.get();
+            final char directionLetter = (char) theInput.get();
+            final int x = theInput.getInt();
+            final int y = theInput.getInt();
+            final VehicleKind kind = VehicleKind.valueOf(kindLetter);
+            final Direction direction = Direction.valueOf(directionLetter);
+            if (kind == null || direction == null) {
+                throw new IOException("Bad vehicle " + i + ": " + kindLetter + " " + x + " "
+                                      + y + " " + directionLetter);
+            }
+            vehicles.add(FileLoader.createVehicle(kind, x, y, direction));
+        }
+        return vehicles;
+    }
+
+    /**
+     * Returns the number of tiles needed to cover a length.
+     *
+     * @param theSquares the length in squares.
+     * @return the number of tiles.
+     */
+    private static int tiles(final int theSquares) {
+        return (theSquares + TerrainGrid.TILE_SIZE - 1) / TerrainGrid.TILE_SIZE;
+    }
+
+    /**
+     * Reads a file sequentially through read-only mappings of at most WINDOW_BYTES each,
+     * moving the window along as it is used up.
+     */
+    private static final class MappedInput {
+
+        /**
+         * The file.
+         */
+        private final FileChannel myChannel;
+
+        /**
+         * The current window of the file.
+         */
+        private MappedByteBuffer myWindow;
+
+        /**
+         * The file position of the end of the current window.
+         */
+        private long myEnd;
+
+        /**
+         * Creates an input at the start of a file.
+         *
+         * @param theChannel the file
+         */
+        MappedInput(final FileChannel theChannel) {
+            this(theChannel, 0);
+        }
+
+        /**
+         * Creates an input at a position of a file.
+         *
+         * @param theChannel the file
+         * @param thePosition the position of the first byte to read
+         */
+        MappedInput(final FileChannel theChannel, final long thePosition) {
+            myChannel = theChannel;
+            myWindow = null;
+            myEnd = thePosition;
+        }
+
+        /**
+         * Reads one byte.
+         *
+         * @return the byte.
+         * @throws IOException if the file cannot be mapped.
+         */
+        byte get() throws IOException {
+            ensure(1);
+            return myWindow.get();
+        }
+
+        /**
+         * Reads one int.
+         *
+         * @return the int.
+         * @throws IOException if the file cannot be mapped.
+         */
+        int getInt() throws IOException {
+            ensure(Integer.BYTES);
+            return myWindow.getInt();
+        }
+
+        /**
+         * Fills an array.
+         *
+         * @param theBytes the array
+         * @throws IOException if the file cannot be mapped.
+         */
+        void get(final byte[] theBytes) throws IOException {
+            int done = 0;
+            while (done < theBytes.length) {
+                ensure(1);
+                final int length = Math.min(theBytes.length - done, myWindow.remaining());
+                myWindow.get(theBytes, done, length);
+                done += length;
+            }
+        }
+
+        /**
+         * Maps the next window if fewer than the given number of bytes are left in the
+         * current one.
+         *
+         * @param theBytes the number of bytes about to be read
+         * @throws IOException if the file cannot be mapped.
+         * @throws BufferUnderflowException if the file ends too soon.
+         */
+        private void ensure(final int theBytes) throws IOException {
+            if (myWindow != null && myWindow.remaining() >= theBytes) {
+                return;
+            }
+            final long start = myEnd - (myWindow == null ? 0 : myWindow.remaining());
+            final long size = Math.min(WINDOW_BYTES, myChannel.size() - start);
+            if (size < theBytes) {
+                throw new BufferUnderflowException();
+            }
+            myWindow = myChannel.map(FileChannel.MapMode.READ_ONLY, start, size);
+            myEnd = start + size;
+        }
+    }
+}
@@ -0,0 +1,32 @@
+/*
+ * TCSS 305 - Road Rage
+ */
+
+package view.util;
+
+import model.TerrainGrid;
+
+/**
+ * Receives the terrain of a city while FileLoader is still loading it, so a display can
+ * show the map as it arrives. Methods may be called from several loader threads at once.
+ */
+public interface CityLoadListener {
+
+    /**
+     * Called once, before any rows, when the size of the map is known.
+     *
+     * @param theWidth the width of the map in squares.
+     * @param theHeight the height of the map in squares.
+     */
+    void sizeKnown(int theWidth, int theHeight);
+
+    /**
+     * Called for each band of rows of the map, in no particular order. Bands start at
+     * multiples of TerrainGrid.TILE_SIZE and are as wide as the map. A band may be
+     * delivered more than once, always with the same terrain.
+     *
+     * @param theFirstRow the row of the map the band starts at.
+     * @param theRows the terrain of the band.
+     */
+    void rowsLoaded(int theFirstRow, TerrainGrid theRows);
+}
@@ -0,0 +1,723 @@
+/*
+ * TCSS 305 - Road Rage
+ */
+
+package view.util;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import model.Direction;
+import model.Terrain;
+import model.TerrainGrid;
+import model.Vehicle;
+import model.VehicleKind;
+
+/**
+ * Parses city text files straight from their bytes, without a Scanner.
+ *
+ * <p>The format is the one FileLoader has always read: a line with the number of rows and
+ * columns, one line of terrain letters per row, a line with the number of vehicles, then
+ * one line per vehicle holding its letter, x, y and direction letter. Letters are looked
+ * up in 256-entry tables.
+ *
+ * <p>When every row is exactly as long as the map is wide, row i starts at a known offset,
+ * so bands of TerrainGrid.TILE_SIZE rows are read and parsed in parallel, each straight
+ * into its own row of tiles. Otherwise the rows are parsed one after another, ignoring
+ * letters past the width as the old parser did. The vehicle lines are split into chunks
+ * at line breaks and parsed in parallel too. Work is spread over the common ForkJoinPool.
+ */
+final class CityParser {
+
+    /**
+     * The number of bytes read at once when scanning a file line by line.
+     */
+    private static final int CHUNK_BYTES = 1 << 16;
+
+    /**
+     * The rough number of bytes of vehicle lines parsed by one task.
+     */
+    private static final int VEHICLE_CHUNK_BYTES = 1 << 20;
+
+    /**
+     * The number of squares in a tile.
+     */
+    private static final int TILE_CELLS = TerrainGrid.TILE_SIZE * TerrainGrid.TILE_SIZE;
+
+    /**
+     * The mask giving a coordinate's position within its tile.
+     */
+    private static final int TILE_MASK = TerrainGrid.TILE_SIZE - 1;
+
+    /**
+     * The number of bits to shift a coordinate by to get its tile coordinate.
+     */
+    private static final int TILE_SHIFT = Integer.numberOfTrailingZeros(TerrainGrid.TILE_SIZE);
+
+    /**
+     * The mask turning a byte into an unsigned table index.
+     */
+    private static final int BYTE_MASK = 0xFF;
+
+    /**
+     * The Terrain ordinal of each byte, as Terrain.valueOf gives it.
+     */
+    private static final byte[] TERRAINS = new byte[BYTE_MASK + 1];
+
+    /**
+     * The VehicleKind of each byte, or null.
+     */
+    private static final VehicleKind[] KINDS = new VehicleKind[BYTE_MASK + 1];
+
+    /**
+     * The Direction of each byte, or null.
+     */
+    private static final Direction[] DIRECTIONS = new Direction[BYTE_MASK + 1];
+
+    static {
+        for (int i = 0; i <= BYTE_MASK; i++) {
+            TERRAINS[i] = (byte) Terrain.valueOf((char) i).ordinal();
+            KINDS[i] = VehicleKind.valueOf((char) i);
+            DIRECTIONS[i] = Direction.valueOf((char) i);
+        }
+    }
+
+    /**
+     * The file being parsed.
+     */
+    private final FileChannel myChannel;
+
+    /**
+     * The name of the file, for error messages.
+     */
+    private final Path myPath;
+
+    /**
+     * The listener told about the terrain as it is parsed.
+     */
+    private final CityLoadListener myListener;
+
+    /**
+     * The parsed terrain.
+     */
+    private TerrainGrid myGrid;
+
+    /**
+     * The parsed vehicles.
+     */
+    private List<Vehicle> myVehicles;
+
+    /**
+     * Creates a parser for an open file.
+     *
+     * @param theChannel the file
+     * @param thePath the name of the file
+     * @param theListener the listener told about the terrain as it is parsed
+     */
+    private CityParser(final FileChannel theChannel, final Path thePath,
+                       final CityLoadListener theListener) {
+        myChannel = theChannel;
+        myPath = thePath;
+        myListener = theListener;
+    }
+
+    /**
+     * Parses a city text file.
+     *
+     * @param thePath the city text file.
+     * @param theListener the listener told about the terrain as it is parsed.
+     * @return the parser, holding the terrain and the vehicles.
+     * @throws IOException if the file cannot be read or is not a city text file.
+     */
+    static CityParser parse(final Path thePath, final CityLoadListener theListener)
+                    throws IOException {
+        try (FileChannel channel = FileChannel.open(thePath, StandardOpenOption.READ)) {
+            final CityParser result = new CityParser(channel, thePath, theListener);
+            result.parseAll();
+            return result;
+        }
+    }
+
+    /**
+     * Returns the parsed terrain.
+     *
+     * @return the terrain grid.
+     */
+    TerrainGrid getGrid() {
+        return myGrid;
+    }
+
+    /**
+     * Returns the parsed vehicles, in file order.
+     *
+     * @return the vehicles.
+     */
+    List<Vehicle> getVehicles() {
+        return myVehicles;
+    }
+
+    /**
+     * Parses the whole file.
+     *
+     * @throws IOException if the file cannot be read or is not a city text file.
+     */
+    private void parseAll() throws IOException {
+        final Lines lines = new Lines(0);
+        final byte[] header = lines.nextNonBlank();
+        if (header == null) {
+            throw error("is empty");
+        }
+        final int[] token = {0};
+        final int rows = parseInt(header, lines.length(), token);
+        final int columns = parseInt(header, lines.length(), token);
+        if (rows < 0 || columns < 0) {
+            throw error("has a bad size " + rows + " x " + columns);
+        }
+        myListener.sizeKnown(columns, rows);
+        TerrainGrid.Builder grid = new TerrainGrid.Builder(columns, rows);
+        final long gridStart = lines.position();
+        final int stride = stride(gridStart, columns, rows);
+        final long vehicleStart;
+        if (stride > 0 && parseBands(grid, gridStart, stride, rows, columns)) {
+            vehicleStart = gridStart + (long) stride * rows;
+        } else {
+            grid = new TerrainGrid.Builder(columns, rows);
+            parseRows(lines, grid, rows, columns);
+            vehicleStart = lines.position();
+        }
+        myGrid = grid.build();
+
+        final Lines rest = new Lines(vehicleStart);
+        final byte[] countLine = rest.nextNonBlank();
+        if (countLine == null) {
+            throw error("has no vehicle count");
+        }
+        token[0] = 0;
+        final int count = parseInt(countLine, rest.length(), token);
+        if (count < 0) {
+            throw error("has a negative vehicle count " + count);
+        }
+        myVehicles = parseVehicles(rest.position(), count);
+    }
+
+    /**
+     * Returns the length of a row including its line break, if every row of the grid has
+     * exactly the given width. Only the first row is checked here; each band checks its
+     * own rows as it parses them.
+     *
+     * @param theStart the position of the first row
+     * @param theWidth the width of the grid
+     * @param theHeight the height of the grid
+     * @return the row length, or 0 if the rows are not evenly spaced.
+     * @throws IOException if the file cannot be read.
+     */
+    private int stride(final long theStart, final int theWidth, final int theHeight)
+                    throws IOException {
+        int result = 0;
+        if (theHeight > 0) {
+            final byte[] end = read(theStart + theWidth, 2);
+            if (end.length > 0 && end[0] == '\n') {
+                result = theWidth + 1;
+            } else if (end.length > 1 && end[0] == '\r' && end[1] == '\n') {
+                result = theWidth + 2;
+            }
+            if (theStart + (long) result * theHeight > myChannel.size()) {
+                result = 0;
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Parses the rows of an evenly spaced grid in parallel bands of tile rows.
+     *
+     * @param theGrid the grid being built
+     * @param theStart the position of the first row
+     * @param theStride the length of a row including its line break
+     * @param theHeight the height of the grid
+     * @param theWidth the width of the grid
+     * @return false if a row turned out to have the wrong length, true otherwise.
+     * @throws IOException if the file cannot be read.
+     */
+    private boolean parseBands(final TerrainGrid.Builder theGrid, final long theStart,
+                            final int theStride, final int theHeight, final int theWidth)
+                    throws IOException {
+        final List<Callable<Boolean>> bands = new ArrayList<>();
+        for (int row = 0; row < theHeight; row += TerrainGrid.TILE_SIZE) {
+            final int first = row;
+            final int last = Math.min(theHeight, row + TerrainGrid.TILE_SIZE);
+            bands.add(() -> parseBand(theGrid, theStart, theStride, first, last, theWidth));
+        }
+        return !invokeAll(bands).contains(Boolean.FALSE);
+    }
+
+    /**
+     * Parses one band of rows of an evenly spaced grid into its row of tiles.
+     *
+     * @param theGrid the grid being built
+     * @param theStart the position of the first row of the grid
+     * @param theStride the length of a row including its line break
+     * @param theFirst the first row of the band
+     * @param theEnd the row after the last row of the band
+     * @param theWidth the width of the grid
+     * @return false if a row does not end where it should, true otherwise.
+     * @throws IOException if the file cannot be read.
+     */
+    private boolean parseBand(final TerrainGrid.Builder theGrid, final long theStart,
+                              final int theStride, final int theFirst, final int theEnd,
+                              final int theWidth) throws IOException {
+        final byte[] bytes = read(theStart + (long) theStride * theFirst,
+                                  theStride * (theEnd - theFirst));
+        final int tilesAcross = (theWidth + TILE_MASK) >> TILE_SHIFT;
+        final byte[][] tiles = new byte[tilesAcross][TILE_CELLS];
+        for (final byte[] tile : tiles) {
+            Arrays.fill(tile, (byte) Terrain.GRASS.ordinal());
+        }
+        for (int row = theFirst; row < theEnd; row++) {
+            final int start = theStride * (row - theFirst);
+            if (bytes[start + theStride - 1] != '\n'
+                || theStride > theWidth + 1 && bytes[start + theWidth] != '\r') {
+                return false;
+            }
+            final int rowOffset = (row & TILE_MASK) << TILE_SHIFT;
+            for (int x = 0; x < theWidth; x++) {
+                final byte letter = bytes[start + x];
+                if (letter == '\n') {
+                    return false;
+                }
+                tiles[x >> TILE_SHIFT][rowOffset | x & TILE_MASK] =
+                                TERRAINS[letter & BYTE_MASK];
+            }
+        }
+        final TerrainGrid.Builder band = new TerrainGrid.Builder(theWidth, theEnd - theFirst);
+        for (int tile = 0; tile < tilesAcross; tile++) {
+            band.setTile(tile, 0, tiles[tile]);
+        }
+        addBand(theGrid, theFirst, band.build());
+        return true;
+    }
+
+    /**
+     * Hands a finished band of rows to the listener and adds it to the grid.
+     *
+     * @param theGrid the grid being built
+     * @param theFirst the first row of the band
+     * @param theBand the band
+     */
+    private void addBand(final TerrainGrid.Builder theGrid, final int theFirst,
+                         final TerrainGrid theBand) {
+        myListener.rowsLoaded(theFirst, theBand);
+        theGrid.setRows(theFirst, theBand);
+    }
+
+    /**
+     * Parses the rows of the grid one line at a time, a band of tile rows at a time.
+     *
+     * @param theLines the lines, positioned at the first row
+     * @param theGrid the grid being built
+     * @param theHeight the height of the grid
+     * @param theWidth the width of the grid
+     * @throws IOException if the file cannot be read or a row is too short.
+     */
+    private void parseRows(final Lines theLines, final TerrainGrid.Builder theGrid,
+                           final int theHeight, final int theWidth) throws IOException {
+        for (int first = 0; first < theHeight; first += TerrainGrid.TILE_SIZE) {
+            final int end = Math.min(theHeight, first + TerrainGrid.TILE_SIZE);
+            final TerrainGrid.Builder band = new TerrainGrid.Builder(theWidth, end - first);
+            for (int row = first; row < end; row++) {
+                final byte[] line = theLines.next();
+                if (line == null || theLines.length() < theWidth) {
+                    throw error("has a short row " + row);
+                }
+                for (int x = 0; x < theWidth; x++) {
+                    band.set(x, row - first, Terrain.valueOf((char) (line[x] & BYTE_MASK)));
+                }
+            }
+            addBand(theGrid, first, band.build());
+        }
+    }
+
+    /**
+     * Parses the vehicle lines in parallel chunks.
+     *
+     * @param theStart the position of the first vehicle line
+     * @param theCount the number of vehicles to read
+     * @return the vehicles, in file order.
+     * @throws IOException if the file cannot be read or a vehicle line is bad.
+     */
+    private List<Vehicle> parseVehicles(final long theStart, final int theCount)
+                    throws IOException {
+        final long size = myChannel.size();
+        final List<Callable<VehicleChunk>> chunks = new ArrayList<>();
+        long start = theStart;
+        while (start < size) {
+            final long end = lineStartAfter(Math.min(size, start + VEHICLE_CHUNK_BYTES));
+            final long from = start;
+            chunks.add(() -> parseVehicleChunk(from, end));
+            start = end;
+        }
+
+        final List<Vehicle> result = new ArrayList<>(theCount);
+        int lines = 0;
+        for (final VehicleChunk chunk : invokeAll(chunks)) {
+            for (final Vehicle vehicle : chunk.myVehicles) {
+                if (lines == theCount) {
+                    break;
+                }
+                if (vehicle != null) {
+                    result.add(vehicle);
+                }
+                lines++;
+            }
+            if (lines < theCount && chunk.myError != null) {
+                throw error(chunk.myError);
+            }
+        }
+        if (lines < theCount) {
+            throw error("has " + lines + " vehicle lines instead of " + theCount);
+        }
+        return result;
+    }
+
+    /**
+     * Parses the vehicle lines in a range of the file, stopping at the first bad line.
+     *
+     * @param theStart the position of the first line
+     * @param theEnd the position just after the last line
+     * @return the vehicles, and the problem with the bad line if there was one.
+     * @throws IOException if the file cannot be read.
+     */
+    private VehicleChunk parseVehicleChunk(final long theStart, final long theEnd)
+                    throws IOException {
+        final byte[] bytes = read(theStart, (int) (theEnd - theStart));
+        final VehicleChunk result = new VehicleChunk();
+        final int[] token = {0};
+        int lineStart = 0;
+        while (lineStart < bytes.length && result.myError == null) {
+            int lineEnd = lineStart;
+            while (lineEnd < bytes.length && bytes[lineEnd] != '\n') {
+                lineEnd++;
+            }
+            token[0] = lineStart;
+            final int kindAt = skipSpace(bytes, lineEnd, token);
+            if (kindAt < lineEnd) {
+                skipToken(bytes, lineEnd, token);
+                final int x = parseInt(bytes, lineEnd, token);
+                final int y = parseInt(bytes, lineEnd, token);
+                final int directionAt = skipSpace(bytes, lineEnd, token);
+                final VehicleKind kind = KINDS[bytes[kindAt] & BYTE_MASK];
+                final Direction direction =
+                                directionAt < lineEnd ? DIRECTIONS[bytes[directionAt]
+                                                                   & BYTE_MASK] : null;
+                if (x == Integer.MIN_VALUE || y == Integer.MIN_VALUE || direction == null) {
+                    result.myError = "has a bad vehicle line \""
+                                     + new String(bytes, lineStart, lineEnd - lineStart,
+                                                  StandardCharsets.US_ASCII).strip() + "\"";
+                } else if (kind == null) {
+                    // lines of unknown vehicles count but are skipped, as they always were
+                    result.myVehicles.add(null);
+                } else {
+                    result.myVehicles.add(FileLoader.createVehicle(kind, x, y, direction));
+                }
+            }
+            lineStart = lineEnd + 1;
+        }
+        return result;
+    }
+
+    /**
+     * Returns the position just after the line break at or after the given position.
+     *
+     * @param thePosition the position
+     * @return the start of the next line, or the end of the file.
+     * @throws IOException if the file cannot be read.
+     */
+    private long lineStartAfter(final long thePosition) throws IOException {
+        final long size = myChannel.size();
+        long position = thePosition;
+        while (position < size) {
+            final byte[] bytes = read(position, (int) Math.min(CHUNK_BYTES, size - position));
+            for (int i = 0; i < bytes.length; i++) {
+                if (bytes[i] == '\n') {
+                    return position + i + 1;
+                }
+            }
+            position += bytes.length;
+        }
+        return size;
+    }
+
+    /**
+     * Reads part of the file.
+     *
+     * @param thePosition the position to read from
+     * @param theLength the most bytes to read
+     * @return the bytes read, fewer than asked for at the end of the file.
+     * @throws IOException if the file cannot be read.
+     */
+    private byte[] read(final long thePosition, final int theLength) throws IOException {
+        final ByteBuffer buffer = ByteBuffer.allocate(theLength);
+        while (buffer.hasRemaining()) {
+            if (myChannel.read(buffer, thePosition + buffer.position()) < 0) {
+                return Arrays.copyOf(buffer.array(), buffer.position());
+            }
+        }
+        return buffer.array();
+    }
+
+    /**
+     * Runs tasks on the common pool and collects their results in order. An unchecked
+     * exception or error thrown by a task, such as one from the listener, is rethrown as
+     * it is.
+     *
+     * @param <T> the type of result
+     * @param theTasks the tasks
+     * @return the results.
+     * @throws IOException if a task failed to read the file.
+     */
+    private static <T> List<T> invokeAll(final List<Callable<T>> theTasks)
+                    throws IOException {
+        final List<T> result = new ArrayList<>(theTasks.size());
+        for (final Future<T> future : ForkJoinPool.commonPool().invokeAll(theTasks)) {
+            try {
+                result.add(future.get());
+            } catch (final InterruptedException ie) {
+                Thread.currentThread().interrupt();
+                throw new IOException("Interrupted while parsing", ie);
+            } catch (final ExecutionException ee) {
+                final Throwable cause = ee.getCause();
+                if (cause instanceof IOException) {
+                    throw (IOException) cause;
+                }
+                if (cause instanceof RuntimeException) {
+                    throw (RuntimeException) cause;
+                }
+                if (cause instanceof Error) {
+                    throw (Error) cause;
+                }
+                // tasks only throw IOException among the checked exceptions
+                throw new IllegalStateException(cause);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Moves a position past spaces and tabs.
+     *
+     * @param theBytes the line
+     * @param theEnd the end of the line
+     * @param thePosition the position, updated in place
+     * @return the new position.
+     */
+    private static int skipSpace(final byte[] theBytes, final int theEnd,
+                                 final int[] thePosition) {
+        int i = thePosition[0];
+        while (i < theEnd && theBytes[i] <= ' ') {
+            i++;
+        }
+        thePosition[0] = i;
+        return i;
+    }
+
+    /**
+     * Moves a position past one token.
+     *
+     * @param theBytes the line
+     * @param theEnd the end of the line
+     * @param thePosition the position, updated in place
+     */
+    private static void skipToken(final byte[] theBytes, final int theEnd,
+                                  final int[] thePosition) {
+        int i = thePosition[0];
+        while (i < theEnd && theBytes[i] > ' ') {
+            i++;
+        }
+        thePosition[0] = i;
+    }
+
+    /**
+     * Parses a decimal int token.
+     *
+     * @param theBytes the line
+     * @param theEnd the end of the line
+     * @param thePosition the position, moved past the token
+     * @return the int, or Integer.MIN_VALUE if the token is missing or not an int.
+     */
+    private static int parseInt(final byte[] theBytes, final int theEnd,
+                                final int[] thePosition) {
+        int i = skipSpace(theBytes, theEnd, thePosition);
+        final boolean negative = i < theEnd && theBytes[i] == '-';
+        if (negative || i < theEnd && theBytes[i] == '+') {
+            i++;
+        }
+        final int digits = i;
+        long value = 0;
+        while (i < theEnd && theBytes[i] >= '0' && theBytes[i] <= '9'
+               && value <= Integer.MAX_VALUE) {
+            value = value * 10 + theBytes[i] - '0';
+            i++;
+        }
+        thePosition[0] = i;
+        skipToken(theBytes, theEnd, thePosition);
+        if (i == digits || thePosition[0] != i || value > Integer.MAX_VALUE) {
+            return Integer.MIN_VALUE;
+        }
+        return (int) (negative ? -value : value);
+    }
+
+    /**
+     * Creates the exception for a malformed file.
+     *
+     * @param theProblem what is wrong, following the file name
+     * @return the exception.
+     */
+    private IOException error(final String theProblem) {
+        return new IOException(myPath + " " + theProblem);
+    }
+
+    /**
+     * The vehicles of one chunk of vehicle lines.
+     */
+    private static final class VehicleChunk {
+
+        /**
+         * The vehicles parsed before any bad line, null for a line of an unknown kind.
+         */
+        private final List<Vehicle> myVehicles = new ArrayList<>();
+
+        /**
+         * The problem with the first bad line, or null.
+         */
+        private String myError;
+    }
+
+    /**
+     * Reads the file one line at a time from a given position, through a growing line
+     * buffer. A line break is '\n', with any '\r' before it dropped.
+     */
+    private final class Lines {
+
+        /**
+         * The bytes read ahead of the current line.
+         */
+        private final ByteBuffer myChunk = ByteBuffer.allocate(CHUNK_BYTES);
+
+        /**
+         * The current line.
+         */
+        private byte[] myLine = new byte[TerrainGrid.TILE_SIZE];
+
+        /**
+         * The length of the current line.
+         */
+        private int myLength;
+
+        /**
+         * The file position of the start of the next line.
+         */
+        private long myPosition;
+
+        /**
+         * The file position the next chunk is read from.
+         */
+        private long myReadPosition;
+
+        /**
+         * Creates a reader starting at the given position.
+         *
+         * @param thePosition the position of the first line
+         */
+        Lines(final long thePosition) {
+            myPosition = thePosition;
+            myReadPosition = thePosition;
+            myChunk.limit(0);
+        }
+
+        /**
+         * Reads the next line.
+         *
+         * @return the line buffer, holding length() bytes, or null at the end of the file.
+         * @throws IOException if the file cannot be read.
+         */
+        byte[] next() throws IOException {
+            myLength = 0;
+            boolean any = false;
+            while (true) {
+                if (!myChunk.hasRemaining()) {
+                    myChunk.clear();
+                    final int count = myChannel.read(myChunk, myReadPosition);
+                    myChunk.flip();
+                    if (count <= 0) {
+                        return any ? trimmed() : null;
+                    }
+                    myReadPosition += count;
+                }
+                any = true;
+                final byte b = myChunk.get();
+                myPosition++;
+                if (b == '\n') {
+                    return trimmed();
+                }
+                if (myLength == myLine.length) {
+                    myLine = Arrays.copyOf(myLine, myLength * 2);
+                }
+                myLine[myLength++] = b;
+            }
+        }
+
+        /**
+         * Reads lines until one holds something other than whitespace.
+         *
+         * @return the line buffer, or null at the end of the file.
+         * @throws IOException if the file cannot be read.
+         */
+        byte[] nextNonBlank() throws IOException {
+            byte[] line = next();
+            while (line != null && skipSpace(line, myLength, new int[1]) == myLength) {
+                line = next();
+            }
+            return line;
+        }
+
+        /**
+         * Returns the length of the current line.
+         *
+         * @return the number of bytes in the line.
+         */
+        int length() {
+            return myLength;
+        }
+
+        /**
+         * Returns the file position of the start of the next line.
+         *
+         * @return the position.
+         */
+        long position() {
+            return myPosition;
+        }
+
+        /**
+         * Drops a '\r' ending the current line.
+         *
+         * @return the line buffer.
+         */
+        private byte[] trimmed() {
+            if (myLength > 0 && myLine[myLength - 1] == '\r') {
+                myLength--;
+            }
+            return myLine;
+        }
+    }
+}
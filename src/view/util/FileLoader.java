@@ -6,9 +6,26 @@ package view.util;
 
 import java.io.File;
 import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HexFormat;
 import java.util.List;
-import java.util.Scanner;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
 import javax.swing.JFrame;
 import javax.swing.JOptionPane;
 import logic.PropertyChangeEnabledRoadRageControls;
@@ -26,9 +43,66 @@ import model.*;
 public final class FileLoader {
 
     /**
-     * The filename of the city map.
+     * The filename of the default city map.
      */
-    private static final String CITY_FILE = "city_map1.txt";
+    public static final String CITY_FILE = "city_map1.txt";
+
+    /**
+     * The system property naming the directory compiled city files are cached in, or
+     * CACHE_OFF to turn the compile cache off.
+     */
+    private static final String CACHE_PROPERTY = "roadrage.cache";
+
+    /**
+     * The value of CACHE_PROPERTY that turns the compile cache off.
+     */
+    private static final String CACHE_OFF = "off";
+
+    /**
+     * The cache directory used when CACHE_PROPERTY is not set or empty, under the user's
+     * home.
+     */
+    private static final String DEFAULT_CACHE = ".roadrage/cache";
+
+    /**
+     * The system property giving the most bytes the compile cache may hold.
+     */
+    private static final String LIMIT_PROPERTY = "roadrage.cache.limit";
+
+    /**
+     * The most bytes the compile cache holds when LIMIT_PROPERTY is not set.
+     */
+    private static final long DEFAULT_LIMIT = 1L << 30;
+
+    /**
+     * The file name extension of compiled city files.
+     */
+    private static final String CACHE_EXTENSION = ".city";
+
+    /**
+     * The digest used to key the cache by the content of city text files.
+     */
+    private static final String DIGEST = "SHA-256";
+
+    /**
+     * The size of the buffer used to hash city text files.
+     */
+    private static final int HASH_BUFFER = 1 << 16;
+
+    /**
+     * A listener for callers that do not watch the terrain load.
+     */
+    private static final CityLoadListener IGNORE = new CityLoadListener() {
+        @Override
+        public void sizeKnown(final int theWidth, final int theHeight) {
+            // nobody is watching
+        }
+
+        @Override
+        public void rowsLoaded(final int theFirstRow, final TerrainGrid theRows) {
+            // nobody is watching
+        }
+    };
     
     /**
      * A private constructor, to prevent external instantiation.
@@ -43,15 +117,7 @@ public final class FileLoader {
     public static PropertyChangeEnabledRoadRageControls readCity(final JFrame theFrame) {
         PropertyChangeEnabledRoadRageControls result = null;
         try {
-            final Scanner input;
-
-            input = new Scanner(new File(CITY_FILE));
-
-            // First, we read the map description
-            // Then, we read where the initial vehicles are
-           
-            result = new RoadRage(readGrid(input), readVehicles(input));        
- 
+            result = readCity(new File(CITY_FILE), false);
         } catch (final IOException ioe) {
             JOptionPane.showMessageDialog(theFrame, "Could not read city map file " + CITY_FILE
                                           + ":\n\n" + ioe.getMessage(), "I/O Error",
@@ -62,80 +128,314 @@ public final class FileLoader {
     
     
     /**
-     * Reads the grid portion of the map file.
+     * Read the given city file and build a RoadRage simulation based on the file, using 
+     * the compile cache unless it is turned off. Unlike readCity(JFrame), this does not need a
+     * display and reports errors to the caller.
+     * 
+     * @param theFile the city text file, or a binary city file.
+     * @param thePacked whether the simulation keeps its vehicle state in packed arrays.
+     * @return the RoadRage simulation based on the city file.
+     * @throws IOException if the file cannot be read.
+     * @see #readCity(File, boolean, boolean, CityLoadListener)
+     */
+    public static RoadRage readCity(final File theFile, final boolean thePacked)
+                    throws IOException {
+        return readCity(theFile, thePacked, true, IGNORE);
+    }
+
+    /**
+     * Read the given city file and build a RoadRage simulation based on the file.
+     * 
+     * @param theFile the city text file, or a binary city file.
+     * @param thePacked whether the simulation keeps its vehicle state in packed arrays.
+     * @param theUseCache whether to use the compile cache for a city text file, unless it
+     *        is turned off.
+     * @return the RoadRage simulation based on the city file.
+     * @throws IOException if the file cannot be read.
+     * @see #readCity(File, boolean, boolean, CityLoadListener)
+     */
+    public static RoadRage readCity(final File theFile, final boolean thePacked,
+                                    final boolean theUseCache) throws IOException {
+        return readCity(theFile, thePacked, theUseCache, IGNORE);
+    }
+
+    /**
+     * Read the given city file and build a RoadRage simulation based on the file.
+     * 
+     * <p>A binary city file is memory-mapped directly. A city text file is looked up in 
+     * the compile cache by the hash of its content; on a miss it is parsed and the result
+     * is saved in the cache as a binary city file, so the next load of the same map skips
+     * the parser. Each entry is as large as a binary city file of the map. Once the
+     * entries add up to more than the limit, 1 GB unless the roadrage.cache.limit system
+     * property gives another number of bytes, the least recently used are deleted until
+     * they fit again, which may take the new entry too if it is larger than the limit.
+     * 
+     * <p>The cache lives in .roadrage/cache under the user's home, or in the directory
+     * named by the roadrage.cache system property; setting that property to "off" turns
+     * the cache off, as theUseCache does for a single load. A cache that cannot be
+     * written only costs the speed-up.
      * 
-     * @param theInput The input scanner.
-     * @return the map of the terrains.
-     */
-    private static Terrain[][] readGrid(final Scanner theInput) {
-        final int numRows = theInput.nextInt();
-        final int numColumns = theInput.nextInt();
-        theInput.nextLine();
-        final Terrain[][] grid = new Terrain[numRows][numColumns];
-        for (int row = 0; row < numRows; row++) {
-            final String line = theInput.nextLine();
-            for (int column = 0; column < numColumns; column++) {
-                grid[row][column] = Terrain.valueOf(line.charAt(column));
+     * <p>The listener is told the size of the map and then given its terrain band by band
+     * while the file is read, from the loading threads, so a display can draw the map
+     * before the simulation is ready.
+     * 
+     * @param theFile the city text file, or a binary city file.
+     * @param thePacked whether the simulation keeps its vehicle state in packed arrays.
+     * @param theUseCache whether to use the compile cache for a city text file, unless it
+     *        is turned off.
+     * @param theListener the listener told about the terrain as it is read.
+     * @return the RoadRage simulation based on the city file.
+     * @throws IOException if the file cannot be read.
+     */
+    public static RoadRage readCity(final File theFile, final boolean thePacked,
+                                    final boolean theUseCache,
+                                    final CityLoadListener theListener) throws IOException {
+        final Path path = theFile.toPath();
+        if (CityFile.isCityFile(path)) {
+            return CityFile.read(path, thePacked, theListener);
+        }
+        final Path directory = cacheDirectory();
+        if (!theUseCache || directory == null) {
+            return parseCity(path, thePacked, null, theListener);
+        }
+        final Path cached = directory.resolve(hash(path) + CACHE_EXTENSION);
+        final SizeOnceListener listener = new SizeOnceListener(theListener);
+        if (Files.isRegularFile(cached)) {
+            try {
+                final RoadRage result = CityFile.read(cached, thePacked, listener);
+                touch(cached);
+                return result;
+            } catch (final IOException stale) {
+                // an unreadable or outdated entry is simply compiled again
             }
         }
-        return grid;
+        return parseCity(path, thePacked, cached, listener);
+    }
+
+    /**
+     * Creates a vehicle of the given kind.
+     * 
+     * @param theKind the kind of vehicle.
+     * @param theX the x position.
+     * @param theY the y position.
+     * @param theDirection the direction.
+     * @return the vehicle.
+     */
+    static Vehicle createVehicle(final VehicleKind theKind, final int theX, final int theY,
+                                 final Direction theDirection) {
+        return switch (theKind) {
+            case BICYCLE -> new Bicycle(theX, theY, theDirection);
+            case ATV -> new ATV(theX, theY, theDirection);
+            case HUMAN -> new Human(theX, theY, theDirection);
+            case TRUCK -> new Truck(theX, theY, theDirection);
+            case TAXI -> new Taxi(theX, theY, theDirection);
+            case CAR -> new Car(theX, theY, theDirection);
+        };
     }
 
     /**
-     * Reads the vehicle portion of the map file.
+     * Parses a city text file, saving it as a binary city file if asked to.
      * 
-     * @param theInput The input scanner.
-     * @return the list of Vehicles
-     */
-    private static List<Vehicle> readVehicles(final Scanner theInput) {
-        final List<Vehicle> vehicles = new ArrayList<Vehicle>();
-        final int numVehicles = theInput.nextInt();
-        theInput.nextLine();
-        for (int lineCount = 0; lineCount < numVehicles; lineCount++) {
-            final char vehicleType = theInput.next().charAt(0);
-            final int vehicleX = theInput.nextInt();
-            final int vehicleY = theInput.nextInt();
-            final char vehicleDirection = theInput.next().charAt(0);
-
-            switch (vehicleType) {
-             case 'B': // Bicycle
-                    vehicles.add(new Bicycle(vehicleX, vehicleY,
-                                               Direction.valueOf(vehicleDirection)));
-                    break;
-
-                case 'A': //ATV
-                    vehicles.add(new ATV(vehicleX, vehicleY,
-                                           Direction.valueOf(vehicleDirection)));
-                    break;
-
-                case 'H': // Human
-                    vehicles.add(new Human(vehicleX, vehicleY,
-                                             Direction.valueOf(vehicleDirection)));
-                    break;
-
-                case 'T': // Truck
-                    vehicles.add(new Truck(vehicleX, vehicleY,
-                                             Direction.valueOf(vehicleDirection)));
-                    break;
-                    
-                case 'X': // Taxi
-                    vehicles.add(new Taxi(vehicleX, vehicleY,
-                                            Direction.valueOf(vehicleDirection)));
-                    break;
-                    
-                case 'C': // Car
-                    vehicles.add(new Car(vehicleX, vehicleY,
-                                            Direction.valueOf(vehicleDirection)));
-                    break;
-
-                default:
-                    // this should never happen
-                    assert false;
-                    break;
+     * @param thePath the city text file.
+     * @param thePacked whether the simulation keeps its vehicle state in packed arrays.
+     * @param theCompiled where to save the binary city file, or null not to.
+     * @param theListener the listener told about the terrain as it is read.
+     * @return the RoadRage simulation based on the city text file.
+     * @throws IOException if the file cannot be read.
+     */
+    private static RoadRage parseCity(final Path thePath, final boolean thePacked,
+                                      final Path theCompiled,
+                                      final CityLoadListener theListener)
+                    throws IOException {
+        final CityParser city = CityParser.parse(thePath, theListener);
+        if (theCompiled != null) {
+            compile(theCompiled, city.getGrid(), city.getVehicles());
+        }
+        return new RoadRage(city.getGrid(), city.getVehicles(), thePacked);
+    }
+
+    /**
+     * Saves a city as a binary city file in the cache, writing a temporary file first so
+     * a reader never sees half an entry, and then evicts entries until the cache fits in
+     * its limit. Failures are ignored.
+     * 
+     * @param theCompiled the cache entry.
+     * @param theGrid the terrain.
+     * @param theVehicles the vehicles, in their starting positions.
+     */
+    private static void compile(final Path theCompiled, final TerrainGrid theGrid,
+                                final List<Vehicle> theVehicles) {
+        Path temporary = null;
+        try {
+            Files.createDirectories(theCompiled.getParent());
+            temporary = Files.createTempFile(theCompiled.getParent(), "compile", ".tmp");
+            CityFile.write(temporary, theGrid, theVehicles);
+            try {
+                Files.move(temporary, theCompiled, StandardCopyOption.ATOMIC_MOVE);
+            } catch (final AtomicMoveNotSupportedException ame) {
+                Files.move(temporary, theCompiled, StandardCopyOption.REPLACE_EXISTING);
+            }
+            temporary = null;
+            evict(theCompiled.getParent());
+        } catch (final IOException | SecurityException e) {
+            if (temporary != null) {
+                try {
+                    Files.deleteIfExists(temporary);
+                } catch (final IOException ioe) {
+                    // nothing more to do; the cache simply misses next time
+                }
+            }
+        }
+    }
+
+    /**
+     * Deletes the least recently used entries of the cache until the rest fit in its
+     * limit. Entries another process deletes first are skipped.
+     * 
+     * @param theDirectory the cache directory.
+     * @throws IOException if the directory cannot be listed.
+     */
+    private static void evict(final Path theDirectory) throws IOException {
+        final List<Path> entries;
+        try (Stream<Path> files = Files.list(theDirectory)) {
+            entries = files.filter(f -> f.getFileName().toString().endsWith(CACHE_EXTENSION))
+                           .collect(Collectors.toList());
+        }
+        final Map<Path, BasicFileAttributes> attributes = new HashMap<>();
+        long total = 0;
+        for (final Path entry : entries) {
+            try {
+                final BasicFileAttributes entryAttributes =
+                                Files.readAttributes(entry, BasicFileAttributes.class);
+                attributes.put(entry, entryAttributes);
+                total += entryAttributes.size();
+            } catch (final IOException gone) {
+                // deleted since the listing
+            }
+        }
+        final List<Path> oldestFirst = new ArrayList<>(attributes.keySet());
+        oldestFirst.sort(Comparator.comparing(f -> attributes.get(f).lastModifiedTime()));
+        final long limit = cacheLimit();
+        for (int i = 0; i < oldestFirst.size() && total > limit; i++) {
+            try {
+                Files.deleteIfExists(oldestFirst.get(i));
+            } catch (final IOException ioe) {
+                // still counted as gone; it is retried on the next eviction
+            }
+            total -= attributes.get(oldestFirst.get(i)).size();
+        }
+    }
+
+    /**
+     * Marks a cache entry as just used, so it is evicted last.
+     * 
+     * @param theEntry the cache entry.
+     */
+    private static void touch(final Path theEntry) {
+        try {
+            Files.setLastModifiedTime(theEntry, FileTime.fromMillis(System.currentTimeMillis()));
+        } catch (final IOException | SecurityException e) {
+            // the entry is only evicted sooner
+        }
+    }
+
+    /**
+     * Returns the directory compiled city files are cached in.
+     * 
+     * @return the cache directory, or null if the cache is turned off.
+     */
+    private static Path cacheDirectory() {
+        final String directory = System.getProperty(CACHE_PROPERTY, "");
+        Path result = null;
+        if (directory.isEmpty()) {
+            result = Paths.get(System.getProperty("user.home"), DEFAULT_CACHE);
+        } else if (!CACHE_OFF.equals(directory)) {
+            result = Paths.get(directory);
+        }
+        return result;
+    }
+
+    /**
+     * Returns the most bytes the compile cache may hold.
+     * 
+     * @return the limit from LIMIT_PROPERTY, or DEFAULT_LIMIT if it is not a valid size.
+     */
+    private static long cacheLimit() {
+        long result = DEFAULT_LIMIT;
+        final String limit = System.getProperty(LIMIT_PROPERTY);
+        if (limit != null) {
+            try {
+                result = Math.max(0, Long.parseLong(limit));
+            } catch (final NumberFormatException nfe) {
+                // keep the default
             }
-            theInput.nextLine();
         }
-        return vehicles;
+        return result;
+    }
+
+    /**
+     * Hashes the content of a file.
+     * 
+     * @param thePath the file.
+     * @return the hash as hexadecimal digits.
+     * @throws IOException if the file cannot be read.
+     */
+    private static String hash(final Path thePath) throws IOException {
+        final MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance(DIGEST);
+        } catch (final NoSuchAlgorithmException nsae) {
+            // every Java platform must support SHA-256
+            throw new IllegalStateException(nsae);
+        }
+        try (InputStream input = new DigestInputStream(Files.newInputStream(thePath), 
+                                                       digest)) {
+            final byte[] buffer = new byte[HASH_BUFFER];
+            while (input.read(buffer) >= 0) {
+                // the stream feeds the digest
+            }
+        }
+        return HexFormat.of().formatHex(digest.digest());
+    }
+
+    /**
+     * Passes a load on to a listener, all but a second call of sizeKnown. A cache entry
+     * that breaks after its terrain has started to arrive is then parsed again without
+     * breaking the CityLoadListener contract; the bands it delivered are delivered again,
+     * with the same terrain.
+     */
+    private static final class SizeOnceListener implements CityLoadListener {
+
+        /**
+         * The listener passed on to.
+         */
+        private final CityLoadListener myListener;
+
+        /**
+         * Whether the listener has been told the size of the map.
+         */
+        private final AtomicBoolean mySizeKnown = new AtomicBoolean();
+
+        /**
+         * Creates a listener passing on to another.
+         * 
+         * @param theListener the listener passed on to.
+         */
+        SizeOnceListener(final CityLoadListener theListener) {
+            myListener = theListener;
+        }
+
+        @Override
+        public void sizeKnown(final int theWidth, final int theHeight) {
+            if (mySizeKnown.compareAndSet(false, true)) {
+                myListener.sizeKnown(theWidth, theHeight);
+            }
+        }
+
+        @Override
+        public void rowsLoaded(final int theFirstRow, final TerrainGrid theRows) {
+            myListener.rowsLoaded(theFirstRow, theRows);
+        }
     }
     
 }